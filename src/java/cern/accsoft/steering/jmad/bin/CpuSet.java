@@ -0,0 +1,132 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.bin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * A set of CPU cores in the list format of 'taskset -c' (e.g. "0-3,8,10-11"). MadX processes can be pinned to such a
+ * set, so that the kernels of a pool are spread deterministically over the cores of a host instead of all competing
+ * for the same ones.
+ */
+public final class CpuSet {
+
+    private final List<Integer> cpus;
+
+    private CpuSet(List<Integer> cpus) {
+        this.cpus = Collections.unmodifiableList(cpus);
+    }
+
+    /**
+     * parses a list of cores as used by 'taskset -c'
+     * 
+     * @param list comma separated cores or ranges of cores, e.g. "0-3,8"
+     * @return the set of cores
+     * @throws IllegalArgumentException if the list is empty or invalid
+     */
+    public static CpuSet parse(String list) {
+        TreeSet<Integer> cpus = new TreeSet<>();
+        for (String part : list.split(",")) {
+            String range = part.trim();
+            if (range.isEmpty()) {
+                continue;
+            }
+            try {
+                int dash = range.indexOf('-');
+                int first = Integer.parseInt(((dash < 0) ? range : range.substring(0, dash)).trim());
+                int last = (dash < 0) ? first : Integer.parseInt(range.substring(dash + 1).trim());
+                if ((first < 0) || (last < first)) {
+                    throw new IllegalArgumentException("Invalid cpu range '" + range + "' in '" + list + "'.");
+                }
+                for (int cpu = first; cpu <= last; cpu++) {
+                    cpus.add(cpu);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cpu range '" + range + "' in '" + list + "'.", e);
+            }
+        }
+        if (cpus.isEmpty()) {
+            throw new IllegalArgumentException("No cpus given in '" + list + "'.");
+        }
+        return new CpuSet(new ArrayList<>(cpus));
+    }
+
+    /**
+     * selects the cores for one slot (e.g. one kernel of a pool): the slots get consecutive groups of the given size,
+     * starting again at the first core when all cores are used.
+     * 
+     * @param slot the number of the slot, starting from 0
+     * @param cpusPerSlot the number of cores for each slot
+     * @return the cores of the slot
+     */
+    public CpuSet slice(int slot, int cpusPerSlot) {
+        if (cpusPerSlot >= cpus.size()) {
+            return this;
+        }
+        List<Integer> slice = new ArrayList<>(cpusPerSlot);
+        int start = (int) (((long) slot * cpusPerSlot) % cpus.size());
+        for (int i = 0; i < cpusPerSlot; i++) {
+            slice.add(cpus.get((start + i) % cpus.size()));
+        }
+        Collections.sort(slice);
+        return new CpuSet(slice);
+    }
+
+    /**
+     * @return the cores in ascending order
+     */
+    public List<Integer> getCpus() {
+        return cpus;
+    }
+
+    public int size() {
+        return cpus.size();
+    }
+
+    /**
+     * @return the cores in the format of 'taskset -c'
+     */
+    @Override
+    public String toString() {
+        StringBuilder list = new StringBuilder();
+        int i = 0;
+        while (i < cpus.size()) {
+            int first = cpus.get(i);
+            int last = first;
+            while ((i + 1 < cpus.size()) && (cpus.get(i + 1) == last + 1)) {
+                last = cpus.get(++i);
+            }
+            if (list.length() > 0) {
+                list.append(',');
+            }
+            list.append(first);
+            if (last > first) {
+                list.append('-').append(last);
+            }
+            i++;
+        }
+        return list.toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return (obj instanceof CpuSet) && cpus.equals(((CpuSet) obj).cpus);
+    }
+
+    @Override
+    public int hashCode() {
+        return cpus.hashCode();
+    }
+}
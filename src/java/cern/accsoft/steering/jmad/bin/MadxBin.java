@@ -32,10 +32,30 @@ import java.io.IOException;
 public interface MadxBin {
 
     /**
-     * executes MadX
+     * executes MadX with the default options
      * 
      * @return the process of the running MadX
      * @throws IOException if the execution fails
      */
-    Process execute() throws IOException;
+    default Process execute() throws IOException {
+        return execute(new MadxLaunchOptions());
+    }
+
+    /**
+     * executes MadX with the given options. Options which are not supported on the actual platform are ignored.
+     * 
+     * @param options the working directory, environment and scheduling of the process
+     * @return the process of the running MadX
+     * @throws IOException if the execution fails
+     */
+    Process execute(MadxLaunchOptions options) throws IOException;
+
+    /**
+     * @param options the options with which MadX is (or will be) started
+     * @return true, if MadX flushes its standard output after each line when started with these options, false if it
+     *         is not known
+     */
+    default boolean isLineBuffered(MadxLaunchOptions options) {
+        return false;
+    }
 }
@@ -0,0 +1,217 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.bin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache of extracted MadX executables on the local disk, which is private to the user. Each executable is stored in
+ * a sub directory named by its version and its SHA-256 checksum, so different versions never interfere and an
+ * executable is extracted only once, and not by every JVM.
+ * <p>
+ * The cache directories are only accessible by the owner, so no other user can replace an executable between its
+ * verification and its execution. An executable is first extracted to a temporary file in the target directory and
+ * then atomically renamed, so other JVMs never see a partially written file. After the checksum of an executable was
+ * verified, it is recorded in a marker file together with the size and the modification time of the executable. As
+ * long as they match, the executable is not hashed again.
+ */
+class MadxBinCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MadxBinCache.class);
+
+    private static final String TMP_FILE_SUFFIX = ".tmp";
+
+    /** the suffix of the marker file, which records the verified checksum of an executable */
+    private static final String VERIFIED_SUFFIX = ".verified";
+
+    private static final Set<PosixFilePermission> OWNER_ONLY = EnumSet.of(PosixFilePermission.OWNER_READ,
+            PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE);
+
+    private final File cacheDir;
+
+    /**
+     * opens the stream from which an executable is extracted
+     */
+    interface Source {
+        InputStream open() throws IOException;
+    }
+
+    MadxBinCache(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * returns the cached executable for the given version and checksum. If there is no valid one in the cache, it is
+     * extracted from the source first.
+     *
+     * @param binName the file name of the executable
+     * @param version the version of the executable
+     * @param sha256 the expected SHA-256 checksum (lower case hex) of the executable
+     * @param source the source, from which the executable is extracted if necessary
+     * @return the cached executable
+     * @throws IOException if the executable could not be extracted or the extracted file has the wrong checksum
+     */
+    File getExecutable(String binName, String version, String sha256, Source source) throws IOException {
+        File entryDir = new File(cacheDir, toDirName(version) + "-" + sha256);
+        createPrivateDir(cacheDir);
+        createPrivateDir(entryDir);
+
+        File executable = new File(entryDir, binName);
+        File marker = new File(entryDir, binName + VERIFIED_SUFFIX);
+        if (executable.isFile()) {
+            if (isVerified(executable, marker, sha256)) {
+                LOGGER.debug("Found verified madx binary '{}' in cache.", executable.getAbsolutePath());
+                return executable;
+            }
+            if (sha256.equals(sha256Of(executable))) {
+                LOGGER.debug("Found valid madx binary '{}' in cache.", executable.getAbsolutePath());
+                writeMarker(executable, marker, sha256);
+                return executable;
+            }
+            LOGGER.warn("Cached madx binary '{}' is corrupt. Extracting it again.", executable.getAbsolutePath());
+        }
+
+        File tmpFile = File.createTempFile(binName, TMP_FILE_SUFFIX, entryDir);
+        try {
+            extract(source, tmpFile, sha256);
+            try {
+                Files.move(tmpFile.toPath(), executable.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                /* e.g. on windows, where the file cannot be replaced while another JVM executes it */
+                if (!(executable.isFile() && sha256.equals(sha256Of(executable)))) {
+                    throw e;
+                }
+            }
+        } finally {
+            deleteIfExists(tmpFile);
+        }
+        writeMarker(executable, marker, sha256);
+        LOGGER.info("Extracted madx binary to cache '{}'.", executable.getAbsolutePath());
+        return executable;
+    }
+
+    /**
+     * creates the directory if necessary and restricts it to the owner. This also ensures, that the directory belongs
+     * to the current user, because only the owner can change the permissions. On file systems without posix
+     * permissions (windows), the directory keeps the access rights of the private output dir of the user.
+     *
+     * @throws IOException if the directory could not be created or restricted
+     */
+    private static void createPrivateDir(File dir) throws IOException {
+        Path path = dir.toPath();
+        Files.createDirectories(path);
+        if (Files.getFileAttributeView(path, PosixFileAttributeView.class) != null) {
+            Files.setPosixFilePermissions(path, OWNER_ONLY);
+        }
+    }
+
+    /**
+     * @return true, if the marker records the given checksum and the current size and modification time of the
+     *         executable
+     */
+    private static boolean isVerified(File executable, File marker, String sha256) {
+        if (!marker.isFile()) {
+            return false;
+        }
+        try {
+            String content = new String(Files.readAllBytes(marker.toPath()), StandardCharsets.US_ASCII);
+            return content.equals(markerContent(executable, sha256));
+        } catch (IOException e) {
+            LOGGER.debug("Could not read marker file '{}'.", marker.getAbsolutePath(), e);
+            return false;
+        }
+    }
+
+    /**
+     * records the verified checksum of the executable. A failure is only logged, since the executable is then just
+     * verified again at the next start.
+     */
+    private static void writeMarker(File executable, File marker, String sha256) {
+        File tmpFile = null;
+        try {
+            tmpFile = File.createTempFile(marker.getName(), TMP_FILE_SUFFIX, marker.getParentFile());
+            Files.write(tmpFile.toPath(), markerContent(executable, sha256).getBytes(StandardCharsets.US_ASCII));
+            Files.move(tmpFile.toPath(), marker.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("Could not write marker file '{}'.", marker.getAbsolutePath(), e);
+        } finally {
+            if (tmpFile != null) {
+                deleteIfExists(tmpFile);
+            }
+        }
+    }
+
+    private static String markerContent(File executable, String sha256) {
+        return sha256 + " " + executable.length() + " " + executable.lastModified();
+    }
+
+    private static void deleteIfExists(File file) {
+        if (file.exists() && !file.delete()) {
+            LOGGER.warn("Could not delete temporary file '{}'.", file.getAbsolutePath());
+        }
+    }
+
+    private static void extract(Source source, File file, String sha256) throws IOException {
+        String actualSha256;
+        try (InputStream inputStream = source.open()) {
+            if (inputStream == null) {
+                throw new IOException("Source of madx binary not available.");
+            }
+            HashingInputStream hashingStream = new HashingInputStream(Hashing.sha256(), inputStream);
+            Files.copy(hashingStream, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            actualSha256 = hashingStream.hash().toString();
+        }
+        if (!sha256.equals(actualSha256)) {
+            throw new IOException("Extracted madx binary has checksum " + actualSha256 + ", but " + sha256
+                    + " was expected.");
+        }
+        file.setReadable(true, true);
+        file.setExecutable(true, true);
+        file.setWritable(false, false);
+    }
+
+    /**
+     * @param inputStream the stream to read until its end
+     * @return the SHA-256 checksum of the content of the stream (lower case hex)
+     * @throws IOException if reading the stream fails
+     */
+    static String sha256Of(InputStream inputStream) throws IOException {
+        HashingInputStream hashingStream = new HashingInputStream(Hashing.sha256(), inputStream);
+        ByteStreams.exhaust(hashingStream);
+        return hashingStream.hash().toString();
+    }
+
+    private static String sha256Of(File file) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(file.toPath())) {
+            return sha256Of(inputStream);
+        }
+    }
+
+    private static String toDirName(String version) {
+        return version.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+}
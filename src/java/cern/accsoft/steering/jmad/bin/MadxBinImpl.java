@@ -31,10 +31,18 @@ package cern.accsoft.steering.jmad.bin;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import cern.accsoft.steering.jmad.JMadConstants;
 import cern.accsoft.steering.jmad.util.OsUtil;
 import cern.accsoft.steering.jmad.util.StreamUtil;
 import cern.accsoft.steering.jmad.util.TempFileUtil;
+import com.google.common.io.ByteStreams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,8 +57,28 @@ public class MadxBinImpl implements MadxBin {
 
     private static final String EXTERNAL_MADX_EXECUTABLE_PATH_PROP = "cern.jmad.kernel.madxpath";
 
+    /** set this property to 'false' to extract the binary into the private temp dir at each start */
+    private static final String BIN_CACHE_PROP = "cern.jmad.kernel.madx.bincache";
+
+    /** the directory of the binary cache, relative to the output dir of the user */
+    private static final String BIN_CACHE_DIR = "madx-bin-cache";
+
+    /** the optional resource next to the binary, which contains its SHA-256 checksum */
+    private static final String CHECKSUM_SUFFIX = ".sha256";
+
+    private static final String UNKNOWN_VERSION = "unversioned";
+
     private static final String BIN_NAME = "madx";
 
+    /** the tools which prefix the madx command for pinning, priority and output buffering */
+    private static final String TOOL_TASKSET = "taskset";
+    private static final String TOOL_NICE = "nice";
+    private static final String TOOL_STDBUF = "stdbuf";
+    private static final Map<String, Boolean> AVAILABLE_TOOLS = new ConcurrentHashMap<>();
+
+    /** the checksums of the binary resources, so that a resource is hashed at most once per JVM */
+    private static final Map<String, String> RESOURCE_CHECKSUMS = new ConcurrentHashMap<>();
+
     private static final String RESOURCE_PREFIX_WIN = "win/";
     private static final String RESOURCE_PREFIX_LINUX = "linux/";
     private static final String RESOURCE_PREFIX_OSX = "osx/";
@@ -74,8 +102,60 @@ public class MadxBinImpl implements MadxBin {
     }
 
     @Override
-    public Process execute() throws IOException {
-        return Runtime.getRuntime().exec(getExecutablePath());
+    public Process execute(MadxLaunchOptions options) throws IOException {
+        ProcessBuilder builder = new ProcessBuilder(createCommand(options));
+        if (options.getWorkingDirectory() != null) {
+            builder.directory(options.getWorkingDirectory());
+        }
+        builder.environment().putAll(options.getEnvironment());
+        LOGGER.debug("Starting madx: {}", builder.command());
+        return builder.start();
+    }
+
+    @Override
+    public boolean isLineBuffered(MadxLaunchOptions options) {
+        return options.isLineBufferedOutput() && isToolAvailable(TOOL_STDBUF, OsUtil.isLinux());
+    }
+
+    /**
+     * creates the command line for starting madx. Pinning, priority and line buffering are applied by prefixing the
+     * command with 'taskset', 'nice' and 'stdbuf', if they are available.
+     */
+    List<String> createCommand(MadxLaunchOptions options) {
+        List<String> command = new ArrayList<>();
+        if ((options.getCpuSet() != null) && isToolAvailable(TOOL_TASKSET, OsUtil.isLinux())) {
+            command.add(TOOL_TASKSET);
+            command.add("-c");
+            command.add(options.getCpuSet().toString());
+        }
+        if ((options.getNiceLevel() != null) && isToolAvailable(TOOL_NICE, !OsUtil.isWindows())) {
+            command.add(TOOL_NICE);
+            command.add("-n");
+            command.add(options.getNiceLevel().toString());
+        }
+        if (isLineBuffered(options)) {
+            command.add(TOOL_STDBUF);
+            command.add("-oL");
+        }
+        command.add(getExecutablePath());
+        return command;
+    }
+
+    /**
+     * @return true, if the tool is supported on this os and found on the path. Otherwise a warning is logged once.
+     */
+    private static boolean isToolAvailable(String tool, boolean supportedByOs) {
+        return AVAILABLE_TOOLS.computeIfAbsent(tool, name -> {
+            if (supportedByOs) {
+                for (String dir : System.getenv().getOrDefault("PATH", "").split(File.pathSeparator)) {
+                    if (new File(dir, name).canExecute()) {
+                        return true;
+                    }
+                }
+            }
+            LOGGER.warn("'{}' is not available on this system. MadX is started without it.", name);
+            return false;
+        });
     }
 
     /**
@@ -116,10 +196,13 @@ public class MadxBinImpl implements MadxBin {
                     EXTERNAL_MADX_EXECUTABLE_PATH_PROP);
             executablePath = sysPropExecutablePath;
         } else if (resourceName != null) {
-            LOGGER.debug("Extracting madx binary for further use.");
-            File file = fileUtil.getOutputFile(executableName);
-            StreamUtil.toFile(MadxBinImpl.class.getResourceAsStream(resourceName), file);
-            file.setExecutable(true);
+            File file = isBinCacheEnabled() ? getCachedExecutable(resourceName) : null;
+            if (file == null) {
+                LOGGER.debug("Extracting madx binary for further use.");
+                file = fileUtil.getOutputFile(executableName);
+                StreamUtil.toFile(MadxBinImpl.class.getResourceAsStream(resourceName), file);
+                file.setExecutable(true);
+            }
             executablePath = file.getAbsolutePath();
         } else {
             LOGGER.warn("No madx binary is available in the jar for operating system '{}',\n" //
@@ -131,6 +214,72 @@ public class MadxBinImpl implements MadxBin {
         }
     }
 
+    private static boolean isBinCacheEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty(BIN_CACHE_PROP));
+    }
+
+    /**
+     * looks up the binary in the cache which is shared by all jmad instances of the user on this machine and extracts
+     * it there, if it is not yet available.
+     *
+     * @param resourceName the name of the resource which contains the binary
+     * @return the cached binary, or null if the cache cannot be used
+     */
+    private File getCachedExecutable(String resourceName) {
+        try {
+            String sha256 = getChecksum(resourceName);
+            if (sha256 == null) {
+                return null;
+            }
+            MadxBinCache cache = new MadxBinCache(fileUtil.getOutputDir(BIN_CACHE_DIR));
+            File file = cache.getExecutable(BIN_NAME, getVersion(), sha256,
+                    () -> MadxBinImpl.class.getResourceAsStream(resourceName));
+            LOGGER.info("Using madx binary '{}' from cache.", file.getAbsolutePath());
+            return file;
+        } catch (IOException e) {
+            LOGGER.warn("Madx binary cache not usable. Extracting the binary to the temp dir instead.", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the SHA-256 checksum of the binary, preferably from the checksum resource next to it (so the binary need
+     *         not be read at all), or null if the binary resource does not exist
+     */
+    private static String getChecksum(String resourceName) throws IOException {
+        String sha256 = RESOURCE_CHECKSUMS.get(resourceName);
+        if (sha256 == null) {
+            sha256 = readChecksum(resourceName);
+            if (sha256 != null) {
+                RESOURCE_CHECKSUMS.put(resourceName, sha256);
+            }
+        }
+        return sha256;
+    }
+
+    private static String readChecksum(String resourceName) throws IOException {
+        try (InputStream checksumStream = MadxBinImpl.class.getResourceAsStream(resourceName + CHECKSUM_SUFFIX)) {
+            if (checksumStream != null) {
+                String content = new String(ByteStreams.toByteArray(checksumStream), StandardCharsets.US_ASCII);
+                return content.trim().split("\\s+")[0].toLowerCase(JMadConstants.DEFAULT_LOCALE);
+            }
+        }
+        try (InputStream binaryStream = MadxBinImpl.class.getResourceAsStream(resourceName)) {
+            if (binaryStream == null) {
+                return null;
+            }
+            return MadxBinCache.sha256Of(binaryStream);
+        }
+    }
+
+    /**
+     * @return the version of jmad, which bundles the binary
+     */
+    private static String getVersion() {
+        String version = MadxBinImpl.class.getPackage().getImplementationVersion();
+        return (version == null) ? UNKNOWN_VERSION : version;
+    }
+
     public void setFileUtil(TempFileUtil fileUtil) {
         this.fileUtil = fileUtil;
     }
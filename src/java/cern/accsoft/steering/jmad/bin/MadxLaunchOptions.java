@@ -0,0 +1,95 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.bin;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The options for starting a MadX process: its working directory, additional environment variables, the cores it may
+ * run on, its scheduling priority and the buffering of its output. All of them are optional, by default MadX is started
+ * as a child process which inherits everything from the JVM.
+ */
+public class MadxLaunchOptions {
+
+    /** the working directory of the process. If null, the one of the JVM is used. */
+    private File workingDirectory = null;
+
+    /** the variables, which are added to the environment of the JVM */
+    private final Map<String, String> environment = new LinkedHashMap<>();
+
+    /** the cores to which the process is pinned. If null, it may run on all cores. */
+    private CpuSet cpuSet = null;
+
+    /** the nice level of the process. If null, the one of the JVM is used. */
+    private Integer niceLevel = null;
+
+    /** if true, the process flushes its standard output after each line instead of after each full block */
+    private boolean lineBufferedOutput = false;
+
+    public File getWorkingDirectory() {
+        return workingDirectory;
+    }
+
+    public void setWorkingDirectory(File workingDirectory) {
+        this.workingDirectory = workingDirectory;
+    }
+
+    public Map<String, String> getEnvironment() {
+        return Collections.unmodifiableMap(environment);
+    }
+
+    /**
+     * @param environment the variables to add to the environment of the process (replacing previously set ones)
+     */
+    public void setEnvironment(Map<String, String> environment) {
+        this.environment.clear();
+        this.environment.putAll(environment);
+    }
+
+    public CpuSet getCpuSet() {
+        return cpuSet;
+    }
+
+    /**
+     * @param cpuSet the cores to which the process is pinned (only supported on linux, using 'taskset')
+     */
+    public void setCpuSet(CpuSet cpuSet) {
+        this.cpuSet = cpuSet;
+    }
+
+    public Integer getNiceLevel() {
+        return niceLevel;
+    }
+
+    /**
+     * @param niceLevel the nice level of the process (not supported on windows). Only users with the according
+     *            privileges can set negative values.
+     */
+    public void setNiceLevel(Integer niceLevel) {
+        this.niceLevel = niceLevel;
+    }
+
+    public boolean isLineBufferedOutput() {
+        return lineBufferedOutput;
+    }
+
+    /**
+     * @param lineBufferedOutput true to let the process flush its standard output after each line (only supported on
+     *            linux, using 'stdbuf')
+     */
+    public void setLineBufferedOutput(boolean lineBufferedOutput) {
+        this.lineBufferedOutput = lineBufferedOutput;
+    }
+}
@@ -0,0 +1,584 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.domain.result.tfs;
+
+import static cern.accsoft.steering.jmad.domain.result.tfs.TfsDoubles.parseTfsDouble;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import cern.accsoft.steering.jmad.JMadConstants;
+import cern.accsoft.steering.jmad.domain.result.ResultType;
+import cern.accsoft.steering.jmad.domain.var.MadxVariable;
+import cern.accsoft.steering.jmad.domain.var.enums.MadxTwissVariable;
+import cern.accsoft.steering.jmad.util.MadxVarType;
+
+/**
+ * A {@link TfsResult} which stores each column in one array: the values of double columns are parsed while the rows
+ * are added and kept as primitive doubles, the values of string columns are kept as strings, where repeated values
+ * (e.g. the keywords) share one instance. The index of the element names is an open addressing hash table of row
+ * numbers. Compared to the {@link TfsResultImpl}, which keeps all values as strings and the doubles additionally as
+ * boxed values, this needs several times less memory for large tables.
+ * <p>
+ * The lists returned by {@link #getDoubleData(String)} and {@link #getStringData(String)} are unmodifiable views on
+ * the arrays, which box the values on access. {@link #getStringData(String)} of a double column returns the formatted
+ * double values, since the original strings are not kept.
+ */
+public class ColumnarTfsResult implements MutableTfsResult {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** string columns stop sharing repeated values, when they contain more distinct values than this */
+    private static final int MAX_SHARED_STRINGS = 1024;
+
+    private static final String NAME_KEY = unifyKey(MadxTwissVariable.NAME.getMadxName());
+
+    /** The representation of the summary table for this result */
+    private TfsSummary tfsSummary;
+
+    private final List<String> keys = new ArrayList<>();
+    private final Map<String, Integer> columnIndices = new HashMap<>();
+    private final Map<String, MadxVarType> varTypes = new HashMap<>();
+
+    /** the columns in the order of the keys. Created with the first row, when the types are known. */
+    private Column[] columns = null;
+    private int rowCount = 0;
+
+    private final ElementIndex elementIndex = new ElementIndex();
+
+    /** the first value which could not be converted to a double. Reported by {@link #convert()}. */
+    private String invalidDouble = null;
+
+    //
+    // public methods needed for filling the result
+    //
+
+    @Override
+    public void clear() {
+        keys.clear();
+        columnIndices.clear();
+        varTypes.clear();
+        columns = null;
+        rowCount = 0;
+        elementIndex.clear();
+        invalidDouble = null;
+    }
+
+    @Override
+    public void createColumn(String key) {
+        String unifiedKey = unifyKey(key);
+        columnIndices.put(unifiedKey, keys.size());
+        keys.add(unifiedKey);
+    }
+
+    @Override
+    public void setVarType(String key, MadxVarType varType) {
+        varTypes.put(unifyKey(key), varType);
+    }
+
+    @Override
+    public void addRow(String[] values) {
+        addRow(new StringArrayRow(values));
+    }
+
+    /**
+     * adds a new line of data to the dataset. The values of double columns are read by {@link TfsRow#getDouble(int)},
+     * so that a parser, which reads them directly from the bytes of the file, does not have to create strings.
+     * 
+     * @param row the values of the line
+     */
+    @Override
+    public void addRow(TfsRow row) {
+        if (columns == null) {
+            createColumns();
+        }
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].add(row, i);
+        }
+        int nameColumn = getColumnIndex(NAME_KEY);
+        if ((nameColumn >= 0) && (columns[nameColumn] instanceof StringColumn)) {
+            elementIndex.put(((StringColumn) columns[nameColumn]).values[rowCount], rowCount);
+        }
+        rowCount++;
+    }
+
+    @Override
+    public ColumnarTfsResult createPart() {
+        ColumnarTfsResult part = new ColumnarTfsResult();
+        for (String key : keys) {
+            part.createColumn(key);
+            part.setVarType(key, getVarType(key));
+        }
+        return part;
+    }
+
+    /**
+     * appends the columns of the part to the ones of this result and adds its element names to the index.
+     */
+    @Override
+    public void addRows(MutableTfsResult part) {
+        if (!(part instanceof ColumnarTfsResult) || !keys.equals(part.getKeys())) {
+            throw new IllegalArgumentException("Only parts created by createPart() can be added.");
+        }
+        ColumnarTfsResult other = (ColumnarTfsResult) part;
+        if (other.rowCount == 0) {
+            return;
+        }
+        if (columns == null) {
+            createColumns();
+        }
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].addAll(other.columns[i], other.rowCount);
+        }
+        int nameColumn = getColumnIndex(NAME_KEY);
+        if ((nameColumn >= 0) && (columns[nameColumn] instanceof StringColumn)) {
+            String[] names = ((StringColumn) columns[nameColumn]).values;
+            for (int row = rowCount; row < rowCount + other.rowCount; row++) {
+                elementIndex.put(names[row], row);
+            }
+        }
+        if (invalidDouble == null) {
+            invalidDouble = other.invalidDouble;
+        }
+        rowCount += other.rowCount;
+    }
+
+    private void createColumns() {
+        columns = new Column[keys.size()];
+        for (int i = 0; i < columns.length; i++) {
+            if (MadxVarType.DOUBLE == varTypes.get(keys.get(i))) {
+                columns[i] = new DoubleColumn();
+            } else {
+                columns[i] = new StringColumn();
+            }
+        }
+    }
+
+    /**
+     * Trims the columns to their size and reports values, which could not be converted to doubles while adding the
+     * rows.
+     * 
+     * @throws TfsResultException if a value of a double column is not a number
+     */
+    @Override
+    public void convert() throws TfsResultException {
+        if (invalidDouble != null) {
+            throw new TfsResultException("Double-data cannot be calculated!", new TfsResultException(
+                    "Error while converting value '" + invalidDouble + "' to Double"));
+        }
+        if (columns != null) {
+            for (Column column : columns) {
+                column.trim(rowCount);
+            }
+        }
+    }
+
+    @Override
+    public void verify() throws TfsResultException {
+        for (String key : keys) {
+            MadxVarType varType = getVarType(key);
+            if (varType == null) {
+                throw new TfsResultException("Could not determine vartype vor key " + key
+                        + ". Dont know how to verify!");
+            }
+            if ((varType != MadxVarType.STRING) && (varType != MadxVarType.DOUBLE)) {
+                throw new TfsResultException("Result contains Data of type " + varType.toString()
+                        + ". Dont know how to verify!");
+            }
+        }
+    }
+
+    /**
+     * ensures that all keys are the same case.
+     * 
+     * @param key the key to unify
+     * @return the converted key.
+     */
+    private static String unifyKey(String key) {
+        return key.toUpperCase(JMadConstants.DEFAULT_LOCALE);
+    }
+
+    private int getColumnIndex(String unifiedKey) {
+        Integer index = columnIndices.get(unifiedKey);
+        return (index == null) ? -1 : index;
+    }
+
+    private Column getColumn(String key) {
+        int index = getColumnIndex(unifyKey(key));
+        if ((index < 0) || (columns == null)) {
+            return null;
+        }
+        return columns[index];
+    }
+
+    private DoubleColumn getDoubleColumn(String key) {
+        Column column = getColumn(key);
+        return (column instanceof DoubleColumn) ? (DoubleColumn) column : null;
+    }
+
+    //
+    // methods of interface TfsResult
+    //
+
+    @Override
+    public int getColumnCount() {
+        return keys.size();
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public Integer getElementIndex(String elementName) {
+        int nameColumn = getColumnIndex(NAME_KEY);
+        if (nameColumn < 0) {
+            return null;
+        }
+        return elementIndex.get(elementName);
+    }
+
+    @Override
+    public List<Double> getDoubleData(MadxVariable resultVariable) {
+        return getDoubleData(resultVariable.getMadxName());
+    }
+
+    @Override
+    public List<Double> getDoubleData(String key) {
+        DoubleColumn column = getDoubleColumn(key);
+        if (column == null) {
+            return (getColumnIndex(unifyKey(key)) < 0) || (getVarType(key) != MadxVarType.DOUBLE) ? null
+                    : Collections.<Double> emptyList();
+        }
+        return new DoubleList(column.values, rowCount);
+    }
+
+    @Override
+    public double[] getDoubleArray(String key) {
+        DoubleColumn column = getDoubleColumn(key);
+        if (column == null) {
+            List<Double> data = getDoubleData(key);
+            return (data == null) ? null : new double[0];
+        }
+        return Arrays.copyOf(column.values, rowCount);
+    }
+
+    @Override
+    public double getDouble(String key, int row) {
+        DoubleColumn column = getDoubleColumn(key);
+        if (column == null) {
+            throw new IllegalArgumentException("No double data for key '" + key + "'.");
+        }
+        if ((row < 0) || (row >= rowCount)) {
+            throw new IndexOutOfBoundsException("Row " + row + " does not exist. Row count: " + rowCount);
+        }
+        return column.values[row];
+    }
+
+    @Override
+    public List<String> getStringData(MadxVariable resultVariable) {
+        return getStringData(resultVariable.getMadxName());
+    }
+
+    @Override
+    public List<String> getStringData(String key) {
+        Column column = getColumn(key);
+        if (column == null) {
+            return (getColumnIndex(unifyKey(key)) < 0) ? null : Collections.<String> emptyList();
+        }
+        return column.asStrings(rowCount);
+    }
+
+    @Override
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    @Override
+    public MadxVarType getVarType(String key) {
+        return varTypes.get(unifyKey(key));
+    }
+
+    @Override
+    public MadxVarType getVarType(MadxVariable var) {
+        return getVarType(var.getMadxName());
+    }
+
+    //
+    // Methods of interface Result
+    //
+
+    @Override
+    public final ResultType getResultType() {
+        return ResultType.TFS_RESULT;
+    }
+
+    @Override
+    public TfsSummary getSummary() {
+        return this.tfsSummary;
+    }
+
+    @Override
+    public void setTfsSummary(TfsSummary tfsSummary) {
+        this.tfsSummary = tfsSummary;
+    }
+
+    /**
+     * the values of one column
+     */
+    private abstract static class Column {
+        abstract void add(TfsRow row, int index);
+
+        /**
+         * @param other a column of the same type
+         * @param count the number of values to add from the other column
+         */
+        abstract void addAll(Column other, int count);
+
+        abstract void trim(int size);
+
+        abstract List<String> asStrings(int size);
+    }
+
+    private class DoubleColumn extends Column {
+        private double[] values = new double[INITIAL_CAPACITY];
+        private int size = 0;
+
+        @Override
+        void add(TfsRow row, int index) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.max(INITIAL_CAPACITY, values.length * 2));
+            }
+            try {
+                values[size] = row.getDouble(index);
+            } catch (NumberFormatException e) {
+                values[size] = Double.NaN;
+                if (invalidDouble == null) {
+                    invalidDouble = row.getString(index);
+                }
+            }
+            size++;
+        }
+
+        @Override
+        void addAll(Column other, int count) {
+            if (size + count > values.length) {
+                values = Arrays.copyOf(values, Math.max(size + count, values.length * 2));
+            }
+            System.arraycopy(((DoubleColumn) other).values, 0, values, size, count);
+            size += count;
+        }
+
+        @Override
+        void trim(int newSize) {
+            if (values.length != newSize) {
+                values = Arrays.copyOf(values, newSize);
+            }
+        }
+
+        @Override
+        List<String> asStrings(int rows) {
+            String[] strings = new String[rows];
+            for (int i = 0; i < rows; i++) {
+                strings[i] = Double.toString(values[i]);
+            }
+            return Collections.unmodifiableList(Arrays.asList(strings));
+        }
+    }
+
+    private static class StringColumn extends Column {
+        private String[] values = new String[INITIAL_CAPACITY];
+        private int size = 0;
+
+        /** the distinct values, so that repeated values are stored only once. Null if there are too many. */
+        private Map<String, String> sharedValues = new HashMap<>();
+
+        @Override
+        void add(TfsRow row, int index) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.max(INITIAL_CAPACITY, values.length * 2));
+            }
+            values[size++] = share(row.getString(index));
+        }
+
+        @Override
+        void addAll(Column other, int count) {
+            if (size + count > values.length) {
+                values = Arrays.copyOf(values, Math.max(size + count, values.length * 2));
+            }
+            System.arraycopy(((StringColumn) other).values, 0, values, size, count);
+            size += count;
+        }
+
+        private String share(String value) {
+            if (sharedValues == null) {
+                return value;
+            }
+            String shared = sharedValues.putIfAbsent(value, value);
+            if (shared != null) {
+                return shared;
+            }
+            if (sharedValues.size() > MAX_SHARED_STRINGS) {
+                sharedValues = null;
+            }
+            return value;
+        }
+
+        @Override
+        void trim(int newSize) {
+            if (values.length != newSize) {
+                values = Arrays.copyOf(values, newSize);
+            }
+            sharedValues = null;
+        }
+
+        @Override
+        List<String> asStrings(int rows) {
+            return Collections.unmodifiableList(Arrays.asList(values).subList(0, rows));
+        }
+    }
+
+    /**
+     * the values of a row, which are already split into strings
+     */
+    private static class StringArrayRow implements TfsRow {
+        private final String[] values;
+
+        StringArrayRow(String[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public int getValueCount() {
+            return values.length;
+        }
+
+        @Override
+        public String getString(int index) {
+            return values[index];
+        }
+
+        @Override
+        public double getDouble(int index) {
+            return parseTfsDouble(values[index]);
+        }
+    }
+
+    /**
+     * an unmodifiable view on the values of a double column
+     */
+    private static class DoubleList extends AbstractList<Double> implements RandomAccess {
+        private final double[] values;
+        private final int size;
+
+        DoubleList(double[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        @Override
+        public Double get(int index) {
+            if (index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return values[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * maps the element names (ignoring the case) to their row. An open addressing hash table with linear probing,
+     * which stores the row numbers plus one (zero marks a free slot) and compares with the names of the rows.
+     */
+    private static class ElementIndex {
+        private String[] names = new String[INITIAL_CAPACITY];
+        private int[] slots = new int[INITIAL_CAPACITY * 2];
+        private int count = 0;
+
+        void clear() {
+            names = new String[INITIAL_CAPACITY];
+            slots = new int[INITIAL_CAPACITY * 2];
+            count = 0;
+        }
+
+        void put(String name, int row) {
+            if (row >= names.length) {
+                names = Arrays.copyOf(names, Math.max(names.length * 2, row + 1));
+            }
+            names[row] = name;
+            if (2 * (count + 1) > slots.length) {
+                rehash(slots.length * 2);
+            }
+            insert(row);
+        }
+
+        private void insert(int row) {
+            String name = names[row];
+            int mask = slots.length - 1;
+            int slot = hash(name) & mask;
+            while (slots[slot] != 0) {
+                if (names[slots[slot] - 1].equalsIgnoreCase(name)) {
+                    /* as before: the last row of a name wins */
+                    slots[slot] = row + 1;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = row + 1;
+            count++;
+        }
+
+        private void rehash(int capacity) {
+            int[] oldSlots = slots;
+            slots = new int[capacity];
+            count = 0;
+            for (int oldSlot : oldSlots) {
+                if (oldSlot != 0) {
+                    insert(oldSlot - 1);
+                }
+            }
+        }
+
+        Integer get(String name) {
+            int mask = slots.length - 1;
+            int slot = hash(name) & mask;
+            while (slots[slot] != 0) {
+                int row = slots[slot] - 1;
+                if (names[row].equalsIgnoreCase(name)) {
+                    return row;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        private static int hash(String name) {
+            int hash = 0;
+            for (int i = 0; i < name.length(); i++) {
+                hash = 31 * hash + Character.toLowerCase(name.charAt(i));
+            }
+            /* spread the bits, since only the lower ones are used */
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.domain.result.tfs;
+
+import cern.accsoft.steering.jmad.util.MadxVarType;
+
+/**
+ * A {@link TfsResult} which is filled by a parser (see {@link cern.accsoft.steering.jmad.io.TfsFileParser}): First the
+ * columns are created and their types set, then the rows are added. Finally the result is converted and verified.
+ */
+public interface MutableTfsResult extends TfsResult {
+
+    /**
+     * clears all internal variables.
+     */
+    void clear();
+
+    /**
+     * adds an empty column to the internal data.
+     * 
+     * @param key the key for this column.
+     */
+    void createColumn(String key);
+
+    /**
+     * sets the Type of the column corresponding to the given key
+     * 
+     * @param key the key for which to set the type
+     * @param varType the type for the key
+     */
+    void setVarType(String key, MadxVarType varType);
+
+    /**
+     * adds a new line of data to the dataset.
+     * 
+     * @param values the values to set as Strings. Only the first {@link #getColumnCount()} values are used, so the
+     *            array may be longer (e.g. a buffer which is reused for each row).
+     */
+    void addRow(String[] values);
+
+    /**
+     * adds a new line of data to the dataset. Per default the values are read as strings.
+     * 
+     * @param row the values of the line. Only the first {@link #getColumnCount()} values are used.
+     */
+    default void addRow(TfsRow row) {
+        String[] values = new String[getColumnCount()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = row.getString(i);
+        }
+        addRow(values);
+    }
+
+    /**
+     * creates an empty result of the same type and with the same columns as this one. It can be filled independently
+     * (e.g. with a part of the table in another thread) and then be appended by {@link #addRows(MutableTfsResult)}.
+     * Per default parts are not supported, so that the result is always filled row by row.
+     * 
+     * @return the new empty part, or null if this result does not support parts
+     */
+    default MutableTfsResult createPart() {
+        return null;
+    }
+
+    /**
+     * appends all rows of the given part, as if they were added one by one.
+     * 
+     * @param part a result, which was created by {@link #createPart()} of this result
+     * @throws IllegalArgumentException if the part was not created by this result
+     * @throws UnsupportedOperationException if this result does not support parts (the default)
+     */
+    default void addRows(MutableTfsResult part) {
+        throw new UnsupportedOperationException("This result does not support parts.");
+    }
+
+    /**
+     * @param tfsSummary the summary table of the result
+     */
+    void setTfsSummary(TfsSummary tfsSummary);
+
+    /**
+     * Converts all double data for fast retrieval.
+     * 
+     * @throws TfsResultException if the conversion from string to double values is not possible
+     */
+    void convert() throws TfsResultException;
+
+    /**
+     * Validates, if all values can be correctly retrieved. If not, it throws an exception.
+     * 
+     * @throws TfsResultException if the verification fails.
+     */
+    void verify() throws TfsResultException;
+
+    /**
+     * @return the number of rows in the table
+     */
+    int getRowCount();
+}
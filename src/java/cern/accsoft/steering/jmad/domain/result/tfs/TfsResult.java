@@ -57,6 +57,62 @@ public interface TfsResult extends Result {
      */
     public abstract List<Double> getDoubleData(String key);
 
+    /**
+     * returns one Column of Data as primitive double-values. The array is a copy, which the caller may modify.
+     * 
+     * @param resultVariable the ResultVariable for which to get the Data.
+     * @return the Values or null if there are no double values for this variable
+     */
+    public default double[] getDoubleArray(MadxVariable resultVariable) {
+        return getDoubleArray(resultVariable.getMadxName());
+    }
+
+    /**
+     * returns one Column of Data as primitive double-values. The array is a copy, which the caller may modify.
+     * 
+     * @param key the key for the data
+     * @return the values or null if there are no double values for this key
+     */
+    public default double[] getDoubleArray(String key) {
+        List<Double> data = getDoubleData(key);
+        if (data == null) {
+            return null;
+        }
+        double[] values = new double[data.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = data.get(i);
+        }
+        return values;
+    }
+
+    /**
+     * returns one double-value without boxing all the values of the column.
+     * 
+     * @param resultVariable the ResultVariable for which to get the value.
+     * @param row the index of the row (e.g. as returned by {@link #getElementIndex(String)})
+     * @return the value
+     * @throws IllegalArgumentException if there are no double values for this variable
+     */
+    public default double getDouble(MadxVariable resultVariable, int row) {
+        return getDouble(resultVariable.getMadxName(), row);
+    }
+
+    /**
+     * returns one double-value without boxing all the values of the column.
+     * 
+     * @param key the key for the data
+     * @param row the index of the row (e.g. as returned by {@link #getElementIndex(String)})
+     * @return the value
+     * @throws IllegalArgumentException if there are no double values for this key
+     */
+    public default double getDouble(String key, int row) {
+        List<Double> data = getDoubleData(key);
+        if (data == null) {
+            throw new IllegalArgumentException("No double data for key '" + key + "'.");
+        }
+        return data.get(row);
+    }
+
     /**
      * returns one Column of Data as String-values.
      * 
@@ -20,6 +20,7 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import cern.accsoft.steering.jmad.JMadConstants;
 import cern.accsoft.steering.jmad.domain.result.ResultType;
@@ -29,7 +30,16 @@ import cern.accsoft.steering.jmad.util.MadxVarType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class TfsResultImpl implements TfsResult {
+/**
+ * The default {@link TfsResult}, which stores all values as strings. By default all double columns are converted by
+ * {@link #convert()}, so an invalid value makes the parsing fail with a {@link TfsResultException}.
+ * <p>
+ * If the conversion is not eager (see {@link #setEagerConversion(boolean)}), then the double values of a column are
+ * converted when the column is read for the first time and then kept, so only the columns which are actually used are
+ * converted. This can be done from several threads concurrently. If a column contains a value which is not a number,
+ * then reading it throws an {@link IllegalStateException} instead.
+ */
+public class TfsResultImpl implements MutableTfsResult {
 
     /** the class logger */
     private static final Logger LOGGER = LoggerFactory.getLogger(TfsResultImpl.class);
@@ -45,8 +55,11 @@ public class TfsResultImpl implements TfsResult {
     /** here the Lists of values are stored. */
     private final Map<String, List<String>> valueLists = new LinkedHashMap<String, List<String>>();
 
-    /** also the double values are stored to improve performance */
-    private final Map<String, List<Double>> doubleValueLists = new LinkedHashMap<String, List<Double>>();
+    /** also the double values are stored to improve performance. Filled per column on first access. */
+    private final Map<String, List<Double>> doubleValueLists = new ConcurrentHashMap<String, List<Double>>();
+
+    /** if true, then all double values are converted by {@link #convert()} instead of on first access */
+    private boolean eagerConversion = true;
 
     /**
      * In order to be able to work with simple array-list we additionly store the keys seperately:
@@ -63,6 +76,7 @@ public class TfsResultImpl implements TfsResult {
     /**
      * clears all internal variables.
      */
+    @Override
     public void clear() {
         elementIndizes.clear();
         varTypes.clear();
@@ -76,6 +90,7 @@ public class TfsResultImpl implements TfsResult {
      * 
      * @param key the key for this column.
      */
+    @Override
     public void createColumn(String key) {
         keys.add(unifyKey(key));
         valueLists.put(unifyKey(key), new ArrayList<String>());
@@ -87,6 +102,7 @@ public class TfsResultImpl implements TfsResult {
      * @param key the key for which to set the type
      * @param varType the type for the key
      */
+    @Override
     public void setVarType(String key, MadxVarType varType) {
         varTypes.put(unifyKey(key), varType);
     }
@@ -97,19 +113,61 @@ public class TfsResultImpl implements TfsResult {
      * @param values the values to set as Strings.
      */
     public void addRow(List<String> values) {
+        addRow(values.toArray(new String[values.size()]));
+    }
+
+    /**
+     * adds a new line of data to the dataset.
+     * 
+     * @param values the values to set as Strings. Only the first {@link #getColumnCount()} values are used, so the
+     *            array may be longer (e.g. a buffer which is reused for each row).
+     */
+    @Override
+    public void addRow(String[] values) {
+        if (!doubleValueLists.isEmpty()) {
+            /* the converted columns miss the new row */
+            doubleValueLists.clear();
+        }
         int columnNumber = 0;
         Collection<List<String>> lists = valueLists.values();
         for (List<String> list : lists) {
-            list.add(values.get(columnNumber));
+            list.add(values[columnNumber]);
 
             // if this is the column with element-name, then store the index
             if (unifyKey(MadxTwissVariable.NAME.getMadxName()).equalsIgnoreCase(keys.get(columnNumber))) {
-                elementIndizes.put(values.get(columnNumber).toLowerCase(), list.size() - 1);
+                elementIndizes.put(values[columnNumber].toLowerCase(), list.size() - 1);
             }
             columnNumber++;
         }
     }
 
+    @Override
+    public TfsResultImpl createPart() {
+        TfsResultImpl part = new TfsResultImpl();
+        for (String key : keys) {
+            part.createColumn(key);
+            part.setVarType(key, getVarType(key));
+        }
+        return part;
+    }
+
+    @Override
+    public void addRows(MutableTfsResult part) {
+        if (!(part instanceof TfsResultImpl) || !keys.equals(part.getKeys())) {
+            throw new IllegalArgumentException("Only parts created by createPart() can be added.");
+        }
+        TfsResultImpl other = (TfsResultImpl) part;
+        int offset = getRowCount();
+        for (String key : keys) {
+            valueLists.get(key).addAll(other.valueLists.get(key));
+        }
+        /* each name is only once in the part, so the order does not matter */
+        for (Map.Entry<String, Integer> entry : other.elementIndizes.entrySet()) {
+            elementIndizes.put(entry.getKey(), offset + entry.getValue());
+        }
+        doubleValueLists.clear();
+    }
+
     /**
      * converts the data to Double and returns as ArrayList.
      * 
@@ -143,10 +201,27 @@ public class TfsResultImpl implements TfsResult {
     }
 
     /**
-     * Validates, if all values can be correctly retrieved. If not, it throws an exception.
+     * converts the double values of one column for {@link #getDoubleData(String)}.
+     * 
+     * @param key the unified key of the column
+     * @return the converted values
+     * @throws IllegalStateException if the column contains a value, which is not a number
+     */
+    private List<Double> convertColumn(String key) {
+        try {
+            return calcDoubleData(key);
+        } catch (TfsResultException e) {
+            throw new IllegalStateException("Double-data for key '" + key + "' cannot be calculated!", e);
+        }
+    }
+
+    /**
+     * Validates, if all values can be correctly retrieved. If not, it throws an exception. Unless the conversion is
+     * eager, the double values are not checked here, but when the column is read for the first time.
      * 
      * @throws TfsResultException if the verification fails.
      */
+    @Override
     public void verify() throws TfsResultException {
         for (String key : keys) {
             MadxVarType varType = getVarType(key);
@@ -159,7 +234,7 @@ public class TfsResultImpl implements TfsResult {
                     throw new TfsResultException("Some String-data is null!");
                 }
             } else if (varType == MadxVarType.DOUBLE) {
-                if (getDoubleData(key) == null) {
+                if (eagerConversion && (doubleValueLists.get(key) == null)) {
                     throw new TfsResultException("Some Double-data is null!");
                 }
             } else {
@@ -170,12 +245,17 @@ public class TfsResultImpl implements TfsResult {
     }
 
     /**
-     * Converts all double data for fast retrieval.
+     * Converts all double data for fast retrieval, if the conversion is eager. Otherwise the columns are converted on
+     * first access.
      * 
      * @throws TfsResultException if the conversion from string to double values is not possible
      */
+    @Override
     public void convert() throws TfsResultException {
         doubleValueLists.clear();
+        if (!eagerConversion) {
+            return;
+        }
         for (String key : keys) {
             MadxVarType varType = getVarType(key);
             if (MadxVarType.DOUBLE.equals(varType)) {
@@ -208,6 +288,14 @@ public class TfsResultImpl implements TfsResult {
         return valueLists.size();
     }
 
+    /**
+     * @return the number of rows in the table
+     */
+    @Override
+    public int getRowCount() {
+        return keys.isEmpty() ? 0 : valueLists.get(keys.get(0)).size();
+    }
+
     @Override
     public Integer getElementIndex(String elementName) {
         String key = elementName.toLowerCase();
@@ -221,7 +309,13 @@ public class TfsResultImpl implements TfsResult {
 
     @Override
     public List<Double> getDoubleData(String key) {
-        return this.createImmutableList(doubleValueLists.get(unifyKey(key)));
+        String unifiedKey = unifyKey(key);
+        List<Double> doubleValues = doubleValueLists.get(unifiedKey);
+        if ((doubleValues == null) && valueLists.containsKey(unifiedKey)
+                && MadxVarType.DOUBLE.equals(getVarType(unifiedKey))) {
+            doubleValues = doubleValueLists.computeIfAbsent(unifiedKey, this::convertColumn);
+        }
+        return this.createImmutableList(doubleValues);
     }
 
     @Override
@@ -265,6 +359,18 @@ public class TfsResultImpl implements TfsResult {
         return getVarType(var.getMadxName());
     }
 
+    /**
+     * @param eagerConversion true (default), if {@link #convert()} shall convert all double columns, false if each
+     *            column is converted on first access.
+     */
+    public void setEagerConversion(boolean eagerConversion) {
+        this.eagerConversion = eagerConversion;
+    }
+
+    public boolean isEagerConversion() {
+        return eagerConversion;
+    }
+
     //
     // Methods of interface Result
     //
@@ -279,6 +385,7 @@ public class TfsResultImpl implements TfsResult {
         return this.tfsSummary;
     }
 
+    @Override
     public void setTfsSummary(TfsSummary tfsSummary) {
         this.tfsSummary = tfsSummary;
     }
@@ -0,0 +1,38 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.domain.result.tfs;
+
+/**
+ * One line of values of a TFS table, as provided by a parser to {@link MutableTfsResult#addRow(TfsRow)}. The parser
+ * may reuse the row for the next line, so the values have to be read before the call returns. Reading a value as
+ * double does not need to create a string first.
+ */
+public interface TfsRow {
+
+    /**
+     * @return the number of values in this row
+     */
+    int getValueCount();
+
+    /**
+     * @param index the index of the value
+     * @return the value as string
+     */
+    String getString(int index);
+
+    /**
+     * @param index the index of the value
+     * @return the value converted to double, as by {@link TfsDoubles#parseTfsDouble(String)}
+     * @throws NumberFormatException if the value is not a number
+     */
+    double getDouble(int index);
+}
@@ -23,14 +23,14 @@
 package cern.accsoft.steering.jmad.io;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import cern.accsoft.steering.jmad.domain.result.track.DynapResult;
 import cern.accsoft.steering.jmad.domain.result.track.DynapResultImpl;
 import cern.accsoft.steering.jmad.domain.var.enums.MadxDynapVariable;
-import cern.accsoft.steering.jmad.util.io.TextFileParser;
 import cern.accsoft.steering.jmad.util.io.TextFileParserException;
-import cern.accsoft.steering.jmad.util.io.impl.TextFileParserImpl;
 
 /**
  * This class provide methods to parse a dynap output. Information in the summary part are discarded.
@@ -48,40 +48,34 @@ public class DynapOutputParser {
     }
 
     public void parse() throws DynapParserException {
-        TextFileParser parser = new TextFileParserImpl();
+        try (TfsLineSource lines = TfsLineSource.open(file)) {
+            this.dynapResult.clear();
 
-        List<String> lines;
-        try {
-            lines = parser.parse(file);
-        } catch (TextFileParserException e) {
-            throw new DynapParserException("Error while parsing MadX - Output file '" + file.getAbsolutePath() + "'", e);
-        }
-
-        this.dynapResult.clear();
-
-        List<String> keys = null;
-        for (int i = 0; i < lines.size(); ++i) {
-            String line = lines.get(i);
-            if (!line.contains("@")) {
-                List<String> tokens = null;
-                try {
-                    tokens = TfsFileParser.splitString(line);
-                } catch (TfsFileParserException e) {
-                    throw new DynapParserException("Error while spliting line", e);
+            List<MadxDynapVariable> keys = null;
+            while (lines.nextLine()) {
+                if (lines.tokenEquals(0, "@")) {
+                    continue;
                 }
-                if (tokens.get(0).equalsIgnoreCase("*")) {
-                    keys = tokens.subList(1, tokens.size());
-                } else if (keys != null && !tokens.get(0).equalsIgnoreCase("$")) {
-                    for (int j = 0; j < tokens.size(); ++j) {
-                    	try{
-                    		this.dynapResult.add(MadxDynapVariable.getVariableFromName(keys.get(j)),
-                    				Double.parseDouble(tokens.get(j)));
-                    	}catch (NumberFormatException exception) {
-                    		throw new DynapParserException("Error while parsing dynap output : "+exception.getMessage(), exception);
-                    	}
+                if (lines.tokenEquals(0, "*")) {
+                    keys = new ArrayList<MadxDynapVariable>();
+                    for (int j = 1; j < lines.getValueCount(); ++j) {
+                        keys.add(MadxDynapVariable.getVariableFromName(lines.getString(j)));
+                    }
+                } else if (keys != null && !lines.tokenEquals(0, "$")) {
+                    for (int j = 0; j < lines.getValueCount(); ++j) {
+                        try {
+                            this.dynapResult.add(keys.get(j), lines.getDouble(j));
+                        } catch (NumberFormatException exception) {
+                            throw new DynapParserException("Error while parsing dynap output : "
+                                    + exception.getMessage(), exception);
+                        }
                     }
                 }
             }
+        } catch (TextFileParserException | IOException e) {
+            throw new DynapParserException("Error while parsing MadX - Output file '" + file.getAbsolutePath() + "'", e);
+        } catch (TfsFileParserException e) {
+            throw new DynapParserException("Error while spliting line", e);
         }
     }
 
@@ -0,0 +1,402 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.io;
+
+import static cern.accsoft.steering.jmad.domain.result.tfs.TfsDoubles.parseTfsDouble;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import cern.accsoft.steering.jmad.util.OsUtil;
+import cern.accsoft.steering.jmad.util.io.impl.TextFileParserImpl;
+
+/**
+ * Splits the lines of an uncompressed MadX output file into tokens like the {@link TfsScanner}, but works directly on
+ * the bytes of the file: Large files are mapped into memory ({@link FileChannel#map(MapMode, long, long)}), smaller
+ * ones are read at once. The scanner only keeps the positions of the tokens. Strings are created only for the tokens
+ * which are read as strings, numbers are parsed directly from the bytes.
+ * <p>
+ * Strings are decoded with the default charset, as by the {@link java.io.FileReader} which was used before.
+ */
+final class TfsByteScanner implements TfsLineSource {
+
+    /** files of this size or larger are mapped into memory, smaller ones are read into the heap */
+    static final long MAP_THRESHOLD = 1024 * 1024;
+
+    private static final Charset CHARSET = Charset.defaultCharset();
+    private static final byte QUOTE = '"';
+    private static final byte NEW_LINE = '\n';
+
+    /** a mantissa with more digits might not fit into a long */
+    private static final int MAX_MANTISSA_DIGITS = 18;
+    private static final int MAX_EXPONENT_DIGITS = 4;
+    /** the largest double value, up to which all integers are exact */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    /** the powers of ten, which are exact as double */
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private final ByteBuffer bytes;
+    private final int limit;
+    private int position = 0;
+    /** the position where the current line starts */
+    private int lineStart = 0;
+
+    /** the positions of the tokens of the current line: start inclusive, end exclusive */
+    private int[] tokenStarts = new int[16];
+    private int[] tokenEnds = new int[16];
+    /** true for the tokens which contain quotes, that have to be removed */
+    private boolean[] tokenQuoted = new boolean[16];
+    private int tokenCount = 0;
+
+    /** the buffer to copy the bytes of a token into, before creating the string */
+    private byte[] stringBytes = new byte[64];
+
+    private long lineNumber = 0;
+
+    /**
+     * @param bytes the content to scan, from index 0 to the limit of the buffer
+     */
+    TfsByteScanner(ByteBuffer bytes) {
+        this.bytes = bytes;
+        this.limit = bytes.limit();
+    }
+
+    /**
+     * decides, if the scanner can be used for the given file. This is not the case for compressed files (see
+     * {@link TextFileParserImpl}) and files which are too large to be mapped at once. On windows a mapped file cannot be
+     * deleted before the mapping is garbage collected, therefore large files are not mapped there, but read as before.
+     * 
+     * @param file the file to check
+     * @return true, if {@link #open(File)} can be used
+     */
+    static boolean canScan(File file) {
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        } catch (IOException e) {
+            return false;
+        }
+        if (path.endsWith(TextFileParserImpl.EXTENSION_GZIP) || path.endsWith(TextFileParserImpl.EXTENSION_BZIP2)) {
+            return false;
+        }
+        long length = file.length();
+        return (length <= Integer.MAX_VALUE) && ((length < MAP_THRESHOLD) || !OsUtil.isWindows());
+    }
+
+    /**
+     * opens a scanner for the given file, which is either mapped into memory or read at once, depending on its size.
+     * 
+     * @param file the file to scan
+     * @return the scanner
+     * @throws IOException if the file cannot be read
+     */
+    static TfsByteScanner open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File '" + file.getAbsolutePath() + "' is too large to be scanned at once.");
+            }
+            if (size >= MAP_THRESHOLD) {
+                /* the mapping stays valid after closing the channel */
+                return new TfsByteScanner(channel.map(MapMode.READ_ONLY, 0, size));
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && (channel.read(buffer) >= 0)) {
+                /* read until the buffer is full */
+            }
+            /* cast, so that the call also links on java 8, where flip() is not overridden in ByteBuffer */
+            ((Buffer) buffer).flip();
+            return new TfsByteScanner(buffer);
+        }
+    }
+
+    @Override
+    public boolean nextLine() throws TfsFileParserException {
+        do {
+            if (!scanLine()) {
+                return false;
+            }
+        } while (tokenCount == 0);
+        return true;
+    }
+
+    private boolean scanLine() throws TfsFileParserException {
+        tokenCount = 0;
+        if (position >= limit) {
+            return false;
+        }
+        lineStart = position;
+        lineNumber++;
+
+        int tokenStart = -1;
+        boolean quoted = false;
+        boolean containsQuotes = false;
+        int lineEnd = limit;
+        while (position < limit) {
+            byte character = bytes.get(position);
+            if (character == NEW_LINE) {
+                lineEnd = position++;
+                break;
+            } else if (character == QUOTE) {
+                if (tokenStart < 0) {
+                    tokenStart = position;
+                }
+                quoted = !quoted;
+                containsQuotes = true;
+            } else if (quoted || ((character & 0xff) > ' ')) {
+                if (tokenStart < 0) {
+                    tokenStart = position;
+                }
+            } else if (tokenStart >= 0) {
+                addToken(tokenStart, position, containsQuotes);
+                tokenStart = -1;
+                containsQuotes = false;
+            }
+            position++;
+        }
+
+        if (quoted) {
+            throw new TfsFileParserException("Line " + lineNumber + " contains a quote which is not closed: '"
+                    + getLine() + "'");
+        }
+        if (tokenStart >= 0) {
+            addToken(tokenStart, lineEnd, containsQuotes);
+        }
+        return true;
+    }
+
+    private void addToken(int start, int end, boolean containsQuotes) {
+        if (tokenCount == tokenStarts.length) {
+            int capacity = tokenStarts.length * 2;
+            tokenStarts = Arrays.copyOf(tokenStarts, capacity);
+            tokenEnds = Arrays.copyOf(tokenEnds, capacity);
+            tokenQuoted = Arrays.copyOf(tokenQuoted, capacity);
+        }
+        tokenStarts[tokenCount] = start;
+        tokenEnds[tokenCount] = end;
+        tokenQuoted[tokenCount] = containsQuotes;
+        tokenCount++;
+    }
+
+    /**
+     * splits the content from the start of the current line to the end into parts of about the same size, which end
+     * at line boundaries, so that they can be scanned independently. The line numbers of the parts start at 1 again.
+     * 
+     * @param partCount the number of parts to create
+     * @return the scanners for the parts, fewer than requested if the lines are too long
+     */
+    List<TfsByteScanner> splitFromCurrentLine(int partCount) {
+        List<TfsByteScanner> parts = new ArrayList<>();
+        long length = limit - lineStart;
+        int start = lineStart;
+        for (int part = 1; (part <= partCount) && (start < limit); part++) {
+            int end = (int) Math.max(start, lineStart + length * part / partCount);
+            while ((end < limit) && (bytes.get(end) != NEW_LINE)) {
+                end++;
+            }
+            end = Math.min(limit, end + 1);
+            ByteBuffer partBytes = bytes.duplicate();
+            /* casts, so that the calls also link on java 8 */
+            ((Buffer) partBytes).limit(end);
+            ((Buffer) partBytes).position(start);
+            parts.add(new TfsByteScanner(partBytes.slice()));
+            start = end;
+        }
+        return parts;
+    }
+
+    @Override
+    public int getValueCount() {
+        return tokenCount;
+    }
+
+    @Override
+    public String getString(int index) {
+        checkIndex(index);
+        int end = tokenEnds[index];
+        int length = 0;
+        for (int i = tokenStarts[index]; i < end; i++) {
+            byte character = bytes.get(i);
+            if (tokenQuoted[index] && (character == QUOTE)) {
+                continue;
+            }
+            if (length == stringBytes.length) {
+                stringBytes = Arrays.copyOf(stringBytes, stringBytes.length * 2);
+            }
+            stringBytes[length++] = character;
+        }
+        return new String(stringBytes, 0, length, CHARSET);
+    }
+
+    /**
+     * parses the token as double without creating a string. Only if the value cannot be calculated exactly from the
+     * digits (more than 15 digits or a large exponent, as e.g. 1e-25) or is not a plain number (e.g. 'inf'), then the
+     * string is created and parsed.
+     */
+    @Override
+    public double getDouble(int index) {
+        checkIndex(index);
+        if (tokenQuoted[index]) {
+            return parseTfsDouble(getString(index));
+        }
+        int end = tokenEnds[index];
+        int pos = tokenStarts[index];
+
+        boolean negative = false;
+        byte character = bytes.get(pos);
+        if ((character == '-') || (character == '+')) {
+            negative = (character == '-');
+            pos++;
+        }
+
+        long mantissa = 0;
+        int mantissaDigits = 0;
+        int exponent = 0;
+        boolean anyDigit = false;
+        boolean fraction = false;
+        for (; pos < end; pos++) {
+            character = bytes.get(pos);
+            if ((character >= '0') && (character <= '9')) {
+                anyDigit = true;
+                if ((mantissa > 0) || (character > '0')) {
+                    if (++mantissaDigits > MAX_MANTISSA_DIGITS) {
+                        return parseTfsDouble(getString(index));
+                    }
+                    mantissa = mantissa * 10 + (character - '0');
+                }
+                if (fraction) {
+                    exponent--;
+                }
+            } else if ((character == '.') && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (!anyDigit) {
+            return parseTfsDouble(getString(index));
+        }
+
+        if (pos < end) {
+            if ((character != 'e') && (character != 'E')) {
+                return parseTfsDouble(getString(index));
+            }
+            pos++;
+            boolean negativeExponent = false;
+            if ((pos < end) && ((bytes.get(pos) == '-') || (bytes.get(pos) == '+'))) {
+                negativeExponent = (bytes.get(pos) == '-');
+                pos++;
+            }
+            int exponentValue = 0;
+            int exponentDigits = 0;
+            for (; pos < end; pos++) {
+                character = bytes.get(pos);
+                if ((character < '0') || (character > '9') || (++exponentDigits > MAX_EXPONENT_DIGITS)) {
+                    return parseTfsDouble(getString(index));
+                }
+                exponentValue = exponentValue * 10 + (character - '0');
+            }
+            if (exponentDigits == 0) {
+                return parseTfsDouble(getString(index));
+            }
+            exponent += negativeExponent ? -exponentValue : exponentValue;
+        }
+
+        double value;
+        if (mantissa == 0) {
+            value = 0.0;
+        } else if ((mantissa < MAX_EXACT_MANTISSA) && (Math.abs(exponent) < POWERS_OF_TEN.length)) {
+            /* both numbers are exact, so the result is rounded correctly, as by Double.parseDouble() */
+            value = (exponent < 0) ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        } else {
+            return parseTfsDouble(getString(index));
+        }
+        return negative ? -value : value;
+    }
+
+    @Override
+    public boolean tokenEquals(int index, String value) {
+        checkIndex(index);
+        if (tokenQuoted[index] || !isAscii(value)) {
+            return getString(index).equals(value);
+        }
+        return (tokenEnds[index] - tokenStarts[index] == value.length()) && tokenStartsWith(index, value);
+    }
+
+    @Override
+    public boolean tokenStartsWith(int index, String prefix) {
+        checkIndex(index);
+        if (tokenQuoted[index] || !isAscii(prefix)) {
+            return getString(index).startsWith(prefix);
+        }
+        int start = tokenStarts[index];
+        if (tokenEnds[index] - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (bytes.get(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > Byte.MAX_VALUE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkIndex(int index) {
+        if (index >= tokenCount) {
+            throw new IndexOutOfBoundsException("Token " + index + " does not exist in line " + lineNumber + ".");
+        }
+    }
+
+    @Override
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public String getLine() {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < tokenCount; i++) {
+            if (i > 0) {
+                line.append(' ');
+            }
+            line.append(getString(i));
+        }
+        return line.toString();
+    }
+
+    /**
+     * nothing to release: the memory of a mapped file is released, when the scanner is garbage collected.
+     */
+    @Override
+    public void close() {
+        /* nothing to do */
+    }
+}
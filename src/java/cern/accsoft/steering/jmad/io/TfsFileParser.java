@@ -23,20 +23,32 @@
 package cern.accsoft.steering.jmad.io;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
+import cern.accsoft.steering.jmad.domain.result.tfs.MutableTfsResult;
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsResult;
 import cern.accsoft.steering.jmad.domain.result.tfs.TfsResultException;
 import cern.accsoft.steering.jmad.domain.result.tfs.TfsResultImpl;
 import cern.accsoft.steering.jmad.domain.result.tfs.TfsSummaryImpl;
+import cern.accsoft.steering.jmad.jfr.JMadEvents;
+import cern.accsoft.steering.jmad.jfr.JMadEvents.TfsParseSpan;
 import cern.accsoft.steering.jmad.util.MadxVarType;
-import cern.accsoft.steering.jmad.util.StringUtil;
-import cern.accsoft.steering.jmad.util.io.TextFileParser;
 import cern.accsoft.steering.jmad.util.io.TextFileParserException;
-import cern.accsoft.steering.jmad.util.io.impl.TextFileParserImpl;
 
 /**
  * This class provides an interface to read MadX-output files. The read data is returned in a Result - Object.
+ * <p>
+ * If an executor is set (see {@link #setParallelExecutor(Executor)}), the rows of large uncompressed files (see
+ * {@link #setParallelThreshold(long)}) are parsed in parallel: After the header, the rest of the file is split into
+ * parts at line boundaries. Each part is parsed into its own result (see {@link MutableTfsResult#createPart()}) and the
+ * parts are then appended in their order. Results which do not support parts are always filled in one thread.
  * 
  * @author Kajetan Fuchsberger (kajetan.fuchsberger at cern.ch)
  */
@@ -45,18 +57,43 @@ public class TfsFileParser {
     /** The index in the splitted line for the summary value */
     private static final int FIELD_IDX_SUMMARY_VALUE = 3;
 
+    /** uncompressed files of this size (in bytes) or larger are parsed in parallel per default, if an executor is set */
+    public static final long DEFAULT_PARALLEL_THRESHOLD = 16L * 1024 * 1024;
+
+    /** the parts, which are parsed in parallel, are at least this large (in bytes) */
+    private static final long MIN_PART_SIZE = 1024 * 1024;
+
+    /** more parts than threads, so that threads which finish early can take over parts of slower ones */
+    private static final int PARTS_PER_THREAD = 4;
+
     /** The file from where to read */
     private final File file;
 
     /** The result - object, where all read Data will be stored. */
-    private final TfsResultImpl result = new TfsResultImpl();
+    private final MutableTfsResult result;
+
+    /** the file size from which on the rows are parsed in parallel */
+    private long parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+    /** the executor which parses the parts of large files, null to parse in one thread */
+    private Executor parallelExecutor = null;
 
     /**
      * @param file the file to parse.
      */
     public TfsFileParser(File file) {
+        this(file, new TfsResultImpl());
+    }
+
+    /**
+     * @param file the file to parse
+     * @param result the result which shall be filled with the data of the file (e.g. a
+     *            {@link cern.accsoft.steering.jmad.domain.result.tfs.ColumnarTfsResult})
+     */
+    public TfsFileParser(File file, MutableTfsResult result) {
         super();
         this.file = file;
+        this.result = result;
     }
 
     /**
@@ -65,21 +102,16 @@ public class TfsFileParser {
      * @throws TfsFileParserException if the parsing fails
      */
     public void parse() throws TfsFileParserException {
+        TfsParseSpan span = JMadEvents.beginTfsParse();
 
-        TextFileParser parser = new TextFileParserImpl();
-        List<String> lines;
-        try {
-            lines = parser.parse(file);
-        } catch (TextFileParserException e) {
-            throw new TfsFileParserException("Error while parsing MadX - Output file '" + file.getAbsolutePath() + "'",
-                    e);
-        }
-
-        result.clear();
+        boolean parallel = (parallelExecutor != null) && (parallelThreshold > 0) && (file.length() >= parallelThreshold)
+                && (getParallelism() > 1);
         TfsSummaryImpl summary = new TfsSummaryImpl();
-        result.setTfsSummary(summary);
-
-        goThroughTheLines(lines, summary);
+        if (!parseLines(summary, parallel)) {
+            /* there are header lines between the rows: parse again in one thread */
+            summary = new TfsSummaryImpl();
+            parseLines(summary, false);
+        }
 
         try {
             result.convert();
@@ -89,37 +121,160 @@ public class TfsFileParser {
             throw new TfsFileParserException("Conversion or Verification of result (file='" + file.getAbsolutePath()
                     + "') failed!", e);
         }
+        span.commit(file.getName(), file.length(), result.getRowCount(), result.getColumnCount());
+    }
+
+    /**
+     * parses all lines of the file into the result and the summary.
+     * 
+     * @param summary the summary to fill
+     * @param parallel true, if the rows shall be parsed in parallel, if possible
+     * @return false, if the parallel parsing was not possible, because there are header lines between the rows
+     * @throws TfsFileParserException if the file cannot be parsed
+     */
+    private boolean parseLines(TfsSummaryImpl summary, boolean parallel) throws TfsFileParserException {
+        result.clear();
+        result.setTfsSummary(summary);
+
+        try (TfsLineSource lines = TfsLineSource.open(file)) {
+            while (lines.nextLine()) {
+                if (parallel && (lines instanceof TfsByteScanner) && (result.getColumnCount() > 0)
+                        && isRow(lines)) {
+                    MutableTfsResult firstPart = result.createPart();
+                    if (firstPart != null) {
+                        return parseRowsInParallel((TfsByteScanner) lines, firstPart);
+                    }
+                    /* the result can only be filled row by row */
+                    parallel = false;
+                }
+                processLine(lines, summary);
+            }
+        } catch (TextFileParserException | IOException e) {
+            throw new TfsFileParserException("Error while parsing MadX - Output file '" + file.getAbsolutePath() + "'",
+                    e);
+        }
+        return true;
+    }
+
+    /**
+     * parses the rows from the current line to the end in parallel and appends them to the result.
+     * 
+     * @param lines the scanner, positioned at the first row
+     * @param firstPart the (empty) result for the first part of the rows
+     * @return false, if there are header lines between the rows. In this case nothing is added to the result.
+     * @throws TfsFileParserException if a row cannot be parsed
+     */
+    private boolean parseRowsInParallel(TfsByteScanner lines, MutableTfsResult firstPart)
+            throws TfsFileParserException {
+        int partCount = (int) Math.max(1, Math.min(getParallelism() * PARTS_PER_THREAD, file.length() / MIN_PART_SIZE));
+
+        List<CompletableFuture<MutableTfsResult>> futures = new ArrayList<>();
+        for (TfsByteScanner partLines : lines.splitFromCurrentLine(partCount)) {
+            MutableTfsResult part = futures.isEmpty() ? firstPart : result.createPart();
+            futures.add(CompletableFuture.supplyAsync(() -> parsePart(partLines, part), parallelExecutor));
+        }
+
+        List<MutableTfsResult> parts = new ArrayList<>();
+        for (CompletableFuture<MutableTfsResult> future : futures) {
+            try {
+                parts.add(future.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof TfsFileParserException) {
+                    throw (TfsFileParserException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        if (parts.contains(null)) {
+            return false;
+        }
+        for (MutableTfsResult part : parts) {
+            result.addRows(part);
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of threads which parse in parallel
+     */
+    private int getParallelism() {
+        if (parallelExecutor instanceof ForkJoinPool) {
+            return ((ForkJoinPool) parallelExecutor).getParallelism();
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * parses one part of the rows (called in parallel)
+     * 
+     * @param lines the lines of the part
+     * @param part the empty result to fill with the rows
+     * @return the rows of the part, null if the part contains a header line
+     */
+    private MutableTfsResult parsePart(TfsByteScanner lines, MutableTfsResult part) {
+        try {
+            while (lines.nextLine()) {
+                if (!isRow(lines)) {
+                    return null;
+                }
+                checkTokenNumber(lines.getValueCount(), lines);
+                part.addRow(lines);
+            }
+        } catch (TfsFileParserException e) {
+            throw new CompletionException(e);
+        }
+        return part;
+    }
+
+    /**
+     * @param line the current line
+     * @return true, if the line is a row of values, false if it is a header line
+     */
+    private static boolean isRow(TfsLineSource line) {
+        return !line.tokenEquals(0, "@") && !line.tokenEquals(0, "*") && !line.tokenEquals(0, "$");
     }
 
     protected void goThroughTheLines(List<String> lines, TfsSummaryImpl summary) throws TfsFileParserException {
         for (String line : lines) {
-            List<String> splitString = splitString(line);
-            String[] tokens = splitString.toArray(new String[splitString.size()]);
-
-            if ((tokens.length > 2) && (tokens[0].equalsIgnoreCase("@"))) {
-                MadxVarType type = MadxVarType.getVarType(tokens[2].trim());
-                summary.addValue(tokens[1], tokens[FIELD_IDX_SUMMARY_VALUE].replace("\"", ""), type);
-            } else if (tokens.length > 0) {
-                if (tokens[0].equalsIgnoreCase("*")) { // keys
-                    for (int j = 1; j < tokens.length; j++) {
-                        String keyName = tokens[j];
-                        result.createColumn(keyName);
-                    }
-                } else if (tokens[0].equalsIgnoreCase("$")) { // types
-                    checkTokenNumber(tokens.length - 1, line);
-                    int keyCount = 1;
-                    for (String key : result.getKeys()) {
-                        result.setVarType(key, MadxVarType.getVarType(tokens[keyCount]));
-                        keyCount++;
-                    }
-                } else { // values
-                    checkTokenNumber(tokens.length, line);
-                    ArrayList<String> values = new ArrayList<String>();
-                    for (int j = 0; j < tokens.length; j++) {
-                        values.add(tokens[j].replace("\"", ""));
-                    }
-                    result.addRow(values);
+            try (TfsScanner scanner = new TfsScanner(new StringReader(line))) {
+                while (scanner.nextLine()) {
+                    processLine(scanner, summary);
                 }
+            } catch (IOException e) {
+                throw new TfsFileParserException("Was not able to split string '" + line + "'.", e);
+            }
+        }
+    }
+
+    /**
+     * stores the tokens of one line in the result or the summary, depending on the type of the line. The values of
+     * data lines are handed to the result as they are, so that it can parse the numbers without creating strings.
+     * 
+     * @param line the current line
+     * @param summary the summary to which to add the values of summary lines
+     * @throws TfsFileParserException if the number of values does not fit to the number of columns
+     */
+    private void processLine(TfsLineSource line, TfsSummaryImpl summary) throws TfsFileParserException {
+        int tokenCount = line.getValueCount();
+        if ((tokenCount > 2) && line.tokenEquals(0, "@")) {
+            MadxVarType type = MadxVarType.getVarType(line.getString(2));
+            String value = (tokenCount > FIELD_IDX_SUMMARY_VALUE) ? line.getString(FIELD_IDX_SUMMARY_VALUE) : "";
+            summary.addValue(line.getString(1), value, type);
+        } else if (tokenCount > 0) {
+            if (line.tokenEquals(0, "*")) { // keys
+                for (int j = 1; j < tokenCount; j++) {
+                    result.createColumn(line.getString(j));
+                }
+            } else if (line.tokenEquals(0, "$")) { // types
+                checkTokenNumber(tokenCount - 1, line);
+                int keyCount = 1;
+                for (String key : result.getKeys()) {
+                    result.setVarType(key, MadxVarType.getVarType(line.getString(keyCount)));
+                    keyCount++;
+                }
+            } else { // values
+                checkTokenNumber(tokenCount, line);
+                result.addRow(line);
             }
         }
     }
@@ -132,17 +287,16 @@ public class TfsFileParser {
      * @param line the actual parsed line, to compose a meaningful error message.
      * @throws TfsFileParserException if the number does not correspond to the columnCounts in the actual result.
      */
-    private void checkTokenNumber(int number, String line) throws TfsFileParserException {
+    private void checkTokenNumber(int number, TfsLineSource line) throws TfsFileParserException {
         if (result.getColumnCount() != number) {
-            throw new TfsFileParserException("Line '" + line + "' seems to contain " + number
+            throw new TfsFileParserException("Line '" + line.getLine() + "' seems to contain " + number
                     + " fields, but there are only " + result.getColumnCount() + " keys. Unable to handle this.");
         }
     }
 
     /**
-     * Static function to split a line (almost) correctly. This is somehow complicated, since quoted values must stay
-     * together even if they contain spaces! XXX Problems may still arise, if quoted string e.g. has space as last
-     * character!
+     * Static function to split a line into its fields. Quoted values stay together, even if they contain spaces (see
+     * {@link TfsScanner}).
      * 
      * @param string the String to split
      * @return the fields
@@ -150,46 +304,42 @@ public class TfsFileParser {
      */
     static List<String> splitString(String string) throws TfsFileParserException { // NOPMD by kaifox on 10/6/10 8:25 PM
         /* PMD (package visibility for testing) */
-        ArrayList<String> fields = new ArrayList<String>();
-
-        String regexpSplitChars = "(^|\\s+)";
-        String regexpQuotes = "\\\"";
-
-        // first split on quotes after space
-        String[] tokens = string.split(regexpSplitChars + regexpQuotes);
-
-        for (int i = 0; i < tokens.length; i++) {
-            // if token still contains quotes, than it should also have been
-            // started by one...
-            String stringPastQuote = "";
-            if (tokens[i].contains("\"")) {
-                // we split at the quote.
-                String[] newTokens = tokens[i].split(regexpQuotes);
-                if (newTokens.length > 2) {
-                    throw new TfsFileParserException("Was not able to split string '" + string + "' correctly!");
-                }
-                fields.add(newTokens[0]); // this shall stay together since
-                // they were the ones under quotes.
-                // always add, could e.g. be ""
-                if (newTokens.length == 2) {
-                    stringPastQuote = newTokens[1];
-                }
-            } else { // if it contains no quote, we just split further
-                stringPastQuote = tokens[i];
-            }
+        return TfsScanner.split(string);
+    }
 
-            String[] newTokens = stringPastQuote.split("[ \t\r]+");
-            for (int j = 0; j < newTokens.length; j++) {
-                String field = newTokens[j];
-                if (!StringUtil.isWhitespacesOnly(field)) { // only add if really some content.
-                    fields.add(field);
-                }
-            }
-        }
-        return fields;
+    /**
+     * @param parallelThreshold the size (in bytes) of uncompressed files from which on the rows are parsed in parallel,
+     *            zero or negative to always parse in one thread
+     */
+    public void setParallelThreshold(long parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
     }
 
+    /**
+     * @param parallelExecutor the executor which parses the parts of large files. Defaults to null, which means that
+     *            all files are parsed in one thread.
+     */
+    public void setParallelExecutor(Executor parallelExecutor) {
+        this.parallelExecutor = parallelExecutor;
+    }
+
+    /**
+     * @return the result, if the parser was created with the default result
+     * @throws IllegalStateException if the parser fills another implementation of the result
+     * @see #getParsedResult()
+     */
     public TfsResultImpl getResult() {
+        if (!(result instanceof TfsResultImpl)) {
+            throw new IllegalStateException("The parser fills a " + result.getClass().getSimpleName()
+                    + ". Use getParsedResult() instead.");
+        }
+        return (TfsResultImpl) result;
+    }
+
+    /**
+     * @return the result, which is filled by this parser
+     */
+    public TfsResult getParsedResult() {
         return result;
     }
 }
@@ -0,0 +1,80 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsRow;
+import cern.accsoft.steering.jmad.util.io.TextFileParserException;
+import cern.accsoft.steering.jmad.util.io.impl.TextFileParserImpl;
+
+/**
+ * The lines of a MadX output file (TFS, trackone, ...), split into tokens as described for the {@link TfsScanner}. The
+ * tokens of the current line are provided as {@link TfsRow}, which is reused for the next line.
+ */
+interface TfsLineSource extends TfsRow, Closeable {
+
+    /**
+     * opens the lines of the given file: Uncompressed files are scanned directly in their bytes (see
+     * {@link TfsByteScanner}), compressed ones (see {@link TextFileParserImpl}) are decompressed and scanned as
+     * characters.
+     * 
+     * @param file the file to open
+     * @return the lines of the file
+     * @throws TextFileParserException if the file cannot be opened
+     */
+    static TfsLineSource open(File file) throws TextFileParserException {
+        if (TfsByteScanner.canScan(file)) {
+            try {
+                return TfsByteScanner.open(file);
+            } catch (IOException e) {
+                throw new TextFileParserException("Error while opening file '" + file.getAbsolutePath() + "'.", e);
+            }
+        }
+        return new TfsScanner(new TextFileParserImpl().openReader(file));
+    }
+
+    /**
+     * scans the next line, which contains at least one token.
+     *
+     * @return true, if a line was scanned, false if the end of the input is reached
+     * @throws IOException if reading fails
+     * @throws TfsFileParserException if a quote is not closed at the end of the line
+     */
+    boolean nextLine() throws IOException, TfsFileParserException;
+
+    /**
+     * @param index the index of the token in the current line
+     * @param value the value to compare with
+     * @return true, if the token equals the given value
+     */
+    boolean tokenEquals(int index, String value);
+
+    /**
+     * @param index the index of the token in the current line
+     * @param prefix the prefix to check
+     * @return true, if the token starts with the given prefix
+     */
+    boolean tokenStartsWith(int index, String prefix);
+
+    /**
+     * @return the number of the current line, starting with 1 (empty lines included)
+     */
+    long getLineNumber();
+
+    /**
+     * @return the tokens of the current line, separated by spaces (for error messages)
+     */
+    String getLine();
+}
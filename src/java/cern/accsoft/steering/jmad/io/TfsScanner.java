@@ -0,0 +1,213 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.io;
+
+import static cern.accsoft.steering.jmad.domain.result.tfs.TfsDoubles.parseTfsDouble;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits the lines of a MadX output file (TFS, trackone, ...) into tokens in one pass over the characters. Tokens are
+ * separated by whitespace. Double quotes enclose parts of a token which may contain whitespace; the quotes themselves
+ * are not part of the token. Therefore a quoted string keeps leading and trailing spaces and an empty quoted string
+ * results in an empty token.
+ * <p>
+ * The scanner reads one line after the other (see {@link #nextLine()}). Lines without any tokens are skipped. The
+ * tokens of the current line are kept in an array, which is reused for the next line.
+ */
+final class TfsScanner implements TfsLineSource {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final char QUOTE = '"';
+    private static final char NEW_LINE = '\n';
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+
+    /** the characters of the token which is currently scanned */
+    private char[] token = new char[64];
+    private int tokenLength = 0;
+
+    /** the tokens of the current line */
+    private String[] tokens = new String[16];
+    private int tokenCount = 0;
+
+    private long lineNumber = 0;
+
+    /**
+     * @param reader the reader from which to scan the lines. It is closed together with this scanner.
+     */
+    TfsScanner(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * splits the given line into tokens.
+     *
+     * @param line the line to split
+     * @return the tokens of the line
+     * @throws TfsFileParserException if a quote is not closed
+     */
+    static List<String> split(String line) throws TfsFileParserException {
+        List<String> fields = new ArrayList<>();
+        try (TfsScanner scanner = new TfsScanner(new StringReader(line))) {
+            while (scanner.nextLine()) {
+                fields.addAll(Arrays.asList(scanner.tokens).subList(0, scanner.tokenCount));
+            }
+        } catch (IOException e) {
+            throw new TfsFileParserException("Was not able to split string '" + line + "'.", e);
+        }
+        return fields;
+    }
+
+    @Override
+    public boolean nextLine() throws IOException, TfsFileParserException {
+        do {
+            if (!scanLine()) {
+                return false;
+            }
+        } while (tokenCount == 0);
+        return true;
+    }
+
+    private boolean scanLine() throws IOException, TfsFileParserException {
+        tokenCount = 0;
+        if (!fill()) {
+            return false;
+        }
+        lineNumber++;
+
+        boolean inToken = false;
+        boolean quoted = false;
+        while ((position < limit) || fill()) {
+            char character = buffer[position++];
+            if (character == NEW_LINE) {
+                break;
+            } else if (character == QUOTE) {
+                quoted = !quoted;
+                inToken = true;
+            } else if (quoted || (character > ' ')) {
+                appendToToken(character);
+                inToken = true;
+            } else if (inToken) {
+                endToken();
+                inToken = false;
+            }
+        }
+
+        if (quoted) {
+            throw new TfsFileParserException("Line " + lineNumber + " contains a quote which is not closed: '"
+                    + getLine() + "'");
+        }
+        if (inToken) {
+            endToken();
+        }
+        return true;
+    }
+
+    private boolean fill() throws IOException {
+        if (position < limit) {
+            return true;
+        }
+        int count = reader.read(buffer, 0, buffer.length);
+        if (count <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = count;
+        return true;
+    }
+
+    private void appendToToken(char character) {
+        if (tokenLength == token.length) {
+            token = Arrays.copyOf(token, token.length * 2);
+        }
+        token[tokenLength++] = character;
+    }
+
+    private void endToken() {
+        if (tokenCount == tokens.length) {
+            tokens = Arrays.copyOf(tokens, tokens.length * 2);
+        }
+        tokens[tokenCount++] = new String(token, 0, tokenLength);
+        tokenLength = 0;
+    }
+
+    /**
+     * @return the number of tokens in the current line
+     */
+    int getTokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * @return the tokens of the current line in the first {@link #getTokenCount()} elements. The array is reused for
+     *         the next line.
+     */
+    String[] getTokens() {
+        return tokens;
+    }
+
+    @Override
+    public int getValueCount() {
+        return tokenCount;
+    }
+
+    @Override
+    public String getString(int index) {
+        return tokens[index];
+    }
+
+    @Override
+    public double getDouble(int index) {
+        return parseTfsDouble(tokens[index]);
+    }
+
+    @Override
+    public boolean tokenEquals(int index, String value) {
+        return tokens[index].equals(value);
+    }
+
+    @Override
+    public boolean tokenStartsWith(int index, String prefix) {
+        return tokens[index].startsWith(prefix);
+    }
+
+    @Override
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public String getLine() {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < tokenCount; i++) {
+            if (i > 0) {
+                line.append(' ');
+            }
+            line.append(tokens[i]);
+        }
+        return line.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -23,15 +23,14 @@
 package cern.accsoft.steering.jmad.io;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 import cern.accsoft.steering.jmad.domain.result.track.TrackResult;
 import cern.accsoft.steering.jmad.domain.result.track.TrackResultImpl;
 import cern.accsoft.steering.jmad.domain.var.enums.MadxTrackVariable;
-import cern.accsoft.steering.jmad.util.io.TextFileParser;
 import cern.accsoft.steering.jmad.util.io.TextFileParserException;
-import cern.accsoft.steering.jmad.util.io.impl.TextFileParserImpl;
 
 /**
  * This class provide methods to parse a track output.
@@ -50,47 +49,38 @@ public class TrackOutputParser {
     }
 
     public void parse() throws TrackParserException {
-        TextFileParser parser = new TextFileParserImpl();
+        try (TfsLineSource lines = TfsLineSource.open(file)) {
+            this.trackResult.clear();
 
-        List<String> lines;
-        try {
-            lines = parser.parse(file);
-        } catch (TextFileParserException e) {
-            throw new TrackParserException("Error while parsing MadX - Output file '" + file.getAbsolutePath() + "'", e);
-        }
-
-        this.trackResult.clear();
-
-        List<MadxTrackVariable> keys = null;
-        int numberIndex = 0;
-        for (int i = 0; i < lines.size(); ++i) {
-            String line = lines.get(i);
-            if (!line.contains("@") && !line.contains("#segment")) {
-                List<String> tokens = null;
-                try {
-                    tokens = TfsFileParser.splitString(line);
-                } catch (TfsFileParserException e) {
-                    throw new TrackParserException("Error while spliting line", e);
+            List<MadxTrackVariable> keys = null;
+            int numberIndex = 0;
+            while (lines.nextLine()) {
+                if (lines.tokenEquals(0, "@") || lines.tokenStartsWith(0, "#segment")) {
+                    continue;
                 }
-                if (tokens.get(0).equalsIgnoreCase("*")) {
-                    keys = this.generateKeys(tokens.subList(1, tokens.size()));
+                if (lines.tokenEquals(0, "*")) {
+                    keys = this.generateKeys(lines);
                     numberIndex = keys.indexOf(MadxTrackVariable.NUMBER);
-                } else if (keys != null && !tokens.get(0).equalsIgnoreCase("$")) {
-                    Integer particle = Integer.parseInt(tokens.get(numberIndex));
-                    for (int j = 0; j < tokens.size(); ++j) {
+                } else if (keys != null && !lines.tokenEquals(0, "$")) {
+                    Integer particle = Integer.parseInt(lines.getString(numberIndex));
+                    for (int j = 0; j < lines.getValueCount(); ++j) {
                         if (j != numberIndex) {
-                            this.trackResult.add(keys.get(j), particle, Double.parseDouble(tokens.get(j)));
+                            this.trackResult.add(keys.get(j), particle, lines.getDouble(j));
                         }
                     }
                 }
             }
+        } catch (TextFileParserException | IOException e) {
+            throw new TrackParserException("Error while parsing MadX - Output file '" + file.getAbsolutePath() + "'", e);
+        } catch (TfsFileParserException e) {
+            throw new TrackParserException("Error while spliting line", e);
         }
     }
 
-    private List<MadxTrackVariable> generateKeys(List<String> subList) {
+    private List<MadxTrackVariable> generateKeys(TfsLineSource keyLine) {
         List<MadxTrackVariable> retVal = new ArrayList<MadxTrackVariable>();
-        for (int i = 0; i < subList.size(); ++i) {
-            retVal.add(MadxTrackVariable.getVariableFromName(subList.get(i)));
+        for (int i = 1; i < keyLine.getValueCount(); ++i) {
+            retVal.add(MadxTrackVariable.getVariableFromName(keyLine.getString(i)));
         }
         return retVal;
     }
@@ -0,0 +1,158 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.jfr;
+
+import cern.accsoft.steering.jmad.kernel.ExecutionTimings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Emits the JMad events for the JDK Flight Recorder: 'jmad.KernelExecute' for every round trip to MadX, 'jmad.TfsParse'
+ * for every parsed TFS file and 'jmad.ModelInit' for the initialization of a model. So a continuous recording in
+ * production shows which models and requests use the kernel time.
+ * <p>
+ * The events themselves are only available on java 11 or newer (they are contained in the 'versions/11' part of the
+ * multi release jar). On older java versions, or if the system property '{@value #PROP_EVENTS_ENABLED}' is set to
+ * false, all the methods return spans which do nothing.
+ * <p>
+ * Usage: begin a span before the measured work and commit it afterwards. Spans which are not committed are not
+ * recorded: the kernel and TFS spans are only committed when the work succeeded, while the model init span is committed
+ * in any case and tells by its success flag whether the initialization failed.
+ */
+public final class JMadEvents {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JMadEvents.class);
+
+    /** the system property to disable the events */
+    public static final String PROP_EVENTS_ENABLED = "cern.jmad.jfr.events";
+
+    private static final String JFR_FACTORY_CLASS_NAME = "cern.accsoft.steering.jmad.jfr.JfrEventFactory";
+
+    private static final JMadEventFactory FACTORY = loadFactory();
+
+    private JMadEvents() {
+        /* only static methods */
+    }
+
+    /**
+     * @return the span to commit, when the kernel has executed an executable (or batch) and the result is available
+     */
+    public static KernelExecuteSpan beginKernelExecute() {
+        return FACTORY.beginKernelExecute();
+    }
+
+    /**
+     * @return the span to commit, when a TFS file is parsed
+     */
+    public static TfsParseSpan beginTfsParse() {
+        return FACTORY.beginTfsParse();
+    }
+
+    /**
+     * @return the span to commit, when the initialization of a model is finished (successfully or not)
+     */
+    public static ModelInitSpan beginModelInit() {
+        return FACTORY.beginModelInit();
+    }
+
+    /**
+     * @return true, if the events are recorded by the flight recorder (if a recording is running), false if they are
+     *         not available in this JVM or disabled
+     */
+    public static boolean isAvailable() {
+        return !(FACTORY instanceof NoOpEventFactory);
+    }
+
+    private static JMadEventFactory loadFactory() {
+        if (!Boolean.parseBoolean(System.getProperty(PROP_EVENTS_ENABLED, Boolean.TRUE.toString()))) {
+            LOGGER.debug("Flight recorder events are disabled by system property '{}'.", PROP_EVENTS_ENABLED);
+            return new NoOpEventFactory();
+        }
+        try {
+            return (JMadEventFactory) Class.forName(JFR_FACTORY_CLASS_NAME).getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            LOGGER.debug("Flight recorder events are not available in this java version.");
+        } catch (ReflectiveOperationException | LinkageError e) {
+            LOGGER.info("Flight recorder events are not available: {}", e.toString());
+        }
+        return new NoOpEventFactory();
+    }
+
+    /**
+     * the span of the execution of an executable (or batch) by a kernel
+     */
+    public interface KernelExecuteSpan {
+        /**
+         * records the event with the given timings of the execution
+         * 
+         * @param timings the timings and sizes of the execution
+         */
+        void commit(ExecutionTimings timings);
+    }
+
+    /**
+     * the span of parsing a TFS file
+     */
+    public interface TfsParseSpan {
+        /**
+         * records the event
+         * 
+         * @param fileName the name of the parsed file
+         * @param bytes the size of the file
+         * @param rows the number of rows in the table
+         * @param columns the number of columns in the table
+         */
+        void commit(String fileName, long bytes, int rows, int columns);
+    }
+
+    /**
+     * the span of the initialization of a model
+     */
+    public interface ModelInitSpan {
+        /**
+         * records the event
+         * 
+         * @param modelName the name of the model
+         * @param success true, if the model was initialized successfully
+         */
+        void commit(String modelName, boolean success);
+    }
+
+    /**
+     * the spans which do nothing. They are shared, so that beginning them does not allocate anything.
+     */
+    private static final class NoOpEventFactory implements JMadEventFactory {
+        private static final KernelExecuteSpan KERNEL_EXECUTE = timings -> {
+            /* not recorded */
+        };
+        private static final TfsParseSpan TFS_PARSE = (fileName, bytes, rows, columns) -> {
+            /* not recorded */
+        };
+        private static final ModelInitSpan MODEL_INIT = (modelName, success) -> {
+            /* not recorded */
+        };
+
+        @Override
+        public KernelExecuteSpan beginKernelExecute() {
+            return KERNEL_EXECUTE;
+        }
+
+        @Override
+        public TfsParseSpan beginTfsParse() {
+            return TFS_PARSE;
+        }
+
+        @Override
+        public ModelInitSpan beginModelInit() {
+            return MODEL_INIT;
+        }
+    }
+}
@@ -23,6 +23,7 @@
 package cern.accsoft.steering.jmad.kernel;
 
 import java.io.File;
+import java.io.IOException;
 
 import cern.accsoft.steering.jmad.domain.result.ResultType;
 
@@ -49,6 +50,21 @@ public abstract class AbstractJMadExecutable implements JMadExecutable {
         return ResultType.NO_RESULT;
     }
 
+    /**
+     * can be used by subclasses, which implement {@link #composeTo(Appendable)}, to implement {@link #compose()}.
+     * 
+     * @return the text written by {@link #composeTo(Appendable)}
+     */
+    protected final String composeToString() {
+        StringBuilder builder = new StringBuilder();
+        try {
+            composeTo(builder);
+        } catch (IOException e) {
+            throw new IllegalStateException("Appending to a StringBuilder must not throw an IOException.", e);
+        }
+        return builder.toString();
+    }
+
     /**
      * set the output-file. This should be only done by the {@link JMadKernel} since the kernel is the only one who
      * knows where the output is needed to parse it afterwards.
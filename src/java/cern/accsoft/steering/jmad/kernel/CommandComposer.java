@@ -0,0 +1,213 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.kernel.cmd.CallCommand;
+
+/**
+ * Composes the input for MadX from an executable without building one huge string: the executable writes itself
+ * (see {@link JMadExecutable#composeTo(Appendable)}) into a buffer, which is reused for all the executables of a
+ * kernel. If the composed text grows above a threshold, the rest is streamed into a command file instead and only a
+ * call of this file is sent to MadX. This way, e.g. setting many thousands of strengths at once neither creates large
+ * temporary strings nor blocks the input pipe of MadX for a long time.
+ * <p>
+ * Instances are not thread safe. The kernel uses only one composer from its submission thread.
+ */
+class CommandComposer {
+
+    /** the buffer is shrunk to this capacity after composing a big command, to not keep it allocated */
+    private static final int RETAINED_BUFFER_CAPACITY = 16 * 1024;
+
+    private final SpillingWriter writer = new SpillingWriter();
+    private final int threshold;
+
+    /**
+     * @param threshold the number of characters above which the composed text is written to a command file
+     */
+    CommandComposer(int threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * composes the given executable.
+     * 
+     * @param executable the executable to compose
+     * @param commandFile provides the file, into which the text is written, if it is too large to be sent directly.
+     *            It is only called if the text actually is too large.
+     * @return the text to send to MadX. This is either the composed executable itself or a call of the command file.
+     * @throws JMadException if the command file cannot be written
+     */
+    Composed compose(JMadExecutable executable, Supplier<File> commandFile) throws JMadException {
+        writer.reset(commandFile);
+        try {
+            executable.composeTo(writer);
+            writer.close();
+        } catch (IOException e) {
+            writer.abort();
+            throw new JMadException("Could not write command file '" + writer.file.getAbsolutePath() + "'.", e);
+        }
+        if (writer.isSpilled()) {
+            return new Composed(new CallCommand(writer.file).compose(), writer.file);
+        }
+        return new Composed(writer.bufferedText(), null);
+    }
+
+    /**
+     * the result of composing one executable
+     */
+    static final class Composed {
+        private final String command;
+        private final File commandFile;
+
+        private Composed(String command, File commandFile) {
+            this.command = command;
+            this.commandFile = commandFile;
+        }
+
+        /**
+         * @return the text to send to MadX
+         */
+        String getCommand() {
+            return command;
+        }
+
+        /**
+         * @return the file which is called by the command, or null if the command contains the whole text
+         */
+        File getCommandFile() {
+            return commandFile;
+        }
+
+        /**
+         * deletes the command file, if there is one
+         */
+        void deleteCommandFile() {
+            if (commandFile != null) {
+                commandFile.delete();
+            }
+        }
+    }
+
+    /**
+     * collects the text in the buffer until the threshold is reached and then continues in the command file
+     */
+    private class SpillingWriter extends Writer {
+        private final StringBuilder buffer = new StringBuilder();
+        private Supplier<File> fileSupplier;
+        private File file;
+        private Writer fileWriter;
+
+        private void reset(Supplier<File> commandFile) {
+            if (buffer.capacity() > RETAINED_BUFFER_CAPACITY) {
+                buffer.setLength(RETAINED_BUFFER_CAPACITY);
+                buffer.trimToSize();
+            }
+            buffer.setLength(0);
+            this.fileSupplier = commandFile;
+            this.file = null;
+            this.fileWriter = null;
+        }
+
+        private boolean isSpilled() {
+            return fileWriter != null;
+        }
+
+        private String bufferedText() {
+            return buffer.toString();
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            if (fileWriter == null) {
+                if (buffer.length() + len <= threshold) {
+                    buffer.append(cbuf, off, len);
+                    return;
+                }
+                spill();
+            }
+            fileWriter.write(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            if (fileWriter == null) {
+                if (buffer.length() + len <= threshold) {
+                    buffer.append(str, off, off + len);
+                    return;
+                }
+                spill();
+            }
+            fileWriter.write(str, off, len);
+        }
+
+        @Override
+        public Writer append(CharSequence csq) throws IOException {
+            String text = String.valueOf(csq);
+            write(text, 0, text.length());
+            return this;
+        }
+
+        @Override
+        public Writer append(char c) throws IOException {
+            if ((fileWriter == null) && (buffer.length() < threshold)) {
+                buffer.append(c);
+                return this;
+            }
+            return super.append(c);
+        }
+
+        private void spill() throws IOException {
+            file = fileSupplier.get();
+            fileWriter = new BufferedWriter(
+                    new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+            fileWriter.append(buffer);
+            buffer.setLength(0);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (fileWriter != null) {
+                fileWriter.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (fileWriter != null) {
+                /* a final newline, so that the last statement is terminated properly in the called file */
+                fileWriter.write('\n');
+                fileWriter.close();
+            }
+        }
+
+        private void abort() {
+            try {
+                close();
+            } catch (IOException e) {
+                /* already failing */
+            }
+            if (fileWriter != null) {
+                file.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+/**
+ * The phases of the execution of one executable by a kernel, as measured in the {@link ExecutionTimings}.
+ */
+public enum ExecutionPhase {
+    /**
+     * composing the MadX input of the executable
+     */
+    COMPOSE,
+
+    /**
+     * writing the composed input to the input stream of MadX. The stream is only flushed by the ready handshake, so
+     * this phase mainly shows the cost of large inputs.
+     */
+    WRITE,
+
+    /**
+     * waiting until MadX has processed the input and signalled to be ready. This contains the computation in MadX as
+     * well as the ready handshake, which cannot be separated from the outside.
+     */
+    MADX,
+
+    /**
+     * parsing the result file written by MadX
+     */
+    PARSE;
+}
@@ -0,0 +1,146 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import cern.accsoft.steering.jmad.domain.result.ResultType;
+
+/**
+ * The time spent in each {@link ExecutionPhase} for one successful execution of a kernel. The timings are passed to
+ * the {@link JMadKernelListener}s after the result is available. The executions of a batch are measured together and
+ * reported once for the whole batch.
+ */
+public final class ExecutionTimings {
+
+    /** the executable type, which is reported for batches */
+    public static final String BATCH_EXECUTABLE_TYPE = "batch";
+
+    private final String executableType;
+    private final ResultType resultType;
+    private final long[] phaseNanos = new long[ExecutionPhase.values().length];
+    private final LongAdder commandBytes = new LongAdder();
+    private final LongAdder resultBytes = new LongAdder();
+
+    /**
+     * @param executableType the type of the executable, by which the timings are grouped
+     * @param resultType the result type of the executable. May be null.
+     */
+    public ExecutionTimings(String executableType, ResultType resultType) {
+        this.executableType = executableType;
+        this.resultType = resultType;
+    }
+
+    /**
+     * creates the timings for the given executable, which are tagged by its (simple) class name and result type
+     */
+    static ExecutionTimings of(JMadExecutable executable) {
+        return new ExecutionTimings(executable.getClass().getSimpleName(), executable.getResultType());
+    }
+
+    /**
+     * adds the time since the given start time (as by {@link System#nanoTime()}) to the given phase
+     * 
+     * @return the current time, so that it can be used as start time of the next phase
+     */
+    long stop(ExecutionPhase phase, long startNanos) {
+        long now = System.nanoTime();
+        add(phase, now - startNanos);
+        return now;
+    }
+
+    /**
+     * adds the given time to a phase. This is used by the kernels while executing.
+     * 
+     * @param phase the phase of the execution
+     * @param nanos the time to add in nanoseconds
+     */
+    public synchronized void add(ExecutionPhase phase, long nanos) {
+        phaseNanos[phase.ordinal()] += nanos;
+    }
+
+    /**
+     * @param bytes the number of (encoded) bytes to add to the command size
+     */
+    public void addCommandBytes(long bytes) {
+        commandBytes.add(bytes);
+    }
+
+    /**
+     * @param bytes the number of bytes to add to the size of the parsed results
+     */
+    public void addResultBytes(long bytes) {
+        resultBytes.add(bytes);
+    }
+
+    /**
+     * @return the simple class name of the executable or {@link #BATCH_EXECUTABLE_TYPE} for batches
+     */
+    public String getExecutableType() {
+        return executableType;
+    }
+
+    /**
+     * @return the result type of the executable or null for batches
+     */
+    public ResultType getResultType() {
+        return resultType;
+    }
+
+    /**
+     * @param phase the phase of the execution
+     * @return the time spent in the given phase in nanoseconds
+     */
+    public synchronized long getNanos(ExecutionPhase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * @return the time spent in all phases in nanoseconds
+     */
+    public synchronized long getTotalNanos() {
+        long total = 0;
+        for (long nanos : phaseNanos) {
+            total += nanos;
+        }
+        return total;
+    }
+
+    /**
+     * @return the number of bytes sent to MadX, including the command files called by the commands
+     */
+    public long getCommandBytes() {
+        return commandBytes.sum();
+    }
+
+    /**
+     * @return the size of the parsed result file(s) in bytes
+     */
+    public long getResultBytes() {
+        return resultBytes.sum();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("ExecutionTimings [").append(executableType);
+        if (resultType != null) {
+            builder.append(" (").append(resultType).append(')');
+        }
+        for (ExecutionPhase phase : ExecutionPhase.values()) {
+            builder.append(", ").append(phase.name().toLowerCase()).append('=')
+                    .append(TimeUnit.NANOSECONDS.toMicros(getNanos(phase))).append("us");
+        }
+        return builder.append(", commandBytes=").append(getCommandBytes()).append(", resultBytes=")
+                .append(getResultBytes()).append(']').toString();
+    }
+}
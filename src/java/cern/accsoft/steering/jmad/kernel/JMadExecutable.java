@@ -23,6 +23,7 @@
 package cern.accsoft.steering.jmad.kernel;
 
 import java.io.File;
+import java.io.IOException;
 
 import cern.accsoft.steering.jmad.domain.result.ResultType;
 
@@ -35,6 +36,18 @@ public interface JMadExecutable {
      */
     public abstract String compose();
 
+    /**
+     * writes the same text as {@link #compose()} to the given sink. Executables which can produce large inputs for
+     * MadX (e.g. many assignments) override this, so that the kernel can stream them without building the whole
+     * string.
+     * 
+     * @param sink where to write the composed text
+     * @throws IOException if writing to the sink fails
+     */
+    default void composeTo(Appendable sink) throws IOException {
+        sink.append(compose());
+    }
+
     public abstract ResultType getResultType();
 
     public abstract void setOutputFile(File outputFile);
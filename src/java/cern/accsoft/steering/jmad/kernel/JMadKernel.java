@@ -23,6 +23,8 @@
 package cern.accsoft.steering.jmad.kernel;
 
 import java.io.File;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import cern.accsoft.steering.jmad.JMadException;
 import cern.accsoft.steering.jmad.domain.result.Result;
@@ -35,7 +37,7 @@ import cern.accsoft.steering.jmad.domain.result.Result;
  * 
  * @author Kajetan Fuchsberger (kajetan.fuchsberger at cern.ch)
  */
-public interface JMadKernel {
+public interface JMadKernel extends AutoCloseable {
 
     /**
      * starts madx as a separate thread and configures the needed streams.
@@ -52,6 +54,19 @@ public interface JMadKernel {
      */
     int stop() throws JMadException;
 
+    /**
+     * stops madx, if it is running. Kernels which are not closed (or stopped) are reported by the
+     * {@link KernelLeakDetector}, when they are garbage collected.
+     * 
+     * @throws JMadException if the stopping of the MadX process fails
+     */
+    @Override
+    default void close() throws JMadException {
+        if (isMadxRunning()) {
+            stop();
+        }
+    }
+
     /**
      * executes a Command or Task, waits for completion (our timeout if set), and returns result, if command/task
      * provides one.
@@ -62,6 +77,73 @@ public interface JMadKernel {
      */
     Result execute(JMadExecutable executable) throws JMadException;
 
+    /**
+     * submits a Command or Task for execution and returns immediately. The executables are sent to MadX one after the
+     * other in the order of submission (together with those passed to {@link #execute(JMadExecutable)}), but the
+     * result of one executable is parsed while MadX already processes the next one. Failures (including timeouts)
+     * complete the returned future exceptionally with a {@link JMadException}.
+     * <p>
+     * The returned future also serves as cancel handle: Cancelling it removes the executable from the queue, if MadX
+     * did not start to process it yet. If MadX is already processing it, <code>cancel(true)</code> kills MadX, which is
+     * then restarted and brought back to its previous state (see {@link #recover()}) before the next executable is
+     * processed.
+     * <p>
+     * Per default this is the same as {@link #executeAsync(JMadExecutable, Long)} with the timeout of the kernel.
+     * 
+     * @param executable the command or task to execute
+     * @return a future which is completed with the result, if the command/task provides one, otherwise with null
+     */
+    default CompletableFuture<Result> executeAsync(JMadExecutable executable) {
+        return executeAsync(executable, null);
+    }
+
+    /**
+     * the same as {@link #executeAsync(JMadExecutable)}, but with a timeout for this executable only, which overrides
+     * the timeout of the kernel. If MadX does not finish the executable within this time, then the future is completed
+     * with a {@link WaitForMadxTimedOutException} and MadX is aborted and recovered like on cancellation, so that the
+     * following executables do not have to wait for it.
+     * <p>
+     * Per default the executable is executed by {@link #execute(JMadExecutable)} in the calling thread and the already
+     * completed (or failed) future is returned. Kernels which can really execute asynchronously (or apply the timeout)
+     * override this.
+     * 
+     * @param executable the command or task to execute
+     * @param executableTimeout the maximum time in ms which MadX may take for this executable, or null to use the
+     *            timeout of the kernel
+     * @return a future which is completed with the result, if the command/task provides one, otherwise with null
+     */
+    default CompletableFuture<Result> executeAsync(JMadExecutable executable, Long executableTimeout) {
+        CompletableFuture<Result> future = new CompletableFuture<>();
+        try {
+            future.complete(execute(executable));
+        } catch (JMadException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * executes several Commands or Tasks in one round-trip: All of them are sent to MadX as one block of input, each
+     * one writing to its own output file, and the kernel waits only once for MadX to finish the whole block.
+     * Afterwards all the results are parsed.
+     * 
+     * @param executables the commands or tasks to execute, in the order of execution
+     * @return the results in the same order as the executables. For executables which provide no result the list
+     *         contains null.
+     * @throws JMadException if the execution fails or one of the results could not be parsed
+     */
+    List<Result> executeBatch(List<? extends JMadExecutable> executables) throws JMadException;
+
+    /**
+     * restarts MadX (killing the running process, if any) and brings the new process to the state of the previous one
+     * by replaying a compacted journal of all the state changing commands which were executed since the kernel was
+     * started (init files, assignments, misalignments, ...). This is usually much faster than re-initializing a model
+     * and keeps all changes made since the initialization.
+     * 
+     * @throws JMadException if MadX could not be restarted or the replay failed
+     */
+    void recover() throws JMadException;
+
     /**
      * @return true, if madx was started before, false otherwise
      */
@@ -81,4 +163,9 @@ public interface JMadKernel {
      * @return the JMadKernel OutputFile
      */
     File getOutputFile();
+
+    /**
+     * @return the counters of the data written by this kernel and its MadX process
+     */
+    KernelIoStatistics getIoStatistics();
 }
@@ -22,6 +22,8 @@
 
 package cern.accsoft.steering.jmad.kernel;
 
+import java.util.List;
+
 /**
  * Interface to configure JMadKernel behavior
  * 
@@ -63,4 +65,81 @@ public interface JMadKernelConfig {
      * @return true if the JMadKernel tempDirectory is going to be deleted on Shutdown
      */
     public abstract boolean isCleanupDirs();
+
+    /**
+     * selects the way in which MadX signals that it finished the commands sent so far.
+     * 
+     * @param readyHandshake the handshake to use, or null to use the one configured in the preferences
+     */
+    public abstract void setReadyHandshake(ReadyHandshake readyHandshake);
+
+    /**
+     * @return the way in which MadX signals that it finished the commands sent so far
+     */
+    public abstract ReadyHandshake getReadyHandshake();
+
+    /**
+     * enables the parsing of the results of a batch (see {@link JMadKernel#executeBatch(List)}) in parallel.
+     * 
+     * @param parallelBatchParsing true, if the results of a batch shall be parsed in parallel
+     */
+    public abstract void setParallelBatchParsing(boolean parallelBatchParsing);
+
+    /**
+     * @return true, if the results of a batch are parsed in parallel, false if they are parsed one after the other
+     */
+    public abstract boolean isParallelBatchParsing();
+
+    /**
+     * enables the automatic recovery: If MadX terminates unexpectedly, then the kernel restarts it and replays the
+     * recorded state (see {@link JMadKernel#recover()}). The failing call still throws a
+     * {@link MadxTerminatedException}.
+     * 
+     * @param autoRecover true to enable the automatic recovery, or null to use the setting from the preferences
+     */
+    public abstract void setAutoRecover(Boolean autoRecover);
+
+    /**
+     * @return true, if the kernel recovers automatically when MadX terminates unexpectedly
+     */
+    public abstract boolean isAutoRecover();
+
+    /**
+     * selects the profile which defines how the commands sent to MadX are logged. The profile can be changed at any
+     * time and applies to the following commands.
+     * 
+     * @param profile the profile to use, or null to use the one configured in the preferences
+     */
+    public abstract void setProfile(KernelProfile profile);
+
+    /**
+     * @return the profile which defines how the commands sent to MadX are logged
+     */
+    public abstract KernelProfile getProfile();
+
+    /**
+     * lets the {@link KernelProfile#PRODUCTION} profile log only every n-th command sent to MadX. The input log then
+     * cannot be replayed anymore, but still shows what the kernel is doing. Ignored by the other profiles.
+     * 
+     * @param sampling the n, so that every n-th command is logged. 1 (default) logs all commands.
+     */
+    public abstract void setInputLogSampling(int sampling);
+
+    /**
+     * @return the n, so that every n-th command is logged in the {@link KernelProfile#PRODUCTION} profile
+     */
+    public abstract int getInputLogSampling();
+
+    /**
+     * sets the size, above which the input of an executable is not sent directly to MadX, but streamed into a command
+     * file, which is then called by MadX. This avoids building huge strings, e.g. when setting many strengths at once.
+     * 
+     * @param threshold the number of characters. Default is 256K.
+     */
+    public abstract void setCommandFileThreshold(int threshold);
+
+    /**
+     * @return the number of characters above which executables are written to command files
+     */
+    public abstract int getCommandFileThreshold();
 }
@@ -11,34 +11,57 @@
 
 package cern.accsoft.steering.jmad.kernel;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.bin.CpuSet;
 import cern.accsoft.steering.jmad.bin.MadxBin;
+import cern.accsoft.steering.jmad.bin.MadxLaunchOptions;
 import cern.accsoft.steering.jmad.domain.result.Result;
 import cern.accsoft.steering.jmad.domain.result.ResultType;
+import cern.accsoft.steering.jmad.domain.result.match.MatchResult;
+import cern.accsoft.steering.jmad.domain.result.tfs.ColumnarTfsResult;
+import cern.accsoft.steering.jmad.domain.result.tfs.MutableTfsResult;
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsResultImpl;
 import cern.accsoft.steering.jmad.io.DynapOutputParser;
 import cern.accsoft.steering.jmad.io.MatchOutputParser;
 import cern.accsoft.steering.jmad.io.StrengthFileParser;
 import cern.accsoft.steering.jmad.io.TfsFileParser;
 import cern.accsoft.steering.jmad.io.TrackOutputParser;
+import cern.accsoft.steering.jmad.jfr.JMadEvents;
+import cern.accsoft.steering.jmad.jfr.JMadEvents.KernelExecuteSpan;
 import cern.accsoft.steering.jmad.util.FileMonitor;
 import cern.accsoft.steering.jmad.util.FileMonitor.ProcessTerminatedUnexpectedlyException;
-import cern.accsoft.steering.jmad.util.FileUtil;
 import cern.accsoft.steering.jmad.util.JMadPreferences;
+import cern.accsoft.steering.jmad.util.OsUtil;
 import cern.accsoft.steering.jmad.util.ProcTools;
-import cern.accsoft.steering.jmad.util.ProcessTerminationMonitor;
 import cern.accsoft.steering.jmad.util.StringUtil;
 import cern.accsoft.steering.jmad.util.TempFileUtil;
 import org.slf4j.Logger;
@@ -74,9 +97,19 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
      */
     private static final String FILENAME_READY = "madx-ready.out";
     private static final String FILENAME_RESULT = "madx-result.out";
+    private static final String FILENAME_ASYNC_RESULT = "madx-result-async-%d.out";
+    private static final String FILENAME_BATCH_RESULT = "madx-result-batch-%d.out";
+    private static final String FILENAME_COMMAND = "madx-command-%d.madx";
     private static final String FILENAME_LOG_IN = "madx-input.log";
     private static final String FILENAME_LOG_OUT = "madx-output.log";
     private static final String FILENAME_LOG_ERROR = "madx-error.log";
+    private static final String SUFFIX_CRASHED_LOG = ".crashed";
+
+    /**
+     * the charset of the commands sent to madx and the size of the line separator in it, to count the bytes sent
+     */
+    private static final Charset INPUT_CHARSET = Charset.defaultCharset();
+    private static final long LINE_SEPARATOR_BYTES = StringUtil.encodedLength(System.lineSeparator(), INPUT_CHARSET);
 
     private File readyFile = null;
     private File resultFile = null;
@@ -94,6 +127,11 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
      */
     private static final int RETRY_ATTEMPTS = 3;
 
+    /**
+     * the default number of characters above which a composed executable is written to a command file
+     */
+    static final int DEFAULT_COMMAND_FILE_THRESHOLD = 256 * 1024;
+
     /**
      * the (optional) timeout in ms which the kernel waits until Madx finishes the command/task. If the timeout is set
      * to null, then the kernel waits forever. Null is the default.
@@ -103,7 +141,23 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
     /**
      * the process for madx
      */
-    private Process process = null;
+    private volatile Process process = null;
+
+    /**
+     * true, if the running madx flushes its output after each line, so that the ready sentinel can be used
+     */
+    private boolean madxLineBuffered = false;
+
+    /**
+     * wakes up the waiting for the ready file, when it is created. Null, if not yet used or if the platform only
+     * supports polling.
+     */
+    private WatchService readyFileWatcher = null;
+
+    /**
+     * destroys the madx process, if this kernel is garbage collected without being stopped
+     */
+    private final KernelLeakDetector.Tracker leakTracker = KernelLeakDetector.track(this);
 
     /**
      * the stream for providing madx with input
@@ -113,7 +167,12 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
     /**
      * the logger, where the inputs to madx are logged
      */
-    private BufferedWriter inputLogWriter = null;
+    private MadxLogFileWriter inputLog = null;
+
+    /**
+     * counts the commands, so that only every n-th one is logged when sampling the input log
+     */
+    private long inputLogCounter = 0;
 
     /**
      * The preferences to be injected
@@ -142,23 +201,130 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
      */
     private Boolean cleanupDirs = null;
 
+    /**
+     * the way to find out if madx finished the commands. If this is null (default) then the setting is taken from the
+     * preferences, and if it is not configured there either, then it depends on the buffering of madx.
+     */
+    private ReadyHandshake readyHandshake = null;
+
+    /**
+     * if true, then the results of a batch are parsed in parallel on the parse executor.
+     */
+    private boolean parallelBatchParsing = false;
+
+    /**
+     * if true, then madx is restarted and the journal replayed whenever madx terminates unexpectedly. If this is null
+     * (default) then the setting is taken from the preferences.
+     */
+    private Boolean autoRecover = null;
+
+    /**
+     * defines how the commands are logged. If this is null (default) then the profile is taken from the preferences.
+     */
+    private KernelProfile profile = null;
+
+    /**
+     * logs only every n-th command in the {@link KernelProfile#PRODUCTION} profile
+     */
+    private int inputLogSampling = 1;
+
+    /**
+     * the slot of this kernel in a pool, which selects the cores of the madx process. Null, if not pooled.
+     */
+    private volatile Integer cpuSlot = null;
+
+    /**
+     * the commands which brought madx to its current state
+     */
+    private final KernelStateJournal journal = new KernelStateJournal();
+
+    /**
+     * detects the ready-tokens printed by madx, if the {@link ReadyHandshake#STDOUT_SENTINEL} is used.
+     */
+    private ReadySentinel readySentinel = null;
+
     /**
      * the listeners to the kernel
      */
-    private final List<JMadKernelListener> listeners = new ArrayList<>();
+    private final List<JMadKernelListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * the last lines of the output and error output of the current madx process
+     */
+    private MadxOutputBuffer outputBuffer = null;
+    private MadxOutputBuffer errorBuffer = null;
+
+    /**
+     * the writers of the output log files of the current madx process. Null, if log files are disabled.
+     */
+    private MadxLogFileWriter outputLog = null;
+    private MadxLogFileWriter errorLog = null;
+
+    /**
+     * sends the submitted executables to madx one after the other, in the order of submission. Created on first use.
+     */
+    private ExecutorService submissionExecutor = null;
+
+    /**
+     * the execution which is currently processed by madx, and whether it shall be aborted. Guarded by the
+     * executionLock.
+     */
+    private final Object executionLock = new Object();
+    private CompletableFuture<?> runningExecution = null;
+    private boolean abortRequested = false;
+
+    /**
+     * true, while the kernel waits until madx signals to be ready. Only then madx is expected to consume cpu time.
+     */
+    private volatile boolean waitingForMadx = false;
+
+    /**
+     * the executor on which the results of {@link #executeAsync(JMadExecutable)} are parsed
+     */
+    private Executor parseExecutor = ForkJoinPool.commonPool();
+
+    /**
+     * used to give each asynchronous execution its own result file, so that it can be parsed while madx already
+     * writes the next one.
+     */
+    private final AtomicLong asyncResultCounter = new AtomicLong();
+
+    /**
+     * counts the data written by this kernel and madx
+     */
+    private final KernelIoStatistics ioStatistics = new KernelIoStatistics();
 
-    private final ExecutorService logFileWriteExecutor = Executors.newCachedThreadPool();
+    /**
+     * composes the executables for madx. Executables which are larger than the threshold are written to command files.
+     */
+    private volatile CommandComposer commandComposer = new CommandComposer(DEFAULT_COMMAND_FILE_THRESHOLD);
+    private int commandFileThreshold = DEFAULT_COMMAND_FILE_THRESHOLD;
+
+    /**
+     * gives each command file its own name, so that files which are referenced by the journal are not overwritten
+     */
+    private final AtomicLong commandFileCounter = new AtomicLong();
+
+    /**
+     * the command files which are not journaled, but kept for the input log in the {@link KernelProfile#DEVELOPMENT}
+     * profile until the kernel stops
+     */
+    private final List<File> retainedCommandFiles = Collections.synchronizedList(new ArrayList<>());
 
     @Override
     public void start() throws JMadException {
+        journal.clear();
+        startProcess();
+    }
 
+    private void startProcess() throws JMadException {
         checkState(fileUtil != null, "fileUtil not injected. Fix Spring configuration");
         checkState(madxBin != null, "madxBin not injected. Fix Spring configuration");
         /*
          * First we have to get temp-files related to this kernel
          */
-        readyFile = fileUtil.getOutputFile(this, FILENAME_READY);
-        resultFile = fileUtil.getOutputFile(this, FILENAME_RESULT);
+        readyFile = fileUtil.getWorkingFile(this, FILENAME_READY);
+        resultFile = fileUtil.getWorkingFile(this, FILENAME_RESULT);
         madxInputLogFile = fileUtil.getOutputFile(this, FILENAME_LOG_IN);
         madxOutputLogFile = fileUtil.getOutputFile(this, FILENAME_LOG_OUT);
         madxErrorLogFile = fileUtil.getOutputFile(this, FILENAME_LOG_ERROR);
@@ -166,33 +332,99 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
         deleteReadyFile();
 
         madxInputLogFile.delete();
+        /* the result file is created once and then reused by all synchronous executions */
+        truncate(resultFile);
 
         try {
-            process = madxBin.execute();
-            input = new PrintWriter(process.getOutputStream());
-            inputLogWriter = new BufferedWriter(new FileWriter(madxInputLogFile));
-            logFileWriteExecutor.submit(() -> Files.copy(process.getInputStream(), madxOutputLogFile.toPath()));
-            logFileWriteExecutor.submit(() -> Files.copy(process.getErrorStream(), madxErrorLogFile.toPath()));
+            MadxLaunchOptions options = createLaunchOptions();
+            madxLineBuffered = madxBin.isLineBuffered(options);
+            process = madxBin.execute(options);
+            leakTracker.setProcess(process);
+            input = new PrintWriter(
+                    new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), INPUT_CHARSET)));
+            inputLog = new MadxLogFileWriter(madxInputLogFile, preferences.getMadxLogFileMaxSize(), ioStatistics);
+            readySentinel = new ReadySentinel(process);
+            startStreamReaders();
             fireStartedKernel();
         } catch (IOException e) {
             throw new JMadException("Error while executing madx.", e);
         }
     }
 
+    /**
+     * @return the options for starting madx, as configured in the preferences
+     */
+    private MadxLaunchOptions createLaunchOptions() {
+        MadxLaunchOptions options = new MadxLaunchOptions();
+        if (preferences.isMadxWorkingDirPerKernel()) {
+            options.setWorkingDirectory(readyFile.getParentFile());
+        }
+        options.setEnvironment(preferences.getMadxEnvironment());
+        options.setNiceLevel(preferences.getMadxNiceLevel());
+        options.setLineBufferedOutput(preferences.isMadxLineBuffered());
+        CpuSet cpuSet = preferences.getMadxCpuSet();
+        Integer slot = this.cpuSlot;
+        if ((cpuSet != null) && (slot != null)) {
+            cpuSet = cpuSet.slice(slot, preferences.getMadxCpusPerKernel());
+        }
+        options.setCpuSet(cpuSet);
+        return options;
+    }
+
+    /**
+     * lets the shared io threads drain stdout and stderr of the new madx process into the in-memory buffers and
+     * (optionally) the log files. The buffers are filled before the ready sentinel sees a line, so that they contain
+     * everything up to the ready-token when a waiting thread wakes up.
+     */
+    private void startStreamReaders() {
+        int bufferLines = preferences.getMadxOutputBufferLines();
+        outputBuffer = new MadxOutputBuffer(bufferLines);
+        errorBuffer = new MadxOutputBuffer(bufferLines);
+
+        MadxOutputReader outputReader = new MadxOutputReader(process.getInputStream(), "output");
+        MadxOutputReader errorReader = new MadxOutputReader(process.getErrorStream(), "error output");
+        outputReader.addSniffer(outputBuffer);
+        errorReader.addSniffer(errorBuffer);
+
+        if (preferences.isMadxLogFiles()) {
+            long maxSize = preferences.getMadxLogFileMaxSize();
+            outputLog = new MadxLogFileWriter(madxOutputLogFile, maxSize, ioStatistics);
+            errorLog = new MadxLogFileWriter(madxErrorLogFile, maxSize, ioStatistics);
+            outputReader.addSniffer(outputLog);
+            errorReader.addSniffer(errorLog);
+        } else {
+            outputLog = null;
+            errorLog = null;
+        }
+
+        outputReader.addSniffer(readySentinel);
+        MadxIoThreads.drain(outputReader);
+        MadxIoThreads.drain(errorReader);
+    }
+
+    /**
+     * closes the log files of the current process, so that they can be moved. Output which arrives afterwards is only
+     * kept in memory.
+     */
+    private void closeLogFiles() {
+        for (MadxLogFileWriter log : new MadxLogFileWriter[] { outputLog, errorLog }) {
+            if (log != null) {
+                log.close();
+            }
+        }
+    }
+
     @Override
     public int stop() throws JMadException {
         int exitValue = 0;
-        writeCommand(CMD_STOP);
         try {
+            drainSubmissionQueue();
+            writeCommand(CMD_STOP);
             if (timeout == null) {
                 LOGGER.debug("No timeout set. Waiting until madx-process terminates.");
                 exitValue = process.waitFor();
             } else {
-                ProcessTerminationMonitor processTerminationMonitor = new ProcessTerminationMonitor(process);
-                processTerminationMonitor.start();
-                processTerminationMonitor.join(timeout);
-                if (processTerminationMonitor.isAlive()) {
-                    processTerminationMonitor.interrupt();
+                if (!process.waitFor(timeout, TimeUnit.MILLISECONDS)) {
                     process.destroy();
                     exitValue = EXIT_VALUE_DESTROYED;
                     LOGGER.warn("Waiting for terminating madx timed out! (timeout={} ms)", timeout);
@@ -210,11 +442,16 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
             }
 
             deleteReadyFile();
+            closeReadyFileWatcher();
             closeInputLogger();
         } catch (InterruptedException e) {
             throw new JMadException("Error while trying to stop MadX", e);
         }
 
+        journal.clear();
+        deleteRetainedCommandFiles();
+        leakTracker.setProcess(null);
+
         /* delete the dir corresponding to the kernel. */
         if (isCleanupDirs() && (fileUtil != null)) {
             fileUtil.cleanup(this);
@@ -224,70 +461,622 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
         return exitValue;
     }
 
+    /**
+     * @return true, if madx writes a result file for the executable, which has to be parsed
+     */
+    static boolean hasResult(JMadExecutable executable) {
+        return (executable.getResultType() != null) && (ResultType.NO_RESULT != executable.getResultType());
+    }
+
+    /**
+     * empties the given file (creating it if it does not exist). Other than deleting and re-creating it, this keeps the
+     * directory untouched, which is much cheaper on network file systems.
+     */
+    private static void truncate(File file) throws JMadException {
+        try {
+            new FileOutputStream(file).close();
+        } catch (IOException e) {
+            throw new JMadException("Could not empty result file '" + file.getAbsolutePath() + "'.", e);
+        }
+    }
+
     private void deleteReadyFile() {
         readyFile.delete();
     }
 
-    private void closeInputLogger() {
+    /**
+     * @return the watch service on the directory of the ready file, or null if the platform has no native watch
+     *         service (then the ready file is polled)
+     */
+    private WatchService readyFileWatcher() {
+        if ((readyFileWatcher == null) && (OsUtil.isLinux() || OsUtil.isWindows())) {
+            try {
+                WatchService watcher = FileSystems.getDefault().newWatchService();
+                readyFile.getParentFile().toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                readyFileWatcher = watcher;
+            } catch (IOException e) {
+                LOGGER.warn("Could not watch the directory of the ready file. Polling it instead.", e);
+            }
+        }
+        return readyFileWatcher;
+    }
+
+    private void closeReadyFileWatcher() {
+        if (readyFileWatcher == null) {
+            return;
+        }
         try {
-            inputLogWriter.flush();
-            inputLogWriter.close();
+            readyFileWatcher.close();
         } catch (IOException e) {
-            LOGGER.error("Error while flushing input logger.", e);
+            LOGGER.debug("Could not close the watch service of the ready file.", e);
+        }
+        readyFileWatcher = null;
+    }
+
+    private void closeInputLogger() {
+        if (inputLog == null) {
+            return;
         }
+        inputLog.close();
+        inputLog = null;
     }
 
     @Override
     public Result execute(JMadExecutable executable) throws JMadException {
-        resultFile.delete();
-        executable.setOutputFile(resultFile);
+        CompletableFuture<Result> future = new KernelFuture<>(this::abort);
+        submit(() -> {
+            boolean hasResult = hasResult(executable);
+            if (hasResult) {
+                truncate(resultFile);
+            }
+            KernelExecuteSpan span = JMadEvents.beginKernelExecute();
+            ExecutionTimings timings = ExecutionTimings.of(executable);
+            sendAndWait(executable, resultFile, null, timings);
+            Result result = parseResult(executable, resultFile, false, timings);
+            if (hasResult && !this.keepOutputFile) {
+                truncate(resultFile);
+            }
+            recordMatchResult(executable, result);
+            future.complete(result);
+            fireExecuted(timings, span);
+        }, future);
+        return awaitResult(future);
+    }
 
-        /* execute the commands and wait. */
-        writeCommand(executable.compose());
-        waitUntilReady();
+    @Override
+    public CompletableFuture<Result> executeAsync(JMadExecutable executable, Long executableTimeout) {
+        CompletableFuture<Result> future = new KernelFuture<>(this::abort);
+        submit(() -> {
+            File outputFile = fileUtil.getWorkingFile(this,
+                    String.format(FILENAME_ASYNC_RESULT, asyncResultCounter.incrementAndGet()));
+            outputFile.delete();
+            KernelExecuteSpan span = JMadEvents.beginKernelExecute();
+            ExecutionTimings timings = ExecutionTimings.of(executable);
+            sendAndWait(executable, outputFile, executableTimeout, timings);
+            /* madx can already process the next submission while this result is parsed */
+            parseExecutor.execute(() -> {
+                Result result;
+                try {
+                    result = parseResult(executable, outputFile, true, timings);
+                    recordMatchResult(executable, result);
+                } catch (JMadException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                    return;
+                }
+                future.complete(result);
+                fireExecuted(timings, span);
+            });
+        }, future);
+        return future;
+    }
 
-        /* parse result */
-        Result result = null;
-        if ((executable.getResultType() != null) && (ResultType.NO_RESULT != executable.getResultType())) {
-            LOGGER.debug("parsing madx output-file ({})", resultFile.getAbsolutePath());
+    @Override
+    public List<Result> executeBatch(List<? extends JMadExecutable> executables) throws JMadException {
+        if (executables.isEmpty()) {
+            return new ArrayList<>();
+        }
+        CompletableFuture<List<Result>> future = new KernelFuture<>(this::abort);
+        submit(() -> {
+            KernelExecuteSpan span = JMadEvents.beginKernelExecute();
+            ExecutionTimings timings = new ExecutionTimings(ExecutionTimings.BATCH_EXECUTABLE_TYPE, null);
+            List<File> outputFiles = new ArrayList<>(executables.size());
+            List<CommandComposer.Composed> composedCommands = new ArrayList<>(executables.size());
+            boolean retained = isRetainingCommandFiles();
+            boolean[] recorded = new boolean[executables.size()];
             try {
-                if (ResultType.TFS_RESULT == executable.getResultType()) {
-                    TfsFileParser parser = new TfsFileParser(resultFile);
-                    parser.parse();
-                    result = parser.getResult();
-                } else if (ResultType.VALUES_RESULT == executable.getResultType()) {
-                    StrengthFileParser parser = new StrengthFileParser(resultFile);
-                    parser.parse(false);
-                    result = parser.getResult();
-                } else if (ResultType.MATCH_RESULT == executable.getResultType()) {
-                    MatchOutputParser parser = new MatchOutputParser(executable.getOutputFile());
-                    parser.parse();
-                    result = parser.getResult();
-                } else if (ResultType.TRACK_RESULT == executable.getResultType()) {
-                    TrackOutputParser parser = new TrackOutputParser(executable.getOutputFile());
-                    parser.parse();
-                    result = parser.getResult();
-                } else if (ResultType.DYNAP_RESULT == executable.getResultType()) {
-                    DynapOutputParser parser = new DynapOutputParser(executable.getOutputFile());
-                    parser.parse();
-                    result = parser.getResult();
+                for (int i = 0; i < executables.size(); i++) {
+                    File outputFile = fileUtil.getWorkingFile(this, String.format(FILENAME_BATCH_RESULT, i));
+                    outputFile.delete();
+                    outputFiles.add(outputFile);
+
+                    JMadExecutable executable = executables.get(i);
+                    executable.setOutputFile(outputFile);
+                    composedCommands.add(compose(executable, timings));
+                }
+                long startNanos = System.nanoTime();
+                List<String> commands = new ArrayList<>(composedCommands.size());
+                for (CommandComposer.Composed composed : composedCommands) {
+                    commands.add(composed.getCommand());
+                }
+                writeCommand(StringUtil.join(commands, "\n"), false);
+                startNanos = timings.stop(ExecutionPhase.WRITE, startNanos);
+                waitUntilReady();
+                timings.stop(ExecutionPhase.MADX, startNanos);
+                for (int i = 0; i < executables.size(); i++) {
+                    CommandComposer.Composed composed = composedCommands.get(i);
+                    recorded[i] = journal.record(executables.get(i), composed.getCommand(),
+                            retained ? null : composed.getCommandFile());
                 }
+            } finally {
+                for (int i = 0; i < composedCommands.size(); i++) {
+                    releaseCommandFile(composedCommands.get(i), recorded[i], retained);
+                }
+            }
+
+            List<Result> results = parseBatchResults(executables, outputFiles, timings);
+            for (int i = 0; i < executables.size(); i++) {
+                recordMatchResult(executables.get(i), results.get(i));
+            }
+            future.complete(results);
+            fireExecuted(timings, span);
+        }, future);
+        return awaitResult(future);
+    }
+
+    /**
+     * parses the results of a batch. When parsing in parallel, the parse times of all the results are summed up in the
+     * timings.
+     */
+    private List<Result> parseBatchResults(List<? extends JMadExecutable> executables, List<File> outputFiles,
+            ExecutionTimings timings) throws JMadException {
+        List<Result> results = new ArrayList<>(executables.size());
+        if (!this.parallelBatchParsing || (executables.size() == 1)) {
+            for (int i = 0; i < executables.size(); i++) {
+                results.add(parseResult(executables.get(i), outputFiles.get(i), !this.keepOutputFile, timings));
+            }
+            return results;
+        }
+
+        List<CompletableFuture<Result>> parsedResults = new ArrayList<>(executables.size());
+        for (int i = 0; i < executables.size(); i++) {
+            JMadExecutable executable = executables.get(i);
+            File outputFile = outputFiles.get(i);
+            parsedResults.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return parseResult(executable, outputFile, !this.keepOutputFile, timings);
+                } catch (JMadException e) {
+                    throw new CompletionException(e);
+                }
+            }, parseExecutor));
+        }
+        for (CompletableFuture<Result> parsedResult : parsedResults) {
+            results.add(awaitResult(parsedResult));
+        }
+        return results;
+    }
+
+    /**
+     * enqueues the given round trip to madx into the submission queue of this kernel. Any failure of the round trip
+     * completes the given future exceptionally.
+     */
+    private void submit(RoundTrip roundTrip, CompletableFuture<?> future) {
+        try {
+            getSubmissionExecutor().execute(() -> {
+                synchronized (executionLock) {
+                    if (future.isDone()) {
+                        /* cancelled before it was sent to madx */
+                        return;
+                    }
+                    runningExecution = future;
+                }
+                try {
+                    roundTrip.run();
+                } catch (MadxTerminatedException e) {
+                    if (!isAbortRequested() && isAutoRecover()) {
+                        tryToRecover();
+                    }
+                    future.completeExceptionally(e);
+                } catch (JMadException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    if (finishExecution()) {
+                        /* we killed madx on purpose: bring it back for the following executions */
+                        tryToRecover();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new JMadException("Kernel is stopping -> cannot execute commands.", e));
+        }
+    }
+
+    /**
+     * aborts the given execution, if madx is currently processing it, by killing madx. The kernel recovers as soon as
+     * the round trip of the execution returns.
+     */
+    private void abort(CompletableFuture<?> execution) {
+        synchronized (executionLock) {
+            if (runningExecution == execution) {
+                abortRunningExecution();
+            }
+        }
+    }
+
+    /**
+     * kills madx, if it is currently processing an execution. The execution fails and the kernel recovers as soon as
+     * its round trip returns.
+     */
+    void abortRunningExecution() {
+        synchronized (executionLock) {
+            if (abortRequested || (process == null)) {
+                return;
+            }
+            LOGGER.warn("Aborting the running execution: killing madx.");
+            abortRequested = true;
+            process.destroyForcibly();
+            if (readySentinel != null) {
+                readySentinel.processTerminated();
+            }
+        }
+    }
+
+    /**
+     * @return true, if the kernel currently waits until madx finished the commands sent so far. In contrast to the
+     *         whole execution, this does not contain the composing of the commands and the parsing of the results.
+     */
+    boolean isWaitingForMadx() {
+        return waitingForMadx;
+    }
+
+    private boolean isAbortRequested() {
+        synchronized (executionLock) {
+            return abortRequested;
+        }
+    }
+
+    /**
+     * @return true, if the execution was aborted
+     */
+    private boolean finishExecution() {
+        synchronized (executionLock) {
+            boolean aborted = abortRequested;
+            runningExecution = null;
+            abortRequested = false;
+            return aborted;
+        }
+    }
+
+    private void tryToRecover() {
+        try {
+            restartAndReplay();
+        } catch (JMadException | RuntimeException e) {
+            LOGGER.error("Automatic recovery of madx failed.", e);
+        }
+    }
+
+    private synchronized ExecutorService getSubmissionExecutor() {
+        if (submissionExecutor == null) {
+            submissionExecutor = MadxIoThreads.newSubmissionExecutor();
+        }
+        return submissionExecutor;
+    }
+
+    /**
+     * shuts down the submission queue and waits until all already submitted executables are processed.
+     */
+    private void drainSubmissionQueue() throws InterruptedException {
+        ExecutorService executor;
+        synchronized (this) {
+            executor = submissionExecutor;
+            submissionExecutor = null;
+        }
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        if (timeout == null) {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.debug("No timeout set. Still waiting for submitted commands to finish.");
+            }
+        } else if (!executor.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+            LOGGER.warn("Submitted commands did not finish within {} ms. Stopping madx anyway.", timeout);
+        }
+    }
+
+    private static <T> T awaitResult(CompletableFuture<T> future) throws JMadException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof JMadException) {
+                throw (JMadException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new JMadException("Error while executing madx command.", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new JMadException("Interrupted while waiting for madx.", e);
+        }
+    }
+
+    /**
+     * sends the executable to madx and waits until madx has processed it.
+     */
+    private void sendAndWait(JMadExecutable executable, File outputFile, Long executableTimeout,
+            ExecutionTimings timings) throws JMadException {
+        executable.setOutputFile(outputFile);
+        CommandComposer.Composed composed = compose(executable, timings);
+        boolean retained = isRetainingCommandFiles();
+        boolean recorded = false;
+        try {
+            long startNanos = System.nanoTime();
+            writeCommand(composed.getCommand(), false);
+            startNanos = timings.stop(ExecutionPhase.WRITE, startNanos);
+            if (executableTimeout == null) {
+                waitUntilReady();
+            } else {
+                try {
+                    waitUntilReady(executableTimeout);
+                } catch (WaitForMadxTimedOutException e) {
+                    /* do not let the following executions wait until madx finishes this one */
+                    abortRunningExecution();
+                    throw e;
+                }
+            }
+            timings.stop(ExecutionPhase.MADX, startNanos);
+            recorded = journal.record(executable, composed.getCommand(),
+                    retained ? null : composed.getCommandFile());
+        } finally {
+            releaseCommandFile(composed, recorded, retained);
+        }
+    }
+
+    /**
+     * composes the executable, either directly or into a command file, if it is too large.
+     */
+    private CommandComposer.Composed compose(JMadExecutable executable, ExecutionTimings timings)
+            throws JMadException {
+        long startNanos = System.nanoTime();
+        CommandComposer.Composed composed = commandComposer.compose(executable, () -> fileUtil.getWorkingFile(this,
+                String.format(FILENAME_COMMAND, commandFileCounter.incrementAndGet())));
+        File commandFile = composed.getCommandFile();
+        if (commandFile != null) {
+            LOGGER.debug("wrote large command to file '{}'.", commandFile.getAbsolutePath());
+            ioStatistics.addCommandBytes(commandFile.length());
+            timings.addCommandBytes(commandFile.length());
+        }
+        timings.addCommandBytes(StringUtil.encodedLength(composed.getCommand(), INPUT_CHARSET));
+        timings.stop(ExecutionPhase.COMPOSE, startNanos);
+        return composed;
+    }
+
+    /**
+     * @return true, if the command files are kept until the kernel stops. This is the case in the
+     *         {@link KernelProfile#DEVELOPMENT} profile, because the input log calls them: so the log can be run in
+     *         madx as long as the kernel runs. Otherwise they are deleted as soon as they are not needed anymore.
+     */
+    private boolean isRetainingCommandFiles() {
+        return getProfile() == KernelProfile.DEVELOPMENT;
+    }
+
+    /**
+     * deletes the command file of the executed command, unless it is still needed: If the kernel retains the command
+     * files (see {@link #isRetainingCommandFiles()}), it is deleted when the kernel stops. Otherwise, if the journal
+     * replays the call of the file, then the journal deletes it when the call is removed or the journal is cleared.
+     * Files which are retained are therefore recorded in the journal without the file.
+     */
+    private void releaseCommandFile(CommandComposer.Composed composed, boolean recordedInJournal, boolean retained) {
+        if (composed.getCommandFile() == null) {
+            return;
+        }
+        if (retained) {
+            retainedCommandFiles.add(composed.getCommandFile());
+            return;
+        }
+        if (!recordedInJournal) {
+            composed.deleteCommandFile();
+        }
+    }
+
+    /**
+     * deletes the command files, which were kept for the input log in the {@link KernelProfile#DEVELOPMENT} profile
+     */
+    private void deleteRetainedCommandFiles() {
+        synchronized (retainedCommandFiles) {
+            for (File commandFile : retainedCommandFiles) {
+                if (commandFile.exists() && !commandFile.delete()) {
+                    LOGGER.warn("Could not delete command file '{}'.", commandFile.getAbsolutePath());
+                }
+            }
+            retainedCommandFiles.clear();
+        }
+    }
+
+    /**
+     * fills the block, which the journal reserved for the matching when it was executed, with the final values of the
+     * varied parameters. So the values are journaled in the order of execution, even if the result is parsed later.
+     */
+    private void recordMatchResult(JMadExecutable executable, Result result) {
+        if (result instanceof MatchResult) {
+            journal.record(executable, (MatchResult) result);
+        }
+    }
+
+    @Override
+    public void recover() throws JMadException {
+        awaitResult(recoverAsync());
+    }
+
+    /**
+     * enqueues the restart of madx and the replay of the state journal into the submission queue, so that it runs
+     * after all the executables which were submitted before.
+     *
+     * @return the future which completes as soon as madx was restarted
+     */
+    CompletableFuture<Void> recoverAsync() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        submit(() -> {
+            restartAndReplay();
+            future.complete(null);
+        }, future);
+        return future;
+    }
+
+    /**
+     * starts a new madx process (killing the old one, if it is still alive) and replays the state journal into it.
+     * Must only be called by the submission queue.
+     */
+    private void restartAndReplay() throws JMadException {
+        LOGGER.warn("Restarting madx and replaying {} journal entries.", journal.size());
+        long startTime = System.currentTimeMillis();
+        if (isMadxRunning()) {
+            process.destroy();
+        }
+        closeInputLogger();
+        closeLogFiles();
+        keepCrashedLogs();
+
+        startProcess();
+        String replay = journal.compose();
+        if (!replay.isEmpty()) {
+            try {
+                writeCommand(replay, false);
+                waitUntilReady();
+            } catch (MadxTerminatedException e) {
+                throw new JMadException("MadX terminated while replaying the state journal.", e);
+            }
+        }
+        LOGGER.info("Recovered madx within {} ms.", System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * renames the log files of the previous process, so that they are not overwritten by the new one.
+     */
+    private void keepCrashedLogs() {
+        for (File logFile : new File[] { madxInputLogFile, madxOutputLogFile, madxErrorLogFile }) {
+            if ((logFile == null) || !logFile.exists()) {
+                continue;
+            }
+            try {
+                Files.move(logFile.toPath(), new File(logFile.getAbsolutePath() + SUFFIX_CRASHED_LOG).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                LOGGER.warn("Could not keep log file '" + logFile.getAbsolutePath() + "' of crashed madx.", e);
+            }
+        }
+    }
+
+    private Result parseResult(JMadExecutable executable, File outputFile, boolean deleteOutputFile,
+            ExecutionTimings timings) throws JMadException {
+        Result result = null;
+        if (hasResult(executable)) {
+            LOGGER.debug("parsing madx output-file ({})", outputFile.getAbsolutePath());
+            /* also 0 if the file does not exist */
+            long outputFileSize = outputFile.length();
+            if (outputFileSize == 0) {
+                throw new JMadException("File '" + outputFile.getAbsolutePath() + "' does not exist or is empty."
+                        + "\nProbably madx did not produce it?" + "\n\n" + madxOutputMessage());
+            }
+            ioStatistics.addResultFile(outputFileSize);
+            timings.addResultBytes(outputFileSize);
+            fireResultFileWritten(executable, outputFile);
+            long startNanos = System.nanoTime();
+            try {
+                result = parseResultFile(executable.getResultType(), outputFile, createTfsResult(),
+                        getTfsParallelThreshold(), MadxIoThreads.tfsParsers());
             } catch (Exception e) {
-                throw new JMadException("File '" + resultFile.getAbsolutePath() + "' could not be parsed."
+                throw new JMadException("File '" + outputFile.getAbsolutePath() + "' could not be parsed."
                         + "\nProbably madx did not produce it?" + "\n\n" + madxOutputMessage());
             }
+            timings.stop(ExecutionPhase.PARSE, startNanos);
 
-            if (!this.keepOutputFile) {
-                if (!resultFile.delete()) {
-                    throw new JMadException("Could not delete result file '" + resultFile.getAbsolutePath());
+            if (deleteOutputFile) {
+                if (!outputFile.delete()) {
+                    throw new JMadException("Could not delete result file '" + outputFile.getAbsolutePath());
                 }
-                LOGGER.debug("deleted madx output file ({})", resultFile.getAbsolutePath());
+                LOGGER.debug("deleted madx output file ({})", outputFile.getAbsolutePath());
             }
         }
 
         return result;
     }
 
+    /**
+     * parses a result file written by madx with the parser for the given result type.
+     * 
+     * @param resultType the type of the result
+     * @param resultFile the file written by madx
+     * @return the parsed result, null for a type without result
+     * @throws JMadException if the file cannot be parsed
+     */
+    static Result parseResultFile(ResultType resultType, File resultFile) throws JMadException {
+        return parseResultFile(resultType, resultFile, new TfsResultImpl(), 0, null);
+    }
+
+    /**
+     * parses a result file written by madx with the parser for the given result type.
+     * 
+     * @param resultType the type of the result
+     * @param resultFile the file written by madx
+     * @param tfsResult the result to fill, if the file is a tfs file
+     * @param tfsParallelThreshold the size of tfs files from which on they are parsed in parallel, zero or negative to
+     *            parse them in one thread
+     * @param tfsParallelExecutor the executor which parses the parts of large tfs files
+     * @return the parsed result, null for a type without result
+     * @throws JMadException if the file cannot be parsed
+     */
+    static Result parseResultFile(ResultType resultType, File resultFile, MutableTfsResult tfsResult,
+            long tfsParallelThreshold, Executor tfsParallelExecutor) throws JMadException {
+        if (ResultType.TFS_RESULT == resultType) {
+            TfsFileParser parser = new TfsFileParser(resultFile, tfsResult);
+            if (tfsParallelThreshold > 0) {
+                parser.setParallelThreshold(tfsParallelThreshold);
+                parser.setParallelExecutor(tfsParallelExecutor);
+            }
+            parser.parse();
+            return parser.getParsedResult();
+        } else if (ResultType.VALUES_RESULT == resultType) {
+            StrengthFileParser parser = new StrengthFileParser(resultFile);
+            parser.parse(false);
+            return parser.getResult();
+        } else if (ResultType.MATCH_RESULT == resultType) {
+            MatchOutputParser parser = new MatchOutputParser(resultFile);
+            parser.parse();
+            return parser.getResult();
+        } else if (ResultType.TRACK_RESULT == resultType) {
+            TrackOutputParser parser = new TrackOutputParser(resultFile);
+            parser.parse();
+            return parser.getResult();
+        } else if (ResultType.DYNAP_RESULT == resultType) {
+            DynapOutputParser parser = new DynapOutputParser(resultFile);
+            parser.parse();
+            return parser.getResult();
+        }
+        return null;
+    }
+
+    private long getTfsParallelThreshold() {
+        return (preferences == null) ? 0 : preferences.getTfsParallelThreshold();
+    }
+
+    /**
+     * @return a new tfs result of the type configured in the preferences
+     */
+    private MutableTfsResult createTfsResult() {
+        if (preferences == null) {
+            return new TfsResultImpl();
+        }
+        if (preferences.isColumnarTfsResults()) {
+            return new ColumnarTfsResult();
+        }
+        TfsResultImpl tfsResult = new TfsResultImpl();
+        tfsResult.setEagerConversion(preferences.isTfsEagerConversion());
+        return tfsResult;
+    }
+
     /**
      * writes the command(s) as String to MadX-input. This method does not wait for the end of the execution and does
      * not return any result. Use with care!
@@ -297,22 +1086,47 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
      */
     /* package visibility for testing! */
     void writeCommand(String command) throws JMadException { // NOPMD by kaifox on 6/25/10 4:01 PM
-        String commandString = command + "\n";
+        writeCommand(command, true);
+    }
+
+    /**
+     * writes the command(s) to MadX-input.
+     *
+     * @param command the command to be executed by madx
+     * @param flush if false, then the command might stay in the buffer of the input stream. This saves one system call,
+     *            if the command is directly followed by the ready-handshake, which flushes the stream anyhow.
+     * @throws JMadException if madx is not running
+     */
+    private void writeCommand(String command, boolean flush) throws JMadException {
         if (!isMadxRunning()) {
             throw new JMadException("MadX is not running -> cannot write commands.");
         }
 
-        LOGGER.debug("writing command(s) to madx:\n{}", commandString);
-        input.println(commandString);
-        input.flush();
+        LOGGER.debug("writing command(s) to madx:\n{}", command);
+        input.println(command);
+        input.println();
+        ioStatistics.addCommandBytes(StringUtil.encodedLength(command, INPUT_CHARSET) + 2 * LINE_SEPARATOR_BYTES);
+        if (flush) {
+            input.flush();
+        }
 
-        /* also log in separate file for simple executing in madx */
-        try {
-            inputLogWriter.write(commandString);
-            inputLogWriter.flush();
-        } catch (IOException e) {
-            LOGGER.warn("Error while logging commands!", e);
+        logInput(command);
+    }
+
+    /**
+     * also logs the command in separate file for simple executing in madx, as defined by the profile.
+     */
+    private void logInput(String command) {
+        MadxLogFileWriter log = inputLog;
+        if (log == null) {
+            return;
         }
+        boolean production = (getProfile() == KernelProfile.PRODUCTION);
+        if (production && (inputLogSampling > 1) && ((inputLogCounter++ % inputLogSampling) != 0)) {
+            return;
+        }
+        log.setSynchronous(!production);
+        log.processNewLine(command);
     }
 
     @Override
@@ -321,22 +1135,60 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
     }
 
     /**
-     * writes a file through madx and waits until it exists or reaching timeout (if set).
+     * lets madx signal that it has processed all commands so far and waits for this signal or until reaching the
+     * timeout (if set). How madx signals is defined by the {@link ReadyHandshake}.
      *
      * @throws JMadException
      * @see #getTimeout()
      * @see #setTimeout(Long)
+     * @see #getReadyHandshake()
      */
     /* package visibility for testing! */
     void waitUntilReady() throws JMadException {
+        waitUntilReady(this.timeout);
+    }
+
+    private void waitUntilReady(Long timeout) throws JMadException {
         if (!isMadxRunning()) {
             throw new JMadException("MadX is not running!");
         }
 
+        long startTime = System.nanoTime();
+        waitingForMadx = true;
+        try {
+            if (ReadyHandshake.READY_FILE == getReadyHandshake()) {
+                waitForReadyFile(timeout);
+            } else {
+                waitForReadySentinel(timeout);
+            }
+        } finally {
+            waitingForMadx = false;
+        }
+        LOGGER.trace("madx ready after {} us.", (System.nanoTime() - startTime) / 1000);
+    }
+
+    private void waitForReadySentinel(Long timeout) throws JMadException {
+        long sequence = readySentinel.nextSequence();
+        writeCommand(readySentinel.command(sequence) + " // wait until ready");
+
+        boolean tokenArrived = false;
+        try {
+            tokenArrived = readySentinel.await(sequence, timeout);
+        } catch (ProcessTerminatedUnexpectedlyException e) {
+            closeInputLogger();
+            throwTerminatedException(e);
+        }
+
+        if (!tokenArrived) {
+            throw new WaitForMadxTimedOutException("madx command timed out! (timeout=" + timeout + "ms).");
+        }
+    }
+
+    private void waitForReadyFile(Long timeout) throws JMadException {
         writeCommand("\nsystem, \"echo > " + readyFile.getAbsolutePath() + "\"; // wait until ready\n");
 
         /* wait for the file, which tells us, that madx finished */
-        FileMonitor fileMonitor = new FileMonitor(readyFile, process);
+        FileMonitor fileMonitor = new FileMonitor(readyFile, process, readyFileWatcher());
 
         boolean fileCreated = false;
         try {
@@ -358,17 +1210,20 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
     }
 
     private String madxOutputMessage() {
-        return fileSnippet("output", madxOutputLogFile, MAX_REPORTED_OUTPUT_LINES) //
-                + fileSnippet("error output", madxErrorLogFile, MAX_REPORTED_ERROR_LINES) //
-                + "\nFull MadX Input Log: '" + madxInputLogFile.getAbsolutePath() + "'" //
-                + "\nFull MadX Output Log: '" + madxOutputLogFile.getAbsolutePath() + "'" //
-                + "\nFull MadX Error Log: '" + madxErrorLogFile.getAbsolutePath() + "'\n";
+        String message = outputSnippet("output", outputBuffer, MAX_REPORTED_OUTPUT_LINES) //
+                + outputSnippet("error output", errorBuffer, MAX_REPORTED_ERROR_LINES) //
+                + "\nFull MadX Input Log: '" + madxInputLogFile.getAbsolutePath() + "'";
+        if (outputLog != null) {
+            message += "\nFull MadX Output Log: '" + madxOutputLogFile.getAbsolutePath() + "'" //
+                    + "\nFull MadX Error Log: '" + madxErrorLogFile.getAbsolutePath() + "'";
+        }
+        return message + "\n";
     }
 
-    private String fileSnippet(String fileQualifier, File file, int maxLines) {
-        List<String> lastMadxErrorLines = FileUtil.tail(file, maxLines);
-        return "MadX " + fileQualifier + "(Max last " + maxLines + " lines):\n---\n'" + StringUtil
-                .join(lastMadxErrorLines, "\n") + "'.\n---\n";
+    private static String outputSnippet(String outputQualifier, MadxOutputBuffer buffer, int maxLines) {
+        List<String> lastMadxLines = buffer.tail(maxLines);
+        return "MadX " + outputQualifier + "(Max last " + maxLines + " lines):\n---\n'" + StringUtil
+                .join(lastMadxLines, "\n") + "'.\n---\n";
     }
 
     private void deleteReadyFileWithRetries() throws JMadException {
@@ -393,24 +1248,6 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
         }
     }
 
-    /**
-     * When the class is destroyed it takes care, that MadX is closed in a proper way.
-     *
-     * @throws Throwable if the finalization fails
-     */
-    @Override
-    protected void finalize() throws Throwable {
-        if (isMadxRunning()) {
-            LOGGER.warn("Madx is still running! - trying to stop...");
-            try {
-                stop();
-            } catch (JMadException e) {
-                LOGGER.error("Error while trying to stop MadX.", e);
-            }
-        }
-        super.finalize();
-    }
-
     @Override
     public void addListener(JMadKernelListener listener) {
         this.listeners.add(listener);
@@ -421,6 +1258,16 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
         this.listeners.remove(listener);
     }
 
+    /**
+     * adds the given listeners to the kernel. Used by spring to let all kernels report to the same listeners (e.g.
+     * the 'jmadKernelMetrics').
+     * 
+     * @param listeners the listeners to add
+     */
+    public void setListeners(List<JMadKernelListener> listeners) {
+        this.listeners.addAll(listeners);
+    }
+
     /**
      * notifies the listeners, that the kernel has started
      */
@@ -430,6 +1277,35 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
         }
     }
 
+    /**
+     * records the flight recorder event of an execution and notifies the listeners about its timings. This is done
+     * after the result is handed to the caller, so that slow listeners do not delay it. An exception thrown by a listener
+     * does not affect the execution.
+     */
+    private void fireExecuted(ExecutionTimings timings, KernelExecuteSpan span) {
+        span.commit(timings);
+        for (JMadKernelListener listener : this.listeners) {
+            try {
+                listener.executed(timings);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Kernel listener failed to process execution timings.", e);
+            }
+        }
+    }
+
+    /**
+     * notifies the listeners about a result file, before it is parsed (and possibly deleted).
+     */
+    private void fireResultFileWritten(JMadExecutable executable, File resultFile) {
+        for (JMadKernelListener listener : this.listeners) {
+            try {
+                listener.resultFileWritten(executable, resultFile);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Kernel listener failed to process result file.", e);
+            }
+        }
+    }
+
     /**
      * notifies all listeners, that the kernel has stopped.
      */
@@ -492,11 +1368,115 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
         return preferences.isCleanupKernelFiles();
     }
 
+    @Override
+    public void setReadyHandshake(ReadyHandshake readyHandshake) {
+        this.readyHandshake = readyHandshake;
+    }
+
+    @Override
+    public ReadyHandshake getReadyHandshake() {
+        if (this.readyHandshake != null) {
+            return readyHandshake;
+        }
+        ReadyHandshake configured = preferences.getReadyHandshake();
+        if (configured != null) {
+            return configured;
+        }
+        return madxLineBuffered ? ReadyHandshake.STDOUT_SENTINEL : ReadyHandshake.READY_FILE;
+    }
+
+    @Override
+    public void setParallelBatchParsing(boolean parallelBatchParsing) {
+        this.parallelBatchParsing = parallelBatchParsing;
+    }
+
+    @Override
+    public boolean isParallelBatchParsing() {
+        return parallelBatchParsing;
+    }
+
+    @Override
+    public void setAutoRecover(Boolean autoRecover) {
+        this.autoRecover = autoRecover;
+    }
+
+    @Override
+    public void setProfile(KernelProfile profile) {
+        this.profile = profile;
+    }
+
+    @Override
+    public KernelProfile getProfile() {
+        if (this.profile != null) {
+            return profile;
+        }
+        return preferences.getKernelProfile();
+    }
+
+    @Override
+    public void setInputLogSampling(int inputLogSampling) {
+        checkArgument(inputLogSampling > 0, "inputLogSampling must be positive, but was " + inputLogSampling);
+        this.inputLogSampling = inputLogSampling;
+    }
+
+    @Override
+    public int getInputLogSampling() {
+        return inputLogSampling;
+    }
+
+    @Override
+    public void setCommandFileThreshold(int commandFileThreshold) {
+        checkArgument(commandFileThreshold > 0,
+                "commandFileThreshold must be positive, but was " + commandFileThreshold);
+        this.commandFileThreshold = commandFileThreshold;
+        this.commandComposer = new CommandComposer(commandFileThreshold);
+    }
+
+    @Override
+    public int getCommandFileThreshold() {
+        return commandFileThreshold;
+    }
+
+    /**
+     * sets the slot of this kernel in a pool. The madx process is then pinned to the cores of this slot (see
+     * {@link JMadPreferences#getMadxCpuSet()}). This takes effect at the next start of madx.
+     * 
+     * @param cpuSlot the slot, starting from 0, or null to use all the configured cores
+     */
+    public void setCpuSlot(Integer cpuSlot) {
+        this.cpuSlot = cpuSlot;
+    }
+
+    public Integer getCpuSlot() {
+        return cpuSlot;
+    }
+
+    @Override
+    public boolean isAutoRecover() {
+        if (this.autoRecover != null) {
+            return autoRecover;
+        }
+        return preferences.isAutoRecoverKernels();
+    }
+
+    @Override
+    public KernelIoStatistics getIoStatistics() {
+        return ioStatistics;
+    }
+
     @Override
     public File getOutputFile() {
         return this.resultFile;
     }
 
+    /**
+     * @return the running madx process, or null if the kernel was never started
+     */
+    /* package visibility: used by the PooledJMadKernel to notify its listeners and by the KernelSupervisor */
+    Process getProcess() {
+        return process;
+    }
+
     public void setPreferences(JMadPreferences preferences) {
         this.preferences = preferences;
     }
@@ -508,4 +1488,19 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
     public void setMadxBin(MadxBin madxBin) {
         this.madxBin = madxBin;
     }
+
+    /**
+     * @param parseExecutor the executor on which the results of asynchronous executions are parsed. Defaults to the
+     *            common fork-join pool.
+     */
+    public void setParseExecutor(Executor parseExecutor) {
+        this.parseExecutor = parseExecutor;
+    }
+
+    /**
+     * one exchange with madx, as it is processed by the submission queue
+     */
+    private interface RoundTrip {
+        void run() throws JMadException;
+    }
 }
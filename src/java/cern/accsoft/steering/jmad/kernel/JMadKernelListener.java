@@ -29,6 +29,8 @@
  */
 package cern.accsoft.steering.jmad.kernel;
 
+import java.io.File;
+
 /**
  * this interface defines the methods which are fired, when the kernel-state changes.
  * 
@@ -47,4 +49,27 @@ public interface JMadKernelListener {
      * fired, when the kernel stops.
      */
     public void stoppedKernel();
+
+    /**
+     * fired, when the kernel has successfully executed an executable (or a batch of executables) and the result is
+     * available. The timings show where the time was spent. This is called from a thread of the kernel after the result
+     * was handed to the caller, so implementations should return quickly and the caller might see the result before.
+     * 
+     * @param timings the timings of the execution
+     */
+    default void executed(ExecutionTimings timings) {
+        /* not of interest for most of the listeners */
+    }
+
+    /**
+     * fired, when madx has written the result file of an executable, before the kernel parses it. The file might be
+     * deleted or overwritten right after this call, so a listener which needs its content has to copy it. This is
+     * called from a thread of the kernel.
+     * 
+     * @param executable the executable, whose output file was written
+     * @param resultFile the result file written by madx
+     */
+    default void resultFileWritten(JMadExecutable executable, File resultFile) {
+        /* not of interest for most of the listeners */
+    }
 }
@@ -0,0 +1,54 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import cern.accsoft.steering.jmad.JMadException;
+
+/**
+ * A pool of already started kernels. Leasing a kernel from the pool avoids paying the start-up time of a new MadX
+ * process whenever a model is created. A leased kernel belongs to the caller until it is given back by
+ * {@link #release(JMadKernel)}; the pool then takes care of recycling it.
+ */
+public interface JMadKernelPool {
+
+    /**
+     * hands out a started kernel. If no idle kernel is available, a new one is started, as long as the maximum size
+     * of the pool is not reached. Otherwise the call blocks until a kernel is released (or the lease timeout expires).
+     *
+     * @return a started kernel which is exclusively owned by the caller until it is released
+     * @throws JMadException if no kernel could be started or the waiting for a free kernel timed out
+     */
+    JMadKernel lease() throws JMadException;
+
+    /**
+     * gives a previously leased kernel back to the pool. The kernel must not be used by the caller anymore afterwards.
+     *
+     * @param kernel the kernel to give back
+     */
+    void release(JMadKernel kernel);
+
+    /**
+     * @return the number of started kernels which are waiting to be leased
+     */
+    int getIdleCount();
+
+    /**
+     * @return the number of kernels which are currently leased
+     */
+    int getLeasedCount();
+
+    /**
+     * stops all idle kernels and the background maintenance of the pool. Kernels which are still leased are stopped
+     * as soon as they are released.
+     */
+    void close();
+}
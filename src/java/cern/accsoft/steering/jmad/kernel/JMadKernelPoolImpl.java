@@ -0,0 +1,461 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import cern.accsoft.steering.jmad.JMadException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The default implementation of the {@link JMadKernelPool}. It keeps at least {@link #getMinIdle()} started kernels
+ * ready and never runs more than {@link #getMaxTotal()} kernels at the same time. Idle kernels above the minimum are
+ * stopped after {@link #getIdleTimeout()} ms.
+ * <p>
+ * MadX provides no way to reset all of its internal state, so a kernel which was leased once is never handed out
+ * again: on release it is stopped in the background and replaced by a freshly started one. All starting and stopping
+ * of kernels (except for a lease which finds no idle kernel) happens on a single maintenance thread.
+ * <p>
+ * Each running {@link JMadKernelImpl} of the pool gets the lowest free cpu slot, which pins its MadX process to its own
+ * group of cores, if cores are configured in the preferences (see {@link JMadKernelImpl#setCpuSlot(Integer)}).
+ * <p>
+ * The kernels are created by {@link #createKernel()}, which is injected by spring (lookup-method) in order to get
+ * preconfigured prototype kernels.
+ * <p>
+ * If a {@link KernelSupervisor} is injected, it supervises all running kernels of the pool and recycles them, when
+ * they pass its thresholds.
+ */
+public abstract class JMadKernelPoolImpl implements JMadKernelPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JMadKernelPoolImpl.class);
+
+    private static final int DEFAULT_MIN_IDLE = 2;
+    private static final int DEFAULT_MAX_TOTAL = 16;
+    private static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+    /** how often the idle kernels are checked for eviction (and replaced, if they died) */
+    private static final long EVICTION_INTERVAL_IN_MILLISECONDS = TimeUnit.SECONDS.toMillis(10);
+
+    /** the number of started kernels the pool tries to keep ready */
+    private int minIdle = DEFAULT_MIN_IDLE;
+
+    /** the maximum number of kernels (idle, leased, starting and stopping) at the same time */
+    private int maxTotal = DEFAULT_MAX_TOTAL;
+
+    /** idle kernels above minIdle are stopped after this amount of ms. If null, they are kept forever. */
+    private Long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    /** the maximum time in ms a lease waits for a free kernel. If null (default), it waits forever. */
+    private Long leaseTimeout = null;
+
+    /** the started kernels, the most recently started one last */
+    private final Deque<IdleKernel> idleKernels = new ArrayDeque<>();
+
+    private final Set<JMadKernel> leasedKernels = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /** the number of kernels which are currently starting */
+    private int startingCount = 0;
+
+    /** the number of kernels which were released or evicted, but are not yet stopped */
+    private int stoppingCount = 0;
+
+    private boolean closed = false;
+
+    /** the cpu slots of the running kernels (see {@link JMadKernelImpl#setCpuSlot(Integer)}) */
+    private final Map<JMadKernel, Integer> cpuSlots = new IdentityHashMap<>();
+    private final BitSet usedCpuSlots = new BitSet();
+
+    /** supervises the running kernels, if set (see {@link #setSupervisor(KernelSupervisor)}) */
+    private volatile KernelSupervisor supervisor = null;
+
+    private ScheduledExecutorService maintenanceExecutor;
+
+    /**
+     * init method called by spring. Starts the background maintenance, which pre-starts the first kernels.
+     */
+    public synchronized void init() {
+        checkState(maintenanceExecutor == null, "Kernel pool already initialized.");
+        maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jmad-kernel-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenanceExecutor.scheduleWithFixedDelay(this::maintain, 0, EVICTION_INTERVAL_IN_MILLISECONDS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * This method will be injected by spring in order to create a preconfigured (not yet started) kernel.
+     *
+     * @return a new kernel
+     */
+    protected abstract JMadKernel createKernel();
+
+    @Override
+    public JMadKernel lease() throws JMadException {
+        synchronized (this) {
+            checkState(maintenanceExecutor != null, "Kernel pool not initialized. Call init() first.");
+            long startTime = System.currentTimeMillis();
+            while (true) {
+                checkState(!closed, "Kernel pool is already closed.");
+                IdleKernel idleKernel = idleKernels.pollLast();
+                if (idleKernel != null) {
+                    if (idleKernel.kernel.isMadxRunning()) {
+                        leasedKernels.add(idleKernel.kernel);
+                        scheduleMaintenance();
+                        return idleKernel.kernel;
+                    }
+                    LOGGER.warn("Idle kernel terminated meanwhile. Discarding it.");
+                    continue;
+                }
+
+                if (getTotalCount() < maxTotal) {
+                    startingCount++;
+                    break;
+                }
+
+                waitForFreeSlot(startTime);
+            }
+        }
+
+        /* no idle kernel available: we start one ourselves, outside of the lock */
+        JMadKernel kernel;
+        try {
+            kernel = startKernel();
+        } finally {
+            synchronized (this) {
+                startingCount--;
+                notifyAll();
+            }
+        }
+        synchronized (this) {
+            leasedKernels.add(kernel);
+            scheduleMaintenance();
+        }
+        return kernel;
+    }
+
+    private void waitForFreeSlot(long startTime) throws JMadException {
+        long delay = 0;
+        if (leaseTimeout != null) {
+            delay = leaseTimeout - (System.currentTimeMillis() - startTime);
+            if (delay <= 0) {
+                throw new JMadException("No free kernel available in the pool (maxTotal=" + maxTotal
+                        + ") within the lease timeout of " + leaseTimeout + "ms.");
+            }
+        }
+        try {
+            wait(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JMadException("Waiting for a free kernel was interrupted.", e);
+        }
+    }
+
+    @Override
+    public void release(JMadKernel kernel) {
+        synchronized (this) {
+            if (!leasedKernels.remove(kernel)) {
+                LOGGER.warn("Released kernel was not leased from this pool. Ignoring it.");
+                return;
+            }
+            stoppingCount++;
+            if (!closed) {
+                maintenanceExecutor.execute(() -> {
+                    retire(kernel);
+                    maintain();
+                });
+                return;
+            }
+        }
+        /* the pool is closed: nobody else will stop it */
+        retire(kernel);
+    }
+
+    /**
+     * stops the given kernel and frees its slot in the pool.
+     */
+    private void retire(JMadKernel kernel) {
+        try {
+            stopQuietly(kernel);
+        } finally {
+            synchronized (this) {
+                stoppingCount--;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * evicts dead and expired idle kernels and starts new ones until minIdle is reached again. Always runs on the
+     * maintenance thread.
+     */
+    private void maintain() {
+        try {
+            for (JMadKernel kernel : collectEvictableKernels()) {
+                retire(kernel);
+            }
+            while (reserveRefillSlot()) {
+                JMadKernel kernel = null;
+                try {
+                    kernel = startKernel();
+                } catch (JMadException e) {
+                    LOGGER.error("Could not pre-start kernel for the pool.", e);
+                } finally {
+                    addStartedKernel(kernel);
+                }
+                if (kernel == null) {
+                    /* starting fails: we retry with the next scheduled run */
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            /* must not escape, otherwise the scheduled maintenance would silently stop */
+            LOGGER.error("Error during maintenance of kernel pool.", e);
+        }
+    }
+
+    private synchronized List<JMadKernel> collectEvictableKernels() {
+        List<JMadKernel> evictable = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        Iterator<IdleKernel> iterator = idleKernels.iterator();
+        while (iterator.hasNext()) {
+            IdleKernel idleKernel = iterator.next();
+            boolean expired = (idleTimeout != null) && (now - idleKernel.idleSince > idleTimeout)
+                    && (idleKernels.size() - evictable.size() > minIdle);
+            if (expired || !idleKernel.kernel.isMadxRunning()) {
+                iterator.remove();
+                evictable.add(idleKernel.kernel);
+                stoppingCount++;
+            }
+        }
+        if (!evictable.isEmpty()) {
+            LOGGER.debug("Evicting {} idle kernel(s) from the pool.", evictable.size());
+        }
+        return evictable;
+    }
+
+    private synchronized boolean reserveRefillSlot() {
+        if (closed || (idleKernels.size() + startingCount >= minIdle) || (getTotalCount() >= maxTotal)) {
+            return false;
+        }
+        startingCount++;
+        return true;
+    }
+
+    private void addStartedKernel(JMadKernel kernel) {
+        boolean stopNow = false;
+        synchronized (this) {
+            startingCount--;
+            if (kernel != null) {
+                if (closed) {
+                    stopNow = true;
+                } else {
+                    idleKernels.addLast(new IdleKernel(kernel));
+                }
+            }
+            notifyAll();
+        }
+        if (stopNow) {
+            stopQuietly(kernel);
+        }
+    }
+
+    private JMadKernel startKernel() throws JMadException {
+        JMadKernel kernel = createKernel();
+        assignCpuSlot(kernel);
+        try {
+            kernel.start();
+        } catch (JMadException | RuntimeException e) {
+            freeCpuSlot(kernel);
+            throw e;
+        }
+        if ((supervisor != null) && (kernel instanceof JMadKernelImpl)) {
+            supervisor.supervise((JMadKernelImpl) kernel);
+        }
+        LOGGER.debug("Started new kernel for the pool.");
+        return kernel;
+    }
+
+    /**
+     * gives the kernel the lowest free cpu slot, so that the running kernels are spread deterministically over the
+     * configured cores.
+     */
+    private synchronized void assignCpuSlot(JMadKernel kernel) {
+        if (!(kernel instanceof JMadKernelImpl)) {
+            return;
+        }
+        int slot = usedCpuSlots.nextClearBit(0);
+        usedCpuSlots.set(slot);
+        cpuSlots.put(kernel, slot);
+        ((JMadKernelImpl) kernel).setCpuSlot(slot);
+    }
+
+    private synchronized void freeCpuSlot(JMadKernel kernel) {
+        Integer slot = cpuSlots.remove(kernel);
+        if (slot != null) {
+            usedCpuSlots.clear(slot);
+        }
+    }
+
+    private void stopQuietly(JMadKernel kernel) {
+        try {
+            if (kernel.isMadxRunning()) {
+                kernel.stop();
+            }
+        } catch (JMadException | RuntimeException e) {
+            LOGGER.warn("Error while stopping pooled kernel.", e);
+        } finally {
+            if ((supervisor != null) && (kernel instanceof JMadKernelImpl)) {
+                supervisor.remove((JMadKernelImpl) kernel);
+            }
+            freeCpuSlot(kernel);
+        }
+    }
+
+    /* must be called while holding the lock, so that the executor cannot be shut down meanwhile */
+    private void scheduleMaintenance() {
+        if (!closed) {
+            maintenanceExecutor.execute(this::maintain);
+        }
+    }
+
+    private int getTotalCount() {
+        return idleKernels.size() + leasedKernels.size() + startingCount + stoppingCount;
+    }
+
+    @Override
+    public void close() {
+        List<JMadKernel> toStop = new ArrayList<>();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (IdleKernel idleKernel : idleKernels) {
+                toStop.add(idleKernel.kernel);
+            }
+            idleKernels.clear();
+            if (!leasedKernels.isEmpty()) {
+                LOGGER.warn("Closing kernel pool while {} kernel(s) are still leased. "
+                        + "They will be stopped when released.", leasedKernels.size());
+            }
+            notifyAll();
+        }
+        if (maintenanceExecutor != null) {
+            maintenanceExecutor.shutdown();
+        }
+        for (JMadKernel kernel : toStop) {
+            stopQuietly(kernel);
+        }
+    }
+
+    @Override
+    public synchronized int getIdleCount() {
+        return idleKernels.size();
+    }
+
+    @Override
+    public synchronized int getLeasedCount() {
+        return leasedKernels.size();
+    }
+
+    //
+    // Methods which allow special configuration
+    //
+
+    public synchronized int getMinIdle() {
+        return minIdle;
+    }
+
+    /**
+     * @param minIdle the number of started kernels, which the pool tries to keep ready for leasing
+     */
+    public synchronized void setMinIdle(int minIdle) {
+        checkArgument(minIdle >= 0, "minIdle must not be negative, but was %s.", minIdle);
+        this.minIdle = minIdle;
+    }
+
+    public synchronized int getMaxTotal() {
+        return maxTotal;
+    }
+
+    /**
+     * @param maxTotal the maximum number of MadX processes the pool runs at the same time (including leased ones)
+     */
+    public synchronized void setMaxTotal(int maxTotal) {
+        checkArgument(maxTotal > 0, "maxTotal must be positive, but was %s.", maxTotal);
+        this.maxTotal = maxTotal;
+    }
+
+    public synchronized Long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * @param idleTimeout the time in ms after which idle kernels above minIdle are stopped. If null, idle kernels
+     *            are never evicted.
+     */
+    public synchronized void setIdleTimeout(Long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public synchronized Long getLeaseTimeout() {
+        return leaseTimeout;
+    }
+
+    /**
+     * @param leaseTimeout the maximum time in ms a lease waits for a free kernel, if maxTotal is reached. If null,
+     *            the lease waits forever.
+     */
+    public synchronized void setLeaseTimeout(Long leaseTimeout) {
+        this.leaseTimeout = leaseTimeout;
+    }
+
+    public KernelSupervisor getSupervisor() {
+        return supervisor;
+    }
+
+    /**
+     * @param supervisor the supervisor of the running kernels of the pool. If null (default), they are not supervised.
+     */
+    public void setSupervisor(KernelSupervisor supervisor) {
+        this.supervisor = supervisor;
+    }
+
+    /**
+     * a started kernel together with the time since when it is waiting in the pool
+     */
+    private static class IdleKernel {
+        private final JMadKernel kernel;
+        private final long idleSince = System.currentTimeMillis();
+
+        private IdleKernel(JMadKernel kernel) {
+            this.kernel = kernel;
+        }
+    }
+}
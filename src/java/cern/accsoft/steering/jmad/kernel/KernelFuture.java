@@ -0,0 +1,43 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * The future of an executable which was submitted to a {@link JMadKernelImpl}. Cancelling it before MadX started to
+ * process the executable simply removes it from the submission queue. Cancelling it with
+ * <code>mayInterruptIfRunning</code> while MadX is processing it aborts MadX, which is then recovered by the kernel.
+ * <p>
+ * Note that only this future is able to abort MadX: Cancelling a future which was derived from it (e.g. by
+ * {@link #thenApply(java.util.function.Function)}) does not affect the kernel.
+ *
+ * @param <T> the type of the result
+ */
+class KernelFuture<T> extends CompletableFuture<T> {
+
+    private final Consumer<KernelFuture<?>> abortHandler;
+
+    KernelFuture(Consumer<KernelFuture<?>> abortHandler) {
+        this.abortHandler = abortHandler;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled && mayInterruptIfRunning) {
+            abortHandler.accept(this);
+        }
+        return cancelled;
+    }
+}
@@ -0,0 +1,78 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The health of one kernel as seen by the {@link KernelSupervisor}. The values refer to the current MadX process of
+ * the kernel, i.e. they start again from zero when MadX is restarted.
+ */
+public final class KernelHealth {
+
+    private final long uptimeMillis;
+    private final long executions;
+    private final long rssBytes;
+    private final long cpuTimeNanos;
+    private final double latencyGrowth;
+
+    KernelHealth(long uptimeMillis, long executions, long rssBytes, long cpuTimeNanos, double latencyGrowth) {
+        this.uptimeMillis = uptimeMillis;
+        this.executions = executions;
+        this.rssBytes = rssBytes;
+        this.cpuTimeNanos = cpuTimeNanos;
+        this.latencyGrowth = latencyGrowth;
+    }
+
+    /**
+     * @return the time since MadX was started in ms
+     */
+    public long getUptimeMillis() {
+        return uptimeMillis;
+    }
+
+    /**
+     * @return the number of executions since MadX was started
+     */
+    public long getExecutions() {
+        return executions;
+    }
+
+    /**
+     * @return the resident memory of MadX in bytes, -1 if not sampled yet or not available
+     */
+    public long getRssBytes() {
+        return rssBytes;
+    }
+
+    /**
+     * @return the cpu time consumed by MadX in nanoseconds, -1 if not sampled yet or not available
+     */
+    public long getCpuTimeNanos() {
+        return cpuTimeNanos;
+    }
+
+    /**
+     * @return the largest ratio of the smoothed round trip time of an executable type to the one of its first
+     *         executions, 0.0 if there were too few executions to tell
+     */
+    public double getLatencyGrowth() {
+        return latencyGrowth;
+    }
+
+    @Override
+    public String toString() {
+        return "KernelHealth [uptime=" + TimeUnit.MILLISECONDS.toSeconds(uptimeMillis) + "s, executions=" + executions
+                + ", rssBytes=" + rssBytes + ", cpuTime=" + TimeUnit.NANOSECONDS.toMillis(cpuTimeNanos)
+                + "ms, latencyGrowth=" + latencyGrowth + "]";
+    }
+}
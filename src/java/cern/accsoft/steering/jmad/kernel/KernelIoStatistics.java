@@ -0,0 +1,75 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the data which a kernel writes or lets MadX write: the commands sent to MadX, the result files written by
+ * MadX and the log files. The commands are counted in bytes of their encoding. The log files are counted in characters,
+ * which equals the bytes for the (ASCII) output of MadX. The counters are updated while the kernel runs and are never
+ * reset.
+ */
+public final class KernelIoStatistics {
+
+    private final LongAdder commandBytes = new LongAdder();
+    private final LongAdder resultFileBytes = new LongAdder();
+    private final LongAdder resultFiles = new LongAdder();
+    private final LongAdder logFileBytes = new LongAdder();
+
+    void addCommandBytes(long bytes) {
+        commandBytes.add(bytes);
+    }
+
+    void addResultFile(long bytes) {
+        resultFiles.increment();
+        resultFileBytes.add(bytes);
+    }
+
+    void addLogFileBytes(long bytes) {
+        logFileBytes.add(bytes);
+    }
+
+    /**
+     * @return the number of bytes sent to the input of MadX
+     */
+    public long getCommandBytes() {
+        return commandBytes.sum();
+    }
+
+    /**
+     * @return the number of bytes of all result files written by MadX and parsed by the kernel
+     */
+    public long getResultFileBytes() {
+        return resultFileBytes.sum();
+    }
+
+    /**
+     * @return the number of result files written by MadX and parsed by the kernel
+     */
+    public long getResultFiles() {
+        return resultFiles.sum();
+    }
+
+    /**
+     * @return the number of bytes written to the input, output and error log files
+     */
+    public long getLogFileBytes() {
+        return logFileBytes.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "KernelIoStatistics [commandBytes=" + getCommandBytes() + ", resultFiles=" + getResultFiles()
+                + ", resultFileBytes=" + getResultFileBytes() + ", logFileBytes=" + getLogFileBytes() + "]";
+    }
+}
@@ -0,0 +1,152 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cern.accsoft.steering.jmad.util.ProcTools;
+import cern.accsoft.steering.jmad.util.ResourceReaper;
+
+/**
+ * Keeps track of the kernels in order to find the ones which are not stopped (or closed) by their users. When such a
+ * kernel is garbage collected while its MadX process is still running, the process is destroyed and a warning with
+ * the stack trace of the creation of the kernel is logged.
+ * <p>
+ * The number of running kernels, the leaks found so far and the memory used by the MadX processes are available from
+ * the static methods and via JMX (see {@link cern.accsoft.steering.jmad.kernel.metrics.KernelMetrics}).
+ */
+public final class KernelLeakDetector {
+    private static final Logger LOGGER = LoggerFactory.getLogger(KernelLeakDetector.class);
+
+    private static final Set<Tracker> TRACKERS = ConcurrentHashMap.newKeySet();
+    private static final AtomicLong LEAKED_KERNELS = new AtomicLong();
+
+    private KernelLeakDetector() {
+        /* only static methods */
+    }
+
+    /**
+     * starts to track the given kernel. The creation site of the kernel is taken from the current stack.
+     * 
+     * @param kernel the new kernel
+     * @return the tracker, which must be informed about the process of the kernel
+     */
+    static Tracker track(Object kernel) {
+        Tracker tracker = new Tracker(kernel.getClass().getSimpleName());
+        TRACKERS.add(tracker);
+        ResourceReaper.register(kernel, tracker);
+        return tracker;
+    }
+
+    /**
+     * @return the number of kernels with a running MadX process
+     */
+    public static int getRunningKernelCount() {
+        int count = 0;
+        for (Tracker tracker : TRACKERS) {
+            if (ProcTools.isRunning(tracker.process)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of kernels which were garbage collected without being stopped
+     */
+    public static long getLeakedKernelCount() {
+        return LEAKED_KERNELS.get();
+    }
+
+    /**
+     * @return the sum of the resident set sizes of all running MadX processes in bytes. Processes whose size is not
+     *         available (e.g. not on linux) are not counted.
+     */
+    public static long getMadxRssBytes() {
+        long total = 0;
+        for (Tracker tracker : TRACKERS) {
+            long rss = tracker.getRssBytes();
+            if (rss > 0) {
+                total += rss;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return one line per running kernel with the pid and resident set size of its MadX process
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(getRunningKernelCount()).append(" running kernel(s), ").append(getLeakedKernelCount())
+                .append(" leaked kernel(s), MadX RSS ").append(getMadxRssBytes() / 1024).append(" kB\n");
+        for (Tracker tracker : TRACKERS) {
+            Process process = tracker.process;
+            if (ProcTools.isRunning(process)) {
+                report.append("  ").append(tracker.kernelType).append(": pid=").append(ProcTools.getPid(process))
+                        .append(", rss=").append(tracker.getRssBytes() / 1024).append(" kB\n");
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * the state of one kernel, which is needed to clean up after it. Must not refer to the kernel itself.
+     */
+    static final class Tracker implements Runnable {
+        private final String kernelType;
+        private final Throwable creationSite;
+        private volatile Process process = null;
+
+        private Tracker(String kernelType) {
+            this.kernelType = kernelType;
+            this.creationSite = new Throwable(kernelType + " created here");
+        }
+
+        /**
+         * @param process the newly started MadX process of the kernel, null when it was stopped
+         */
+        void setProcess(Process process) {
+            this.process = process;
+        }
+
+        private long getRssBytes() {
+            Process actualProcess = this.process;
+            if (!ProcTools.isRunning(actualProcess)) {
+                return -1;
+            }
+            Long pid = ProcTools.getPid(actualProcess);
+            return (pid == null) ? -1 : ProcTools.getRssBytes(pid);
+        }
+
+        /**
+         * called when the kernel was garbage collected
+         */
+        @Override
+        public void run() {
+            TRACKERS.remove(this);
+            Process actualProcess = this.process;
+            if (ProcTools.isRunning(actualProcess)) {
+                LEAKED_KERNELS.incrementAndGet();
+                LOGGER.warn("A {} was garbage collected without being stopped. Destroying its MadX process (pid={}). "
+                        + "Stop or close kernels and models when they are no longer needed.", kernelType,
+                        ProcTools.getPid(actualProcess), creationSite);
+                actualProcess.destroy();
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+/**
+ * Profiles which trade the traceability of the commands sent to MadX against the throughput of the kernel.
+ */
+public enum KernelProfile {
+    /**
+     * every command is written to the input log file and flushed immediately by the calling thread. The input log is
+     * not rotated and the command files it calls are kept until the kernel stops. So the log is complete at any time
+     * and can be used to reproduce a problem directly in MadX.
+     */
+    DEVELOPMENT,
+
+    /**
+     * the input log is written asynchronously in batches by a shared background thread and can optionally be sampled
+     * (see {@link JMadKernelConfig#setInputLogSampling(int)}). The log might miss the last commands if the JVM dies.
+     */
+    PRODUCTION;
+}
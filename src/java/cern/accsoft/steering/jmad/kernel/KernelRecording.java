@@ -0,0 +1,210 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.domain.result.ResultType;
+
+/**
+ * An archive of recorded kernel executions, as written by the {@link RecordingJMadKernel} and served by the
+ * {@link ReplayJMadKernel}. The archive is a directory, which contains the composed command and the result file of
+ * each execution together with an index file. The index is appended after each execution, so that also the recording
+ * of a session which ended abruptly can be replayed.
+ * <p>
+ * The commands are stored with the path of the result file replaced by a placeholder, so that the executions are
+ * found again independent of the file the kernel chose for the result.
+ */
+final class KernelRecording {
+
+    /** the index file, each line contains: sequence number, result type, command file and result file (or '-') */
+    static final String INDEX_FILE = "index.txt";
+
+    /** replaces the path of the result file in the recorded commands */
+    static final String RESULT_FILE_PLACEHOLDER = "${jmad.result.file}";
+
+    private static final String FILENAME_COMMAND = "command-%06d.madx";
+    private static final String FILENAME_RESULT = "result-%06d.out";
+    private static final String NO_FILE = "-";
+    private static final String SEPARATOR = "\t";
+
+    private final File directory;
+    private final Map<String, List<Entry>> entriesByCommand = new HashMap<>();
+    private int size = 0;
+
+    private KernelRecording(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * creates a new, empty archive in the given directory. A previous recording in the same directory is replaced.
+     * 
+     * @param directory the directory of the archive
+     * @return the new archive
+     * @throws JMadException if the directory cannot be created
+     */
+    static KernelRecording create(File directory) throws JMadException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new JMadException("Could not create recording directory '" + directory.getAbsolutePath() + "'.");
+        }
+        try {
+            Files.write(new File(directory, INDEX_FILE).toPath(), new byte[0]);
+        } catch (IOException e) {
+            throw new JMadException("Could not create index of recording in '" + directory.getAbsolutePath() + "'.",
+                    e);
+        }
+        return new KernelRecording(directory);
+    }
+
+    /**
+     * reads the index and the commands of an existing archive
+     * 
+     * @param directory the directory of the archive
+     * @return the archive
+     * @throws JMadException if the archive cannot be read
+     */
+    static KernelRecording open(File directory) throws JMadException {
+        KernelRecording recording = new KernelRecording(directory);
+        File indexFile = new File(directory, INDEX_FILE);
+        try {
+            for (String line : Files.readAllLines(indexFile.toPath(), StandardCharsets.UTF_8)) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split(SEPARATOR);
+                if (fields.length != 4) {
+                    throw new JMadException("Invalid line in '" + indexFile.getAbsolutePath() + "': " + line);
+                }
+                String command = new String(Files.readAllBytes(new File(directory, fields[2]).toPath()),
+                        StandardCharsets.UTF_8);
+                File resultFile = NO_FILE.equals(fields[3]) ? null : new File(directory, fields[3]);
+                recording.put(command, new Entry(Integer.parseInt(fields[0]), ResultType.valueOf(fields[1]),
+                        resultFile));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            throw new JMadException("Could not read recording '" + indexFile.getAbsolutePath() + "'.", e);
+        }
+        return recording;
+    }
+
+    /**
+     * composes the executable in the form in which it is stored in the archive
+     * 
+     * @param executable the executable to compose
+     * @return the command, with the path of the result file replaced by a placeholder
+     */
+    static String canonicalCommand(JMadExecutable executable) {
+        String command = executable.compose();
+        File outputFile = executable.getOutputFile();
+        if (outputFile == null) {
+            return command;
+        }
+        return command.replace(outputFile.getAbsolutePath(), RESULT_FILE_PLACEHOLDER);
+    }
+
+    /**
+     * adds an execution to the archive
+     * 
+     * @param command the canonical command (see {@link #canonicalCommand(JMadExecutable)})
+     * @param resultType the type of the result
+     * @param resultFile the result file written by madx, which is copied into the archive. Null for executables
+     *            without result.
+     * @throws JMadException if the archive cannot be written
+     */
+    synchronized void add(String command, ResultType resultType, File resultFile) throws JMadException {
+        int sequence = size + 1;
+        String commandFileName = String.format(FILENAME_COMMAND, sequence);
+        String resultFileName = (resultFile == null) ? NO_FILE : String.format(FILENAME_RESULT, sequence);
+        try {
+            Files.write(new File(directory, commandFileName).toPath(), command.getBytes(StandardCharsets.UTF_8));
+            File archivedResultFile = null;
+            if (resultFile != null) {
+                archivedResultFile = new File(directory, resultFileName);
+                Files.copy(resultFile.toPath(), archivedResultFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            String line = sequence + SEPARATOR + resultType + SEPARATOR + commandFileName + SEPARATOR
+                    + resultFileName + "\n";
+            Files.write(new File(directory, INDEX_FILE).toPath(), line.getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+            put(command, new Entry(sequence, resultType, archivedResultFile));
+        } catch (IOException e) {
+            throw new JMadException("Could not record execution " + sequence + " in '" + directory.getAbsolutePath()
+                    + "'.", e);
+        }
+    }
+
+    private void put(String command, Entry entry) {
+        entriesByCommand.computeIfAbsent(command, key -> new ArrayList<>()).add(entry);
+        size = Math.max(size, entry.getSequence());
+    }
+
+    /**
+     * @param command the canonical command
+     * @return all the recorded executions of the command in the order in which they were recorded
+     */
+    synchronized List<Entry> getEntries(String command) {
+        List<Entry> entries = entriesByCommand.get(command);
+        return (entries == null) ? Collections.<Entry> emptyList() : new ArrayList<>(entries);
+    }
+
+    /**
+     * @return the number of recorded executions
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * one recorded execution
+     */
+    static final class Entry {
+        private final int sequence;
+        private final ResultType resultType;
+        private final File resultFile;
+
+        Entry(int sequence, ResultType resultType, File resultFile) {
+            this.sequence = sequence;
+            this.resultType = resultType;
+            this.resultFile = resultFile;
+        }
+
+        int getSequence() {
+            return sequence;
+        }
+
+        ResultType getResultType() {
+            return resultType;
+        }
+
+        /**
+         * @return the archived result file, null for executables without result
+         */
+        File getResultFile() {
+            return resultFile;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import cern.accsoft.steering.jmad.domain.result.ResultType;
+import cern.accsoft.steering.jmad.domain.result.match.MatchResult;
+import cern.accsoft.steering.jmad.domain.result.match.output.MadxVaryResult;
+import cern.accsoft.steering.jmad.kernel.cmd.Command;
+import cern.accsoft.steering.jmad.kernel.cmd.SetEqual;
+import cern.accsoft.steering.jmad.kernel.cmd.SetListEqual;
+import com.google.common.collect.ImmutableSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records all the commands which changed the state of a MadX process, so that the same state can be re-created in a
+ * new process (e.g. after MadX crashed). Commands which only produce results (twiss, tracking, ...) are not recorded.
+ * <p>
+ * The journal is compacted while recording, so that it does not grow with commands which are repeated over and over:
+ * <ul>
+ * <li>Consecutive assignments of values (see {@link SetEqual} and {@link SetListEqual}) are merged into one block, in
+ * which only the last value for each name is kept.
+ * <li>If an idempotent command (see {@link #IDEMPOTENT_COMMANDS}) is recorded again, and only assignments were
+ * recorded since its last occurrence, then the last occurrence is removed. The assignments around it are merged. Other
+ * commands are always kept: e.g. a free text 'x = x + 1;' or an 'ealign' with 'eoption, add=true' sent twice must also
+ * be replayed twice.
+ * </ul>
+ * Assignments are not merged across other commands, because those (e.g. calls of files) might depend on the values at
+ * that point.
+ * <p>
+ * A recorded command might call a command file, into which the kernel wrote a large executable. The journal then owns
+ * this file: it is deleted as soon as the command is removed from the journal, or the journal is cleared.
+ * <p>
+ * A matching changes the varied parameters in MadX. When the matching is recorded, a block is reserved at its position,
+ * which is filled with the final values of the parameters as soon as the result was parsed (see
+ * {@link #record(JMadExecutable, MatchResult)}). So the order of the journal does not depend on when the result is
+ * parsed.
+ */
+public class KernelStateJournal {
+    private static final Logger LOGGER = LoggerFactory.getLogger(KernelStateJournal.class);
+
+    /** the MadX commands, which result in the same state when they are executed twice in a row */
+    static final Set<String> IDEMPOTENT_COMMANDS = ImmutableSet.of("use", "select", "beam", "option");
+
+    /** the recorded entries, in the order of execution */
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * records the given executable, which was successfully executed by MadX. Executables which provide a result are
+     * ignored, except for matchings.
+     *
+     * @param executable the executed command or task
+     * @param composedCommand the command string which was sent to MadX for this executable
+     * @return true, if the command string itself was recorded and will be replayed, false if it was ignored or only
+     *         the assigned values were recorded
+     */
+    public boolean record(JMadExecutable executable, String composedCommand) {
+        return record(executable, composedCommand, null);
+    }
+
+    /**
+     * records the given executable, which was successfully executed by MadX. Executables which provide a result are
+     * ignored, except for matchings.
+     *
+     * @param executable the executed command or task
+     * @param composedCommand the command string which was sent to MadX for this executable
+     * @param commandFile the command file which is called by the command string, or null if there is none. If the
+     *            command string is recorded, then the journal deletes the file when it is no longer needed.
+     * @return true, if the command string itself was recorded and will be replayed, false if it was ignored or only
+     *         the assigned values were recorded. In the latter case, the caller stays responsible for the command file.
+     */
+    public synchronized boolean record(JMadExecutable executable, String composedCommand, File commandFile) {
+        if (executable instanceof SetEqual) {
+            SetEqual setEqual = (SetEqual) executable;
+            Map<String, Double> assignment = new LinkedHashMap<>();
+            assignment.put(setEqual.getName(), setEqual.getValue());
+            recordAssignments(assignment);
+        } else if (executable instanceof SetListEqual) {
+            recordAssignments(((SetListEqual) executable).getValuePairs());
+        } else if (ResultType.MATCH_RESULT == executable.getResultType()) {
+            entries.add(new Entry(executable));
+        } else if ((executable.getResultType() == null) || (ResultType.NO_RESULT == executable.getResultType())) {
+            if (isIdempotent(executable)) {
+                removeRepeatedCommand(composedCommand);
+            }
+            entries.add(new Entry(composedCommand, commandFile));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * records the final values of the varied parameters of a matching, since the matching changed them in MadX (even
+     * if it did not converge). They are recorded at the position of the matching, which must have been recorded before
+     * by {@link #record(JMadExecutable, String)}. If it was not (e.g. because the journal was cleared in between),
+     * then the values are ignored.
+     *
+     * @param matching the executable of the matching
+     * @param matchResult the result of the matching
+     */
+    public synchronized void record(JMadExecutable matching, MatchResult matchResult) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            Entry entry = entries.get(i);
+            if (entry.matching == matching) {
+                entry.matching = null;
+                for (MadxVaryResult varyResult : matchResult.getVaryParameterResults()) {
+                    entry.assignments.put(varyResult.getName(), varyResult.getFinalValue());
+                }
+                return;
+            }
+        }
+    }
+
+    private void recordAssignments(Map<String, Double> assignments) {
+        if (assignments.isEmpty()) {
+            return;
+        }
+        Entry lastEntry = entries.isEmpty() ? null : entries.get(entries.size() - 1);
+        if ((lastEntry == null) || !lastEntry.isAssignments()) {
+            lastEntry = new Entry(new LinkedHashMap<>());
+            entries.add(lastEntry);
+        }
+        lastEntry.assignments.putAll(assignments);
+    }
+
+    private static boolean isIdempotent(JMadExecutable executable) {
+        return (executable instanceof Command) && IDEMPOTENT_COMMANDS.contains(((Command) executable).getName());
+    }
+
+    /**
+     * removes the last occurrence of the given command, if only assignments were recorded after it. The assignment
+     * blocks before and after the removed command are merged.
+     */
+    private void removeRepeatedCommand(String command) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            Entry entry = entries.get(i);
+            if (entry.isAssignments()) {
+                continue;
+            }
+            if (!command.equals(entry.command)) {
+                return;
+            }
+            entries.remove(i).deleteCommandFile();
+            if ((i > 0) && (i < entries.size()) && entries.get(i - 1).isAssignments()) {
+                entries.get(i - 1).assignments.putAll(entries.remove(i).assignments);
+            }
+            return;
+        }
+    }
+
+    /**
+     * @return the MadX input which re-creates the recorded state in a fresh MadX process
+     */
+    public synchronized String compose() {
+        StringBuilder replay = new StringBuilder();
+        for (Entry entry : entries) {
+            if (entry.command != null) {
+                replay.append(entry.command).append('\n');
+            } else {
+                for (Map.Entry<String, Double> assignment : entry.assignments.entrySet()) {
+                    replay.append(assignment.getKey()).append(" = ").append(assignment.getValue()).append(";\n");
+                }
+            }
+        }
+        return replay.toString();
+    }
+
+    /**
+     * @return the number of entries in the compacted journal
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * removes all the entries, e.g. when a new MadX process is started from scratch
+     */
+    public synchronized void clear() {
+        for (Entry entry : entries) {
+            entry.deleteCommandFile();
+        }
+        entries.clear();
+    }
+
+    /**
+     * either a command which is replayed as it is or a block of assignments. The block of a matching is reserved until
+     * its result is recorded.
+     */
+    private static final class Entry {
+        private final String command;
+        private final File commandFile;
+        private final Map<String, Double> assignments;
+        private JMadExecutable matching;
+
+        private Entry(String command, File commandFile) {
+            this.command = command;
+            this.commandFile = commandFile;
+            this.assignments = null;
+        }
+
+        private Entry(Map<String, Double> assignments) {
+            this.command = null;
+            this.commandFile = null;
+            this.assignments = assignments;
+        }
+
+        private Entry(JMadExecutable matching) {
+            this.command = null;
+            this.commandFile = null;
+            this.assignments = new LinkedHashMap<>();
+            this.matching = matching;
+        }
+
+        private void deleteCommandFile() {
+            if ((commandFile != null) && commandFile.exists() && !commandFile.delete()) {
+                LOGGER.warn("Could not delete command file '{}'.", commandFile.getAbsolutePath());
+            }
+        }
+
+        /**
+         * @return true, if this is a block of assignments to which further assignments can be added
+         */
+        private boolean isAssignments() {
+            return (assignments != null) && (matching == null);
+        }
+    }
+}
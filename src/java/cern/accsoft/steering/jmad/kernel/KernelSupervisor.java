@@ -0,0 +1,399 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cern.accsoft.steering.jmad.util.ProcTools;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the health of running kernels and recycles them before they degrade. Every {@link #getSampleInterval()} ms
+ * the resident memory and the cpu time of each MadX process are sampled from /proc. The cpu time includes the
+ * processes started by MadX (e.g. by 'system' commands). The executions and their round trip times (see
+ * {@link ExecutionPhase#MADX}) are collected as listener of the kernel. A kernel is recycled, if one of the configured
+ * thresholds is passed:
+ * <ul>
+ * <li>the MadX process uses more than {@link #getMaxRssBytes()} of memory,
+ * <li>the kernel executed more than {@link #getMaxExecutions()} executables since MadX was started,
+ * <li>the smoothed round trip time of an executable type grew by more than {@link #getMaxLatencyGrowth()} compared to
+ * the first executions after the start of MadX,
+ * <li>the kernel waits for MadX, but MadX did not consume any cpu time for {@link #getHangTimeout()} ms. Only the
+ * time in which the kernel waits for MadX to be ready counts, not the composing of the commands and the parsing of the
+ * results in java.
+ * </ul>
+ * Recycling restarts MadX and replays the state journal of the kernel (see {@link KernelStateJournal}), so that the
+ * model state is kept, while the tables and other memory accumulated by MadX are gone. The journal is compacted while
+ * recording, so assignments and idempotent commands (e.g. 'use') which are repeated for each execution do not make the
+ * replay longer. The recycling is enqueued into the submission queue of the kernel and therefore never interrupts an
+ * execution. Only a hanging execution is aborted, which then fails.
+ * <p>
+ * All thresholds are disabled (null) by default, except for the hang timeout. The {@link JMadKernelPoolImpl} supervises
+ * its kernels, if a supervisor is injected. Other kernels can be added by {@link #supervise(JMadKernelImpl)}.
+ */
+public class KernelSupervisor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(KernelSupervisor.class);
+
+    private static final long DEFAULT_SAMPLE_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+    private static final long DEFAULT_HANG_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+    /** the number of executions (per executable type) after the start of MadX, which define the baseline latency */
+    private static final int BASELINE_EXECUTIONS = 20;
+
+    /** the weight of a new round trip time in the smoothed latency */
+    private static final double LATENCY_SMOOTHING = 0.05;
+
+    /** the time between two samples in ms */
+    private long sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+
+    /** the maximum resident memory of a MadX process in bytes. If null, the memory is not limited. */
+    private Long maxRssBytes = null;
+
+    /** the maximum number of executions since the start of MadX. If null, they are not limited. */
+    private Long maxExecutions = null;
+
+    /** the maximum ratio of the smoothed latency to the baseline latency. If null, the latency is not checked. */
+    private Double maxLatencyGrowth = null;
+
+    /** the time in ms, the kernel may wait for MadX while it consumes no cpu time. If null, hanging is not detected. */
+    private Long hangTimeout = DEFAULT_HANG_TIMEOUT;
+
+    private final Map<JMadKernelImpl, SupervisedKernel> kernels = new IdentityHashMap<>();
+
+    private final AtomicLong recycleCount = new AtomicLong();
+
+    private ScheduledExecutorService sampler;
+
+    /**
+     * init method called by spring. Starts the periodic sampling of the kernels.
+     */
+    public synchronized void init() {
+        checkState(sampler == null, "Kernel supervisor already initialized.");
+        sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jmad-kernel-supervisor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleWithFixedDelay(this::sample, sampleInterval, sampleInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * stops the sampling. The kernels are not affected.
+     */
+    public void close() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = sampler;
+            sampler = null;
+            for (SupervisedKernel supervised : kernels.values()) {
+                supervised.kernel.removeListener(supervised);
+            }
+            kernels.clear();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * adds the given kernel to the supervised kernels. It stays supervised when it is stopped and started again, until
+     * it is removed.
+     *
+     * @param kernel the kernel to supervise
+     */
+    public synchronized void supervise(JMadKernelImpl kernel) {
+        if (kernels.containsKey(kernel)) {
+            return;
+        }
+        SupervisedKernel supervised = new SupervisedKernel(kernel);
+        kernels.put(kernel, supervised);
+        kernel.addListener(supervised);
+    }
+
+    /**
+     * @param kernel the kernel which shall no longer be supervised
+     */
+    public synchronized void remove(JMadKernelImpl kernel) {
+        SupervisedKernel supervised = kernels.remove(kernel);
+        if (supervised != null) {
+            kernel.removeListener(supervised);
+        }
+    }
+
+    /**
+     * samples all supervised kernels and recycles those which passed a threshold. Called periodically after
+     * {@link #init()}.
+     */
+    void sample() {
+        List<SupervisedKernel> supervisedKernels;
+        synchronized (this) {
+            supervisedKernels = new ArrayList<>(kernels.values());
+        }
+        long now = System.currentTimeMillis();
+        for (SupervisedKernel supervised : supervisedKernels) {
+            try {
+                supervised.sample(now);
+            } catch (RuntimeException e) {
+                /* must not escape, otherwise the scheduled sampling would silently stop */
+                LOGGER.error("Error while sampling kernel.", e);
+            }
+        }
+    }
+
+    /**
+     * @return the health of all supervised kernels, as of the last sample
+     */
+    public synchronized List<KernelHealth> getHealth() {
+        List<KernelHealth> health = new ArrayList<>();
+        for (SupervisedKernel supervised : kernels.values()) {
+            health.add(supervised.getHealth());
+        }
+        return health;
+    }
+
+    /**
+     * @return the number of kernels recycled by this supervisor so far
+     */
+    public long getRecycleCount() {
+        return recycleCount.get();
+    }
+
+    public long getSampleInterval() {
+        return sampleInterval;
+    }
+
+    /**
+     * @param sampleInterval the time between two samples in ms. Must be set before {@link #init()}.
+     */
+    public void setSampleInterval(long sampleInterval) {
+        this.sampleInterval = sampleInterval;
+    }
+
+    public Long getMaxRssBytes() {
+        return maxRssBytes;
+    }
+
+    /**
+     * @param maxRssBytes the maximum resident memory of a MadX process in bytes. If null, the memory is not limited.
+     */
+    public void setMaxRssBytes(Long maxRssBytes) {
+        this.maxRssBytes = maxRssBytes;
+    }
+
+    public Long getMaxExecutions() {
+        return maxExecutions;
+    }
+
+    /**
+     * @param maxExecutions the maximum number of executions since the start of MadX. If null, they are not limited.
+     */
+    public void setMaxExecutions(Long maxExecutions) {
+        this.maxExecutions = maxExecutions;
+    }
+
+    public Double getMaxLatencyGrowth() {
+        return maxLatencyGrowth;
+    }
+
+    /**
+     * @param maxLatencyGrowth the maximum ratio of the smoothed round trip time to the one of the first executions
+     *            after the start of MadX (e.g. 2.0). If null, the latency is not checked.
+     */
+    public void setMaxLatencyGrowth(Double maxLatencyGrowth) {
+        this.maxLatencyGrowth = maxLatencyGrowth;
+    }
+
+    public Long getHangTimeout() {
+        return hangTimeout;
+    }
+
+    /**
+     * @param hangTimeout the time in ms, the kernel may wait for MadX while MadX (and the processes it started)
+     *            consume no cpu time, before it is considered to hang. If null, hanging is not detected.
+     */
+    public void setHangTimeout(Long hangTimeout) {
+        this.hangTimeout = hangTimeout;
+    }
+
+    /**
+     * The state of one supervised kernel. As listener it collects the executions, the rest is sampled.
+     */
+    private class SupervisedKernel implements JMadKernelListener {
+        private final JMadKernelImpl kernel;
+
+        /* collected by the listener methods */
+        private long startTime;
+        private long executions;
+        private final Map<String, LatencyTrend> latencyTrends = new HashMap<>();
+
+        /* sampled */
+        private long rssBytes = -1;
+        private long cpuTimeNanos = -1;
+        private long lastCpuProgress;
+        private boolean recycling = false;
+
+        SupervisedKernel(JMadKernelImpl kernel) {
+            this.kernel = kernel;
+            reset();
+        }
+
+        private synchronized void reset() {
+            startTime = System.currentTimeMillis();
+            executions = 0;
+            latencyTrends.clear();
+            rssBytes = -1;
+            cpuTimeNanos = -1;
+            lastCpuProgress = startTime;
+        }
+
+        @Override
+        public void startedKernel(Process newProcess) {
+            /* also called, when madx was restarted by a recycling or recovery */
+            reset();
+        }
+
+        @Override
+        public void stoppedKernel() {
+            reset();
+        }
+
+        @Override
+        public synchronized void executed(ExecutionTimings timings) {
+            executions++;
+            latencyTrends.computeIfAbsent(timings.getExecutableType(), type -> new LatencyTrend())
+                    .add(timings.getNanos(ExecutionPhase.MADX));
+        }
+
+        void sample(long now) {
+            Process process = kernel.getProcess();
+            Long pid = (process == null) ? null : ProcTools.getPid(process);
+            if ((pid == null) || !kernel.isMadxRunning()) {
+                return;
+            }
+            long rss = ProcTools.getRssBytes(pid);
+            long cpuTime = ProcTools.getProcessTreeCpuTimeNanos(pid);
+            boolean waiting = kernel.isWaitingForMadx();
+
+            String reason;
+            boolean hanging;
+            synchronized (this) {
+                if (!waiting || (cpuTime != cpuTimeNanos)) {
+                    lastCpuProgress = now;
+                }
+                rssBytes = rss;
+                cpuTimeNanos = cpuTime;
+                if (recycling) {
+                    return;
+                }
+                hanging = (hangTimeout != null) && (cpuTimeNanos >= 0) && (now - lastCpuProgress > hangTimeout);
+                reason = hanging ? "no cpu time consumed while waiting for madx for " + (now - lastCpuProgress) + " ms"
+                        : findRecycleReason();
+                if (reason == null) {
+                    return;
+                }
+                recycling = true;
+            }
+            recycle(reason, hanging);
+        }
+
+        /* must be called while holding the lock */
+        private String findRecycleReason() {
+            if ((maxRssBytes != null) && (rssBytes > maxRssBytes)) {
+                return "resident memory of " + rssBytes + " bytes exceeds " + maxRssBytes;
+            }
+            if ((maxExecutions != null) && (executions > maxExecutions)) {
+                return executions + " executions exceed " + maxExecutions;
+            }
+            if (maxLatencyGrowth != null) {
+                for (Map.Entry<String, LatencyTrend> trend : latencyTrends.entrySet()) {
+                    double growth = trend.getValue().getGrowth();
+                    if (growth > maxLatencyGrowth) {
+                        return "latency of " + trend.getKey() + " grew by a factor of " + growth;
+                    }
+                }
+            }
+            return null;
+        }
+
+        private void recycle(String reason, boolean hanging) {
+            LOGGER.warn("Recycling kernel: {}.", reason);
+            recycleCount.incrementAndGet();
+            if (hanging) {
+                /* the execution blocks the submission queue: madx is killed and the kernel recovers by itself */
+                kernel.abortRunningExecution();
+                recycled();
+                return;
+            }
+            kernel.recoverAsync().whenComplete((ignored, exception) -> {
+                if (exception != null) {
+                    LOGGER.error("Recycling of kernel failed.", exception);
+                }
+                recycled();
+            });
+        }
+
+        private synchronized void recycled() {
+            recycling = false;
+        }
+
+        synchronized KernelHealth getHealth() {
+            double latencyGrowth = 0.0;
+            for (LatencyTrend trend : latencyTrends.values()) {
+                latencyGrowth = Math.max(latencyGrowth, trend.getGrowth());
+            }
+            return new KernelHealth(System.currentTimeMillis() - startTime, executions, rssBytes, cpuTimeNanos,
+                    latencyGrowth);
+        }
+    }
+
+    /**
+     * The round trip times of one executable type since the start of MadX: The average of the first executions is the
+     * baseline, all later ones are smoothed exponentially.
+     */
+    private static class LatencyTrend {
+        private int count = 0;
+        private double baselineNanos = 0.0;
+        private double smoothedNanos = 0.0;
+
+        void add(long nanos) {
+            count++;
+            if (count <= BASELINE_EXECUTIONS) {
+                baselineNanos += (nanos - baselineNanos) / count;
+                smoothedNanos = baselineNanos;
+            } else {
+                smoothedNanos += LATENCY_SMOOTHING * (nanos - smoothedNanos);
+            }
+        }
+
+        /**
+         * @return the ratio of the smoothed latency to the baseline, 0.0 as long as there are too few executions to
+         *         tell a trend
+         */
+        double getGrowth() {
+            if ((count < 2 * BASELINE_EXECUTIONS) || (baselineNanos <= 0.0)) {
+                return 0.0;
+            }
+            return smoothedNanos / baselineNanos;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the threads on which the kernels wait for MadX. {@link MadxIoThreads} uses platform threads by default and
+ * virtual threads on java 21 or newer.
+ */
+interface KernelThreadProvider {
+
+    /**
+     * @param namePrefix the prefix of the thread names, followed by a counter
+     * @return a factory for daemon threads
+     */
+    ThreadFactory newThreadFactory(String namePrefix);
+}
@@ -0,0 +1,147 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The threads which handle the streams of all MadX processes of this JVM. They are shared by all kernels, so that
+ * starting and stopping kernels does not create new thread pools each time. All threads are daemon threads within the
+ * thread group 'jmad-madx-io'.
+ * <p>
+ * The output streams of a process can only be read by blocking calls, so each running MadX process keeps two reader
+ * threads busy (stdout and stderr). Idle reader threads are reused by the next process. The log files of all kernels are
+ * written by one single thread, so that slow disks never block the reading of the MadX output.
+ * <p>
+ * The submission queue of each kernel has its own thread, which mostly waits for MadX to become ready. On java 21 or
+ * newer these are virtual threads (unless disabled by the system property {@value #PROP_VIRTUAL_THREADS}), so that
+ * hundreds of kernels do not need hundreds of platform threads for waiting. The stream readers stay platform threads
+ * even then: reading a process pipe blocks the carrier thread of a virtual thread, so that many readers would exhaust
+ * the carrier threads of all virtual threads. So virtual threads only remove the submission threads: each kernel still
+ * needs three platform threads (two stream readers and the process reaper of the JDK), which are about 1500 platform
+ * threads for 500 kernels.
+ * <p>
+ * If enabled, large TFS files are parsed in parallel by a pool of one thread per processor. It is only created when it
+ * is used the first time, and it is separate from the common fork join pool, so that parsing does not compete with the
+ * parallel streams of the application.
+ */
+final class MadxIoThreads {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MadxIoThreads.class);
+
+    /** the system property to disable the virtual threads */
+    static final String PROP_VIRTUAL_THREADS = "cern.jmad.kernel.virtualthreads";
+
+    private static final String VIRTUAL_PROVIDER_CLASS_NAME = "cern.accsoft.steering.jmad.kernel.VirtualThreadProvider";
+
+    private static final ThreadGroup THREAD_GROUP = new ThreadGroup("jmad-madx-io");
+
+    private static final ExecutorService STREAM_READERS = Executors
+            .newCachedThreadPool(daemonThreads("jmad-madx-stream-reader-"));
+
+    private static final ExecutorService LOG_WRITER = Executors
+            .newSingleThreadExecutor(daemonThreads("jmad-madx-log-writer-"));
+
+    private static final KernelThreadProvider WAITER_THREADS = loadProvider();
+
+    private MadxIoThreads() {
+        /* only static methods */
+    }
+
+    /**
+     * reads the given output stream of a MadX process until it ends.
+     *
+     * @param reader the reader of the stream
+     */
+    static void drain(MadxOutputReader reader) {
+        STREAM_READERS.execute(reader);
+    }
+
+    /**
+     * runs the given task on the thread which writes the MadX log files.
+     *
+     * @param task the task which writes to the log files
+     */
+    static void writeLog(Runnable task) {
+        LOG_WRITER.execute(task);
+    }
+
+    /**
+     * @return the executor which parses the parts of large TFS files in parallel
+     */
+    static Executor tfsParsers() {
+        return TfsParsers.EXECUTOR;
+    }
+
+    /**
+     * @return a new executor with one thread, which processes the submitted executables of one kernel
+     */
+    static ExecutorService newSubmissionExecutor() {
+        return Executors.newSingleThreadExecutor(WAITER_THREADS.newThreadFactory("jmad-kernel-submission-"));
+    }
+
+    /**
+     * @return true, if the kernels wait for MadX on virtual threads
+     */
+    static boolean isVirtualThreads() {
+        return !(WAITER_THREADS instanceof PlatformThreadProvider);
+    }
+
+    private static KernelThreadProvider loadProvider() {
+        if (!Boolean.parseBoolean(System.getProperty(PROP_VIRTUAL_THREADS, Boolean.TRUE.toString()))) {
+            LOGGER.debug("Virtual threads are disabled by system property '{}'.", PROP_VIRTUAL_THREADS);
+            return new PlatformThreadProvider();
+        }
+        try {
+            return (KernelThreadProvider) Class.forName(VIRTUAL_PROVIDER_CLASS_NAME).getDeclaredConstructor()
+                    .newInstance();
+        } catch (ClassNotFoundException e) {
+            LOGGER.debug("Virtual threads are not available in this java version.");
+        } catch (ReflectiveOperationException | LinkageError e) {
+            LOGGER.info("Virtual threads are not available: {}", e.toString());
+        }
+        return new PlatformThreadProvider();
+    }
+
+    private static ThreadFactory daemonThreads(String namePrefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(THREAD_GROUP, runnable, namePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * holds the TFS parser threads, so that they are only created when needed
+     */
+    private static final class TfsParsers {
+        private static final Executor EXECUTOR = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(), daemonThreads("jmad-tfs-parser-"));
+    }
+
+    /**
+     * creates daemon platform threads within the thread group of the MadX I/O
+     */
+    private static class PlatformThreadProvider implements KernelThreadProvider {
+        @Override
+        public ThreadFactory newThreadFactory(String namePrefix) {
+            return daemonThreads(namePrefix);
+        }
+    }
+}
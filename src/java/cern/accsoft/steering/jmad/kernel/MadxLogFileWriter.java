@@ -0,0 +1,188 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cern.accsoft.steering.jmad.util.StreamSniffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes one stream of MadX (input or output) to a log file, without blocking the thread which produces the lines: the
+ * lines are queued and written in batches by the shared log writer thread (see {@link MadxIoThreads}). If the disk
+ * cannot keep up and the queue is full, lines are dropped and a note about it is written to the log instead.
+ * <p>
+ * In synchronous mode each line is written and flushed immediately by the calling thread instead, so that the log is
+ * complete at any time (e.g. when the JVM dies).
+ * <p>
+ * When the log file grows above the maximum size, it is rotated: the current file is renamed by appending '.1' (replacing
+ * a previous one) and a new file is started. So at most about twice the maximum size is used on disk. In synchronous
+ * mode the file is not rotated, so that it contains all the lines from the start (e.g. to run the whole input log in
+ * MadX again).
+ * <p>
+ * The writer implements {@link Runnable}, so that it is closed automatically by the {@link MadxOutputReader} when the
+ * stream ends.
+ */
+class MadxLogFileWriter implements StreamSniffer, Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MadxLogFileWriter.class);
+
+    /** the suffix of the rotated log file */
+    static final String SUFFIX_ROTATED = ".1";
+
+    private static final int MAX_QUEUED_LINES = 10000;
+
+    private final File file;
+    private final long maxFileSize;
+    private final KernelIoStatistics statistics;
+
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(MAX_QUEUED_LINES);
+    private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+    private final AtomicLong droppedLines = new AtomicLong();
+    private volatile boolean synchronous = false;
+
+    /*
+     * guarded by this
+     */
+    private BufferedWriter writer = null;
+    private long fileSize = 0;
+    private boolean closed = false;
+
+    MadxLogFileWriter(File file, long maxFileSize) {
+        this(file, maxFileSize, null);
+    }
+
+    /**
+     * @param file the log file
+     * @param maxFileSize the size above which the file is rotated
+     * @param statistics the statistics of the kernel, to which the written bytes are added. May be null.
+     */
+    MadxLogFileWriter(File file, long maxFileSize, KernelIoStatistics statistics) {
+        this.file = file;
+        this.maxFileSize = maxFileSize;
+        this.statistics = statistics;
+    }
+
+    @Override
+    public void processNewLine(String newLine) {
+        if (!queue.offer(newLine)) {
+            droppedLines.incrementAndGet();
+        }
+        if (synchronous) {
+            writeQueuedLines();
+        } else {
+            scheduleWrite();
+        }
+    }
+
+    /**
+     * @param synchronous true, if the lines shall be written and flushed immediately by the calling thread (and the
+     *            file shall not be rotated), false if they shall be written asynchronously in batches (default)
+     */
+    void setSynchronous(boolean synchronous) {
+        this.synchronous = synchronous;
+    }
+
+    /**
+     * closes the log file when the stream ended
+     */
+    @Override
+    public void run() {
+        close();
+    }
+
+    /**
+     * writes all queued lines and closes the file. Lines which arrive afterwards are ignored.
+     */
+    synchronized void close() {
+        writeQueuedLines();
+        closeWriter();
+        closed = true;
+    }
+
+    private void scheduleWrite() {
+        if (writeScheduled.compareAndSet(false, true)) {
+            MadxIoThreads.writeLog(() -> {
+                writeScheduled.set(false);
+                writeQueuedLines();
+            });
+        }
+    }
+
+    private synchronized void writeQueuedLines() {
+        if (closed) {
+            queue.clear();
+            return;
+        }
+        try {
+            String line;
+            while ((line = queue.poll()) != null) {
+                writeLine(line);
+            }
+            long dropped = droppedLines.getAndSet(0);
+            if (dropped > 0) {
+                writeLine("[jmad: " + dropped + " lines of MadX output were dropped, because the log was too slow]");
+            }
+            if (writer != null) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Error while writing MadX log file '" + file.getAbsolutePath() + "'. Logging stopped.", e);
+            closeWriter();
+            closed = true;
+            queue.clear();
+        }
+    }
+
+    private void writeLine(String line) throws IOException {
+        if (writer == null) {
+            writer = new BufferedWriter(new FileWriter(file));
+            fileSize = 0;
+        }
+        writer.write(line);
+        writer.newLine();
+        fileSize += line.length() + 1;
+        if (statistics != null) {
+            statistics.addLogFileBytes(line.length() + 1);
+        }
+        if (!synchronous && (fileSize > maxFileSize)) {
+            rotate();
+        }
+    }
+
+    private void rotate() throws IOException {
+        closeWriter();
+        Files.move(file.toPath(), new File(file.getAbsolutePath() + SUFFIX_ROTATED).toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            LOGGER.warn("Error while closing MadX log file '" + file.getAbsolutePath() + "'.", e);
+        }
+        writer = null;
+    }
+}
@@ -0,0 +1,80 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cern.accsoft.steering.jmad.util.StreamSniffer;
+
+/**
+ * Keeps the last lines of one output stream of MadX in memory, so that errors can be reported without reading back log
+ * files. The memory used is bounded: only a fixed number of lines is kept and very long lines are truncated.
+ */
+class MadxOutputBuffer implements StreamSniffer {
+
+    /** lines longer than this are truncated */
+    static final int MAX_LINE_LENGTH = 1000;
+
+    private static final String TRUNCATION_MARK = " [...]";
+
+    private final String[] lines;
+
+    /** the index at which the next line will be stored */
+    private int nextIndex = 0;
+
+    /** the number of lines which are currently stored */
+    private int size = 0;
+
+    MadxOutputBuffer(int capacity) {
+        checkArgument(capacity > 0, "capacity must be positive, but was " + capacity);
+        this.lines = new String[capacity];
+    }
+
+    @Override
+    public synchronized void processNewLine(String newLine) {
+        lines[nextIndex] = truncate(newLine);
+        nextIndex = (nextIndex + 1) % lines.length;
+        if (size < lines.length) {
+            size++;
+        }
+    }
+
+    /**
+     * @param maxLines the maximum number of lines to return
+     * @return the last lines (at most maxLines), the oldest one first
+     */
+    synchronized List<String> tail(int maxLines) {
+        int count = Math.min(maxLines, size);
+        List<String> tail = new ArrayList<>(count);
+        for (int i = count; i > 0; i--) {
+            tail.add(lines[Math.floorMod(nextIndex - i, lines.length)]);
+        }
+        return tail;
+    }
+
+    /**
+     * @return the maximum number of lines which are kept
+     */
+    int getCapacity() {
+        return lines.length;
+    }
+
+    private static String truncate(String line) {
+        if (line.length() <= MAX_LINE_LENGTH) {
+            return line;
+        }
+        return line.substring(0, MAX_LINE_LENGTH) + TRUNCATION_MARK;
+    }
+}
@@ -0,0 +1,66 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import cern.accsoft.steering.jmad.util.StreamSniffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads one output stream of the MadX process line by line and passes each line to the registered
+ * {@link StreamSniffer}s (e.g. the in-memory {@link MadxOutputBuffer} and the {@link MadxLogFileWriter}). When the
+ * stream ends (i.e. MadX terminated), the sniffers which also implement {@link Runnable} are notified by calling their
+ * run method.
+ */
+class MadxOutputReader implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MadxOutputReader.class);
+
+    private final InputStream inputStream;
+    private final String streamName;
+    private final List<StreamSniffer> sniffers = new CopyOnWriteArrayList<>();
+
+    MadxOutputReader(InputStream inputStream, String streamName) {
+        this.inputStream = inputStream;
+        this.streamName = streamName;
+    }
+
+    void addSniffer(StreamSniffer sniffer) {
+        sniffers.add(sniffer);
+    }
+
+    @Override
+    public void run() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                for (StreamSniffer sniffer : sniffers) {
+                    sniffer.processNewLine(line);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Error while reading MadX " + streamName + ".", e);
+        } finally {
+            for (StreamSniffer sniffer : sniffers) {
+                if (sniffer instanceof Runnable) {
+                    ((Runnable) sniffer).run();
+                }
+            }
+        }
+    }
+}
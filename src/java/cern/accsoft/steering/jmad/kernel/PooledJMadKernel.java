@@ -0,0 +1,347 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.domain.result.Result;
+import cern.accsoft.steering.jmad.util.JMadPreferences;
+import cern.accsoft.steering.jmad.util.TempFileUtil;
+
+/**
+ * A kernel which does not start its own MadX process, but leases an already started kernel from a
+ * {@link JMadKernelPool} when it is started and gives it back when it is stopped. It can therefore be injected into a
+ * model instead of a {@link JMadKernelImpl} (see the 'pooledJmadKernel' bean), which then skips the start-up of MadX
+ * during model initialization.
+ */
+public class PooledJMadKernel implements JMadKernel, JMadKernelConfig {
+
+    /** the pool from which the kernels are leased (injected by spring) */
+    private JMadKernelPool pool;
+
+    /** the currently leased kernel. Null, if not started. */
+    private JMadKernel delegate = null;
+
+    /** The preferences to be injected */
+    private JMadPreferences preferences;
+
+    /** the file util to be injected. Model files are extracted to a directory related to this kernel. */
+    private TempFileUtil fileUtil;
+
+    private final List<JMadKernelListener> listeners = new ArrayList<>();
+
+    /*
+     * the configuration, which is applied to each leased kernel
+     */
+    private Long timeout = null;
+    private boolean keepOutputFile = true;
+    private Boolean cleanupDirs = null;
+    private ReadyHandshake readyHandshake = null;
+    private boolean parallelBatchParsing = false;
+    private Boolean autoRecover = null;
+    private KernelProfile profile = null;
+    private int inputLogSampling = 1;
+    private Integer commandFileThreshold = null;
+
+    @Override
+    public synchronized void start() throws JMadException {
+        checkState(pool != null, "pool not injected. Fix Spring configuration");
+        if (delegate != null) {
+            throw new JMadException("Kernel already started. Stop it first.");
+        }
+        delegate = pool.lease();
+        configure(delegate);
+        for (JMadKernelListener listener : listeners) {
+            delegate.addListener(listener);
+            if (delegate instanceof JMadKernelImpl) {
+                listener.startedKernel(((JMadKernelImpl) delegate).getProcess());
+            }
+        }
+    }
+
+    @Override
+    public synchronized int stop() throws JMadException {
+        if (delegate == null) {
+            return 0;
+        }
+        JMadKernel leasedKernel = delegate;
+        delegate = null;
+        for (JMadKernelListener listener : listeners) {
+            leasedKernel.removeListener(listener);
+        }
+        pool.release(leasedKernel);
+
+        if (isCleanupDirs() && (fileUtil != null)) {
+            fileUtil.cleanup(this);
+        }
+        for (JMadKernelListener listener : listeners) {
+            listener.stoppedKernel();
+        }
+        /* the process itself is stopped asynchronously by the pool */
+        return 0;
+    }
+
+    @Override
+    public Result execute(JMadExecutable executable) throws JMadException {
+        return getDelegate().execute(executable);
+    }
+
+    @Override
+    public CompletableFuture<Result> executeAsync(JMadExecutable executable, Long executableTimeout) {
+        try {
+            return getDelegate().executeAsync(executable, executableTimeout);
+        } catch (JMadException e) {
+            CompletableFuture<Result> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    @Override
+    public List<Result> executeBatch(List<? extends JMadExecutable> executables) throws JMadException {
+        return getDelegate().executeBatch(executables);
+    }
+
+    @Override
+    public void recover() throws JMadException {
+        getDelegate().recover();
+    }
+
+    private synchronized JMadKernel getDelegate() throws JMadException {
+        if (delegate == null) {
+            throw new JMadException("MadX is not running -> kernel must be started first.");
+        }
+        return delegate;
+    }
+
+    private void configure(JMadKernel kernel) {
+        if (kernel instanceof JMadKernelConfig) {
+            JMadKernelConfig config = (JMadKernelConfig) kernel;
+            config.setTimeout(timeout);
+            config.setKeepOutputFile(keepOutputFile);
+            if (cleanupDirs != null) {
+                config.setCleanupDirs(cleanupDirs);
+            }
+            config.setReadyHandshake(readyHandshake);
+            config.setParallelBatchParsing(parallelBatchParsing);
+            config.setAutoRecover(autoRecover);
+            config.setProfile(profile);
+            config.setInputLogSampling(inputLogSampling);
+            if (commandFileThreshold != null) {
+                config.setCommandFileThreshold(commandFileThreshold);
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean isMadxRunning() {
+        return (delegate != null) && delegate.isMadxRunning();
+    }
+
+    @Override
+    public synchronized void addListener(JMadKernelListener listener) {
+        listeners.add(listener);
+        if (delegate != null) {
+            delegate.addListener(listener);
+        }
+    }
+
+    @Override
+    public synchronized void removeListener(JMadKernelListener listener) {
+        listeners.remove(listener);
+        if (delegate != null) {
+            delegate.removeListener(listener);
+        }
+    }
+
+    @Override
+    public synchronized File getOutputFile() {
+        if (delegate == null) {
+            return null;
+        }
+        return delegate.getOutputFile();
+    }
+
+    @Override
+    public synchronized KernelIoStatistics getIoStatistics() {
+        if (delegate == null) {
+            return new KernelIoStatistics();
+        }
+        return delegate.getIoStatistics();
+    }
+
+    //
+    // Methods which allow special configuration
+    //
+
+    @Override
+    public synchronized Long getTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public synchronized void setTimeout(Long timeout) {
+        this.timeout = timeout;
+        if (delegate != null) {
+            configure(delegate);
+        }
+    }
+
+    @Override
+    public synchronized void setKeepOutputFile(boolean keepOutputFile) {
+        this.keepOutputFile = keepOutputFile;
+        if (delegate != null) {
+            configure(delegate);
+        }
+    }
+
+    @Override
+    public synchronized boolean isKeepOutputFile() {
+        return keepOutputFile;
+    }
+
+    @Override
+    public synchronized void setCleanupDirs(boolean cleanupDirs) {
+        this.cleanupDirs = cleanupDirs;
+        if (delegate != null) {
+            configure(delegate);
+        }
+    }
+
+    @Override
+    public synchronized boolean isCleanupDirs() {
+        if (this.cleanupDirs != null) {
+            return cleanupDirs;
+        }
+        return (preferences == null) || preferences.isCleanupKernelFiles();
+    }
+
+    @Override
+    public synchronized void setReadyHandshake(ReadyHandshake readyHandshake) {
+        this.readyHandshake = readyHandshake;
+        if (delegate != null) {
+            configure(delegate);
+        }
+    }
+
+    @Override
+    public synchronized ReadyHandshake getReadyHandshake() {
+        if (this.readyHandshake != null) {
+            return readyHandshake;
+        }
+        if (delegate instanceof JMadKernelConfig) {
+            return ((JMadKernelConfig) delegate).getReadyHandshake();
+        }
+        return (preferences == null) ? null : preferences.getReadyHandshake();
+    }
+
+    @Override
+    public synchronized void setParallelBatchParsing(boolean parallelBatchParsing) {
+        this.parallelBatchParsing = parallelBatchParsing;
+        if (delegate != null) {
+            configure(delegate);
+        }
+    }
+
+    @Override
+    public synchronized boolean isParallelBatchParsing() {
+        return parallelBatchParsing;
+    }
+
+    @Override
+    public synchronized void setAutoRecover(Boolean autoRecover) {
+        this.autoRecover = autoRecover;
+        if (delegate != null) {
+            configure(delegate);
+        }
+    }
+
+    @Override
+    public synchronized boolean isAutoRecover() {
+        if (this.autoRecover != null) {
+            return autoRecover;
+        }
+        if (delegate instanceof JMadKernelConfig) {
+            return ((JMadKernelConfig) delegate).isAutoRecover();
+        }
+        return (preferences != null) && preferences.isAutoRecoverKernels();
+    }
+
+    @Override
+    public synchronized void setProfile(KernelProfile profile) {
+        this.profile = profile;
+        if (delegate != null) {
+            configure(delegate);
+        }
+    }
+
+    @Override
+    public synchronized KernelProfile getProfile() {
+        if (this.profile != null) {
+            return profile;
+        }
+        if (delegate instanceof JMadKernelConfig) {
+            return ((JMadKernelConfig) delegate).getProfile();
+        }
+        return (preferences == null) ? null : preferences.getKernelProfile();
+    }
+
+    @Override
+    public synchronized void setInputLogSampling(int inputLogSampling) {
+        this.inputLogSampling = inputLogSampling;
+        if (delegate != null) {
+            configure(delegate);
+        }
+    }
+
+    @Override
+    public synchronized int getInputLogSampling() {
+        return inputLogSampling;
+    }
+
+    @Override
+    public synchronized void setCommandFileThreshold(int commandFileThreshold) {
+        this.commandFileThreshold = commandFileThreshold;
+        if (delegate != null) {
+            configure(delegate);
+        }
+    }
+
+    @Override
+    public synchronized int getCommandFileThreshold() {
+        if (this.commandFileThreshold != null) {
+            return commandFileThreshold;
+        }
+        if (delegate instanceof JMadKernelConfig) {
+            return ((JMadKernelConfig) delegate).getCommandFileThreshold();
+        }
+        return JMadKernelImpl.DEFAULT_COMMAND_FILE_THRESHOLD;
+    }
+
+    public void setPool(JMadKernelPool pool) {
+        this.pool = pool;
+    }
+
+    public void setPreferences(JMadPreferences preferences) {
+        this.preferences = preferences;
+    }
+
+    public void setFileUtil(TempFileUtil fileUtil) {
+        this.fileUtil = fileUtil;
+    }
+}
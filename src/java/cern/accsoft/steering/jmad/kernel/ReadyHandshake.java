@@ -0,0 +1,35 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+/**
+ * The ways in which the kernel can find out, that MadX has finished all the commands sent so far.
+ */
+public enum ReadyHandshake {
+    /**
+     * MadX prints a unique token to its standard output, which is detected while reading the output stream. This
+     * costs no additional process and the kernel is woken up as soon as the token arrives.
+     * <p>
+     * It only works if MadX flushes its standard output after each print. MadX writes it through the buffered C
+     * stdio, which flushes only full blocks when the output is a pipe. So the kernels start MadX with 'stdbuf -oL'
+     * (see {@link cern.accsoft.steering.jmad.util.JMadPreferences#isMadxLineBuffered()}) and use this handshake by
+     * default if this is possible.
+     */
+    STDOUT_SENTINEL,
+
+    /**
+     * MadX creates a file through a 'system' command, which wakes up the kernel (polling the file, on platforms where
+     * the directory cannot be watched). This forks a shell within MadX for each round-trip, but does not depend on how
+     * MadX buffers its output. This is the default if MadX cannot be started line buffered.
+     */
+    READY_FILE;
+}
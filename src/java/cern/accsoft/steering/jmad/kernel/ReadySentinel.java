@@ -0,0 +1,163 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.util.FileMonitor.ProcessTerminatedUnexpectedlyException;
+import cern.accsoft.steering.jmad.util.FileMonitor.WaitingFailedException;
+import cern.accsoft.steering.jmad.util.ProcTools;
+import cern.accsoft.steering.jmad.util.StreamSniffer;
+
+/**
+ * Detects the tokens which are printed by MadX for the {@link ReadyHandshake#STDOUT_SENTINEL} handshake. Each token
+ * consists of a prefix unique to this sentinel and an increasing sequence number. Waiting for a token returns as soon
+ * as this token, or any later one, was printed. Tokens of round-trips which timed out before are therefore harmless.
+ * <p>
+ * The sentinel is registered as sniffer of the standard output of MadX. When this stream ends, {@link #run()} is
+ * called which wakes up all waiting threads.
+ * <p>
+ * The waiting uses a {@link Lock} instead of the monitor of the sentinel: a virtual thread which waits on a monitor
+ * blocks its carrier thread (see {@link MadxIoThreads}).
+ */
+class ReadySentinel implements StreamSniffer, Runnable {
+
+    private static final String TOKEN_PREFIX = "JMAD-READY-";
+
+    /** the maximum time to wait, before the process is checked for termination. in milliseconds */
+    private static final long PROCESS_CHECK_INTERVAL = 1000;
+
+    private final String prefix = TOKEN_PREFIX + UUID.randomUUID().toString().replace("-", "") + "-";
+    private final Process process;
+
+    private long lastRequestedSequence = 0;
+    private long lastSeenSequence = 0;
+    private boolean streamClosed = false;
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition tokenArrived = lock.newCondition();
+
+    ReadySentinel(Process process) {
+        this.process = process;
+    }
+
+    /**
+     * @return the sequence number for the next round-trip
+     */
+    long nextSequence() {
+        lock.lock();
+        try {
+            return ++lastRequestedSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param sequence the sequence of the round-trip
+     * @return the MadX command which prints the token of the given sequence
+     */
+    String command(long sequence) {
+        return "print, text=\"" + prefix + sequence + "\";";
+    }
+
+    @Override
+    public void processNewLine(String newLine) {
+        /* compare the full line: the echo of the print command contains the token as well */
+        String line = newLine.trim();
+        if (!line.startsWith(prefix)) {
+            return;
+        }
+        long sequence;
+        try {
+            sequence = Long.parseLong(line.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            /* not our token */
+            return;
+        }
+        lock.lock();
+        try {
+            lastSeenSequence = Math.max(lastSeenSequence, sequence);
+            tokenArrived.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void run() {
+        processTerminated();
+    }
+
+    /**
+     * lets all waiting threads fail immediately. Called when the output stream of MadX ends or when MadX was killed on
+     * purpose (in which case the stream might stay open for a while, if MadX started child processes).
+     */
+    void processTerminated() {
+        lock.lock();
+        try {
+            streamClosed = true;
+            tokenArrived.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * waits until the token of the given sequence was printed by MadX.
+     *
+     * @param sequence the sequence to wait for
+     * @param timeout the maximum time to wait in ms. If null, we wait forever.
+     * @return true if the token arrived, false if the timeout was reached
+     * @throws JMadException if MadX terminated or the waiting was interrupted
+     */
+    boolean await(long sequence, Long timeout) throws JMadException {
+        lock.lock();
+        try {
+            return awaitLocked(sequence, timeout);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean awaitLocked(long sequence, Long timeout) throws JMadException {
+        long startTime = System.currentTimeMillis();
+        while (lastSeenSequence < sequence) {
+            if (streamClosed || !ProcTools.isRunning(process)) {
+                throw new ProcessTerminatedUnexpectedlyException("process '" + process.toString()
+                        + "' terminated while waiting for ready-token " + sequence + " - maybe there was some error!");
+            }
+
+            long delay = PROCESS_CHECK_INTERVAL;
+            if (timeout != null) {
+                long remaining = timeout - (System.currentTimeMillis() - startTime);
+                if (remaining <= 0) {
+                    return false;
+                }
+                delay = Math.min(delay, remaining);
+            }
+
+            try {
+                tokenArrived.await(delay, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new WaitingFailedException("waiting for ready-token " + sequence + " was interrupted", e);
+            }
+        }
+        return true;
+    }
+}
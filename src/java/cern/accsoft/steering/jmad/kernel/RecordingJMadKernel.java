@@ -0,0 +1,313 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.domain.result.Result;
+import cern.accsoft.steering.jmad.domain.result.ResultType;
+
+/**
+ * A kernel which passes all executions to another kernel and records them: the composed command of each executable
+ * and the result file written by MadX are stored in a directory. A {@link ReplayJMadKernel} can then serve the same
+ * results without a MadX process, which makes it possible to replay real sessions (e.g. model initialization, response
+ * matrix calculation or matching) in load tests or micro benchmarks of the java side.
+ * <p>
+ * Executables without result are recorded when they are submitted, executables with result as soon as MadX has
+ * written the result. So with asynchronous executions, the order in the archive might differ from the order of
+ * submission, but the order of the executions of one and the same command is always kept. Only executions submitted
+ * through this kernel are recorded, not those submitted directly to the delegate.
+ * <p>
+ * The configuration (see {@link JMadKernelConfig}) is passed on to the delegate, so the delegate has to implement it,
+ * if the configuration is used (as e.g. by the models).
+ * <p>
+ * Usage:
+ * 
+ * <pre>
+ * JMadKernel kernel = new RecordingJMadKernel(jmadKernel, new File(&quot;recording&quot;));
+ * </pre>
+ */
+public class RecordingJMadKernel implements JMadKernel, JMadKernelConfig {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RecordingJMadKernel.class);
+
+    private static final String FILENAME_PENDING_RESULT = "pending-result.out";
+
+    private final JMadKernel delegate;
+    private final KernelRecording recording;
+
+    /** set as output file to the executables while their command is recorded. It is never written. */
+    private final File pendingOutputFile;
+
+    /** the executables with result, which were submitted through this kernel and are not finished yet */
+    private final Set<JMadExecutable> pendingExecutables = Collections
+            .newSetFromMap(Collections.synchronizedMap(new IdentityHashMap<>()));
+
+    /**
+     * @param delegate the kernel, which executes the executables
+     * @param directory the directory for the recording. A previous recording in this directory is replaced.
+     * @throws JMadException if the directory cannot be created
+     */
+    public RecordingJMadKernel(JMadKernel delegate, File directory) throws JMadException {
+        this.delegate = delegate;
+        this.recording = KernelRecording.create(directory);
+        this.pendingOutputFile = new File(directory, FILENAME_PENDING_RESULT);
+        delegate.addListener(new JMadKernelListener() {
+            @Override
+            public void startedKernel(Process newProcess) {
+                /* nothing to do */
+            }
+
+            @Override
+            public void stoppedKernel() {
+                /* nothing to do */
+            }
+
+            @Override
+            public void resultFileWritten(JMadExecutable executable, File resultFile) {
+                if (pendingExecutables.remove(executable)) {
+                    record(executable, resultFile);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void start() throws JMadException {
+        delegate.start();
+    }
+
+    @Override
+    public int stop() throws JMadException {
+        return delegate.stop();
+    }
+
+    @Override
+    public Result execute(JMadExecutable executable) throws JMadException {
+        submitted(executable);
+        try {
+            return delegate.execute(executable);
+        } finally {
+            pendingExecutables.remove(executable);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Result> executeAsync(JMadExecutable executable, Long executableTimeout) {
+        submitted(executable);
+        CompletableFuture<Result> future = delegate.executeAsync(executable, executableTimeout);
+        /* the future of the delegate is returned, so that cancelling it still reaches the delegate */
+        future.whenComplete((result, exception) -> pendingExecutables.remove(executable));
+        return future;
+    }
+
+    @Override
+    public List<Result> executeBatch(List<? extends JMadExecutable> executables) throws JMadException {
+        for (JMadExecutable executable : executables) {
+            submitted(executable);
+        }
+        try {
+            return delegate.executeBatch(executables);
+        } finally {
+            pendingExecutables.removeAll(executables);
+        }
+    }
+
+    /**
+     * records the executable, if it does not produce a result. Executables with result are remembered, so that the
+     * listener records them when the result file is available.
+     */
+    private void submitted(JMadExecutable executable) {
+        File outputFile = executable.getOutputFile();
+        /* some executables only produce a result if they have an output file, which the kernel sets later on */
+        executable.setOutputFile((outputFile == null) ? pendingOutputFile : outputFile);
+        try {
+            if (JMadKernelImpl.hasResult(executable)) {
+                pendingExecutables.add(executable);
+            } else {
+                record(executable, null);
+            }
+        } finally {
+            /* the executable is handed to the delegate as it was given to us */
+            executable.setOutputFile(outputFile);
+        }
+    }
+
+    private void record(JMadExecutable executable, File resultFile) {
+        ResultType resultType = JMadKernelImpl.hasResult(executable) ? executable.getResultType()
+                : ResultType.NO_RESULT;
+        try {
+            recording.add(KernelRecording.canonicalCommand(executable), resultType, resultFile);
+        } catch (JMadException e) {
+            /* the recording must not disturb the session */
+            LOGGER.warn("Could not record execution of " + executable.getClass().getSimpleName() + ".", e);
+        }
+    }
+
+    @Override
+    public void recover() throws JMadException {
+        delegate.recover();
+    }
+
+    @Override
+    public boolean isMadxRunning() {
+        return delegate.isMadxRunning();
+    }
+
+    @Override
+    public void addListener(JMadKernelListener listener) {
+        delegate.addListener(listener);
+    }
+
+    @Override
+    public void removeListener(JMadKernelListener listener) {
+        delegate.removeListener(listener);
+    }
+
+    @Override
+    public File getOutputFile() {
+        return delegate.getOutputFile();
+    }
+
+    @Override
+    public KernelIoStatistics getIoStatistics() {
+        return delegate.getIoStatistics();
+    }
+
+    /**
+     * @return the configuration of the delegate
+     * @throws UnsupportedOperationException if the delegate cannot be configured
+     */
+    private JMadKernelConfig getConfig() {
+        if (delegate instanceof JMadKernelConfig) {
+            return (JMadKernelConfig) delegate;
+        }
+        throw new UnsupportedOperationException("The kernel " + delegate.getClass().getSimpleName()
+                + " cannot be configured.");
+    }
+
+    //
+    // Methods which allow special configuration
+    //
+
+    @Override
+    public Long getTimeout() {
+        return getConfig().getTimeout();
+    }
+
+    @Override
+    public void setTimeout(Long timeout) {
+        getConfig().setTimeout(timeout);
+    }
+
+    @Override
+    public void setKeepOutputFile(boolean keepOutputFile) {
+        getConfig().setKeepOutputFile(keepOutputFile);
+    }
+
+    @Override
+    public boolean isKeepOutputFile() {
+        return getConfig().isKeepOutputFile();
+    }
+
+    @Override
+    public void setCleanupDirs(boolean cleanupDirs) {
+        getConfig().setCleanupDirs(cleanupDirs);
+    }
+
+    @Override
+    public boolean isCleanupDirs() {
+        return getConfig().isCleanupDirs();
+    }
+
+    @Override
+    public void setReadyHandshake(ReadyHandshake readyHandshake) {
+        getConfig().setReadyHandshake(readyHandshake);
+    }
+
+    @Override
+    public ReadyHandshake getReadyHandshake() {
+        return getConfig().getReadyHandshake();
+    }
+
+    @Override
+    public void setParallelBatchParsing(boolean parallelBatchParsing) {
+        getConfig().setParallelBatchParsing(parallelBatchParsing);
+    }
+
+    @Override
+    public boolean isParallelBatchParsing() {
+        return getConfig().isParallelBatchParsing();
+    }
+
+    @Override
+    public void setAutoRecover(Boolean autoRecover) {
+        getConfig().setAutoRecover(autoRecover);
+    }
+
+    @Override
+    public boolean isAutoRecover() {
+        return getConfig().isAutoRecover();
+    }
+
+    @Override
+    public void setProfile(KernelProfile profile) {
+        getConfig().setProfile(profile);
+    }
+
+    @Override
+    public KernelProfile getProfile() {
+        return getConfig().getProfile();
+    }
+
+    @Override
+    public void setInputLogSampling(int sampling) {
+        getConfig().setInputLogSampling(sampling);
+    }
+
+    @Override
+    public int getInputLogSampling() {
+        return getConfig().getInputLogSampling();
+    }
+
+    @Override
+    public void setCommandFileThreshold(int threshold) {
+        getConfig().setCommandFileThreshold(threshold);
+    }
+
+    @Override
+    public int getCommandFileThreshold() {
+        return getConfig().getCommandFileThreshold();
+    }
+
+    /**
+     * @return the directory, into which the executions are recorded
+     */
+    public File getRecordingDirectory() {
+        return recording.getDirectory();
+    }
+
+    /**
+     * @return the number of executions recorded so far
+     */
+    public int getRecordedCount() {
+        return recording.size();
+    }
+}
@@ -0,0 +1,180 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.domain.result.Result;
+
+/**
+ * A kernel without MadX process, which serves the results recorded by a {@link RecordingJMadKernel}. Each executable
+ * is composed as a real kernel would do it and the result is parsed from the recorded result file of the same command.
+ * So all the java side work (composing, parsing, and everything done by the model with the results) is done as in
+ * the recorded session, which makes the replay suitable for performance regression tests.
+ * <p>
+ * If a command was recorded several times (e.g. a twiss after different strength changes), the recorded results are
+ * served in the order in which they were recorded. When all of them were served, the last one is served again. Each
+ * start of the kernel begins again with the first one. Executables without result are accepted without checking them
+ * against the recording.
+ * <p>
+ * The kernel notifies its listeners about the timings of each execution, but as there is no process, it does not fire
+ * {@link JMadKernelListener#startedKernel(Process)} and {@link JMadKernelListener#stoppedKernel()}.
+ */
+public class ReplayJMadKernel implements JMadKernel {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplayJMadKernel.class);
+
+    /** the output file set to the executables. It is never written, its path is only replaced in the command. */
+    private static final String FILENAME_REPLAY_RESULT = "replay-result.out";
+
+    private final KernelRecording recording;
+    private final File outputFile;
+    private final List<JMadKernelListener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, Integer> servedCounts = new HashMap<>();
+    private final KernelIoStatistics ioStatistics = new KernelIoStatistics();
+    private boolean running = false;
+
+    /**
+     * @param directory the directory of the recording
+     * @throws JMadException if the recording cannot be read
+     */
+    public ReplayJMadKernel(File directory) throws JMadException {
+        this.recording = KernelRecording.open(directory);
+        this.outputFile = new File(directory, FILENAME_REPLAY_RESULT);
+        LOGGER.debug("Loaded {} recorded executions from '{}'.", recording.size(), directory.getAbsolutePath());
+    }
+
+    @Override
+    public synchronized void start() throws JMadException {
+        if (running) {
+            throw new JMadException("Kernel already started. Stop it first.");
+        }
+        servedCounts.clear();
+        running = true;
+    }
+
+    @Override
+    public synchronized int stop() {
+        running = false;
+        return 0;
+    }
+
+    @Override
+    public Result execute(JMadExecutable executable) throws JMadException {
+        checkRunning();
+        long startNanos = System.nanoTime();
+        /* as a real kernel, set the output file first: some executables only produce a result if they have one */
+        executable.setOutputFile(outputFile);
+        ExecutionTimings timings = ExecutionTimings.of(executable);
+        if (!JMadKernelImpl.hasResult(executable)) {
+            fireExecuted(timings);
+            return null;
+        }
+
+        String command = KernelRecording.canonicalCommand(executable);
+        KernelRecording.Entry entry = nextEntry(command);
+        startNanos = timings.stop(ExecutionPhase.COMPOSE, startNanos);
+
+        File resultFile = entry.getResultFile();
+        if ((resultFile == null) || (entry.getResultType() != executable.getResultType())) {
+            throw new JMadException("The recorded execution " + entry.getSequence() + " has no result of type "
+                    + executable.getResultType() + ".");
+        }
+        Result result = JMadKernelImpl.parseResultFile(executable.getResultType(), resultFile);
+        ioStatistics.addResultFile(resultFile.length());
+        timings.addResultBytes(resultFile.length());
+        timings.stop(ExecutionPhase.PARSE, startNanos);
+        fireExecuted(timings);
+        return result;
+    }
+
+    /**
+     * @return the next recorded execution of the command
+     * @throws JMadException if the command was not recorded
+     */
+    private synchronized KernelRecording.Entry nextEntry(String command) throws JMadException {
+        List<KernelRecording.Entry> entries = recording.getEntries(command);
+        if (entries.isEmpty()) {
+            throw new JMadException("The command was not recorded in '" + recording.getDirectory().getAbsolutePath()
+                    + "':\n" + command);
+        }
+        int served = servedCounts.getOrDefault(command, 0);
+        servedCounts.put(command, served + 1);
+        return entries.get(Math.min(served, entries.size() - 1));
+    }
+
+    @Override
+    public List<Result> executeBatch(List<? extends JMadExecutable> executables) throws JMadException {
+        List<Result> results = new ArrayList<>(executables.size());
+        for (JMadExecutable executable : executables) {
+            results.add(execute(executable));
+        }
+        return results;
+    }
+
+    @Override
+    public synchronized void recover() {
+        running = true;
+    }
+
+    @Override
+    public synchronized boolean isMadxRunning() {
+        return running;
+    }
+
+    private void checkRunning() throws JMadException {
+        if (!isMadxRunning()) {
+            throw new JMadException("MadX is not running -> kernel must be started first.");
+        }
+    }
+
+    private void fireExecuted(ExecutionTimings timings) {
+        for (JMadKernelListener listener : listeners) {
+            try {
+                listener.executed(timings);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Kernel listener failed to process execution timings.", e);
+            }
+        }
+    }
+
+    @Override
+    public void addListener(JMadKernelListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(JMadKernelListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return null, as there is no MadX output
+     */
+    @Override
+    public File getOutputFile() {
+        return null;
+    }
+
+    @Override
+    public KernelIoStatistics getIoStatistics() {
+        return ioStatistics;
+    }
+}
@@ -22,6 +22,7 @@
 
 package cern.accsoft.steering.jmad.kernel.cmd;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -32,19 +33,22 @@ public abstract class AbstractCommand extends AbstractJMadExecutable implements
 
     @Override
     public final String compose() {
-        StringBuffer command = new StringBuffer(getName());
+        return composeToString();
+    }
+
+    @Override
+    public final void composeTo(Appendable sink) throws IOException {
+        sink.append(getName());
         List<Parameter> parameters = getParameters();
 
         for (int i = 0; i < parameters.size(); i++) {
             Parameter param = parameters.get(i);
             if (param.isSet()) {
-                command.append(", ");
-                command.append(param.compose());
+                sink.append(", ");
+                param.composeTo(sink);
             }
         }
-        command.append(';');
-
-        return command.toString();
+        sink.append(';');
     }
 
     @Override
@@ -0,0 +1,49 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel.cmd;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import cern.accsoft.steering.jmad.kernel.cmd.param.GenericParameter;
+import cern.accsoft.steering.jmad.kernel.cmd.param.Parameter;
+
+/**
+ * The madx 'save' command, which writes all sequences and variables (and optionally the beams) to a file, from which
+ * they can be loaded again by a 'call'.
+ */
+public class SaveCommand extends AbstractCommand {
+
+    private static final String CMD_NAME = "save";
+
+    private final File outputFile;
+    private final boolean saveBeams;
+
+    public SaveCommand(File outputFile, boolean saveBeams) {
+        this.outputFile = outputFile;
+        this.saveBeams = saveBeams;
+    }
+
+    @Override
+    public String getName() {
+        return CMD_NAME;
+    }
+
+    @Override
+    public List<Parameter> getParameters() {
+        List<Parameter> parameters = new ArrayList<>();
+        parameters.add(new GenericParameter<>("file", outputFile.getAbsolutePath(), true));
+        parameters.add(new GenericParameter<>("beam", saveBeams));
+        return parameters;
+    }
+}
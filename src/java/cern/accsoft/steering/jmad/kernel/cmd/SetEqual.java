@@ -22,12 +22,14 @@
 
 package cern.accsoft.steering.jmad.kernel.cmd;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 import cern.accsoft.steering.jmad.kernel.AbstractJMadExecutable;
 import cern.accsoft.steering.jmad.kernel.cmd.param.GenericParameter;
 import cern.accsoft.steering.jmad.kernel.cmd.param.Parameter;
+import cern.accsoft.steering.jmad.util.StringUtil;
 
 public class SetEqual extends AbstractJMadExecutable implements Command {
     private final String valueName;
@@ -40,7 +42,18 @@ public class SetEqual extends AbstractJMadExecutable implements Command {
 
     @Override
     public String compose() {
-        return valueName + " = " + value + ";";
+        return composeToString();
+    }
+
+    @Override
+    public void composeTo(Appendable sink) throws IOException {
+        sink.append(valueName).append(" = ");
+        if (value == null) {
+            sink.append("null");
+        } else {
+            StringUtil.appendDouble(sink, value);
+        }
+        sink.append(';');
     }
 
     @Override
@@ -48,6 +61,10 @@ public class SetEqual extends AbstractJMadExecutable implements Command {
         return this.valueName;
     }
 
+    public Double getValue() {
+        return this.value;
+    }
+
     @Override
     public List<Parameter> getParameters() {
         /*
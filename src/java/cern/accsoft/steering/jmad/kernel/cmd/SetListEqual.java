@@ -22,12 +22,15 @@
 
 package cern.accsoft.steering.jmad.kernel.cmd;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import cern.accsoft.steering.jmad.kernel.AbstractJMadExecutable;
 import cern.accsoft.steering.jmad.kernel.cmd.param.Parameter;
+import cern.accsoft.steering.jmad.util.StringUtil;
 
 public class SetListEqual extends AbstractJMadExecutable implements Command {
     private final Map<String, Double> valuePairs;
@@ -38,11 +41,24 @@ public class SetListEqual extends AbstractJMadExecutable implements Command {
 
     @Override
     public String compose() {
-        StringBuffer cmd = new StringBuffer("");
-        for (String valueName : this.valuePairs.keySet()) {
-            cmd.append(valueName + " = " + this.valuePairs.get(valueName) + ";\n");
+        return composeToString();
+    }
+
+    @Override
+    public void composeTo(Appendable sink) throws IOException {
+        for (Map.Entry<String, Double> valuePair : this.valuePairs.entrySet()) {
+            sink.append(valuePair.getKey()).append(" = ");
+            appendValue(sink, valuePair.getValue());
+            sink.append(";\n");
+        }
+    }
+
+    private static void appendValue(Appendable sink, Double value) throws IOException {
+        if (value == null) {
+            sink.append("null");
+        } else {
+            StringUtil.appendDouble(sink, value);
         }
-        return cmd.toString();
     }
 
     @Override
@@ -50,6 +66,10 @@ public class SetListEqual extends AbstractJMadExecutable implements Command {
         return "";
     }
 
+    public Map<String, Double> getValuePairs() {
+        return Collections.unmodifiableMap(this.valuePairs);
+    }
+
     @Override
     public List<Parameter> getParameters() {
         return new ArrayList<>(0);
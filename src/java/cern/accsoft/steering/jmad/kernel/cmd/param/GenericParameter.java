@@ -23,7 +23,9 @@
 package cern.accsoft.steering.jmad.kernel.cmd.param;
 
 import cern.accsoft.steering.jmad.domain.types.MadxValue;
+import cern.accsoft.steering.jmad.util.StringUtil;
 
+import java.io.IOException;
 import java.util.Collection;
 
 import static java.util.stream.Collectors.joining;
@@ -73,6 +75,16 @@ public class GenericParameter<T> extends AbstractParameter {
         }
     }
 
+    @Override
+    public void composeTo(Appendable sink) throws IOException {
+        if ((value instanceof Double) && !useValueQuotes) {
+            sink.append(name).append('=');
+            StringUtil.appendDouble(sink, (Double) value);
+        } else {
+            sink.append(compose());
+        }
+    }
+
     private static String valueToString(Object value, boolean useValueQuotes) {
         if (value instanceof MadxValue) {
             return ((MadxValue) value).getMadxString();
@@ -22,6 +22,8 @@
 
 package cern.accsoft.steering.jmad.kernel.cmd.param;
 
+import java.io.IOException;
+
 /**
  * this interface represents all kind of possible parameters to madx-commands
  * 
@@ -36,6 +38,16 @@ public interface Parameter {
      */
     public abstract String compose();
 
+    /**
+     * writes the same text as {@link #compose()} to the given sink.
+     * 
+     * @param sink where to write the composed text
+     * @throws IOException if writing to the sink fails
+     */
+    default void composeTo(Appendable sink) throws IOException {
+        sink.append(compose());
+    }
+
     /**
      * has to be implemented in subclass to determine if the parameter is set or not.
      * 
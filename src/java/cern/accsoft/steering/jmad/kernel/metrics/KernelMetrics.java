@@ -0,0 +1,245 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import cern.accsoft.steering.jmad.domain.result.ResultType;
+import cern.accsoft.steering.jmad.kernel.ExecutionPhase;
+import cern.accsoft.steering.jmad.kernel.ExecutionTimings;
+import cern.accsoft.steering.jmad.kernel.JMadKernelListener;
+import cern.accsoft.steering.jmad.kernel.KernelLeakDetector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the {@link ExecutionTimings} of the kernels it listens to in histograms per type of executable and
+ * execution phase, and exposes them via JMX. So the slow phase of an execution (e.g. waiting for MadX vs. parsing the
+ * result) can be found in a running application without attaching a profiler.
+ * <p>
+ * One instance is shared by all the kernels (see the 'jmadKernelMetrics' bean) and registered in the platform MBean
+ * server by {@link #register()}.
+ */
+public class KernelMetrics implements JMadKernelListener, KernelMetricsMXBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(KernelMetrics.class);
+
+    /** the default name in the MBean server */
+    public static final String DEFAULT_OBJECT_NAME = "cern.jmad:type=KernelMetrics";
+
+    /** the phase name of the statistics of the whole execution */
+    public static final String PHASE_TOTAL = "TOTAL";
+
+    private static final double P50 = 0.5;
+    private static final double P99 = 0.99;
+
+    private final ConcurrentMap<Tag, TaggedHistograms> histograms = new ConcurrentHashMap<>();
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder commandBytes = new LongAdder();
+    private final LongAdder parsedBytes = new LongAdder();
+
+    private String objectName = DEFAULT_OBJECT_NAME;
+    private ObjectName registeredName = null;
+
+    @Override
+    public void startedKernel(Process newProcess) {
+        /* nothing to do */
+    }
+
+    @Override
+    public void stoppedKernel() {
+        /* nothing to do */
+    }
+
+    @Override
+    public void executed(ExecutionTimings timings) {
+        Tag tag = new Tag(timings.getExecutableType(), timings.getResultType());
+        histograms.computeIfAbsent(tag, t -> new TaggedHistograms()).record(timings);
+        executions.increment();
+        commandBytes.add(timings.getCommandBytes());
+        parsedBytes.add(timings.getResultBytes());
+    }
+
+    /**
+     * registers this instance in the platform MBean server. If the name is already taken (e.g. by another spring
+     * context in the same JVM), then only a warning is logged and this instance is not registered.
+     */
+    public synchronized void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            registeredName = server.registerMBean(this, new ObjectName(objectName)).getObjectName();
+        } catch (InstanceAlreadyExistsException e) {
+            LOGGER.warn("Kernel metrics are already registered as '{}'. Not registering another instance.",
+                    objectName);
+        } catch (JMException e) {
+            LOGGER.warn("Could not register kernel metrics as '" + objectName + "' in the MBean server.", e);
+        }
+    }
+
+    /**
+     * removes this instance from the platform MBean server, if it was registered
+     */
+    public synchronized void unregister() {
+        if (registeredName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        } catch (JMException e) {
+            LOGGER.warn("Could not unregister kernel metrics '" + registeredName + "' from the MBean server.", e);
+        }
+        registeredName = null;
+    }
+
+    @Override
+    public long getExecutions() {
+        return executions.sum();
+    }
+
+    @Override
+    public long getCommandBytes() {
+        return commandBytes.sum();
+    }
+
+    @Override
+    public long getParsedBytes() {
+        return parsedBytes.sum();
+    }
+
+    @Override
+    public List<PhaseStatistics> getPhaseStatistics() {
+        List<PhaseStatistics> statistics = new ArrayList<>();
+        for (Map.Entry<Tag, TaggedHistograms> entry : histograms.entrySet()) {
+            Tag tag = entry.getKey();
+            TaggedHistograms tagged = entry.getValue();
+            for (Map.Entry<ExecutionPhase, LatencyHistogram> phase : tagged.phases.entrySet()) {
+                statistics.add(toStatistics(tag, phase.getKey().name(), phase.getValue()));
+            }
+            statistics.add(toStatistics(tag, PHASE_TOTAL, tagged.total));
+        }
+        return statistics;
+    }
+
+    @Override
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (PhaseStatistics statistics : getPhaseStatistics()) {
+            summary.append(statistics).append('\n');
+        }
+        return summary.toString();
+    }
+
+    @Override
+    public int getRunningKernels() {
+        return KernelLeakDetector.getRunningKernelCount();
+    }
+
+    @Override
+    public long getLeakedKernels() {
+        return KernelLeakDetector.getLeakedKernelCount();
+    }
+
+    @Override
+    public long getMadxRssBytes() {
+        return KernelLeakDetector.getMadxRssBytes();
+    }
+
+    @Override
+    public void reset() {
+        histograms.clear();
+        executions.reset();
+        commandBytes.reset();
+        parsedBytes.reset();
+    }
+
+    private static PhaseStatistics toStatistics(Tag tag, String phase, LatencyHistogram histogram) {
+        return new PhaseStatistics(tag.executableType, (tag.resultType == null) ? "" : tag.resultType.name(), phase,
+                histogram.getCount(), toMicros(histogram.getMean()), toMicros(histogram.getPercentile(P50)),
+                toMicros(histogram.getPercentile(P99)), toMicros(histogram.getMax()));
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /**
+     * @param objectName the name under which this instance is registered in the MBean server. Must be set before
+     *            {@link #register()}.
+     */
+    public void setObjectName(String objectName) {
+        this.objectName = objectName;
+    }
+
+    /**
+     * the histograms of all the phases for one type of executable
+     */
+    private static final class TaggedHistograms {
+        private final Map<ExecutionPhase, LatencyHistogram> phases = new EnumMap<>(ExecutionPhase.class);
+        private final LatencyHistogram total = new LatencyHistogram();
+
+        private TaggedHistograms() {
+            for (ExecutionPhase phase : ExecutionPhase.values()) {
+                phases.put(phase, new LatencyHistogram());
+            }
+        }
+
+        private void record(ExecutionTimings timings) {
+            for (ExecutionPhase phase : ExecutionPhase.values()) {
+                phases.get(phase).record(timings.getNanos(phase));
+            }
+            total.record(timings.getTotalNanos());
+        }
+    }
+
+    /**
+     * the type of executable, for which the timings are collected
+     */
+    private static final class Tag {
+        private final String executableType;
+        private final ResultType resultType;
+
+        private Tag(String executableType, ResultType resultType) {
+            this.executableType = executableType;
+            this.resultType = resultType;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Tag)) {
+                return false;
+            }
+            Tag other = (Tag) obj;
+            return executableType.equals(other.executableType) && (resultType == other.resultType);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(executableType, resultType);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel.metrics;
+
+import java.util.List;
+
+/**
+ * The JMX interface of the {@link KernelMetrics}.
+ */
+public interface KernelMetricsMXBean {
+
+    /**
+     * @return the number of successful executions of all kernels
+     */
+    public abstract long getExecutions();
+
+    /**
+     * @return the number of characters sent to MadX by all kernels
+     */
+    public abstract long getCommandBytes();
+
+    /**
+     * @return the number of bytes of the result files parsed by all kernels
+     */
+    public abstract long getParsedBytes();
+
+    /**
+     * @return the statistics of each phase (and the total) for each type of executable
+     */
+    public abstract List<PhaseStatistics> getPhaseStatistics();
+
+    /**
+     * @return the statistics as one line per type of executable and phase, for a quick look in a JMX console
+     */
+    public abstract String getSummary();
+
+    /**
+     * @return the number of kernels in this JVM with a running MadX process
+     */
+    public abstract int getRunningKernels();
+
+    /**
+     * @return the number of kernels which were garbage collected without being stopped
+     */
+    public abstract long getLeakedKernels();
+
+    /**
+     * @return the memory (resident set size) in bytes of all running MadX processes, where available
+     */
+    public abstract long getMadxRssBytes();
+
+    /**
+     * clears all the statistics
+     */
+    public abstract void reset();
+}
@@ -0,0 +1,92 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A snapshot of the durations of one phase of the executions of one type of executable, as exposed via JMX. All
+ * durations are in microseconds.
+ */
+public final class PhaseStatistics {
+
+    private final String executableType;
+    private final String resultType;
+    private final String phase;
+    private final long count;
+    private final long meanMicros;
+    private final long p50Micros;
+    private final long p99Micros;
+    private final long maxMicros;
+
+    @ConstructorProperties({ "executableType", "resultType", "phase", "count", "meanMicros", "p50Micros",
+            "p99Micros", "maxMicros" })
+    public PhaseStatistics(String executableType, String resultType, String phase, long count, long meanMicros,
+            long p50Micros, long p99Micros, long maxMicros) {
+        this.executableType = executableType;
+        this.resultType = resultType;
+        this.phase = phase;
+        this.count = count;
+        this.meanMicros = meanMicros;
+        this.p50Micros = p50Micros;
+        this.p99Micros = p99Micros;
+        this.maxMicros = maxMicros;
+    }
+
+    /**
+     * @return the simple class name of the executable (or 'batch')
+     */
+    public String getExecutableType() {
+        return executableType;
+    }
+
+    /**
+     * @return the result type of the executable or an empty string for batches
+     */
+    public String getResultType() {
+        return resultType;
+    }
+
+    /**
+     * @return the name of the execution phase or {@link KernelMetrics#PHASE_TOTAL}
+     */
+    public String getPhase() {
+        return phase;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMeanMicros() {
+        return meanMicros;
+    }
+
+    public long getP50Micros() {
+        return p50Micros;
+    }
+
+    public long getP99Micros() {
+        return p99Micros;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+    @Override
+    public String toString() {
+        return executableType + (resultType.isEmpty() ? "" : " (" + resultType + ")") + " " + phase + ": count="
+                + count + ", mean=" + meanMicros + "us, p50=" + p50Micros + "us, p99=" + p99Micros + "us, max="
+                + maxMicros + "us";
+    }
+}
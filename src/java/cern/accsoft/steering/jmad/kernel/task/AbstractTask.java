@@ -22,6 +22,7 @@
 
 package cern.accsoft.steering.jmad.kernel.task;
 
+import java.io.IOException;
 import java.util.List;
 
 import cern.accsoft.steering.jmad.kernel.AbstractJMadExecutable;
@@ -43,21 +44,22 @@ public abstract class AbstractTask extends AbstractJMadExecutable {
 
     @Override
     public final String compose() {
+        return composeToString();
+    }
+
+    @Override
+    public final void composeTo(Appendable sink) throws IOException {
         List<Command> commands = getCommands();
 
-        StringBuffer taskString = new StringBuffer("\n" + getHeader() + "\n"); // add
-        // header,
-        // just
-        // for
-        // readability;
+        /* add header, just for readability */
+        sink.append('\n').append(getHeader()).append('\n');
         for (int i = 0; i < commands.size(); i++) {
             Command command = commands.get(i);
             command.setOutputFile(getOutputFile());
-            taskString.append(command.compose());
-            taskString.append('\n');
+            command.composeTo(sink);
+            sink.append('\n');
         }
-        taskString.append(getFooter());
-        return taskString.toString();
+        sink.append(getFooter());
     }
 
     private final String getHeader() {
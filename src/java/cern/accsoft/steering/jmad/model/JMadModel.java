@@ -57,7 +57,7 @@ import cern.accsoft.steering.jmad.modeldefs.io.ModelFileFinder;
  * 
  * @author Kajetan Fuchsberger (kajetan.fuchsberger at cern.ch)
  */
-public interface JMadModel {
+public interface JMadModel extends AutoCloseable {
 
     //
     // the properties of the model.
@@ -155,6 +155,35 @@ public interface JMadModel {
      */
     void reset() throws JMadModelException;
 
+    /**
+     * takes a snapshot of the current state of the model: the variables, sequences and beams as saved by MadX, the
+     * misalignments of the active range and the active optics, range and twiss initial conditions. Other models can
+     * then be initialized from this checkpoint by {@link #init(ModelCheckpoint)}.
+     * 
+     * @return the checkpoint of the actual state
+     * @throws JMadModelException if the state could not be saved
+     */
+    ModelCheckpoint checkpoint() throws JMadModelException;
+
+    /**
+     * initializes the model from a checkpoint, which was taken from another (initialized) model. Instead of running
+     * all the init files of the model definition, only the saved state is loaded into MadX. Afterwards the model is in
+     * the same state as the one from which the checkpoint was taken.
+     * 
+     * @param checkpoint the checkpoint from which to initialize the model
+     * @throws JMadModelException if the initialization fails or the model is already initialized
+     */
+    void init(ModelCheckpoint checkpoint) throws JMadModelException;
+
+    /**
+     * restarts MadX and replays the state changes made to the model so far (see {@link JMadKernel#recover()}). In
+     * contrast to {@link #reset()}, all the strength changes, misalignments etc. are kept. This can be used after MadX
+     * terminated unexpectedly.
+     * 
+     * @throws JMadModelException if the recovery fails
+     */
+    void recover() throws JMadModelException;
+
     /**
      * cleanup all the stuff and free memory
      * 
@@ -162,6 +191,17 @@ public interface JMadModel {
      */
     void cleanup() throws JMadModelException;
 
+    /**
+     * stops MadX and frees the memory of the model (same as {@link #cleanup()}). Allows to use models in
+     * try-with-resources blocks.
+     * 
+     * @throws JMadModelException if the cleanup fails
+     */
+    @Override
+    default void close() throws JMadModelException {
+        cleanup();
+    }
+
     //
     // The methods for the calculation of the twiss-values and retrieving data.
     //
@@ -14,6 +14,9 @@ package cern.accsoft.steering.jmad.model;
 import static java.util.Collections.singletonList;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -79,14 +82,17 @@ import cern.accsoft.steering.jmad.domain.var.enums.MadxGlobalVariable;
 import cern.accsoft.steering.jmad.domain.var.enums.MadxTwissVariable;
 import cern.accsoft.steering.jmad.io.ApertureReader;
 import cern.accsoft.steering.jmad.io.ApertureReaderImpl;
+import cern.accsoft.steering.jmad.jfr.JMadEvents;
+import cern.accsoft.steering.jmad.jfr.JMadEvents.ModelInitSpan;
 import cern.accsoft.steering.jmad.kernel.JMadKernel;
-import cern.accsoft.steering.jmad.kernel.JMadKernelImpl;
+import cern.accsoft.steering.jmad.kernel.JMadKernelConfig;
 import cern.accsoft.steering.jmad.kernel.MadxTerminatedException;
 import cern.accsoft.steering.jmad.kernel.cmd.CallCommand;
 import cern.accsoft.steering.jmad.kernel.cmd.Command;
 import cern.accsoft.steering.jmad.kernel.cmd.EOptionCommand;
 import cern.accsoft.steering.jmad.kernel.cmd.FreeText;
 import cern.accsoft.steering.jmad.kernel.cmd.SaveBetaCommand;
+import cern.accsoft.steering.jmad.kernel.cmd.SaveCommand;
 import cern.accsoft.steering.jmad.kernel.cmd.SetEqual;
 import cern.accsoft.steering.jmad.kernel.cmd.SetListEqual;
 import cern.accsoft.steering.jmad.kernel.cmd.UseCommand;
@@ -110,6 +116,7 @@ import cern.accsoft.steering.jmad.modeldefs.domain.OpticsDefinition;
 import cern.accsoft.steering.jmad.modeldefs.io.ModelFileFinder;
 import cern.accsoft.steering.jmad.modeldefs.io.ModelFileFinderManager;
 import cern.accsoft.steering.jmad.util.FileUtil;
+import cern.accsoft.steering.jmad.util.ResourceReaper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -120,6 +127,17 @@ public class JMadModelImpl implements JMadModel, ElementAttributeReader {
      */
     protected static final Logger LOGGER = LoggerFactory.getLogger(JMadModelImpl.class);
 
+    /**
+     * the file, to which madx saves its state when taking a checkpoint
+     */
+    private static final String FILENAME_CHECKPOINT = "madx-checkpoint.madx";
+
+    /**
+     * the file, which madx calls to restore the state of a checkpoint. It is kept as long as the kernel runs, because
+     * the state journal of the kernel replays the call, if madx has to be restarted.
+     */
+    private static final String FILENAME_RESTORE = "madx-restore.madx";
+
     /**
      * The definition of the model
      */
@@ -150,6 +168,11 @@ public class JMadModelImpl implements JMadModel, ElementAttributeReader {
      */
     private JMadKernel kernel;
 
+    /**
+     * stops the kernel, if the model is garbage collected without being cleaned up
+     */
+    private final KernelReaper kernelReaper = new KernelReaper();
+
     /**
      * The last calculated optics-values
      */
@@ -245,6 +268,7 @@ public class JMadModelImpl implements JMadModel, ElementAttributeReader {
     public JMadModelImpl() {
         twissInitialConditions.addListener(this.twissListener);
         this.knobManager = new KnobManagerImpl(this);
+        ResourceReaper.register(this, kernelReaper);
     }
 
     /**
@@ -265,6 +289,17 @@ public class JMadModelImpl implements JMadModel, ElementAttributeReader {
 
     @Override
     public void init() throws JMadModelException {
+        ModelInitSpan span = JMadEvents.beginModelInit();
+        boolean success = false;
+        try {
+            initKernelAndModel();
+            success = true;
+        } finally {
+            span.commit((getModelDefinition() == null) ? null : getModelDefinition().getName(), success);
+        }
+    }
+
+    private void initKernelAndModel() throws JMadModelException {
         LOGGER.debug("initializing model.");
 
         /*
@@ -329,6 +364,125 @@ public class JMadModelImpl implements JMadModel, ElementAttributeReader {
         calcOptics();
     }
 
+    @Override
+    public ModelCheckpoint checkpoint() throws JMadModelException {
+        ensureInit();
+
+        File saveFile = new File(getKernel().getOutputFile().getParentFile(), FILENAME_CHECKPOINT);
+        String restoreScript;
+        try {
+            saveFile.delete();
+            getKernel().execute(new SaveCommand(saveFile, true));
+            restoreScript = new String(Files.readAllBytes(saveFile.toPath()), StandardCharsets.UTF_8);
+        } catch (JMadException | IOException e) {
+            throw new JMadModelException("Could not save the state of MadX for the checkpoint.", e);
+        } finally {
+            saveFile.delete();
+        }
+
+        String misalignmentScript = "";
+        if ((activeRange != null) && !activeRange.getMisalignmentConfigurations().isEmpty()) {
+            misalignmentScript = new SetMisalignmentsTask(activeRange.getMisalignmentConfigurations()).compose();
+        }
+
+        Map<String, Double> strengthValues = new HashMap<>();
+        Map<String, Double> strengthOffsets = new HashMap<>();
+        for (Strength strength : strengthVarManager.getStrengthVarSet().getStrengths()) {
+            strengthValues.put(strength.getName(), strength.getValue());
+            strengthOffsets.put(strength.getName(), strength.getOffset());
+        }
+
+        TwissInitialConditionsImpl twiss;
+        if (this.twissInitialConditions instanceof TwissInitialConditionsImpl) {
+            twiss = ((TwissInitialConditionsImpl) this.twissInitialConditions).clone();
+        } else {
+            LOGGER.warn("Twiss initial conditions of type {} can not be copied to the checkpoint. Using defaults.",
+                    this.twissInitialConditions.getClass().getName());
+            twiss = new TwissInitialConditionsImpl();
+        }
+
+        return new ModelCheckpoint(getModelDefinition(), activeOpticsDefinition, activeRangeDefinition, twiss,
+                modelMode, restoreScript, misalignmentScript, strengthValues, strengthOffsets);
+    }
+
+    @Override
+    public void init(ModelCheckpoint checkpoint) throws JMadModelException {
+        if (isInitialized()) {
+            throw new JMadModelException("Model is already initialized. Cannot initialize it from a checkpoint.");
+        }
+        ModelInitSpan span = JMadEvents.beginModelInit();
+        boolean success = false;
+        try {
+            initFromCheckpoint(checkpoint);
+            success = true;
+        } finally {
+            span.commit((getModelDefinition() == null) ? null : getModelDefinition().getName(), success);
+        }
+    }
+
+    private void initFromCheckpoint(ModelCheckpoint checkpoint) throws JMadModelException {
+        LOGGER.debug("initializing model from checkpoint.");
+        setModelDefinition(checkpoint.getModelDefinition());
+
+        try {
+            getKernel().start();
+        } catch (JMadException e) {
+            throw new JMadModelException("Error while initializing model from checkpoint.", e);
+        }
+
+        /* madx reads the restore script from a file, so that it is neither sent through stdin nor logged as input */
+        File restoreFile = new File(getKernel().getOutputFile().getParentFile(), FILENAME_RESTORE);
+        try {
+            Files.write(restoreFile.toPath(), checkpoint.getRestoreScript().getBytes(StandardCharsets.UTF_8));
+            getKernel().execute(new CallCommand(restoreFile));
+        } catch (JMadException | IOException e) {
+            throw new JMadModelException("Error while initializing model from checkpoint.", e);
+        }
+
+        /* the strengths are only parsed on the java side: madx already knows the values */
+        List<ModelFile> strengthFiles = new ArrayList<>(getModelDefinition().getInitFiles());
+        if (checkpoint.getOpticsDefinition() != null) {
+            strengthFiles.addAll(checkpoint.getOpticsDefinition().getInitFiles());
+        }
+        for (ModelFile modelFile : strengthFiles) {
+            if ((modelFile instanceof CallableModelFile)
+                    && (ParseType.STRENGTHS == ((CallableModelFile) modelFile).getParseType())) {
+                strengthVarManager.load(getModelFileFinder().getFile(modelFile, getKernel()));
+            }
+        }
+        for (Strength strength : strengthVarManager.getStrengthVarSet().getStrengths()) {
+            Double value = checkpoint.getStrengthValues().get(strength.getName());
+            if (value != null) {
+                strength.setValue(value);
+                strength.setOffset(checkpoint.getStrengthOffsets().get(strength.getName()));
+            }
+            strength.addListener(this.strengthListener);
+        }
+
+        this.modelMode = checkpoint.getModelMode();
+        this.activeOpticsDefinition = checkpoint.getOpticsDefinition();
+        if (checkpoint.getRangeDefinition() != null) {
+            setActiveRangeDefinition(checkpoint.getRangeDefinition());
+            /* the use command in the range selection removes all misalignments: apply them afterwards */
+            if (!checkpoint.getMisalignmentScript().isEmpty()) {
+                try {
+                    getKernel().execute(freeText(checkpoint.getMisalignmentScript()));
+                } catch (JMadException e) {
+                    throw new JMadModelException("Error while restoring the misalignments from checkpoint.", e);
+                }
+            }
+            setTwissInitialConditions(checkpoint.getTwissInitialConditions());
+        }
+        fireOpticsDefinitionChanged();
+        calcOptics();
+    }
+
+    private static FreeText freeText(String text) {
+        FreeText freeText = new FreeText();
+        freeText.setText(text);
+        return freeText;
+    }
+
     private void processModelFiles(List<ModelFile> modelFiles) {
         boolean containsStrengthFile = false;
         for (ModelFile modelFile : modelFiles) {
@@ -394,6 +548,15 @@ public class JMadModelImpl implements JMadModel, ElementAttributeReader {
         init();
     }
 
+    @Override
+    public void recover() throws JMadModelException {
+        try {
+            getKernel().recover();
+        } catch (JMadException e) {
+            throw new JMadModelException("Error while recovering MadX-Kernel.", e);
+        }
+    }
+
     /**
      * @return true if the model is initialized, false otherwise.
      */
@@ -618,15 +781,15 @@ public class JMadModelImpl implements JMadModel, ElementAttributeReader {
     public TfsResult twissToFile(TfsResultRequest resultRequest, TwissInitialConditions customTwissInitialConditions,
             File tfsFile) throws JMadModelException {
 
-        boolean keepOutput = ((JMadKernelImpl) this.getKernel()).isKeepOutputFile();
-        ((JMadKernelImpl) this.getKernel()).setKeepOutputFile(true);
+        boolean keepOutput = ((JMadKernelConfig) this.getKernel()).isKeepOutputFile();
+        ((JMadKernelConfig) this.getKernel()).setKeepOutputFile(true);
 
         TfsResult tfsResult = this.twiss(resultRequest, customTwissInitialConditions);
 
         try {
             FileUtil.copyFile(this.getKernel().getOutputFile(), tfsFile);
             this.getKernel().getOutputFile().delete();
-            ((JMadKernelImpl) this.getKernel()).setKeepOutputFile(keepOutput);
+            ((JMadKernelConfig) this.getKernel()).setKeepOutputFile(keepOutput);
 
         } catch (Exception e) {
             throw new JMadModelException("Could not write twiss output to File [" + tfsFile.getAbsolutePath() + "]", e);
@@ -737,17 +900,6 @@ public class JMadModelImpl implements JMadModel, ElementAttributeReader {
         fireBecameDirty();
     }
 
-    @Override
-    protected void finalize() throws Throwable {
-        try {
-            cleanup();
-        } catch (JMadModelException e) {
-            LOGGER.warn("Error during model - cleanup!", e);
-        }
-        LOGGER.debug("model was garbage-collected.");
-        super.finalize();
-    }
-
     @Override
     public Optic getOptics() throws JMadModelException {
         calcOpticsIfDirty();
@@ -1190,6 +1342,7 @@ public class JMadModelImpl implements JMadModel, ElementAttributeReader {
 
     public void setKernel(JMadKernel kernel) {
         this.kernel = kernel;
+        this.kernelReaper.kernel = kernel;
     }
 
     @Override
@@ -1328,4 +1481,28 @@ public class JMadModelImpl implements JMadModel, ElementAttributeReader {
     public StrengthVarManager getStrengthVarManager() {
         return this.strengthVarManager;
     }
+
+    /**
+     * Stops the kernel of a model, which was garbage collected without being cleaned up (or closed): So MadX terminates,
+     * the log files are closed and the working dir of the kernel is deleted, as {@link #cleanup()} would do. It refers
+     * only to the kernel, not to the model. So neither the kernel nor its listeners may refer to the model, otherwise
+     * the model is never collected.
+     */
+    private static final class KernelReaper implements Runnable {
+        private volatile JMadKernel kernel = null;
+
+        @Override
+        public void run() {
+            JMadKernel leakedKernel = kernel;
+            if ((leakedKernel == null) || !leakedKernel.isMadxRunning()) {
+                return;
+            }
+            LOGGER.warn("Model was garbage collected without cleanup. Stopping its kernel.");
+            try {
+                leakedKernel.close();
+            } catch (JMadException e) {
+                LOGGER.warn("Error while stopping the kernel of a garbage collected model.", e);
+            }
+        }
+    }
 }
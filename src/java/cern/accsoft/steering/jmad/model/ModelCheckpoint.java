@@ -0,0 +1,99 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.model;
+
+import java.util.Collections;
+import java.util.Map;
+
+import cern.accsoft.steering.jmad.domain.machine.RangeDefinition;
+import cern.accsoft.steering.jmad.domain.twiss.TwissInitialConditionsImpl;
+import cern.accsoft.steering.jmad.modeldefs.domain.JMadModelDefinition;
+import cern.accsoft.steering.jmad.modeldefs.domain.OpticsDefinition;
+
+/**
+ * A snapshot of the state of an initialized model, taken by {@link JMadModel#checkpoint()}. It contains a compact
+ * MadX script which restores the sequences, beams and variables, the commands for the misalignments and the state of
+ * the model on the java side. Any number of models with the same model definition can be initialized from it by
+ * {@link JMadModel#init(ModelCheckpoint)}, which is much cheaper than running all the init files again.
+ */
+public class ModelCheckpoint {
+
+    private final JMadModelDefinition modelDefinition;
+    private final OpticsDefinition opticsDefinition;
+    private final RangeDefinition rangeDefinition;
+    private final TwissInitialConditionsImpl twissInitialConditions;
+    private final ModelMode modelMode;
+
+    /** loads the sequences, beams and variables into madx */
+    private final String restoreScript;
+
+    /** applies the misalignments of the active range. Must be executed after the range was selected */
+    private final String misalignmentScript;
+
+    /** the values and offsets of the strengths as they were on the java side */
+    private final Map<String, Double> strengthValues;
+    private final Map<String, Double> strengthOffsets;
+
+    ModelCheckpoint(JMadModelDefinition modelDefinition, OpticsDefinition opticsDefinition,
+            RangeDefinition rangeDefinition, TwissInitialConditionsImpl twissInitialConditions, ModelMode modelMode,
+            String restoreScript, String misalignmentScript, Map<String, Double> strengthValues,
+            Map<String, Double> strengthOffsets) {
+        this.modelDefinition = modelDefinition;
+        this.opticsDefinition = opticsDefinition;
+        this.rangeDefinition = rangeDefinition;
+        this.twissInitialConditions = twissInitialConditions;
+        this.modelMode = modelMode;
+        this.restoreScript = restoreScript;
+        this.misalignmentScript = misalignmentScript;
+        this.strengthValues = Collections.unmodifiableMap(strengthValues);
+        this.strengthOffsets = Collections.unmodifiableMap(strengthOffsets);
+    }
+
+    public JMadModelDefinition getModelDefinition() {
+        return modelDefinition;
+    }
+
+    public OpticsDefinition getOpticsDefinition() {
+        return opticsDefinition;
+    }
+
+    public RangeDefinition getRangeDefinition() {
+        return rangeDefinition;
+    }
+
+    /**
+     * @return a copy of the twiss initial conditions, which can be modified by the model which uses it
+     */
+    public TwissInitialConditionsImpl getTwissInitialConditions() {
+        return twissInitialConditions.clone();
+    }
+
+    public ModelMode getModelMode() {
+        return modelMode;
+    }
+
+    public String getRestoreScript() {
+        return restoreScript;
+    }
+
+    public String getMisalignmentScript() {
+        return misalignmentScript;
+    }
+
+    public Map<String, Double> getStrengthValues() {
+        return strengthValues;
+    }
+
+    public Map<String, Double> getStrengthOffsets() {
+        return strengthOffsets;
+    }
+}
@@ -25,8 +25,12 @@
  */
 package cern.accsoft.steering.jmad.service;
 
+import java.util.List;
+
+import cern.accsoft.steering.jmad.domain.ex.JMadModelException;
 import cern.accsoft.steering.jmad.model.JMadModel;
 import cern.accsoft.steering.jmad.model.JMadModelStartupConfiguration;
+import cern.accsoft.steering.jmad.model.ModelCheckpoint;
 import cern.accsoft.steering.jmad.model.manage.JMadModelManager;
 import cern.accsoft.steering.jmad.modeldefs.JMadModelDefinitionManager;
 import cern.accsoft.steering.jmad.modeldefs.domain.JMadModelDefinition;
@@ -86,6 +90,17 @@ public interface JMadService {
      */
     JMadModel createModel(JMadModelDefinition definition, JMadModelStartupConfiguration startupConfiguration);
 
+    /**
+     * creates the given number of models and initializes them from the checkpoint of another model. This is much faster
+     * than initializing each one by its own, because the init files of the model definition are not processed again.
+     *
+     * @param checkpoint the checkpoint from which to initialize the models (see {@link JMadModel#checkpoint()})
+     * @param count the number of models to create
+     * @return the new, initialized models
+     * @throws JMadModelException if one of the models could not be initialized
+     */
+    List<JMadModel> createModels(ModelCheckpoint checkpoint, int count) throws JMadModelException;
+
     /**
      * removes the model from the list of available models. I.e. removes all internal references to this model.
      * 
@@ -25,7 +25,12 @@
  */
 package cern.accsoft.steering.jmad.service;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import cern.accsoft.steering.jmad.domain.ex.JMadModelException;
 import cern.accsoft.steering.jmad.model.JMadModelStartupConfiguration;
+import cern.accsoft.steering.jmad.model.ModelCheckpoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -102,6 +107,17 @@ public class JMadServiceImpl implements JMadService {
         return model;
     }
 
+    @Override
+    public List<JMadModel> createModels(ModelCheckpoint checkpoint, int count) throws JMadModelException {
+        List<JMadModel> models = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            JMadModel model = createModel(checkpoint.getModelDefinition());
+            model.init(checkpoint);
+            models.add(model);
+        }
+        return models;
+    }
+
     @Override
     public JMadPreferences getPreferences() {
         if (this.preferences == null) {
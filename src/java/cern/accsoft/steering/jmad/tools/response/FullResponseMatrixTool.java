@@ -42,7 +42,7 @@ import cern.accsoft.steering.jmad.domain.ex.JMadModelException;
 import cern.accsoft.steering.jmad.domain.machine.filter.NameFilter;
 import cern.accsoft.steering.jmad.domain.result.Result;
 import cern.accsoft.steering.jmad.domain.result.ResultType;
-import cern.accsoft.steering.jmad.domain.result.tfs.TfsResultImpl;
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsResult;
 import cern.accsoft.steering.jmad.domain.result.tfs.TfsResultRequestImpl;
 import cern.accsoft.steering.jmad.domain.types.enums.JMadPlane;
 import cern.accsoft.steering.jmad.domain.var.enums.MadxTwissVariable;
@@ -99,16 +99,11 @@ public class FullResponseMatrixTool implements ResponseMatrixTool {
                 continue;
             }
 
-            TfsResultImpl minus = calcResponse(model, element, correctorPlane, -strengthValue, monitorNames,
+            TfsResult minus = calcResponse(model, element, correctorPlane, -strengthValue, monitorNames,
                     request.getMonitorRegexps());
-            TfsResultImpl plus = calcResponse(model, element, correctorPlane, strengthValue, monitorNames,
+            TfsResult plus = calcResponse(model, element, correctorPlane, strengthValue, monitorNames,
                     request.getMonitorRegexps());
 
-            List<Double> plusXData = plus.getDoubleData(MadxTwissVariable.X);
-            List<Double> plusYData = plus.getDoubleData(MadxTwissVariable.Y);
-            List<Double> minusXData = minus.getDoubleData(MadxTwissVariable.X);
-            List<Double> minusYData = minus.getDoubleData(MadxTwissVariable.Y);
-
             for (int j = 0; j < monitorNames.size(); j++) {
                 String monitorName = monitorNames.get(j);
                 JMadPlane monitorPlane = monitorPlanes.get(j);
@@ -129,9 +124,11 @@ public class FullResponseMatrixTool implements ResponseMatrixTool {
 
                 double deltaPos;
                 if (JMadPlane.H.equals(monitorPlane)) {
-                    deltaPos = plusXData.get(plusIndex) - minusXData.get(minusIndex);
+                    deltaPos = plus.getDouble(MadxTwissVariable.X, plusIndex)
+                            - minus.getDouble(MadxTwissVariable.X, minusIndex);
                 } else if (JMadPlane.V.equals(monitorPlane)) {
-                    deltaPos = plusYData.get(plusIndex) - minusYData.get(minusIndex);
+                    deltaPos = plus.getDouble(MadxTwissVariable.Y, plusIndex)
+                            - minus.getDouble(MadxTwissVariable.Y, minusIndex);
                 } else {
                     throw new JMadModelException("Unable to handle plane '" + monitorPlane + "'");
                 }
@@ -191,7 +188,7 @@ public class FullResponseMatrixTool implements ResponseMatrixTool {
      * @return the result of the twiss
      * @throws JMadModelException if something goes wrong
      */
-    private TfsResultImpl calcResponse(JMadModel model, Element element, JMadPlane plane, double kick,
+    private TfsResult calcResponse(JMadModel model, Element element, JMadPlane plane, double kick,
             List<String> monitorNames, List<String> monitorRegexps) throws JMadModelException {
 
         addKickToElement(model, element, plane, kick);
@@ -217,13 +214,13 @@ public class FullResponseMatrixTool implements ResponseMatrixTool {
         resultRequest.addVariable(MadxTwissVariable.Y);
         resultRequest.addVariable(MadxTwissVariable.KEYWORD);
 
-        TfsResultImpl tfsResult;
+        TfsResult tfsResult;
         try {
             Result result = model.twiss(resultRequest);
             if (ResultType.TFS_RESULT != result.getResultType()) {
                 throw new JMadModelException("Twiss returned wrong type of result!");
             }
-            tfsResult = (TfsResultImpl) result;
+            tfsResult = (TfsResult) result;
         } finally {
             /* reset strength to old Value */
             addKickToElement(model, element, plane, -kick);
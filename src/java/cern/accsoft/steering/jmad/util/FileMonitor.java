@@ -23,11 +23,16 @@
 package cern.accsoft.steering.jmad.util;
 
 import java.io.File;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
 
 import cern.accsoft.steering.jmad.JMadException;
 
 /**
- * polls a file and terminates as soon as it exists.
+ * polls a file and terminates as soon as it exists. If a {@link WatchService} on the directory of the file is given,
+ * then the monitor sleeps until the directory changes instead of polling in fixed intervals.
  * 
  * @author Kajetan Fuchsberger (kajetan.fuchsberger at cern.ch)
  */
@@ -35,12 +40,20 @@ public class FileMonitor {
     /** the sleeping interval between the polls. in milliseconds. */
     private static final int POLL_INTERVAL = 10;
 
+    /**
+     * the maximum time to wait for a change of the directory, before checking the process again. in milliseconds.
+     */
+    private static final int WATCH_INTERVAL = 50;
+
     /** The file to wait for */
     private File file = null;
 
     /** The process to monitor. If this is interrupted, then the waiting throws an exception */
     private Process process = null;
 
+    /** notifies changes in the directory of the file. If null, then the file is polled. */
+    private WatchService watchService = null;
+
     /**
      * waits forever, until the file exists.
      * 
@@ -58,7 +71,7 @@ public class FileMonitor {
      * @return true, if the file finally exists, false, if the monitored process was interrupted or we timed out.
      * @throws WaitingFailedException if something goes wrong during the waiting
      */
-    public synchronized boolean waitForFile(Long timeout) throws JMadException {
+    public boolean waitForFile(Long timeout) throws JMadException {
         long startTime = System.currentTimeMillis();
         while (!file.exists()) {
             /* interrupt if the process has stopped meanwhile. */
@@ -80,7 +93,11 @@ public class FileMonitor {
              * If everything is ok so far, we wait a little bit before continuing.
              */
             try {
-                this.wait(POLL_INTERVAL);
+                if (watchService == null) {
+                    Thread.sleep(POLL_INTERVAL);
+                } else {
+                    waitForChange();
+                }
             } catch (InterruptedException e) {
                 throw new WaitingFailedException("waiting for file '" + file.getAbsolutePath() + "' was interrupted", e);
             }
@@ -90,13 +107,41 @@ public class FileMonitor {
         return true;
     }
 
+    /**
+     * waits until the watch service reports a change in the directory (of any file in it) or the watch interval
+     * elapsed.
+     */
+    private void waitForChange() throws InterruptedException, WaitingFailedException {
+        try {
+            WatchKey key = watchService.poll(WATCH_INTERVAL, TimeUnit.MILLISECONDS);
+            if (key != null) {
+                key.pollEvents();
+                key.reset();
+            }
+        } catch (ClosedWatchServiceException e) {
+            throw new WaitingFailedException("the watch service for file '" + file.getAbsolutePath()
+                    + "' was closed while waiting", e);
+        }
+    }
+
     public FileMonitor(File file) {
         this(file, null);
     }
 
     public FileMonitor(File file, Process process) {
+        this(file, process, null);
+    }
+
+    /**
+     * @param file the file to wait for
+     * @param process the process which creates the file (may be null)
+     * @param watchService a watch service on which the directory of the file is registered for created entries (may
+     *            be null)
+     */
+    public FileMonitor(File file, Process process, WatchService watchService) {
         this.file = file;
         this.process = process;
+        this.watchService = watchService;
     }
 
     /**
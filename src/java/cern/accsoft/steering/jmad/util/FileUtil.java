@@ -101,6 +101,23 @@ public final class FileUtil {
         return dir.delete();
     }
 
+    /**
+     * @param file a file or directory
+     * @return the size of the file or the total size of all files within the directory (recursively). 0 if the file
+     *         does not exist.
+     */
+    public static long sizeOf(File file) {
+        File[] children = file.listFiles();
+        if (children == null) {
+            return file.length();
+        }
+        long size = 0;
+        for (File child : children) {
+            size += sizeOf(child);
+        }
+        return size;
+    }
+
     /**
      * Copy a file in the File system. Uses {@link FileReader} and {@link FileWriter} to copy the files content.
      * 
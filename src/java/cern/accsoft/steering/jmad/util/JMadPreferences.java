@@ -29,6 +29,12 @@
  */
 package cern.accsoft.steering.jmad.util;
 
+import java.util.Map;
+
+import cern.accsoft.steering.jmad.bin.CpuSet;
+import cern.accsoft.steering.jmad.kernel.KernelProfile;
+import cern.accsoft.steering.jmad.kernel.ReadyHandshake;
+
 /**
  * methods to handle settings that must be configurable by an user-application
  * 
@@ -71,4 +77,232 @@ public interface JMadPreferences {
      * @param cleanup the value to set
      */
     public void setCleanupKernelFiles(boolean cleanup);
+
+    /**
+     * @return the way in which MadX signals the kernels that it finished the commands sent so far, null if not
+     *         configured. Then the kernels use the {@link ReadyHandshake#STDOUT_SENTINEL} if MadX runs line buffered
+     *         (see {@link #isMadxLineBuffered()}) and the {@link ReadyHandshake#READY_FILE} otherwise.
+     */
+    public ReadyHandshake getReadyHandshake();
+
+    /**
+     * sets the way in which MadX signals the kernels that it finished the commands sent so far.
+     * 
+     * @param readyHandshake the handshake to use
+     */
+    public void setReadyHandshake(ReadyHandshake readyHandshake);
+
+    /**
+     * @return <code>true</code> if the kernels shall restart MadX and replay their state automatically when MadX
+     *         crashed, <code>false</code> if not.
+     */
+    public boolean isAutoRecoverKernels();
+
+    /**
+     * set to <code>true</code> if the kernels shall restart MadX and replay their state automatically when MadX
+     * crashed, <code>false</code> if not.
+     * 
+     * @param autoRecover the value to set
+     */
+    public void setAutoRecoverKernels(boolean autoRecover);
+
+    /**
+     * @return <code>true</code> if the kernels shall write the output of MadX to log files, <code>false</code> if they
+     *         shall only keep the last lines in memory.
+     */
+    public boolean isMadxLogFiles();
+
+    /**
+     * set to <code>true</code> if the kernels shall write the output of MadX to log files, <code>false</code> if they
+     * shall only keep the last lines in memory.
+     * 
+     * @param logFiles the value to set
+     */
+    public void setMadxLogFiles(boolean logFiles);
+
+    /**
+     * @return the size (in bytes) above which a MadX log file is rotated
+     */
+    public long getMadxLogFileMaxSize();
+
+    /**
+     * sets the size (in bytes) above which a MadX log file is rotated.
+     * 
+     * @param maxSize the maximum size of one log file in bytes
+     */
+    public void setMadxLogFileMaxSize(long maxSize);
+
+    /**
+     * @return the number of the last lines of the MadX output (and error output) which each kernel keeps in memory
+     */
+    public int getMadxOutputBufferLines();
+
+    /**
+     * sets the number of the last lines of the MadX output (and error output) which each kernel keeps in memory.
+     * 
+     * @param lines the number of lines to keep
+     */
+    public void setMadxOutputBufferLines(int lines);
+
+    /**
+     * @return the profile which defines how the kernels log the commands sent to MadX
+     */
+    public KernelProfile getKernelProfile();
+
+    /**
+     * sets the profile which defines how the kernels log the commands sent to MadX.
+     * 
+     * @param kernelProfile the profile to use
+     */
+    public void setKernelProfile(KernelProfile kernelProfile);
+
+    /**
+     * @return where the kernels create their short-lived working files
+     */
+    public WorkingDirStrategy getWorkingDirStrategy();
+
+    /**
+     * sets where the kernels create their short-lived working files.
+     * 
+     * @param strategy the strategy to use
+     */
+    public void setWorkingDirStrategy(WorkingDirStrategy strategy);
+
+    /**
+     * @return the maximum number of bytes, which all working files of the user may occupy on the RAM-backed file
+     *         system, if the {@link WorkingDirStrategy#RAM} strategy is used
+     */
+    public long getRamWorkingDirBudget();
+
+    /**
+     * sets the maximum number of bytes, which all working files of the user may occupy on the RAM-backed file system,
+     * if the {@link WorkingDirStrategy#RAM} strategy is used.
+     * 
+     * @param budget the budget in bytes
+     */
+    public void setRamWorkingDirBudget(long budget);
+
+    /**
+     * @return <code>true</code> if each MadX process shall run in the working directory of its kernel,
+     *         <code>false</code> if it shall run in the working directory of the JVM.
+     */
+    public boolean isMadxWorkingDirPerKernel();
+
+    /**
+     * set to <code>true</code> if each MadX process shall run in the working directory of its kernel. Then files,
+     * which MadX writes relative to its working directory, do not collide between kernels.
+     * 
+     * @param perKernel the value to set
+     */
+    public void setMadxWorkingDirPerKernel(boolean perKernel);
+
+    /**
+     * @return the variables which are added to the environment of the MadX processes
+     */
+    public Map<String, String> getMadxEnvironment();
+
+    /**
+     * sets the variables which are added to the environment of the MadX processes.
+     * 
+     * @param environment the variables by name
+     */
+    public void setMadxEnvironment(Map<String, String> environment);
+
+    /**
+     * @return the cores on which the MadX processes may run, null if they are not pinned
+     */
+    public CpuSet getMadxCpuSet();
+
+    /**
+     * sets the cores on which the MadX processes may run. Each kernel of a pool is pinned to its own group of
+     * {@link #getMadxCpusPerKernel()} of these cores (see {@link CpuSet#slice(int, int)}), other kernels to all of
+     * them.
+     * 
+     * @param cpuSet the cores to use, null to not pin the processes
+     */
+    public void setMadxCpuSet(CpuSet cpuSet);
+
+    /**
+     * @return the number of cores to which each kernel of a pool is pinned
+     */
+    public int getMadxCpusPerKernel();
+
+    /**
+     * sets the number of cores to which each kernel of a pool is pinned.
+     * 
+     * @param cpus the number of cores per kernel
+     */
+    public void setMadxCpusPerKernel(int cpus);
+
+    /**
+     * @return the nice level of the MadX processes, null to keep the one of the JVM
+     */
+    public Integer getMadxNiceLevel();
+
+    /**
+     * sets the nice level of the MadX processes, e.g. to keep interactive applications responsive while many kernels
+     * are busy.
+     * 
+     * @param niceLevel the nice level, null to keep the one of the JVM
+     */
+    public void setMadxNiceLevel(Integer niceLevel);
+
+    /**
+     * @return <code>true</code> if MadX is started with a line buffered standard output (using 'stdbuf', only
+     *         available on linux), <code>false</code> if MadX buffers its output in blocks.
+     */
+    public boolean isMadxLineBuffered();
+
+    /**
+     * set to <code>true</code> (default) to start MadX with a line buffered standard output, so that the kernels can
+     * detect the end of the commands in the output, instead of letting MadX create a file.
+     * 
+     * @param lineBuffered the value to set
+     */
+    public void setMadxLineBuffered(boolean lineBuffered);
+
+    /**
+     * @return <code>true</code> if the kernels return TFS results which store the numbers as primitive arrays (see
+     *         {@link cern.accsoft.steering.jmad.domain.result.tfs.ColumnarTfsResult}), <code>false</code> if they keep
+     *         all values as strings.
+     */
+    public boolean isColumnarTfsResults();
+
+    /**
+     * set to <code>true</code> if the kernels shall return columnar TFS results, which need several times less memory
+     * for large tables.
+     * 
+     * @param columnar the value to set
+     */
+    public void setColumnarTfsResults(boolean columnar);
+
+    /**
+     * @return <code>true</code> if all double columns of a TFS result are converted and verified while parsing,
+     *         <code>false</code> if each column is converted when it is read for the first time.
+     */
+    public boolean isTfsEagerConversion();
+
+    /**
+     * set to <code>true</code> (default) to convert all double columns of a TFS result while parsing, so that invalid
+     * values make the parsing fail instead of the access to the column. Set to <code>false</code> to convert only the
+     * columns which are actually read.
+     * 
+     * @param eagerConversion the value to set
+     */
+    public void setTfsEagerConversion(boolean eagerConversion);
+
+    /**
+     * @return the size (in bytes) of uncompressed TFS files, from which on their rows are parsed in parallel. Zero or
+     *         negative (the default) if TFS files are always parsed by one thread.
+     */
+    public long getTfsParallelThreshold();
+
+    /**
+     * sets the size (in bytes) of uncompressed TFS files, from which on their rows are parsed in parallel (e.g.
+     * {@link cern.accsoft.steering.jmad.io.TfsFileParser#DEFAULT_PARALLEL_THRESHOLD}). The parts are parsed by a pool
+     * of JMad threads, not by the common fork join pool.
+     * 
+     * @param threshold the file size in bytes, zero or negative to disable the parallel parsing
+     */
+    public void setTfsParallelThreshold(long threshold);
 }
@@ -29,6 +29,14 @@
  */
 package cern.accsoft.steering.jmad.util;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cern.accsoft.steering.jmad.JMadConstants;
+import cern.accsoft.steering.jmad.bin.CpuSet;
+import cern.accsoft.steering.jmad.kernel.KernelProfile;
+import cern.accsoft.steering.jmad.kernel.ReadyHandshake;
+
 /**
  * The basic implementation to store preferences.
  * <p>
@@ -67,6 +75,175 @@ public class JMadPreferencesImpl implements JMadPreferences {
 	 */
 	private Boolean cleanupKernelFiles = null;
 
+	/** The name of the property defining the handshake between kernel and MadX */
+	private static final String PROP_READY_HANDSHAKE = "cern.jmad.kernel.handshake";
+	/**
+	 * The handshake between kernel and MadX. Defaults to null so the property
+	 * value is returned (if not set, the kernel chooses the handshake depending
+	 * on the buffering of the output of MadX).
+	 */
+	private ReadyHandshake readyHandshake = null;
+
+	/** The name of the property defining if kernels recover automatically from crashes of MadX */
+	private static final String PROP_AUTO_RECOVER_KERNELS = "cern.jmad.kernel.autorecover";
+	/** Per default a crash of MadX is only reported */
+	private static final boolean DEFAULT_AUTO_RECOVER_KERNELS = false;
+	/**
+	 * The value of recovering kernels automatically. Defaults to null so the
+	 * property value is returned.
+	 */
+	private Boolean autoRecoverKernels = null;
+
+	/** The name of the property defining if the output of MadX is written to log files */
+	private static final String PROP_MADX_LOG_FILES = "cern.jmad.kernel.logfiles";
+	/** Per default the output of MadX is logged to files */
+	private static final boolean DEFAULT_MADX_LOG_FILES = true;
+	/**
+	 * The value of writing MadX log files. Defaults to null so the property
+	 * value is returned.
+	 */
+	private Boolean madxLogFiles = null;
+
+	/** The name of the property defining the size at which MadX log files are rotated */
+	private static final String PROP_MADX_LOG_FILE_MAX_SIZE = "cern.jmad.kernel.logfile.maxsize";
+	/** Per default a log file is rotated when it exceeds 10MB */
+	private static final long DEFAULT_MADX_LOG_FILE_MAX_SIZE = 10L * 1024 * 1024;
+	/**
+	 * The size at which MadX log files are rotated. Defaults to null so the
+	 * property value is returned.
+	 */
+	private Long madxLogFileMaxSize = null;
+
+	/** The name of the property defining how many lines of MadX output are kept in memory */
+	private static final String PROP_MADX_OUTPUT_BUFFER_LINES = "cern.jmad.kernel.output.buffer.lines";
+	/** Per default the last 1000 lines are kept */
+	private static final int DEFAULT_MADX_OUTPUT_BUFFER_LINES = 1000;
+	/**
+	 * The number of lines kept in memory. Defaults to null so the property
+	 * value is returned.
+	 */
+	private Integer madxOutputBufferLines = null;
+
+	/** The name of the property defining the profile of the kernels */
+	private static final String PROP_KERNEL_PROFILE = "cern.jmad.kernel.profile";
+	/** Per default every command is logged immediately */
+	private static final KernelProfile DEFAULT_KERNEL_PROFILE = KernelProfile.DEVELOPMENT;
+	/**
+	 * The profile of the kernels. Defaults to null so the property value is
+	 * returned.
+	 */
+	private KernelProfile kernelProfile = null;
+
+	/** The name of the property defining where the kernels create their working files */
+	private static final String PROP_WORKING_DIR_STRATEGY = "cern.jmad.kernel.workdir";
+	/** Per default the working files are created on disk */
+	private static final WorkingDirStrategy DEFAULT_WORKING_DIR_STRATEGY = WorkingDirStrategy.DISK;
+	/**
+	 * The strategy for the working files. Defaults to null so the property
+	 * value is returned.
+	 */
+	private WorkingDirStrategy workingDirStrategy = null;
+
+	/** The name of the property defining the budget of the RAM-backed working dir */
+	private static final String PROP_RAM_WORKING_DIR_BUDGET = "cern.jmad.kernel.workdir.ram.budget";
+	/** Per default the working files may occupy 256MB of RAM */
+	private static final long DEFAULT_RAM_WORKING_DIR_BUDGET = 256L * 1024 * 1024;
+	/**
+	 * The budget of the RAM-backed working dir. Defaults to null so the
+	 * property value is returned.
+	 */
+	private Long ramWorkingDirBudget = null;
+
+	/** The name of the property defining if MadX runs in the working directory of its kernel */
+	private static final String PROP_MADX_WORKING_DIR_PER_KERNEL = "cern.jmad.kernel.madx.workdir.perkernel";
+	/** Per default MadX runs in the working directory of the JVM */
+	private static final boolean DEFAULT_MADX_WORKING_DIR_PER_KERNEL = false;
+	/**
+	 * The value of running MadX in the kernel working directory. Defaults to
+	 * null so the property value is returned.
+	 */
+	private Boolean madxWorkingDirPerKernel = null;
+
+	/**
+	 * The prefix of the properties defining the environment of MadX: e.g.
+	 * 'cern.jmad.kernel.madx.env.OMP_NUM_THREADS=1'
+	 */
+	private static final String PROP_PREFIX_MADX_ENVIRONMENT = "cern.jmad.kernel.madx.env.";
+	/**
+	 * The additional environment of MadX. Defaults to null so the property
+	 * values are returned.
+	 */
+	private Map<String, String> madxEnvironment = null;
+
+	/** The name of the property defining the cores for MadX, in the format of 'taskset -c' */
+	private static final String PROP_MADX_CPU_SET = "cern.jmad.kernel.madx.cpus";
+	/**
+	 * The cores for MadX. Defaults to null so the property value is returned
+	 * (if not set, MadX is not pinned).
+	 */
+	private CpuSet madxCpuSet = null;
+
+	/** The name of the property defining the number of cores of each pooled kernel */
+	private static final String PROP_MADX_CPUS_PER_KERNEL = "cern.jmad.kernel.madx.cpus.perkernel";
+	/** Per default each pooled kernel gets its own core */
+	private static final int DEFAULT_MADX_CPUS_PER_KERNEL = 1;
+	/**
+	 * The number of cores of each pooled kernel. Defaults to null so the
+	 * property value is returned.
+	 */
+	private Integer madxCpusPerKernel = null;
+
+	/** The name of the property defining the nice level of MadX */
+	private static final String PROP_MADX_NICE_LEVEL = "cern.jmad.kernel.madx.nice";
+	/**
+	 * The nice level of MadX. Defaults to null so the property value is
+	 * returned (if not set, the level of the JVM is kept).
+	 */
+	private Integer madxNiceLevel = null;
+
+	/** The name of the property defining if MadX is started with a line buffered output */
+	private static final String PROP_MADX_LINE_BUFFERED = "cern.jmad.kernel.madx.linebuffered";
+	/**
+	 * Per default MadX is started line buffered, so that the kernels see the
+	 * end of the commands in its output
+	 */
+	private static final boolean DEFAULT_MADX_LINE_BUFFERED = true;
+	/**
+	 * The value of starting MadX line buffered. Defaults to null so the
+	 * property value is returned.
+	 */
+	private Boolean madxLineBuffered = null;
+
+	/** The name of the property defining if the kernels return columnar TFS results */
+	private static final String PROP_COLUMNAR_TFS_RESULTS = "cern.jmad.kernel.tfs.columnar";
+	/** Per default the TFS results keep the values as strings */
+	private static final boolean DEFAULT_COLUMNAR_TFS_RESULTS = false;
+	/**
+	 * The value of returning columnar TFS results. Defaults to null so the
+	 * property value is returned.
+	 */
+	private Boolean columnarTfsResults = null;
+
+	/** The name of the property defining if TFS results are converted while parsing */
+	private static final String PROP_TFS_EAGER_CONVERSION = "cern.jmad.kernel.tfs.eagerconversion";
+	/** Per default invalid values in TFS results make the parsing fail */
+	private static final boolean DEFAULT_TFS_EAGER_CONVERSION = true;
+	/**
+	 * The value of converting TFS results while parsing. Defaults to null so
+	 * the property value is returned.
+	 */
+	private Boolean tfsEagerConversion = null;
+
+	/** The name of the property defining the file size from which on TFS files are parsed in parallel */
+	private static final String PROP_TFS_PARALLEL_THRESHOLD = "cern.jmad.kernel.tfs.parallelthreshold";
+	/** Per default TFS files are parsed in one thread */
+	private static final long DEFAULT_TFS_PARALLEL_THRESHOLD = 0;
+	/**
+	 * The file size from which on TFS files are parsed in parallel. Defaults to
+	 * null so the property value is returned.
+	 */
+	private Long tfsParallelThreshold = null;
+
 	//
 	// methods of interface Preferences
 	//
@@ -133,4 +310,295 @@ public class JMadPreferencesImpl implements JMadPreferences {
 		this.cleanupKernelFiles = cleanup;
 	}
 
+	@Override
+	public ReadyHandshake getReadyHandshake() {
+		if (this.readyHandshake != null) {
+			return this.readyHandshake;
+		}
+		String propertyValue = System.getProperty(PROP_READY_HANDSHAKE);
+		if (propertyValue != null) {
+			return ReadyHandshake.valueOf(propertyValue.trim().toUpperCase(JMadConstants.DEFAULT_LOCALE));
+		}
+		return null;
+	}
+
+	@Override
+	public void setReadyHandshake(ReadyHandshake readyHandshake) {
+		this.readyHandshake = readyHandshake;
+	}
+
+	@Override
+	public boolean isAutoRecoverKernels() {
+		if (this.autoRecoverKernels != null) {
+			return this.autoRecoverKernels;
+		}
+		String propertyValue = System.getProperty(PROP_AUTO_RECOVER_KERNELS);
+		if (propertyValue != null) {
+			return Boolean.parseBoolean(propertyValue);
+		}
+		return DEFAULT_AUTO_RECOVER_KERNELS;
+	}
+
+	@Override
+	public void setAutoRecoverKernels(boolean autoRecover) {
+		this.autoRecoverKernels = autoRecover;
+	}
+
+	@Override
+	public boolean isMadxLogFiles() {
+		if (this.madxLogFiles != null) {
+			return this.madxLogFiles;
+		}
+		String propertyValue = System.getProperty(PROP_MADX_LOG_FILES);
+		if (propertyValue != null) {
+			return Boolean.parseBoolean(propertyValue);
+		}
+		return DEFAULT_MADX_LOG_FILES;
+	}
+
+	@Override
+	public void setMadxLogFiles(boolean logFiles) {
+		this.madxLogFiles = logFiles;
+	}
+
+	@Override
+	public long getMadxLogFileMaxSize() {
+		if (this.madxLogFileMaxSize != null) {
+			return this.madxLogFileMaxSize;
+		}
+		String propertyValue = System.getProperty(PROP_MADX_LOG_FILE_MAX_SIZE);
+		if (propertyValue != null) {
+			return Long.parseLong(propertyValue.trim());
+		}
+		return DEFAULT_MADX_LOG_FILE_MAX_SIZE;
+	}
+
+	@Override
+	public void setMadxLogFileMaxSize(long maxSize) {
+		this.madxLogFileMaxSize = maxSize;
+	}
+
+	@Override
+	public int getMadxOutputBufferLines() {
+		if (this.madxOutputBufferLines != null) {
+			return this.madxOutputBufferLines;
+		}
+		String propertyValue = System.getProperty(PROP_MADX_OUTPUT_BUFFER_LINES);
+		if (propertyValue != null) {
+			return Integer.parseInt(propertyValue.trim());
+		}
+		return DEFAULT_MADX_OUTPUT_BUFFER_LINES;
+	}
+
+	@Override
+	public void setMadxOutputBufferLines(int lines) {
+		this.madxOutputBufferLines = lines;
+	}
+
+	@Override
+	public KernelProfile getKernelProfile() {
+		if (this.kernelProfile != null) {
+			return this.kernelProfile;
+		}
+		String propertyValue = System.getProperty(PROP_KERNEL_PROFILE);
+		if (propertyValue != null) {
+			return KernelProfile.valueOf(propertyValue.trim().toUpperCase(JMadConstants.DEFAULT_LOCALE));
+		}
+		return DEFAULT_KERNEL_PROFILE;
+	}
+
+	@Override
+	public void setKernelProfile(KernelProfile kernelProfile) {
+		this.kernelProfile = kernelProfile;
+	}
+
+	@Override
+	public WorkingDirStrategy getWorkingDirStrategy() {
+		if (this.workingDirStrategy != null) {
+			return this.workingDirStrategy;
+		}
+		String propertyValue = System.getProperty(PROP_WORKING_DIR_STRATEGY);
+		if (propertyValue != null) {
+			return WorkingDirStrategy.valueOf(propertyValue.trim().toUpperCase(JMadConstants.DEFAULT_LOCALE));
+		}
+		return DEFAULT_WORKING_DIR_STRATEGY;
+	}
+
+	@Override
+	public void setWorkingDirStrategy(WorkingDirStrategy strategy) {
+		this.workingDirStrategy = strategy;
+	}
+
+	@Override
+	public long getRamWorkingDirBudget() {
+		if (this.ramWorkingDirBudget != null) {
+			return this.ramWorkingDirBudget;
+		}
+		String propertyValue = System.getProperty(PROP_RAM_WORKING_DIR_BUDGET);
+		if (propertyValue != null) {
+			return Long.parseLong(propertyValue.trim());
+		}
+		return DEFAULT_RAM_WORKING_DIR_BUDGET;
+	}
+
+	@Override
+	public void setRamWorkingDirBudget(long budget) {
+		this.ramWorkingDirBudget = budget;
+	}
+
+	@Override
+	public boolean isMadxWorkingDirPerKernel() {
+		if (this.madxWorkingDirPerKernel != null) {
+			return this.madxWorkingDirPerKernel;
+		}
+		String propertyValue = System.getProperty(PROP_MADX_WORKING_DIR_PER_KERNEL);
+		if (propertyValue != null) {
+			return Boolean.parseBoolean(propertyValue);
+		}
+		return DEFAULT_MADX_WORKING_DIR_PER_KERNEL;
+	}
+
+	@Override
+	public void setMadxWorkingDirPerKernel(boolean perKernel) {
+		this.madxWorkingDirPerKernel = perKernel;
+	}
+
+	@Override
+	public Map<String, String> getMadxEnvironment() {
+		if (this.madxEnvironment != null) {
+			return this.madxEnvironment;
+		}
+		Map<String, String> environment = new LinkedHashMap<>();
+		for (String name : System.getProperties().stringPropertyNames()) {
+			if (name.startsWith(PROP_PREFIX_MADX_ENVIRONMENT)) {
+				environment.put(name.substring(PROP_PREFIX_MADX_ENVIRONMENT.length()), System.getProperty(name));
+			}
+		}
+		return environment;
+	}
+
+	@Override
+	public void setMadxEnvironment(Map<String, String> environment) {
+		this.madxEnvironment = new LinkedHashMap<>(environment);
+	}
+
+	@Override
+	public CpuSet getMadxCpuSet() {
+		if (this.madxCpuSet != null) {
+			return this.madxCpuSet;
+		}
+		String propertyValue = System.getProperty(PROP_MADX_CPU_SET);
+		if ((propertyValue != null) && !propertyValue.trim().isEmpty()) {
+			return CpuSet.parse(propertyValue);
+		}
+		return null;
+	}
+
+	@Override
+	public void setMadxCpuSet(CpuSet cpuSet) {
+		this.madxCpuSet = cpuSet;
+	}
+
+	@Override
+	public int getMadxCpusPerKernel() {
+		if (this.madxCpusPerKernel != null) {
+			return this.madxCpusPerKernel;
+		}
+		String propertyValue = System.getProperty(PROP_MADX_CPUS_PER_KERNEL);
+		if (propertyValue != null) {
+			return Integer.parseInt(propertyValue.trim());
+		}
+		return DEFAULT_MADX_CPUS_PER_KERNEL;
+	}
+
+	@Override
+	public void setMadxCpusPerKernel(int cpus) {
+		this.madxCpusPerKernel = cpus;
+	}
+
+	@Override
+	public Integer getMadxNiceLevel() {
+		if (this.madxNiceLevel != null) {
+			return this.madxNiceLevel;
+		}
+		String propertyValue = System.getProperty(PROP_MADX_NICE_LEVEL);
+		if (propertyValue != null) {
+			return Integer.valueOf(propertyValue.trim());
+		}
+		return null;
+	}
+
+	@Override
+	public void setMadxNiceLevel(Integer niceLevel) {
+		this.madxNiceLevel = niceLevel;
+	}
+
+	@Override
+	public boolean isMadxLineBuffered() {
+		if (this.madxLineBuffered != null) {
+			return this.madxLineBuffered;
+		}
+		String propertyValue = System.getProperty(PROP_MADX_LINE_BUFFERED);
+		if (propertyValue != null) {
+			return Boolean.parseBoolean(propertyValue);
+		}
+		return DEFAULT_MADX_LINE_BUFFERED;
+	}
+
+	@Override
+	public void setMadxLineBuffered(boolean lineBuffered) {
+		this.madxLineBuffered = lineBuffered;
+	}
+
+	@Override
+	public boolean isColumnarTfsResults() {
+		if (this.columnarTfsResults != null) {
+			return this.columnarTfsResults;
+		}
+		String propertyValue = System.getProperty(PROP_COLUMNAR_TFS_RESULTS);
+		if (propertyValue != null) {
+			return Boolean.parseBoolean(propertyValue);
+		}
+		return DEFAULT_COLUMNAR_TFS_RESULTS;
+	}
+
+	@Override
+	public void setColumnarTfsResults(boolean columnar) {
+		this.columnarTfsResults = columnar;
+	}
+
+	@Override
+	public boolean isTfsEagerConversion() {
+		if (this.tfsEagerConversion != null) {
+			return this.tfsEagerConversion;
+		}
+		String propertyValue = System.getProperty(PROP_TFS_EAGER_CONVERSION);
+		if (propertyValue != null) {
+			return Boolean.parseBoolean(propertyValue);
+		}
+		return DEFAULT_TFS_EAGER_CONVERSION;
+	}
+
+	@Override
+	public void setTfsEagerConversion(boolean eagerConversion) {
+		this.tfsEagerConversion = eagerConversion;
+	}
+
+	@Override
+	public long getTfsParallelThreshold() {
+		if (this.tfsParallelThreshold != null) {
+			return this.tfsParallelThreshold;
+		}
+		String propertyValue = System.getProperty(PROP_TFS_PARALLEL_THRESHOLD);
+		if (propertyValue != null) {
+			return Long.parseLong(propertyValue.trim());
+		}
+		return DEFAULT_TFS_PARALLEL_THRESHOLD;
+	}
+
+	@Override
+	public void setTfsParallelThreshold(long threshold) {
+		this.tfsParallelThreshold = threshold;
+	}
+
 }
@@ -22,8 +22,38 @@
 
 package cern.accsoft.steering.jmad.util;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 public final class ProcTools {
 
+    /** the line of /proc/[pid]/status, which contains the resident set size */
+    private static final String STATUS_RSS = "VmRSS:";
+
+    /** the index of the user cpu time within the fields of /proc/[pid]/stat which follow the command name */
+    private static final int STAT_UTIME_INDEX = 11;
+
+    /**
+     * the index of the user cpu time of the terminated children within the fields of /proc/[pid]/stat which follow
+     * the command name
+     */
+    private static final int STAT_CUTIME_INDEX = 13;
+
+    /** the clock ticks per second, if they cannot be read by getconf. This is the value of all common linux systems. */
+    private static final long DEFAULT_CLOCK_TICKS_PER_SECOND = 100;
+
+    /** the maximum depth of the process tree, whose cpu time is summed up */
+    private static final int MAX_PROCESS_TREE_DEPTH = 8;
+
     private ProcTools() {
         /* only static methods */
     }
@@ -47,4 +77,162 @@ public final class ProcTools {
             return true;
         }
     }
+
+    /**
+     * @param process the process
+     * @return the operating system id of the process, or null if it cannot be determined
+     */
+    public static Long getPid(Process process) {
+        if (process == null) {
+            return null;
+        }
+        try {
+            /* java 9 and newer */
+            Method pidMethod = Process.class.getMethod("pid");
+            return (Long) pidMethod.invoke(process);
+        } catch (ReflectiveOperationException e) {
+            /* java 8: the implementation on unix like systems has a private field */
+            try {
+                Field pidField = process.getClass().getDeclaredField("pid");
+                pidField.setAccessible(true);
+                return pidField.getLong(process);
+            } catch (ReflectiveOperationException | RuntimeException e2) {
+                return null;
+            }
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param pid the operating system id of a process
+     * @return the resident set size of the process in bytes, or -1 if it is not available (e.g. not on linux or the
+     *         process terminated)
+     */
+    public static long getRssBytes(long pid) {
+        File status = new File("/proc/" + pid + "/status");
+        if (!status.canRead()) {
+            return -1;
+        }
+        try {
+            for (String line : Files.readAllLines(status.toPath(), StandardCharsets.US_ASCII)) {
+                if (line.startsWith(STATUS_RSS)) {
+                    String[] fields = line.substring(STATUS_RSS.length()).trim().split("\\s+");
+                    return Long.parseLong(fields[0]) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * @param pid the operating system id of a process
+     * @return the cpu time (user and system) the process has consumed so far in nanoseconds, or -1 if it is not
+     *         available (e.g. not on linux or the process terminated)
+     */
+    public static long getCpuTimeNanos(long pid) {
+        long[] ticks = readCpuTicks(pid);
+        return (ticks == null) ? -1 : toNanos(ticks[0] + ticks[1]);
+    }
+
+    /**
+     * @param pid the operating system id of a process
+     * @return the cpu time (user and system) consumed so far by the process and all the processes it started (e.g.
+     *         by 'system' commands of MadX), no matter if they are still running or terminated, in nanoseconds. -1 if
+     *         it is not available (e.g. not on linux or the process terminated)
+     */
+    public static long getProcessTreeCpuTimeNanos(long pid) {
+        long ticks = readProcessTreeCpuTicks(pid, 0);
+        return (ticks < 0) ? -1 : toNanos(ticks);
+    }
+
+    private static long readProcessTreeCpuTicks(long pid, int depth) {
+        long[] ticks = readCpuTicks(pid);
+        if (ticks == null) {
+            return -1;
+        }
+        long sum = ticks[0] + ticks[1] + ticks[2] + ticks[3];
+        if (depth < MAX_PROCESS_TREE_DEPTH) {
+            for (long child : readChildren(pid)) {
+                /* a child which terminated in the meantime is already contained in the times of its parent */
+                sum += Math.max(0, readProcessTreeCpuTicks(child, depth + 1));
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * @return the user and system cpu time of the process and of its terminated children in clock ticks, or null if
+     *         they are not available
+     */
+    private static long[] readCpuTicks(long pid) {
+        File stat = new File("/proc/" + pid + "/stat");
+        if (!stat.canRead()) {
+            return null;
+        }
+        try {
+            String line = new String(Files.readAllBytes(stat.toPath()), StandardCharsets.US_ASCII);
+            /* the command name is in parentheses and might contain spaces */
+            String[] fields = line.substring(line.lastIndexOf(')') + 2).trim().split("\\s+");
+            return new long[] { Long.parseLong(fields[STAT_UTIME_INDEX]), Long.parseLong(fields[STAT_UTIME_INDEX + 1]),
+                    Long.parseLong(fields[STAT_CUTIME_INDEX]), Long.parseLong(fields[STAT_CUTIME_INDEX + 1]) };
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the ids of the running child processes, as listed in /proc/[pid]/task/[tid]/children of all threads of
+     *         the process. Empty, if they are not available.
+     */
+    private static List<Long> readChildren(long pid) {
+        List<Long> children = new ArrayList<>();
+        File[] tasks = new File("/proc/" + pid + "/task").listFiles();
+        if (tasks == null) {
+            return children;
+        }
+        for (File task : tasks) {
+            try {
+                String content = new String(Files.readAllBytes(new File(task, "children").toPath()),
+                        StandardCharsets.US_ASCII).trim();
+                if (!content.isEmpty()) {
+                    for (String child : content.split("\\s+")) {
+                        children.add(Long.parseLong(child));
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                /* the thread terminated, or the kernel does not provide the children */
+            }
+        }
+        return children;
+    }
+
+    private static long toNanos(long ticks) {
+        return ticks * TimeUnit.SECONDS.toNanos(1) / ClockTicks.PER_SECOND;
+    }
+
+    /**
+     * The clock ticks per second of the times in /proc/[pid]/stat, read once by 'getconf CLK_TCK'.
+     */
+    private static final class ClockTicks {
+        private static final long PER_SECOND = read();
+
+        private static long read() {
+            try {
+                Process process = new ProcessBuilder("getconf", "CLK_TCK").redirectErrorStream(true).start();
+                try (BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(process.getInputStream(), StandardCharsets.US_ASCII))) {
+                    String line = reader.readLine();
+                    long ticks = (line == null) ? -1 : Long.parseLong(line.trim());
+                    return (ticks > 0) ? ticks : DEFAULT_CLOCK_TICKS_PER_SECOND;
+                } finally {
+                    process.destroy();
+                }
+            } catch (IOException | RuntimeException e) {
+                return DEFAULT_CLOCK_TICKS_PER_SECOND;
+            }
+        }
+    }
 }
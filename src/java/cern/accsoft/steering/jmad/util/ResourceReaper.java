@@ -0,0 +1,106 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.util;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs cleanup actions for objects which became unreachable, similar to java.lang.ref.Cleaner (which is not available
+ * in java 8). Other than a finalizer, this does not delay the garbage collection of the object and the action runs on
+ * a single daemon thread.
+ * <p>
+ * The action must not refer to the object itself (also not as inner class or lambda capturing it), otherwise the
+ * object never becomes unreachable. It should only hold the resources to release.
+ */
+public final class ResourceReaper {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceReaper.class);
+
+    private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<>();
+
+    /** keeps the references reachable until they are enqueued or cleaned */
+    private static final Set<ReaperReference> REFERENCES = ConcurrentHashMap.newKeySet();
+
+    static {
+        Thread thread = new Thread(ResourceReaper::reap, "jmad-resource-reaper");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private ResourceReaper() {
+        /* only static methods */
+    }
+
+    /**
+     * registers an action, which is run once when the object became unreachable, or when
+     * {@link Cleanable#clean()} is called before.
+     * 
+     * @param object the object to watch
+     * @param action the action which releases the resources of the object
+     * @return the handle to run the action explicitly
+     */
+    public static Cleanable register(Object object, Runnable action) {
+        ReaperReference reference = new ReaperReference(object, action);
+        REFERENCES.add(reference);
+        return reference;
+    }
+
+    private static void reap() {
+        while (true) {
+            try {
+                Reference<?> reference = QUEUE.remove();
+                ((ReaperReference) reference).clean();
+            } catch (InterruptedException e) {
+                /* daemon thread: nobody should interrupt it, just go on */
+            } catch (RuntimeException e) {
+                LOGGER.warn("Cleanup action failed.", e);
+            }
+        }
+    }
+
+    /**
+     * the handle of a registered action
+     */
+    public interface Cleanable {
+
+        /**
+         * runs the action, unless it was already run. Afterwards the object is not watched anymore.
+         */
+        void clean();
+    }
+
+    private static final class ReaperReference extends PhantomReference<Object> implements Cleanable {
+        private final Runnable action;
+        private final AtomicBoolean cleaned = new AtomicBoolean(false);
+
+        private ReaperReference(Object referent, Runnable action) {
+            super(referent, QUEUE);
+            this.action = action;
+        }
+
+        @Override
+        public void clean() {
+            if (cleaned.compareAndSet(false, true)) {
+                REFERENCES.remove(this);
+                clear();
+                action.run();
+            }
+        }
+    }
+}
@@ -27,6 +27,10 @@ package cern.accsoft.steering.jmad.util;
 
 import static java.util.Objects.requireNonNull;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 
 /**
@@ -36,6 +40,16 @@ import java.util.Collection;
  */
 public final class StringUtil {
 
+    /** long enough for the string representation of any double */
+    private static final int MAX_DOUBLE_LENGTH = 32;
+
+    /**
+     * per thread buffers to format doubles without allocating strings
+     */
+    private static final ThreadLocal<StringBuilder> DOUBLE_BUILDER = ThreadLocal
+            .withInitial(() -> new StringBuilder(MAX_DOUBLE_LENGTH));
+    private static final ThreadLocal<char[]> DOUBLE_CHARS = ThreadLocal.withInitial(() -> new char[MAX_DOUBLE_LENGTH]);
+
     private StringUtil() {
         /* only static methods */
     }
@@ -78,4 +92,62 @@ public final class StringUtil {
         }
         return builder.toString();
     }
+
+    /**
+     * Appends the same text as {@link Double#toString(double)} to the given sink, but without creating a string for
+     * each value. This matters when composing thousands of values for MadX.
+     * 
+     * @param sink the sink to append the value to
+     * @param value the value to append
+     * @throws IOException if the sink throws it
+     */
+    public static void appendDouble(Appendable sink, double value) throws IOException {
+        if (sink instanceof StringBuilder) {
+            ((StringBuilder) sink).append(value);
+            return;
+        }
+        StringBuilder builder = DOUBLE_BUILDER.get();
+        builder.setLength(0);
+        builder.append(value);
+        if (sink instanceof Writer) {
+            char[] chars = DOUBLE_CHARS.get();
+            builder.getChars(0, builder.length(), chars, 0);
+            ((Writer) sink).write(chars, 0, builder.length());
+        } else {
+            sink.append(builder);
+        }
+    }
+
+    /**
+     * Calculates the number of bytes of the text in the given charset. For UTF-8 this is done without encoding the
+     * text, which matters for large commands.
+     * 
+     * @param text the text to measure
+     * @param charset the charset in which the text is encoded
+     * @return the number of bytes of the encoded text
+     */
+    public static long encodedLength(String text, Charset charset) {
+        if (StandardCharsets.UTF_8.equals(charset)) {
+            long length = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c < 0x80) {
+                    length += 1;
+                } else if (c < 0x800) {
+                    length += 2;
+                } else if (Character.isHighSurrogate(c) && (i + 1 < text.length())
+                        && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    length += 4;
+                    i++;
+                } else if (Character.isSurrogate(c)) {
+                    /* an unpaired surrogate is replaced by '?' */
+                    length += 1;
+                } else {
+                    length += 3;
+                }
+            }
+            return length;
+        }
+        return text.getBytes(charset).length;
+    }
 }
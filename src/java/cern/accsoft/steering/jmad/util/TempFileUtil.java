@@ -56,6 +56,18 @@ public interface TempFileUtil {
      */
     File getOutputFile(Object object, String relativePath);
 
+    /**
+     * returns a file for short-lived working data of the given object (e.g. the result files of a kernel). Depending
+     * on the {@link WorkingDirStrategy} of the preferences, the file is located on a RAM-backed file system, or it is
+     * the same as {@link #getOutputFile(Object, String)}. This method also ensures, that the parent directory for the
+     * file is available.
+     * 
+     * @param object the object which is used to create a subdir name.
+     * @param relativePath the relative path
+     * @return the file
+     */
+    File getWorkingFile(Object object, String relativePath);
+
     /**
      * recursively removes the dir related to the given object.
      * 
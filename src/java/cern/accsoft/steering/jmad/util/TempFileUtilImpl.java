@@ -30,6 +30,7 @@
 package cern.accsoft.steering.jmad.util;
 
 import java.io.File;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,6 +47,21 @@ public class TempFileUtilImpl implements TempFileUtil {
      */
     public static final String TMPDIR_NAME = "jmad-tmp";
 
+    /**
+     * the default location of the RAM-backed file system for the working files
+     */
+    public static final String DEFAULT_RAM_BASE_PATH = "/dev/shm";
+
+    /**
+     * if less space is left on the RAM-backed file system, then the working files are created on disk
+     */
+    private static final long MIN_FREE_RAM_SPACE = 16L * 1024 * 1024;
+
+    /**
+     * the usage of the RAM-backed file system is measured again after this time (in ms), not for each working file
+     */
+    private static final long DEFAULT_RAM_USAGE_MAX_AGE = 1000;
+
     /**
      * the logger for the class
      */
@@ -56,6 +72,22 @@ public class TempFileUtilImpl implements TempFileUtil {
      */
     private String outputPath = null;
 
+    /**
+     * the base path of the RAM-backed file system
+     */
+    private String ramBasePath = DEFAULT_RAM_BASE_PATH;
+
+    /*
+     * the last measurement of the RAM-backed file system (guarded by this). Walking the working dirs to sum up their
+     * size costs more than the executions which use the files, so the measurement is reused for a while.
+     */
+    private long ramUsageMaxAge = DEFAULT_RAM_USAGE_MAX_AGE;
+    private boolean ramMeasured = false;
+    private long ramMeasurementNanos;
+    private boolean ramAvailable;
+    private long ramUsage;
+    private long ramUsableSpace;
+
     /**
      * The preferences object, to be injected
      */
@@ -83,6 +115,83 @@ public class TempFileUtilImpl implements TempFileUtil {
         return createFile(getObjectPath(object) + File.separator + stripDirectoryTraversal(relativePath));
     }
 
+    @Override
+    public File getWorkingFile(Object object, String relativePath) {
+        JMadPreferences prefs = getPreferences();
+        if ((prefs != null) && (WorkingDirStrategy.RAM == prefs.getWorkingDirStrategy())) {
+            File ramFile = getRamFile(object, relativePath, prefs.getRamWorkingDirBudget());
+            if (ramFile != null) {
+                return ramFile;
+            }
+        }
+        return getOutputFile(object, relativePath);
+    }
+
+    /**
+     * @return the file on the RAM-backed file system, or null if it is not available, full or the budget is used up
+     */
+    private synchronized File getRamFile(Object object, String relativePath, long budget) {
+        long now = System.nanoTime();
+        if (!ramMeasured || (now - ramMeasurementNanos >= TimeUnit.MILLISECONDS.toNanos(ramUsageMaxAge))) {
+            measureRam();
+            ramMeasurementNanos = now;
+            ramMeasured = true;
+        }
+        if (!ramAvailable) {
+            return null;
+        }
+        if (ramUsage >= budget) {
+            LOGGER.debug("Budget for working files in RAM ({} bytes) used up. Using disk instead.", budget);
+            return null;
+        }
+        if (ramUsableSpace < MIN_FREE_RAM_SPACE) {
+            LOGGER.debug("Not enough space left in '{}'. Using disk for working files.", ramBasePath);
+            return null;
+        }
+        return createFile(getRamObjectPath(object) + File.separator + stripDirectoryTraversal(relativePath));
+    }
+
+    /**
+     * checks, if the RAM-backed file system can be used and measures the size of the working files on it and the
+     * space left.
+     */
+    private void measureRam() {
+        File ramBaseDir = new File(ramBasePath);
+        ramAvailable = ramBaseDir.isDirectory() && ramBaseDir.canWrite();
+        if (!ramAvailable) {
+            return;
+        }
+        ramUsage = FileUtil.sizeOf(new File(createRamDirTree()));
+        ramUsableSpace = ramBaseDir.getUsableSpace();
+    }
+
+    /**
+     * makes the next working file measure the RAM-backed file system again
+     */
+    private synchronized void invalidateRamMeasurement() {
+        ramMeasured = false;
+    }
+
+    /**
+     * creates the dir tree on the RAM-backed file system with the same user - rights as on disk.
+     *
+     * @return the final output - dir on the RAM-backed file system
+     */
+    private String createRamDirTree() {
+        FileUtil.createDir(new File(ramBasePath + File.separator + TMPDIR_NAME), true);
+        String ramOutputPath = getRamOutputPath();
+        FileUtil.createDir(new File(ramOutputPath), false);
+        return ramOutputPath;
+    }
+
+    /**
+     * @return the path on the RAM-backed file system which corresponds to the output path on disk
+     */
+    private String getRamOutputPath() {
+        return ramBasePath + File.separator + TMPDIR_NAME + File.separator + SystemUtil.getUserName() + File.separator
+                + SystemUtil.getHostName();
+    }
+
     private static String stripDirectoryTraversal(String relativePath) {
         return relativePath.replace("../", "/");
     }
@@ -93,6 +202,21 @@ public class TempFileUtilImpl implements TempFileUtil {
         if (!FileUtil.deleteDir(dir)) {
             LOGGER.error("Could not delete directory '" + dir.getAbsolutePath() + "'");
         }
+        File ramDir = new File(getRamObjectPath(object));
+        if (ramDir.exists()) {
+            if (!FileUtil.deleteDir(ramDir)) {
+                LOGGER.error("Could not delete directory '" + ramDir.getAbsolutePath() + "'");
+            }
+            invalidateRamMeasurement();
+        }
+    }
+
+    /**
+     * @param object the object the working files belong to
+     * @return the path on the RAM-backed file system for the object (without creating any dir)
+     */
+    private String getRamObjectPath(Object object) {
+        return getRamOutputPath() + File.separator + object.hashCode();
     }
 
     /**
@@ -154,6 +278,24 @@ public class TempFileUtilImpl implements TempFileUtil {
         return outPath;
     }
 
+    /**
+     * @param ramBasePath the base path of the RAM-backed file system, used by the {@link WorkingDirStrategy#RAM}
+     *            strategy. Defaults to {@link #DEFAULT_RAM_BASE_PATH}.
+     */
+    public void setRamBasePath(String ramBasePath) {
+        this.ramBasePath = ramBasePath;
+        invalidateRamMeasurement();
+    }
+
+    /**
+     * @param ramUsageMaxAge the time (in ms) for which a measurement of the RAM-backed file system is reused. Defaults
+     *            to one second. Zero to measure it for each working file.
+     */
+    void setRamUsageMaxAge(long ramUsageMaxAge) {
+        this.ramUsageMaxAge = ramUsageMaxAge;
+        invalidateRamMeasurement();
+    }
+
     public void setPreferences(JMadPreferences preferences) {
         this.preferences = preferences;
     }
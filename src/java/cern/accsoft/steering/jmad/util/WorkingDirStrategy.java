@@ -0,0 +1,30 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.util;
+
+/**
+ * Defines where the short-lived working files of the kernels (e.g. the result files of MadX) are created.
+ */
+public enum WorkingDirStrategy {
+    /**
+     * the working files are created in the output directory on disk, next to the log files (default).
+     */
+    DISK,
+
+    /**
+     * the working files are created on a RAM-backed file system (tmpfs, e.g. /dev/shm) as long as the jmad files there
+     * stay within the configured budget and the file system has space left. Otherwise, or if no such file system is
+     * available, they are created on disk. This avoids the file churn on network file systems for frequent small
+     * calls.
+     */
+    RAM;
+}
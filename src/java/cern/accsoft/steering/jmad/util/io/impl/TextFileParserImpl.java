@@ -69,7 +69,7 @@ public class TextFileParserImpl implements TextFileParser {
      * @return the reader if successful
      * @throws TextFileParserException if the reader cannot be opened
      */
-    private BufferedReader openReader(File file) throws TextFileParserException {
+    public BufferedReader openReader(File file) throws TextFileParserException {
         BufferedReader reader = null;
         try {
             if (file.getCanonicalPath().endsWith(EXTENSION_GZIP)) {
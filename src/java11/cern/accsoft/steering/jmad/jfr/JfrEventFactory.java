@@ -0,0 +1,43 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.jfr;
+
+import cern.accsoft.steering.jmad.jfr.JMadEvents.KernelExecuteSpan;
+import cern.accsoft.steering.jmad.jfr.JMadEvents.ModelInitSpan;
+import cern.accsoft.steering.jmad.jfr.JMadEvents.TfsParseSpan;
+
+/**
+ * Creates the flight recorder events. Loaded by {@link JMadEvents} on java 11 or newer.
+ */
+class JfrEventFactory implements JMadEventFactory {
+
+    @Override
+    public KernelExecuteSpan beginKernelExecute() {
+        KernelExecuteEvent event = new KernelExecuteEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public TfsParseSpan beginTfsParse() {
+        TfsParseEvent event = new TfsParseEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public ModelInitSpan beginModelInit() {
+        ModelInitEvent event = new ModelInitEvent();
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,77 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.jfr;
+
+import cern.accsoft.steering.jmad.jfr.JMadEvents.KernelExecuteSpan;
+import cern.accsoft.steering.jmad.kernel.ExecutionPhase;
+import cern.accsoft.steering.jmad.kernel.ExecutionTimings;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("jmad.KernelExecute")
+@Label("Kernel Execute")
+@Category({ "JMad", "Kernel" })
+@Description("The execution of an executable (or a batch) by MadX, from composing the command to parsing the result")
+class KernelExecuteEvent extends jdk.jfr.Event implements KernelExecuteSpan {
+
+    @Label("Executable Type")
+    String executableType;
+
+    @Label("Result Type")
+    String resultType;
+
+    @Label("Command Size")
+    @DataAmount
+    long commandBytes;
+
+    @Label("Result Size")
+    @DataAmount
+    long resultBytes;
+
+    @Label("Compose Time")
+    @Timespan
+    long composeNanos;
+
+    @Label("Write Time")
+    @Timespan
+    long writeNanos;
+
+    @Label("MadX Time")
+    @Description("The time until MadX signalled to be ready")
+    @Timespan
+    long madxNanos;
+
+    @Label("Parse Time")
+    @Timespan
+    long parseNanos;
+
+    @Override
+    public void commit(ExecutionTimings timings) {
+        end();
+        if (!shouldCommit()) {
+            return;
+        }
+        executableType = timings.getExecutableType();
+        resultType = (timings.getResultType() == null) ? null : timings.getResultType().name();
+        commandBytes = timings.getCommandBytes();
+        resultBytes = timings.getResultBytes();
+        composeNanos = timings.getNanos(ExecutionPhase.COMPOSE);
+        writeNanos = timings.getNanos(ExecutionPhase.WRITE);
+        madxNanos = timings.getNanos(ExecutionPhase.MADX);
+        parseNanos = timings.getNanos(ExecutionPhase.PARSE);
+        commit();
+    }
+}
@@ -0,0 +1,42 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.jfr;
+
+import cern.accsoft.steering.jmad.jfr.JMadEvents.ModelInitSpan;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("jmad.ModelInit")
+@Label("Model Init")
+@Category({ "JMad", "Model" })
+@Description("The initialization of a model, including starting the kernel and calculating the initial optics")
+class ModelInitEvent extends jdk.jfr.Event implements ModelInitSpan {
+
+    @Label("Model Name")
+    String modelName;
+
+    @Label("Success")
+    boolean success;
+
+    @Override
+    public void commit(String initializedModelName, boolean successful) {
+        end();
+        if (!shouldCommit()) {
+            return;
+        }
+        modelName = initializedModelName;
+        success = successful;
+        commit();
+    }
+}
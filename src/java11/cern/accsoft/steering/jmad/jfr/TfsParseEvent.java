@@ -0,0 +1,52 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.jfr;
+
+import cern.accsoft.steering.jmad.jfr.JMadEvents.TfsParseSpan;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("jmad.TfsParse")
+@Label("TFS Parse")
+@Category({ "JMad", "Parser" })
+@Description("Parsing a TFS file written by MadX")
+class TfsParseEvent extends jdk.jfr.Event implements TfsParseSpan {
+
+    @Label("File Name")
+    String fileName;
+
+    @Label("File Size")
+    @DataAmount
+    long bytes;
+
+    @Label("Rows")
+    int rows;
+
+    @Label("Columns")
+    int columns;
+
+    @Override
+    public void commit(String parsedFileName, long fileBytes, int rowCount, int columnCount) {
+        end();
+        if (!shouldCommit()) {
+            return;
+        }
+        fileName = parsedFileName;
+        bytes = fileBytes;
+        rows = rowCount;
+        columns = columnCount;
+        commit();
+    }
+}
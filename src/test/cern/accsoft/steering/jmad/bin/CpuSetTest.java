@@ -0,0 +1,59 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.bin;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class CpuSetTest {
+
+    @Test
+    public void parseExpandsRanges() {
+        assertEquals(Arrays.asList(0, 1, 2, 3, 8, 10, 11), CpuSet.parse("8, 0-3,10-11").getCpus());
+    }
+
+    @Test
+    public void toStringCompactsRanges() {
+        assertEquals("0-3,8,10-11", CpuSet.parse("11,10,8,3,2,1,0").toString());
+    }
+
+    @Test
+    public void slotsGetConsecutiveGroups() {
+        CpuSet cpus = CpuSet.parse("0-7");
+
+        assertEquals("0-1", cpus.slice(0, 2).toString());
+        assertEquals("6-7", cpus.slice(3, 2).toString());
+        /* more slots than groups: start again at the first core */
+        assertEquals("0-1", cpus.slice(4, 2).toString());
+        assertEquals("0,16", CpuSet.parse("0-7,16").slice(4, 2).toString());
+    }
+
+    @Test
+    public void sliceLargerThanSetIsWholeSet() {
+        CpuSet cpus = CpuSet.parse("4-5");
+
+        assertEquals(cpus, cpus.slice(3, 4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidRangeIsRejected() {
+        CpuSet.parse("3-1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyListIsRejected() {
+        CpuSet.parse(" , ");
+    }
+}
@@ -0,0 +1,408 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.bin;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A stand-in for the MadX executable, which speaks enough of the MadX input language to be driven by the kernel: It
+ * reads the statements from stdin, runs 'system' commands, prints the 'print' texts (the ready sentinel), redirects the
+ * output with 'assign', answers 'value' from the assigned variables and writes TFS files for 'twiss' and 'write'. So
+ * kernel, model and parser benchmarks can run on machines without MadX.
+ * <p>
+ * Like MadX, which writes through the C stdio, the stand-in buffers its standard output in blocks of
+ * {@value #STDOUT_BUFFER_SIZE} bytes and does not flush it after a 'print'. So the kernel cannot rely on seeing output
+ * before MadX ends or the buffer is full. Started by 'stdbuf -oL', it flushes after each line like a stdio program.
+ * <p>
+ * The TFS files are either synthetic (with the columns of the last 'select' and a configurable number of rows) or a
+ * copy of a recorded file. The behaviour is configured by system properties:
+ * <ul>
+ * <li>{@value #PROP_ROWS}: the number of rows of synthetic tables (default {@value #DEFAULT_ROWS})</li>
+ * <li>{@value #PROP_LATENCY}: the simulated compute time in ms for each twiss and write (default 0)</li>
+ * <li>{@value #PROP_TFS_FILE}: a recorded TFS file, which is written instead of the synthetic tables</li>
+ * </ul>
+ * Use the {@link FakeMadxLauncher} to select it as MadX executable via 'cern.jmad.kernel.madxpath'.
+ */
+public final class FakeMadx {
+
+    public static final String PROP_ROWS = "fakemadx.rows";
+    public static final String PROP_LATENCY = "fakemadx.latency";
+    public static final String PROP_TFS_FILE = "fakemadx.tfs";
+
+    public static final int DEFAULT_ROWS = 100;
+
+    /** the size of the stdout buffer of glibc, if the output is a pipe */
+    static final int STDOUT_BUFFER_SIZE = 4096;
+
+    /** the variable by which 'stdbuf' passes the buffering mode of stdout to the preloaded library */
+    private static final String ENV_STDBUF_OUTPUT = "_STDBUF_O";
+
+    /** the columns which are written, if no columns were selected */
+    static final List<String> DEFAULT_COLUMNS = Arrays.asList("NAME", "KEYWORD", "S", "BETX", "ALFX", "MUX", "BETY",
+            "ALFY", "MUY", "X", "PX", "Y", "PY", "DX", "DY");
+
+    private static final List<String> SELECT_FLAGS = Arrays.asList("full", "clear");
+    private static final List<String> STRING_COLUMNS = Arrays.asList("NAME", "KEYWORD", "PARENT", "TYPE");
+
+    private static final Pattern ASSIGNMENT = Pattern.compile("^([A-Za-z_][\\w.]*(?:->[\\w.]+)?)\\s*:?=\\s*(.*)$",
+            Pattern.DOTALL);
+    private static final Pattern COMMAND_NAME = Pattern.compile("[A-Za-z_]\\w*");
+    private static final Pattern NUMBER = Pattern.compile("[-+]?(\\d+\\.?\\d*|\\.\\d+)([eEdD][-+]?\\d+)?");
+
+    private final int rows;
+    private final long latency;
+    private final File recordedTfsFile;
+
+    private final PrintStream terminal;
+    private PrintStream echo;
+    private final Map<String, String> variables = new LinkedHashMap<>();
+    private List<String> selectedColumns = null;
+    private boolean stopped = false;
+
+    FakeMadx(PrintStream terminal, int rows, long latency, File recordedTfsFile) {
+        this.terminal = terminal;
+        this.echo = terminal;
+        this.rows = rows;
+        this.latency = latency;
+        this.recordedTfsFile = recordedTfsFile;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String recordedTfs = System.getProperty(PROP_TFS_FILE);
+        boolean lineBuffered = "L".equals(System.getenv(ENV_STDBUF_OUTPUT));
+        PrintStream stdout = new PrintStream(
+                new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), STDOUT_BUFFER_SIZE), lineBuffered,
+                StandardCharsets.UTF_8.name());
+        FakeMadx madx = new FakeMadx(stdout, Integer.getInteger(PROP_ROWS, DEFAULT_ROWS),
+                Long.getLong(PROP_LATENCY, 0L), (recordedTfs == null) ? null : new File(recordedTfs));
+        madx.run(System.in);
+        stdout.flush();
+    }
+
+    /**
+     * processes the statements from the given stream until it ends or a 'stop' statement is read
+     */
+    void run(InputStream input) throws IOException {
+        process(new InputStreamReader(input, StandardCharsets.UTF_8));
+    }
+
+    private void process(Reader reader) throws IOException {
+        StringBuilder statement = new StringBuilder();
+        boolean quoted = false;
+        boolean comment = false;
+        int previous = -1;
+        int c;
+        while (!stopped && ((c = reader.read()) >= 0)) {
+            if (comment) {
+                comment = (c != '\n');
+            } else if (c == '"') {
+                quoted = !quoted;
+                statement.append((char) c);
+            } else if (!quoted && (c == '!' || (c == '/' && previous == '/'))) {
+                if (c == '/') {
+                    statement.setLength(statement.length() - 1);
+                }
+                comment = true;
+            } else if (!quoted && (c == ';')) {
+                execute(statement.toString().trim());
+                statement.setLength(0);
+            } else {
+                statement.append((char) c);
+            }
+            previous = comment ? -1 : c;
+        }
+    }
+
+    private void execute(String statement) throws IOException {
+        if (statement.isEmpty()) {
+            return;
+        }
+        Matcher assignment = ASSIGNMENT.matcher(statement);
+        if (assignment.matches()) {
+            variables.put(assignment.group(1).toLowerCase(Locale.ROOT), assignment.group(2).trim());
+            return;
+        }
+
+        List<String> parts = splitParameters(statement);
+        String command = parts.get(0).toLowerCase(Locale.ROOT);
+        Map<String, String> parameters = toParameters(parts);
+        switch (command) {
+        case "stop":
+        case "exit":
+        case "quit":
+            stopped = true;
+            break;
+        case "system":
+            system(unquote(parts.size() > 1 ? parts.get(1) : statement.substring("system".length()).trim()));
+            break;
+        case "print":
+            echo.println(parameters.getOrDefault("text", ""));
+            break;
+        case "assign":
+            assign(parameters.get("echo"));
+            break;
+        case "value":
+            for (String name : parts.subList(1, parts.size())) {
+                echo.println(name.trim() + " = " + valueOf(name.trim()) + " ;");
+            }
+            break;
+        case "select":
+            select(parameters);
+            break;
+        case "twiss":
+        case "write":
+            writeTable(parameters.getOrDefault("table", command), parameters.get("file"));
+            break;
+        case "call":
+            call(parameters.get("file"));
+            break;
+        case "save":
+            save(parameters.get("file"));
+            break;
+        default:
+            /* all the other commands do not produce output in the stand-in */
+        }
+    }
+
+    private void system(String command) throws IOException {
+        Process process = new ProcessBuilder("/bin/sh", "-c", command).inheritIO().start();
+        try {
+            process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void assign(String target) throws IOException {
+        if (echo != terminal) {
+            echo.close();
+        }
+        if ((target == null) || "terminal".equalsIgnoreCase(target)) {
+            echo = terminal;
+        } else {
+            echo = new PrintStream(new FileOutputStream(target), true, StandardCharsets.UTF_8.name());
+        }
+    }
+
+    private void select(Map<String, String> parameters) {
+        if (parameters.containsKey("clear")) {
+            selectedColumns = null;
+        }
+        String columns = parameters.get("column");
+        if (columns != null) {
+            selectedColumns = new ArrayList<>();
+            for (String column : columns.replace("{", "").replace("}", "").split(",")) {
+                if (!column.trim().isEmpty()) {
+                    selectedColumns.add(column.trim().toUpperCase(Locale.ROOT));
+                }
+            }
+        }
+    }
+
+    private void call(String fileName) throws IOException {
+        if (fileName == null) {
+            return;
+        }
+        File file = new File(fileName);
+        if (file.exists()) {
+            process(new StringReader(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8)));
+        } else {
+            terminal.println("++++++ warning: file " + fileName + " not found");
+        }
+    }
+
+    private void save(String fileName) throws IOException {
+        if (fileName == null) {
+            return;
+        }
+        try (Writer writer = newWriter(new File(fileName))) {
+            for (Map.Entry<String, String> variable : variables.entrySet()) {
+                writer.write(variable.getKey() + " = " + variable.getValue() + ";\n");
+            }
+        }
+    }
+
+    private void writeTable(String tableName, String fileName) throws IOException {
+        simulateComputation();
+        if (fileName == null) {
+            return;
+        }
+        File file = new File(fileName);
+        if (recordedTfsFile != null) {
+            Files.copy(recordedTfsFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return;
+        }
+        List<String> columns = (selectedColumns == null) ? DEFAULT_COLUMNS : withName(selectedColumns);
+        try (Writer writer = newWriter(file)) {
+            writeSyntheticTable(writer, tableName.toUpperCase(Locale.ROOT), columns, rows);
+        }
+    }
+
+    /**
+     * writes a TFS table with the given columns and number of rows. The values are deterministic, so that tests can
+     * check them: the double value of column c in row r is r + c / 100.
+     */
+    static void writeSyntheticTable(Writer writer, String tableName, List<String> columns, int rowCount)
+            throws IOException {
+        writer.write("@ NAME             %05s \"" + tableName + "\"\n");
+        writer.write("@ TYPE             %05s \"" + tableName + "\"\n");
+        writer.write("@ Q1               %le   64.31\n");
+        writer.write("@ Q2               %le   59.32\n");
+        StringBuilder keys = new StringBuilder("*");
+        StringBuilder types = new StringBuilder("$");
+        for (String column : columns) {
+            keys.append(' ').append(column);
+            types.append(' ').append(STRING_COLUMNS.contains(column) ? "%s" : "%le");
+        }
+        writer.write(keys.append('\n').toString());
+        writer.write(types.append('\n').toString());
+
+        StringBuilder row = new StringBuilder();
+        for (int r = 0; r < rowCount; r++) {
+            row.setLength(0);
+            for (int c = 0; c < columns.size(); c++) {
+                String column = columns.get(c);
+                row.append(' ');
+                if ("NAME".equals(column)) {
+                    row.append("\"E").append(r).append('"');
+                } else if (STRING_COLUMNS.contains(column)) {
+                    row.append("\"MARKER\"");
+                } else {
+                    row.append(r + c / 100.0);
+                }
+            }
+            writer.write(row.append('\n').toString());
+        }
+    }
+
+    private static List<String> withName(List<String> columns) {
+        if (columns.contains("NAME")) {
+            return columns;
+        }
+        List<String> withName = new ArrayList<>();
+        withName.add("NAME");
+        withName.addAll(columns);
+        return withName;
+    }
+
+    private void simulateComputation() {
+        if (latency <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the numeric value of the variable, if it is a plain number, 0 otherwise (as for undefined variables)
+     */
+    private String valueOf(String name) {
+        String expression = variables.get(name.toLowerCase(Locale.ROOT));
+        if ((expression != null) && NUMBER.matcher(expression).matches()) {
+            return Double.toString(Double.parseDouble(expression.replace('d', 'e').replace('D', 'e')));
+        }
+        return "0";
+    }
+
+    private static Writer newWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * splits the statement at the commas, which are not within quotes or braces
+     */
+    static List<String> splitParameters(String statement) {
+        List<String> parts = new ArrayList<>();
+        StringBuilder part = new StringBuilder();
+        boolean quoted = false;
+        int braces = 0;
+        for (char c : statement.toCharArray()) {
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (!quoted && (c == '{')) {
+                braces++;
+            } else if (!quoted && (c == '}')) {
+                braces--;
+            } else if (!quoted && (braces == 0) && (c == ',')) {
+                parts.add(part.toString().trim());
+                part.setLength(0);
+                continue;
+            }
+            part.append(c);
+        }
+        parts.add(part.toString().trim());
+        /* the command name might be followed by a blank instead of a comma */
+        String first = parts.get(0);
+        int blank = first.indexOf(' ');
+        if ((blank > 0) && COMMAND_NAME.matcher(first.substring(0, blank)).matches()) {
+            parts.set(0, first.substring(0, blank));
+            parts.add(1, first.substring(blank + 1).trim());
+        }
+        return parts;
+    }
+
+    /**
+     * converts the parts of a statement to parameters. Flags get the value 'true'. As in MadX, the column list of a
+     * select command can be continued without braces (e.g. 'column=name,s,betx').
+     */
+    private static Map<String, String> toParameters(List<String> parts) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        String lastKey = null;
+        for (String part : parts.subList(1, parts.size())) {
+            int equals = part.indexOf('=');
+            String flag = part.toLowerCase(Locale.ROOT);
+            if ((equals < 0) && "column".equals(lastKey) && !SELECT_FLAGS.contains(flag)) {
+                parameters.put(lastKey, parameters.get(lastKey) + "," + part);
+            } else if (equals < 0) {
+                parameters.put(flag, "true");
+                lastKey = flag;
+            } else {
+                lastKey = part.substring(0, equals).trim().toLowerCase(Locale.ROOT);
+                parameters.put(lastKey, unquote(part.substring(equals + 1).trim()));
+            }
+        }
+        return parameters;
+    }
+
+    private static String unquote(String text) {
+        if ((text.length() >= 2) && text.startsWith("\"") && text.endsWith("\"")) {
+            return text.substring(1, text.length() - 1);
+        }
+        return text;
+    }
+}
@@ -0,0 +1,249 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.bin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.rules.ExternalResource;
+
+import cern.accsoft.steering.jmad.kernel.JMadKernelImpl;
+import cern.accsoft.steering.jmad.util.JMadPreferences;
+import cern.accsoft.steering.jmad.util.JMadPreferencesImpl;
+import cern.accsoft.steering.jmad.util.TempFileUtil;
+import cern.accsoft.steering.jmad.util.TempFileUtilImpl;
+
+/**
+ * Creates a launcher script for the {@link FakeMadx} and selects it as MadX executable. The script starts a JVM with
+ * the class path of the current one, so the stand-in is available wherever the tests run (on unix like systems).
+ * <p>
+ * Usage in a test, where the rule installs the stand-in and restores the previous MadX executable afterwards:
+ * 
+ * <pre>
+ * &#64;ClassRule
+ * public static ExternalResource fakeMadx = FakeMadxLauncher.create().rows(1000).latency(5).asRule();
+ * 
+ * private final JMadKernelImpl kernel = FakeMadxLauncher.createKernel();
+ * </pre>
+ * 
+ * Benchmark mains call {@link #install()} instead, before they create the kernels (the {@link MadxBinImpl} reads the
+ * system property in its init()).
+ */
+public final class FakeMadxLauncher {
+
+    /** the system property, from which the {@link MadxBinImpl} takes the path of the MadX executable */
+    public static final String PROP_MADX_PATH = "cern.jmad.kernel.madxpath";
+
+    private static final String LAUNCHER_NAME = "fake-madx";
+
+    private final File directory;
+    private final Map<String, String> properties = new LinkedHashMap<>();
+
+    private FakeMadxLauncher(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return a new launcher with the default configuration, which is written into a temporary directory by the rule
+     *         of {@link #asRule()}
+     */
+    public static FakeMadxLauncher create() {
+        return new FakeMadxLauncher(null);
+    }
+
+    /**
+     * @param directory the directory, in which the launcher script is created
+     * @return a new launcher with the default configuration
+     */
+    public static FakeMadxLauncher create(File directory) {
+        return new FakeMadxLauncher(directory);
+    }
+
+    /**
+     * @param rows the number of rows of the synthetic TFS tables
+     * @return this launcher
+     */
+    public FakeMadxLauncher rows(int rows) {
+        properties.put(FakeMadx.PROP_ROWS, Integer.toString(rows));
+        return this;
+    }
+
+    /**
+     * @param millis the simulated compute time for each twiss and write
+     * @return this launcher
+     */
+    public FakeMadxLauncher latency(long millis) {
+        properties.put(FakeMadx.PROP_LATENCY, Long.toString(millis));
+        return this;
+    }
+
+    /**
+     * @param tfsFile a recorded TFS file, which is written instead of the synthetic tables
+     * @return this launcher
+     */
+    public FakeMadxLauncher recordedTfsFile(File tfsFile) {
+        properties.put(FakeMadx.PROP_TFS_FILE, tfsFile.getAbsolutePath());
+        return this;
+    }
+
+    /**
+     * writes the launcher script
+     * 
+     * @return the executable script
+     * @throws IOException if the script cannot be written
+     */
+    public File write() throws IOException {
+        return write(directory);
+    }
+
+    private File write(File launcherDirectory) throws IOException {
+        StringBuilder command = new StringBuilder("#!/bin/sh\nexec ");
+        command.append(quote(new File(System.getProperty("java.home"), "bin/java").getAbsolutePath()));
+        /* madx is started for every kernel, so the stand-in should start fast */
+        command.append(" -XX:TieredStopAtLevel=1 -Xshare:auto");
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            command.append(' ').append(quote("-D" + property.getKey() + "=" + property.getValue()));
+        }
+        command.append(" -cp ").append(quote(System.getProperty("java.class.path")));
+        command.append(' ').append(FakeMadx.class.getName()).append('\n');
+
+        File launcher = new File(launcherDirectory, LAUNCHER_NAME);
+        Files.write(launcher.toPath(), command.toString().getBytes(StandardCharsets.UTF_8));
+        if (!launcher.setExecutable(true)) {
+            throw new IOException("Could not make '" + launcher.getAbsolutePath() + "' executable.");
+        }
+        return launcher;
+    }
+
+    /**
+     * writes the launcher script and sets it as MadX executable for all {@link MadxBinImpl}s initialized afterwards
+     * 
+     * @return the executable script
+     * @throws IOException if the script cannot be written
+     */
+    public File install() throws IOException {
+        File launcher = write();
+        System.setProperty(PROP_MADX_PATH, launcher.getAbsolutePath());
+        return launcher;
+    }
+
+    /**
+     * @return a rule, which installs the launcher before the tests and restores the previous MadX executable
+     *         afterwards. If the launcher was created without a directory, the script is written into a temporary
+     *         directory, which is deleted afterwards.
+     */
+    public ExternalResource asRule() {
+        return new Installation();
+    }
+
+    /**
+     * @return a rule, which restores the MadX executable, that was selected before the tests, after the tests. For
+     *         tests which select other MadX executables than the stand-in.
+     */
+    public static ExternalResource keepMadxPath() {
+        return new MadxPathKeeper();
+    }
+
+    /**
+     * creates a kernel with the default preferences, which is not yet started. It uses the MadX executable, which is
+     * selected at the time of this call.
+     * 
+     * @return the new kernel
+     */
+    public static JMadKernelImpl createKernel() {
+        JMadPreferences preferences = new JMadPreferencesImpl();
+        TempFileUtilImpl fileUtil = new TempFileUtilImpl();
+        fileUtil.setPreferences(preferences);
+        fileUtil.init();
+        return createKernel(preferences, fileUtil);
+    }
+
+    /**
+     * creates a kernel, which is not yet started. It uses the MadX executable, which is selected at the time of this
+     * call.
+     * 
+     * @param preferences the preferences of the kernel
+     * @param fileUtil the initialized file util, which provides the files of the kernel
+     * @return the new kernel
+     */
+    public static JMadKernelImpl createKernel(JMadPreferences preferences, TempFileUtil fileUtil) {
+        MadxBinImpl madxBin = new MadxBinImpl();
+        madxBin.setFileUtil(fileUtil);
+        madxBin.init();
+
+        JMadKernelImpl kernel = new JMadKernelImpl();
+        kernel.setFileUtil(fileUtil);
+        kernel.setMadxBin(madxBin);
+        kernel.setPreferences(preferences);
+        return kernel;
+    }
+
+    private static String quote(String text) {
+        return "'" + text.replace("'", "'\\''") + "'";
+    }
+
+    /**
+     * remembers the selected MadX executable before the tests and selects it again afterwards
+     */
+    private static class MadxPathKeeper extends ExternalResource {
+        private String previousMadxPath;
+
+        @Override
+        protected void before() throws Throwable {
+            previousMadxPath = System.getProperty(PROP_MADX_PATH);
+        }
+
+        @Override
+        protected void after() {
+            if (previousMadxPath == null) {
+                System.clearProperty(PROP_MADX_PATH);
+            } else {
+                System.setProperty(PROP_MADX_PATH, previousMadxPath);
+            }
+        }
+    }
+
+    /**
+     * installs the launcher for the tests
+     */
+    private final class Installation extends MadxPathKeeper {
+        private File temporaryDirectory;
+        private File launcher;
+
+        @Override
+        protected void before() throws Throwable {
+            super.before();
+            File launcherDirectory = directory;
+            if (launcherDirectory == null) {
+                temporaryDirectory = Files.createTempDirectory(LAUNCHER_NAME).toFile();
+                launcherDirectory = temporaryDirectory;
+            }
+            launcher = write(launcherDirectory);
+            System.setProperty(PROP_MADX_PATH, launcher.getAbsolutePath());
+        }
+
+        @Override
+        protected void after() {
+            super.after();
+            if (temporaryDirectory != null) {
+                if (launcher != null) {
+                    launcher.delete();
+                }
+                temporaryDirectory.delete();
+            }
+        }
+    }
+}
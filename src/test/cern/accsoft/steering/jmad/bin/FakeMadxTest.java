@@ -0,0 +1,104 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.bin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsResultImpl;
+import cern.accsoft.steering.jmad.io.TfsFileParser;
+
+public class FakeMadxTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    @Test
+    public void printWritesTextToTerminal() throws IOException {
+        run("print, text=\"JMAD-READY-1\"; // the sentinel\n");
+
+        assertEquals("JMAD-READY-1\n", output());
+    }
+
+    @Test
+    public void valuesAreAnsweredFromAssignments() throws IOException {
+        File values = folder.newFile("values.out");
+
+        run("a = 1.5;\nb := 2e-3;\nassign, echo=\"" + values.getAbsolutePath()
+                + "\";\nvalue, a, b, c;\nassign, echo=terminal;\nprint, text=\"done\";");
+
+        assertEquals(Arrays.asList("a = 1.5 ;", "b = 0.002 ;", "c = 0 ;"), Files.readAllLines(values.toPath()));
+        assertEquals("done\n", output());
+    }
+
+    @Test
+    public void twissWritesSelectedColumns() throws Exception {
+        File twiss = new File(folder.getRoot(), "twiss.tfs");
+
+        new FakeMadx(new PrintStream(output), 7, 0, null).run(input("select, flag=twiss, clear;\n"
+                + "select, flag=twiss, column=name,s,betx;\ntwiss, deltap=0.0, file=\"" + twiss.getAbsolutePath()
+                + "\";"));
+
+        TfsFileParser parser = new TfsFileParser(twiss);
+        parser.parse();
+        TfsResultImpl result = parser.getResult();
+        assertEquals(Arrays.asList("NAME", "S", "BETX"), result.getKeys());
+        assertEquals(7, result.getRowCount());
+        assertEquals(Double.valueOf(3.02), result.getDoubleData("betx").get(3));
+    }
+
+    @Test
+    public void systemAndCallAreExecuted() throws IOException {
+        File marker = new File(folder.getRoot(), "marker");
+        File called = folder.newFile("called.madx");
+        Files.write(called.toPath(), ("system, \"echo > " + marker.getAbsolutePath() + "\";\n")
+                .getBytes(StandardCharsets.UTF_8));
+
+        run("call, file=\"" + called.getAbsolutePath() + "\";");
+
+        assertTrue(marker.exists());
+    }
+
+    @Test
+    public void stopEndsProcessing() throws IOException {
+        run("print, text=\"before\";\nstop;\nprint, text=\"after\";");
+
+        assertEquals("before\n", output());
+    }
+
+    private void run(String statements) throws IOException {
+        new FakeMadx(new PrintStream(output), FakeMadx.DEFAULT_ROWS, 0, null).run(input(statements));
+    }
+
+    private static ByteArrayInputStream input(String statements) {
+        return new ByteArrayInputStream(statements.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String output() {
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
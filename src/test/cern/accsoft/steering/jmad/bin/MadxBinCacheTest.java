@@ -0,0 +1,131 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.bin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MadxBinCacheTest {
+
+    private static final byte[] CONTENT = "#!/bin/sh\necho madx\n".getBytes(StandardCharsets.US_ASCII);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger extractions = new AtomicInteger();
+
+    private final MadxBinCache.Source source = () -> {
+        extractions.incrementAndGet();
+        return new ByteArrayInputStream(CONTENT);
+    };
+
+    @Test
+    public void executableIsExtractedOnlyOnce() throws IOException {
+        String sha256 = MadxBinCache.sha256Of(new ByteArrayInputStream(CONTENT));
+
+        File first = new MadxBinCache(folder.getRoot()).getExecutable("madx", "1.0", sha256, source);
+        File second = new MadxBinCache(folder.getRoot()).getExecutable("madx", "1.0", sha256, source);
+
+        assertEquals(first, second);
+        assertEquals(1, extractions.get());
+        assertArrayEquals(CONTENT, Files.readAllBytes(first.toPath()));
+        assertTrue(first.canExecute());
+        assertEquals("only the executable and its marker must remain", 2, first.getParentFile().list().length);
+    }
+
+    @Test
+    public void cacheDirsAreOnlyAccessibleByOwner() throws IOException {
+        Assume.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        String sha256 = MadxBinCache.sha256Of(new ByteArrayInputStream(CONTENT));
+        File cacheDir = new File(folder.getRoot(), "cache");
+
+        File executable = new MadxBinCache(cacheDir).getExecutable("madx", "1.0", sha256, source);
+
+        Set<PosixFilePermission> ownerOnly = PosixFilePermissions.fromString("rwx------");
+        assertEquals(ownerOnly, Files.getPosixFilePermissions(cacheDir.toPath()));
+        assertEquals(ownerOnly, Files.getPosixFilePermissions(executable.getParentFile().toPath()));
+    }
+
+    @Test
+    public void modifiedExecutableIsVerifiedAgain() throws IOException {
+        String sha256 = MadxBinCache.sha256Of(new ByteArrayInputStream(CONTENT));
+        MadxBinCache cache = new MadxBinCache(folder.getRoot());
+        File executable = cache.getExecutable("madx", "1.0", sha256, source);
+
+        executable.setWritable(true);
+        byte[] corrupt = CONTENT.clone();
+        corrupt[0] = 'X';
+        Files.write(executable.toPath(), corrupt);
+        executable.setLastModified(executable.lastModified() - 10_000);
+        File repaired = cache.getExecutable("madx", "1.0", sha256, source);
+
+        assertEquals("a changed modification time must be detected", 2, extractions.get());
+        assertArrayEquals(CONTENT, Files.readAllBytes(repaired.toPath()));
+    }
+
+    @Test
+    public void versionsAreCachedSeparately() throws IOException {
+        String sha256 = MadxBinCache.sha256Of(new ByteArrayInputStream(CONTENT));
+        MadxBinCache cache = new MadxBinCache(folder.getRoot());
+
+        File first = cache.getExecutable("madx", "1.0", sha256, source);
+        File second = cache.getExecutable("madx", "2.0", sha256, source);
+
+        assertTrue(!first.equals(second));
+        assertEquals(2, extractions.get());
+    }
+
+    @Test
+    public void corruptExecutableIsReplaced() throws IOException {
+        String sha256 = MadxBinCache.sha256Of(new ByteArrayInputStream(CONTENT));
+        MadxBinCache cache = new MadxBinCache(folder.getRoot());
+        File executable = cache.getExecutable("madx", "1.0", sha256, source);
+
+        executable.setWritable(true);
+        Files.write(executable.toPath(), "corrupt".getBytes(StandardCharsets.US_ASCII));
+        File repaired = cache.getExecutable("madx", "1.0", sha256, source);
+
+        assertEquals(2, extractions.get());
+        assertArrayEquals(CONTENT, Files.readAllBytes(repaired.toPath()));
+    }
+
+    @Test
+    public void wrongChecksumIsRejected() throws IOException {
+        String wrongSha256 = MadxBinCache.sha256Of(new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+        try {
+            new MadxBinCache(folder.getRoot()).getExecutable("madx", "1.0", wrongSha256, source);
+            fail("extraction with wrong checksum must fail");
+        } catch (IOException e) {
+            /* expected */
+        }
+        File entryDir = new File(folder.getRoot(), "1.0-" + wrongSha256);
+        assertEquals("no file must remain", 0, entryDir.list().length);
+    }
+}
@@ -0,0 +1,115 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.bin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExternalResource;
+import org.junit.rules.TemporaryFolder;
+
+import cern.accsoft.steering.jmad.util.JMadPreferencesImpl;
+import cern.accsoft.steering.jmad.util.OsUtil;
+import cern.accsoft.steering.jmad.util.TempFileUtilImpl;
+
+public class MadxBinLaunchTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public ExternalResource madxPath = FakeMadxLauncher.keepMadxPath();
+
+    private final MadxBinImpl madxBin = new MadxBinImpl();
+    private File executable;
+
+    @Before
+    public void setUp() throws IOException {
+        executable = folder.newFile("madx");
+        Files.write(executable.toPath(),
+                "#!/bin/sh\necho \"$JMAD_TEST_VALUE\"\npwd\n".getBytes(StandardCharsets.US_ASCII));
+        executable.setExecutable(true);
+
+        System.setProperty(FakeMadxLauncher.PROP_MADX_PATH, executable.getAbsolutePath());
+        TempFileUtilImpl fileUtil = new TempFileUtilImpl();
+        fileUtil.setPreferences(new JMadPreferencesImpl());
+        fileUtil.init();
+        madxBin.setFileUtil(fileUtil);
+        madxBin.init();
+    }
+
+    @Test
+    public void defaultCommandIsOnlyExecutable() {
+        assertEquals(Collections.singletonList(executable.getAbsolutePath()),
+                madxBin.createCommand(new MadxLaunchOptions()));
+    }
+
+    @Test
+    public void pinningAndPriorityPrefixCommand() {
+        assumeTrue(OsUtil.isLinux());
+        MadxLaunchOptions options = new MadxLaunchOptions();
+        options.setCpuSet(CpuSet.parse("2-3"));
+        options.setNiceLevel(5);
+
+        assertEquals(Arrays.asList("taskset", "-c", "2-3", "nice", "-n", "5", executable.getAbsolutePath()),
+                madxBin.createCommand(options));
+    }
+
+    @Test
+    public void lineBufferingPrefixesStdbufRightBeforeExecutable() {
+        assumeTrue(OsUtil.isLinux());
+        MadxLaunchOptions options = new MadxLaunchOptions();
+        options.setCpuSet(CpuSet.parse("1"));
+        options.setLineBufferedOutput(true);
+
+        assertTrue(madxBin.isLineBuffered(options));
+        assertEquals(Arrays.asList("taskset", "-c", "1", "stdbuf", "-oL", executable.getAbsolutePath()),
+                madxBin.createCommand(options));
+    }
+
+    @Test
+    public void defaultOptionsAreNotLineBuffered() {
+        assertFalse(madxBin.isLineBuffered(new MadxLaunchOptions()));
+    }
+
+    @Test
+    public void processGetsEnvironmentAndWorkingDirectory() throws IOException, InterruptedException {
+        assumeTrue(!OsUtil.isWindows());
+        File workingDirectory = folder.newFolder("kernel");
+        MadxLaunchOptions options = new MadxLaunchOptions();
+        options.setWorkingDirectory(workingDirectory);
+        options.setEnvironment(Collections.singletonMap("JMAD_TEST_VALUE", "launched"));
+        options.setNiceLevel(1);
+
+        Process process = madxBin.execute(options);
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            assertEquals("launched", reader.readLine());
+            assertEquals(workingDirectory.getCanonicalPath(), new File(reader.readLine()).getCanonicalPath());
+        }
+        assertEquals(0, process.waitFor());
+    }
+}
@@ -25,7 +25,11 @@ package cern.accsoft.steering.jmad.cmd;
 import static org.junit.Assert.assertEquals;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.junit.Test;
 
@@ -39,6 +43,9 @@ import cern.accsoft.steering.jmad.kernel.cmd.BeamCommand;
 import cern.accsoft.steering.jmad.kernel.cmd.CallCommand;
 import cern.accsoft.steering.jmad.kernel.cmd.Command;
 import cern.accsoft.steering.jmad.kernel.cmd.DefineElement;
+import cern.accsoft.steering.jmad.kernel.cmd.SaveCommand;
+import cern.accsoft.steering.jmad.kernel.cmd.SetEqual;
+import cern.accsoft.steering.jmad.kernel.cmd.SetListEqual;
 import cern.accsoft.steering.jmad.kernel.cmd.TwissCommand;
 import cern.accsoft.steering.jmad.kernel.cmd.UseCommand;
 import cern.accsoft.steering.jmad.kernel.cmd.ValueCommand;
@@ -149,6 +156,15 @@ public class CommandsTest {
         assertEquals("value, abcd, def, ghi;", command.compose());
     }
 
+    @Test
+    public void testSaveCommand() {
+        command = new SaveCommand(file, true);
+        assertEquals("save, file=\"" + file.getAbsolutePath() + "\", beam;", command.compose());
+
+        command = new SaveCommand(file, false);
+        assertEquals("save, file=\"" + file.getAbsolutePath() + "\";", command.compose());
+    }
+
     @Test
     public void testWriteCommand() {
         WriteCommand command = new WriteCommand("dynap", "fileName");
@@ -168,4 +184,39 @@ public class CommandsTest {
         System.out.println(command.compose());
         assertEquals(command.compose(), "testQuad: quadrupole, k1=1.0;");
     }
+
+    @Test
+    public void testSetEqual() {
+        assertEquals("a = 1.5E-7;", new SetEqual("a", 1.5e-7).compose());
+        assertEquals("a = null;", new SetEqual("a", null).compose());
+    }
+
+    @Test
+    public void testSetListEqual() {
+        Map<String, Double> values = new LinkedHashMap<>();
+        values.put("a", 1.0);
+        values.put("b", -0.25);
+        values.put("c", null);
+        assertEquals("a = 1.0;\nb = -0.25;\nc = null;\n", new SetListEqual(values).compose());
+    }
+
+    @Test
+    public void testComposeToWriterEqualsCompose() throws IOException {
+        TwissInitialConditionsImpl twiss = new TwissInitialConditionsImpl("test-twiss");
+        twiss.setDeltap(0.001);
+        twiss.setBetx(1.0);
+        command = new TwissCommand(twiss);
+
+        StringWriter writer = new StringWriter();
+        command.composeTo(writer);
+        assertEquals(command.compose(), writer.toString());
+
+        Map<String, Double> values = new LinkedHashMap<>();
+        values.put("a", 1.0e-12);
+        values.put("b", 123456789.0);
+        SetListEqual setListEqual = new SetListEqual(values);
+        writer = new StringWriter();
+        setListEqual.composeTo(writer);
+        assertEquals(setListEqual.compose(), writer.toString());
+    }
 }
@@ -0,0 +1,83 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.demo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cern.accsoft.steering.jmad.domain.ex.JMadModelException;
+import cern.accsoft.steering.jmad.model.JMadModel;
+import cern.accsoft.steering.jmad.model.ModelCheckpoint;
+import cern.accsoft.steering.jmad.modeldefs.domain.JMadModelDefinition;
+import cern.accsoft.steering.jmad.service.JMadService;
+import cern.accsoft.steering.jmad.service.JMadServiceFactory;
+
+/**
+ * compares the time to create a number of identical models by a full init() of each one with the time to initialize
+ * them from a checkpoint of one model. All the example model definitions are measured.
+ */
+public class CheckpointCloneDemo {
+
+    private static final String[] MODEL_DEFINITION_NAMES = { "example", "example_THIN", "Example LEIREXTR" };
+
+    /** the number of models to create per model definition */
+    private static final int MODEL_COUNT = 4;
+
+    public static void main(String[] args) throws JMadModelException {
+        JMadService jmadService = JMadServiceFactory.createJMadService();
+
+        System.out.print("\n\nCheckpoint clone benchmark (" + MODEL_COUNT + " models each).\n");
+        System.out.print("==============================================\n\n");
+
+        for (String name : MODEL_DEFINITION_NAMES) {
+            JMadModelDefinition modelDefinition = jmadService.getModelDefinitionManager().getModelDefinition(name,
+                    false);
+            List<JMadModel> models = new ArrayList<>();
+
+            /* warm up: the madx binary and the model files are extracted on first use */
+            JMadModel source = jmadService.createModel(modelDefinition);
+            source.init();
+            models.add(source);
+
+            long startTime = System.nanoTime();
+            for (int i = 0; i < MODEL_COUNT; i++) {
+                JMadModel model = jmadService.createModel(modelDefinition);
+                model.init();
+                models.add(model);
+            }
+            long initTime = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            ModelCheckpoint checkpoint = source.checkpoint();
+            long checkpointTime = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            models.addAll(jmadService.createModels(checkpoint, MODEL_COUNT));
+            long cloneTime = System.nanoTime() - startTime;
+
+            System.out.print(name + ":\n");
+            System.out.print("  full init:        " + millis(initTime / MODEL_COUNT) + " ms per model\n");
+            System.out.print("  checkpoint:       " + millis(checkpointTime) + " ms (once)\n");
+            System.out.print("  from checkpoint:  " + millis(cloneTime / MODEL_COUNT) + " ms per model\n");
+            System.out.print("  restore script:   " + checkpoint.getRestoreScript().length() + " characters\n\n");
+
+            for (JMadModel model : models) {
+                model.cleanup();
+                jmadService.deleteModel(model);
+            }
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.1f", nanos / 1e6);
+    }
+}
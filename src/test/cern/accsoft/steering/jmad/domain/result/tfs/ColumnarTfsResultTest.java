@@ -0,0 +1,132 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.domain.result.tfs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import cern.accsoft.steering.jmad.domain.var.enums.MadxTwissVariable;
+import cern.accsoft.steering.jmad.io.TfsFileParser;
+import cern.accsoft.steering.jmad.io.TfsFileParserException;
+import cern.accsoft.steering.jmad.util.MadxVarType;
+import cern.accsoft.steering.jmad.util.TestFile;
+
+public class ColumnarTfsResultTest {
+    private static final String TESTFILE_NAME = "columnar-testfile.tfs";
+
+    private final TestFile testFile = new TestFile(TESTFILE_NAME);
+
+    @After
+    public void deleteTestFile() {
+        testFile.delete();
+    }
+
+    @Test
+    public void doubleColumnsAreStoredAsPrimitives() throws TfsResultException {
+        ColumnarTfsResult result = createResult(600);
+
+        assertEquals(600, result.getRowCount());
+        assertEquals(3, result.getColumnCount());
+        double[] x = result.getDoubleArray(MadxTwissVariable.X);
+        assertEquals(600, x.length);
+        assertEquals(0.5, x[1], 0.0);
+        assertEquals(299.5, result.getDouble(MadxTwissVariable.X, 599), 0.0);
+        assertEquals(Double.valueOf(299.5), result.getDoubleData("x").get(599));
+
+        /* the array is a copy */
+        x[1] = 42;
+        assertEquals(0.5, result.getDouble("X", 1), 0.0);
+    }
+
+    @Test
+    public void elementIndexIgnoresCaseAndLastDuplicateWins() throws TfsResultException {
+        ColumnarTfsResult result = createResult(600);
+        result.addRow(new String[] { "ELEM.5", "1", "MARKER" });
+
+        assertEquals(Integer.valueOf(0), result.getElementIndex("ELEM.0"));
+        assertEquals(Integer.valueOf(599), result.getElementIndex("elem.599"));
+        assertEquals(Integer.valueOf(600), result.getElementIndex("Elem.5"));
+        assertNull(result.getElementIndex("ELEM.600"));
+    }
+
+    @Test
+    public void repeatedStringsAreShared() throws TfsResultException {
+        ColumnarTfsResult result = createResult(10);
+
+        List<String> keywords = result.getStringData(MadxTwissVariable.KEYWORD);
+        assertEquals("MONITOR", keywords.get(0));
+        assertSame(keywords.get(0), keywords.get(2));
+    }
+
+    @Test(expected = TfsResultException.class)
+    public void invalidDoubleFailsConversion() throws TfsResultException {
+        ColumnarTfsResult result = createResult(2);
+        result.addRow(new String[] { "BROKEN", "abc", "MONITOR" });
+        result.convert();
+    }
+
+    @Test
+    public void parsedFileEqualsDefaultResult() throws TfsFileParserException {
+        testFile.write("@ Q1               %le     21.700172\n"
+                + "* NAME                                X                  Y KEYWORD\n"
+                + "$ %s                                %le                %le %s      \n"
+                + " \"BPCK.610015\"                        0                  0 \"MONITOR\"\n"
+                + " \"BPCK.610211\"          -0.001530097755    1.302602123e-16 \"MONITOR\"\n"
+                + " \"BPCK.610340\"          -0.001202659825    5.232206825e-12 \"MONITOR\"\n");
+        File file = testFile.getFile();
+        TfsFileParser columnarParser = new TfsFileParser(file, new ColumnarTfsResult());
+        columnarParser.parse();
+        TfsFileParser defaultParser = new TfsFileParser(file);
+        defaultParser.parse();
+
+        TfsResult columnar = columnarParser.getParsedResult();
+        TfsResult expected = defaultParser.getResult();
+        assertEquals(expected.getKeys(), columnar.getKeys());
+        assertEquals(MadxVarType.DOUBLE, columnar.getVarType(MadxTwissVariable.Y));
+        assertEquals(expected.getDoubleData(MadxTwissVariable.X), columnar.getDoubleData(MadxTwissVariable.X));
+        assertArrayEquals(expected.getDoubleArray(MadxTwissVariable.Y), columnar.getDoubleArray(MadxTwissVariable.Y),
+                0.0);
+        assertEquals(expected.getStringData(MadxTwissVariable.NAME), columnar.getStringData(MadxTwissVariable.NAME));
+        assertEquals(Integer.valueOf(2), columnar.getElementIndex("BPCK.610340"));
+        assertEquals(21.700172, columnar.getSummary().getDoubleValue("Q1"), 0.0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void defaultResultIsNotAvailableForColumnarParser() {
+        new TfsFileParser(testFile.getFile(), new ColumnarTfsResult()).getResult();
+    }
+
+    private static ColumnarTfsResult createResult(int rows) throws TfsResultException {
+        ColumnarTfsResult result = new ColumnarTfsResult();
+        for (String key : Arrays.asList("NAME", "X", "KEYWORD")) {
+            result.createColumn(key);
+        }
+        result.setVarType("NAME", MadxVarType.STRING);
+        result.setVarType("X", MadxVarType.DOUBLE);
+        result.setVarType("KEYWORD", MadxVarType.STRING);
+        for (int i = 0; i < rows; i++) {
+            result.addRow(new String[] { "ELEM." + i, Double.toString(i / 2.0), "MONITOR" });
+        }
+        result.convert();
+        result.verify();
+        return result;
+    }
+}
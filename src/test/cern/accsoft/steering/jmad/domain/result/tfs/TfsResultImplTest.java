@@ -0,0 +1,99 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.domain.result.tfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import cern.accsoft.steering.jmad.util.MadxVarType;
+
+public class TfsResultImplTest {
+
+    @Test(expected = TfsResultException.class)
+    public void invalidValueFailsConversionByDefault() throws TfsResultException {
+        TfsResultImpl result = createResult("0.5", "BROKEN");
+        result.convert();
+    }
+
+    @Test
+    public void columnsAreConvertedOnFirstAccess() throws TfsResultException {
+        TfsResultImpl result = createResult("0.5", "BROKEN");
+        result.setEagerConversion(false);
+        result.convert();
+        result.verify();
+
+        assertEquals(0.5, result.getDouble("X", 0), 0.0);
+        assertEquals(1, result.getDoubleData("x").size());
+        assertNull(result.getDoubleData("NAME"));
+        assertNull(result.getDoubleData("UNKNOWN"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void invalidValueFailsOnAccess() throws TfsResultException {
+        TfsResultImpl result = createResult("0.5", "BROKEN");
+        result.setEagerConversion(false);
+        result.convert();
+        result.verify();
+
+        result.getDoubleData("Y");
+    }
+
+    @Test
+    public void addedRowsAreConverted() throws TfsResultException {
+        TfsResultImpl result = createResult("0.5", "1");
+        assertEquals(1, result.getDoubleData("X").size());
+
+        result.addRow(new String[] { "ELEM.1", "1.5", "2" });
+
+        assertEquals(2, result.getDoubleData("X").size());
+        assertEquals(1.5, result.getDouble("X", 1), 0.0);
+    }
+
+    @Test
+    public void concurrentAccessReturnsConvertedValues() throws Exception {
+        TfsResultImpl result = createResult("0.5", "1");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Double>>> futures = new ArrayList<>();
+            Callable<List<Double>> read = () -> result.getDoubleData("X");
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(read));
+            }
+            for (Future<List<Double>> future : futures) {
+                assertEquals(Double.valueOf(0.5), future.get().get(0));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static TfsResultImpl createResult(String x, String y) {
+        TfsResultImpl result = new TfsResultImpl();
+        result.createColumn("NAME");
+        result.createColumn("X");
+        result.createColumn("Y");
+        result.setVarType("NAME", MadxVarType.STRING);
+        result.setVarType("X", MadxVarType.DOUBLE);
+        result.setVarType("Y", MadxVarType.DOUBLE);
+        result.addRow(new String[] { "ELEM.0", x, y });
+        return result;
+    }
+}
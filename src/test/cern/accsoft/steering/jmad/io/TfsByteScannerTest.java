@@ -0,0 +1,175 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import cern.accsoft.steering.jmad.domain.result.tfs.ColumnarTfsResult;
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsResult;
+import cern.accsoft.steering.jmad.domain.result.track.TrackResult;
+import cern.accsoft.steering.jmad.domain.var.enums.MadxTrackVariable;
+
+public class TfsByteScannerTest {
+
+    private static final String LINES = "@ TITLE            %14s \"AMDLH.610104 \"\r\n" + "* NAME X\r\n\r\n   \n"
+            + "\"E1\" 1.5 A\"\"B \"\"\n" + "\"a\"b\"c d\" -inf";
+
+    @Test
+    public void tokensEqualCharacterScanner() throws IOException, TfsFileParserException {
+        try (TfsByteScanner bytes = scanner(LINES); TfsScanner chars = new TfsScanner(new StringReader(LINES))) {
+            while (chars.nextLine()) {
+                assertTrue(bytes.nextLine());
+                assertEquals(chars.getLineNumber(), bytes.getLineNumber());
+                assertEquals(chars.getLine(), bytes.getLine());
+                for (int i = 0; i < chars.getValueCount(); i++) {
+                    assertEquals(chars.getString(i), bytes.getString(i));
+                    assertTrue(bytes.tokenEquals(i, chars.getString(i)));
+                }
+            }
+            assertFalse(bytes.nextLine());
+        }
+    }
+
+    @Test
+    public void tokensAreCompared() throws TfsFileParserException {
+        TfsByteScanner scanner = scanner("#segment 1 \"*\"");
+        assertTrue(scanner.nextLine());
+        assertTrue(scanner.tokenStartsWith(0, "#seg"));
+        assertFalse(scanner.tokenEquals(0, "#seg"));
+        assertTrue(scanner.tokenEquals(2, "*"));
+        assertFalse(scanner.tokenStartsWith(1, "12"));
+    }
+
+    @Test
+    public void doublesEqualParseDouble() throws TfsFileParserException {
+        Random random = new Random(42);
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            double value = random.nextGaussian() * Math.pow(10, random.nextInt(40) - 20);
+            values.add(String.format(Locale.US, "%.10g", value));
+            values.add(String.format(Locale.US, "%.16e", value));
+            values.add(Double.toString(value));
+        }
+        values.add("0");
+        values.add("-0.0");
+        values.add("+12");
+        values.add(".5");
+        values.add("7.");
+        values.add("1e-300");
+        values.add("123456789012345678901234");
+
+        TfsByteScanner scanner = scanner(String.join(" ", values));
+        assertTrue(scanner.nextLine());
+        for (int i = 0; i < values.size(); i++) {
+            assertEquals(values.get(i), Double.doubleToLongBits(Double.parseDouble(values.get(i))),
+                    Double.doubleToLongBits(scanner.getDouble(i)));
+        }
+    }
+
+    @Test
+    public void infinityIsParsed() throws TfsFileParserException {
+        TfsByteScanner scanner = scanner("inf -INF");
+        assertTrue(scanner.nextLine());
+        assertEquals(Double.POSITIVE_INFINITY, scanner.getDouble(0), 0.0);
+        assertEquals(Double.NEGATIVE_INFINITY, scanner.getDouble(1), 0.0);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void invalidDoubleFails() throws TfsFileParserException {
+        TfsByteScanner scanner = scanner("1.5e");
+        assertTrue(scanner.nextLine());
+        scanner.getDouble(0);
+    }
+
+    @Test(expected = TfsFileParserException.class)
+    public void unclosedQuoteFails() throws TfsFileParserException {
+        scanner("\"NAME X").nextLine();
+    }
+
+    @Test
+    public void mappedFileEqualsCompressedFile() throws Exception {
+        File file = File.createTempFile("mapped", ".tfs");
+        File gzipFile = new File(file.getPath() + ".gz");
+        try {
+            TfsParserBenchmark.writeSyntheticTfs(file, 5000, 20);
+            assertTrue(file.length() > TfsByteScanner.MAP_THRESHOLD);
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipFile.toPath()))) {
+                Files.copy(file.toPath(), out);
+            }
+            assertTrue(TfsByteScanner.canScan(file));
+            assertFalse(TfsByteScanner.canScan(gzipFile));
+
+            TfsResult mapped = parse(file);
+            TfsResult read = parse(gzipFile);
+            assertEquals(5000, mapped.getStringData("NAME").size());
+            assertEquals(read.getStringData("NAME"), mapped.getStringData("NAME"));
+            for (int column = 0; column < 20; column++) {
+                assertArrayEquals(read.getDoubleArray("C" + column), mapped.getDoubleArray("C" + column), 0.0);
+            }
+        } finally {
+            file.delete();
+            gzipFile.delete();
+        }
+    }
+
+    @Test
+    public void trackOutputIsParsed() throws Exception {
+        File file = File.createTempFile("trackone", "");
+        try {
+            Files.write(file.toPath(), ("@ NAME             %08s \"TRACKONE\"\n"
+                    + "*   NUMBER       TURN                  X                 PX\n"
+                    + "$       %d         %d                %le               %le\n"
+                    + "#segment       1       2       2       0 start\n"
+                    + "        1          0   0.001000000000    -0.000100000000\n"
+                    + "        2          0   0.002000000000    -0.000200000000\n"
+                    + "#segment       2       2       2       0 end\n"
+                    + "        1          1   0.001100000000    -0.000110000000\n").getBytes(StandardCharsets.US_ASCII));
+            TrackOutputParser parser = new TrackOutputParser(file);
+            parser.parse();
+
+            TrackResult result = parser.getResult();
+            assertEquals(Integer.valueOf(2), result.getParticleCount());
+            assertEquals(0.0011, result.get(MadxTrackVariable.X, 0).get(1), 0.0);
+            assertEquals(-0.0002, result.get(MadxTrackVariable.PX, 1).get(0), 0.0);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static TfsResult parse(File file) throws TfsFileParserException {
+        TfsFileParser parser = new TfsFileParser(file, new ColumnarTfsResult());
+        parser.parse();
+        return parser.getParsedResult();
+    }
+
+    private static TfsByteScanner scanner(String content) {
+        return new TfsByteScanner(ByteBuffer.wrap(content.getBytes(StandardCharsets.US_ASCII)));
+    }
+}
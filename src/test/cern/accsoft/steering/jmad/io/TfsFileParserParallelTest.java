@@ -0,0 +1,142 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.accsoft.steering.jmad.domain.result.tfs.ColumnarTfsResult;
+import cern.accsoft.steering.jmad.domain.result.tfs.MutableTfsResult;
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsResult;
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsResultImpl;
+
+public class TfsFileParserParallelTest {
+
+    private static final int ROWS = 30000;
+    private static final int COLUMNS = 10;
+    /** the names repeat, so that the element index has to take the last row of each name */
+    private static final int DISTINCT_NAMES = 7000;
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("parallel", ".tfs");
+    }
+
+    @After
+    public void deleteFile() {
+        pool.shutdown();
+        file.delete();
+    }
+
+    @Test
+    public void parallelResultEqualsSequentialResult() throws Exception {
+        writeTfs(false);
+        assertParallelEqualsSequential(new TfsResultImpl(), new TfsResultImpl());
+        assertParallelEqualsSequential(new ColumnarTfsResult(), new ColumnarTfsResult());
+    }
+
+    @Test
+    public void headerLinesBetweenRowsAreParsedSequentially() throws Exception {
+        writeTfs(true);
+        TfsResult parallel = assertParallelEqualsSequential(new ColumnarTfsResult(), new ColumnarTfsResult());
+        assertEquals(42.0, parallel.getSummary().getDoubleValue("LATE"), 0.0);
+    }
+
+    @Test
+    public void resultsWithoutPartsAreFilledRowByRow() throws Exception {
+        writeTfs(false);
+        assertParallelEqualsSequential(new TfsResultImpl(), new TfsResultImpl() {
+            @Override
+            public TfsResultImpl createPart() {
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void filesAreParsedInOneThreadWithoutExecutor() throws Exception {
+        writeTfs(false);
+        TfsFileParser parser = new TfsFileParser(file, new TfsResultImpl() {
+            @Override
+            public TfsResultImpl createPart() {
+                throw new AssertionError("No parts expected without executor.");
+            }
+        });
+        parser.setParallelThreshold(1);
+        parser.parse();
+        assertEquals(ROWS, parser.getParsedResult().getStringData("NAME").size());
+    }
+
+    private TfsResult assertParallelEqualsSequential(MutableTfsResult sequentialResult,
+            MutableTfsResult parallelResult) throws TfsFileParserException {
+        TfsFileParser sequential = new TfsFileParser(file, sequentialResult);
+        sequential.setParallelThreshold(0);
+        sequential.parse();
+        TfsFileParser parallel = new TfsFileParser(file, parallelResult);
+        parallel.setParallelThreshold(1);
+        parallel.setParallelExecutor(pool);
+        parallel.parse();
+
+        TfsResult expected = sequential.getParsedResult();
+        TfsResult actual = parallel.getParsedResult();
+        assertEquals(ROWS, actual.getStringData("NAME").size());
+        assertEquals(expected.getStringData("NAME"), actual.getStringData("NAME"));
+        for (int column = 0; column < COLUMNS; column++) {
+            assertArrayEquals(expected.getDoubleArray("C" + column), actual.getDoubleArray("C" + column), 0.0);
+        }
+        for (int name = 0; name < DISTINCT_NAMES; name += 13) {
+            assertEquals(expected.getElementIndex("E." + name), actual.getElementIndex("E." + name));
+        }
+        assertEquals(Integer.valueOf(28005), actual.getElementIndex("e.5"));
+        return actual;
+    }
+
+    private void writeTfs(boolean headerBetweenRows) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.US_ASCII)) {
+            writer.write("@ Q1               %le     64.31000000\n");
+            StringBuilder keys = new StringBuilder("* NAME      ");
+            StringBuilder types = new StringBuilder("$ %s        ");
+            for (int column = 0; column < COLUMNS; column++) {
+                keys.append(String.format(Locale.US, " %18s", "C" + column));
+                types.append(String.format(Locale.US, " %18s", "%le"));
+            }
+            writer.write(keys.append('\n').toString());
+            writer.write(types.append('\n').toString());
+            for (int row = 0; row < ROWS; row++) {
+                if (headerBetweenRows && (row == ROWS / 2)) {
+                    writer.write("@ LATE             %le     42\n");
+                }
+                StringBuilder line = new StringBuilder(String.format(Locale.US, " %-10s",
+                        "\"E." + (row % DISTINCT_NAMES) + "\""));
+                for (int column = 0; column < COLUMNS; column++) {
+                    line.append(String.format(Locale.US, " %18.10e", Math.sin(row * 0.001 + column) * 1e-3));
+                }
+                writer.write(line.append('\n').toString());
+            }
+        }
+    }
+}
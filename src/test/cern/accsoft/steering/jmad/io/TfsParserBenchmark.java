@@ -0,0 +1,217 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.io;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import cern.accsoft.steering.jmad.domain.result.tfs.ColumnarTfsResult;
+import cern.accsoft.steering.jmad.domain.result.tfs.MutableTfsResult;
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsResult;
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsResultException;
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsResultImpl;
+import cern.accsoft.steering.jmad.util.MadxVarType;
+import cern.accsoft.steering.jmad.util.StringUtil;
+import cern.accsoft.steering.jmad.util.io.TextFileParserException;
+import cern.accsoft.steering.jmad.util.io.impl.TextFileParserImpl;
+
+/**
+ * Compares the time and the allocated memory of the {@link TfsFileParser} with the previous implementation (all lines
+ * loaded into a list, each one split by regular expressions) on a large synthetic TFS file. Additionally compares the
+ * heap retained by a {@link TfsResultImpl} and a {@link ColumnarTfsResult} of the same file. The parallel parsing is
+ * measured as well; its allocations are only counted for the calling thread.
+ * <p>
+ * Usage: TfsParserBenchmark [rows] [double columns] [iterations]
+ */
+public final class TfsParserBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 3;
+
+    private TfsParserBenchmark() {
+        /* only main */
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = (args.length > 0) ? Integer.parseInt(args[0]) : 50000;
+        int doubleColumns = (args.length > 1) ? Integer.parseInt(args[1]) : 40;
+        int iterations = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+
+        File file = File.createTempFile("benchmark", ".tfs");
+        try {
+            writeSyntheticTfs(file, rows, doubleColumns);
+            System.out.printf("%d rows, %d double columns, %.1f MB%n", rows, doubleColumns, file.length() / 1e6);
+            measure("regex split (previous)", () -> parseLegacy(file), iterations);
+            measure("TfsFileParser", () -> parse(file, new TfsResultImpl(), 0), iterations);
+            measure("TfsFileParser, columnar", () -> parse(file, new ColumnarTfsResult(), 0), iterations);
+            measure("parallel", () -> parse(file, new TfsResultImpl(), 1), iterations);
+            measure("parallel, columnar", () -> parse(file, new ColumnarTfsResult(), 1), iterations);
+            measureRetained("TfsResultImpl", () -> new TfsFileParser(file));
+            measureRetained("ColumnarTfsResult", () -> new TfsFileParser(file, new ColumnarTfsResult()));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void parse(File file, MutableTfsResult result, long parallelThreshold)
+            throws TfsFileParserException {
+        TfsFileParser parser = new TfsFileParser(file, result);
+        parser.setParallelThreshold(parallelThreshold);
+        parser.setParallelExecutor(ForkJoinPool.commonPool());
+        parser.parse();
+    }
+
+    private static void measure(String name, Parse parse, int iterations) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            parse.run();
+        }
+        long startBytes = allocatedBytes();
+        long startTime = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            parse.run();
+        }
+        long nanos = System.nanoTime() - startTime;
+        long bytes = allocatedBytes() - startBytes;
+        System.out.printf("  %-24s %9.1f ms/parse %9.1f MB allocated/parse%n", name, nanos / 1e6 / iterations,
+                bytes / 1e6 / iterations);
+    }
+
+    private static void measureRetained(String name, ParserFactory factory) throws Exception {
+        TfsFileParser parser = factory.create();
+        long before = usedHeap();
+        parser.parse();
+        TfsResult result = parser.getParsedResult();
+        long retained = usedHeap() - before;
+        System.out.printf("  %-24s %9.1f MB retained (%d columns)%n", name, retained / 1e6,
+                result.getColumnCount());
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * @return the bytes allocated by the current thread so far, 0 if this is not supported by the jvm
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    static void writeSyntheticTfs(File file, int rows, int doubleColumns) throws IOException {
+        Random random = new Random(42);
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.US_ASCII)) {
+            writer.write("@ NAME             %05s \"TWISS\"\n");
+            writer.write("@ TITLE            %14s \"benchmark run \"\n");
+            writer.write("@ Q1               %le     64.31000000\n");
+            StringBuilder keys = new StringBuilder("* NAME                KEYWORD            ");
+            StringBuilder types = new StringBuilder("$ %s                  %s                 ");
+            for (int column = 0; column < doubleColumns; column++) {
+                keys.append(String.format(Locale.US, " %18s", "C" + column));
+                types.append(String.format(Locale.US, " %18s", "%le"));
+            }
+            writer.write(keys.append('\n').toString());
+            writer.write(types.append('\n').toString());
+            for (int row = 0; row < rows; row++) {
+                StringBuilder line = new StringBuilder();
+                line.append(String.format(Locale.US, " %-20s %-18s", "\"E." + row + "\"", "\"MONITOR\""));
+                for (int column = 0; column < doubleColumns; column++) {
+                    line.append(String.format(Locale.US, " %18.10g", random.nextGaussian() * 100));
+                }
+                writer.write(line.append('\n').toString());
+            }
+        }
+    }
+
+    /**
+     * the parsing as it was done before the {@link TfsScanner}: only the lines with values are handled, which is
+     * where the time goes.
+     */
+    private static void parseLegacy(File file) throws TextFileParserException, TfsFileParserException,
+            TfsResultException {
+        List<String> lines = new TextFileParserImpl().parse(file);
+        TfsResultImpl result = new TfsResultImpl();
+        for (String line : lines) {
+            List<String> tokens = legacySplit(line);
+            if (tokens.get(0).equals("@")) {
+                continue;
+            } else if (tokens.get(0).equals("*")) {
+                for (String key : tokens.subList(1, tokens.size())) {
+                    result.createColumn(key);
+                }
+            } else if (tokens.get(0).equals("$")) {
+                for (int i = 1; i < tokens.size(); i++) {
+                    result.setVarType(result.getKeys().get(i - 1), MadxVarType.getVarType(tokens.get(i)));
+                }
+            } else {
+                List<String> values = new ArrayList<>();
+                for (String token : tokens) {
+                    values.add(token.replace("\"", ""));
+                }
+                result.addRow(values);
+            }
+        }
+        result.convert();
+        result.verify();
+    }
+
+    private static List<String> legacySplit(String string) throws TfsFileParserException {
+        List<String> fields = new ArrayList<>();
+        String[] tokens = string.split("(^|\\s+)\\\"");
+        for (String token : tokens) {
+            String stringPastQuote = "";
+            if (token.contains("\"")) {
+                String[] newTokens = token.split("\\\"");
+                if (newTokens.length > 2) {
+                    throw new TfsFileParserException("Was not able to split string '" + string + "' correctly!");
+                }
+                fields.add(newTokens[0]);
+                if (newTokens.length == 2) {
+                    stringPastQuote = newTokens[1];
+                }
+            } else {
+                stringPastQuote = token;
+            }
+            for (String field : stringPastQuote.split("[ \t\r]+")) {
+                if (!StringUtil.isWhitespacesOnly(field)) {
+                    fields.add(field);
+                }
+            }
+        }
+        return fields;
+    }
+
+    private interface Parse {
+        void run() throws Exception;
+    }
+
+    private interface ParserFactory {
+        TfsFileParser create();
+    }
+}
@@ -0,0 +1,61 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class TfsScannerTest {
+
+    @Test
+    public void quotedStringsKeepSpaces() throws TfsFileParserException {
+        assertEquals(Arrays.asList("@", "TITLE", "%14s", "AMDLH.610104 "),
+                TfsScanner.split("@ TITLE            %14s \"AMDLH.610104 \""));
+        assertEquals(Arrays.asList(" leading", "x"), TfsScanner.split("\" leading\" x"));
+    }
+
+    @Test
+    public void emptyQuotedStringIsToken() throws TfsFileParserException {
+        assertEquals(Arrays.asList("A", "", "B"), TfsScanner.split("A \"\" B"));
+    }
+
+    @Test
+    public void whitespaceOnlyGivesNoTokens() throws TfsFileParserException {
+        assertEquals(Collections.emptyList(), TfsScanner.split(" \t\r "));
+    }
+
+    @Test(expected = TfsFileParserException.class)
+    public void unclosedQuoteFails() throws TfsFileParserException {
+        TfsScanner.split("\"NAME X");
+    }
+
+    @Test
+    public void emptyLinesAreSkipped() throws IOException, TfsFileParserException {
+        try (TfsScanner scanner = new TfsScanner(new StringReader("* NAME X\r\n\r\n   \n\"E1\" 1.5\n"))) {
+            assertTrue(scanner.nextLine());
+            assertEquals(3, scanner.getTokenCount());
+            assertTrue(scanner.nextLine());
+            assertEquals(4, scanner.getLineNumber());
+            assertArrayEquals(new String[] { "E1", "1.5" }, Arrays.copyOf(scanner.getTokens(), 2));
+            assertFalse(scanner.nextLine());
+        }
+    }
+}
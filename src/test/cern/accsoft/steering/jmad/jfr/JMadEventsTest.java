@@ -0,0 +1,42 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.jfr;
+
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Test;
+
+import cern.accsoft.steering.jmad.domain.result.ResultType;
+import cern.accsoft.steering.jmad.kernel.ExecutionPhase;
+import cern.accsoft.steering.jmad.kernel.ExecutionTimings;
+
+public class JMadEventsTest {
+
+    @Test
+    public void spansCanBeCommittedWithoutRecording() {
+        ExecutionTimings timings = new ExecutionTimings("RunTwiss", ResultType.TFS_RESULT);
+        timings.add(ExecutionPhase.MADX, 1000);
+
+        JMadEvents.KernelExecuteSpan kernelExecute = JMadEvents.beginKernelExecute();
+        assertNotNull(kernelExecute);
+        kernelExecute.commit(timings);
+
+        JMadEvents.beginTfsParse().commit("twiss.tfs", 1024, 10, 5);
+        JMadEvents.beginModelInit().commit("test model", false);
+    }
+
+    @Test
+    public void nullValuesAreAccepted() {
+        JMadEvents.beginKernelExecute().commit(new ExecutionTimings(ExecutionTimings.BATCH_EXECUTABLE_TYPE, null));
+        JMadEvents.beginModelInit().commit(null, true);
+    }
+}
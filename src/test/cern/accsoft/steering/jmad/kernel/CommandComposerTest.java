@@ -0,0 +1,98 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.kernel.cmd.CallCommand;
+import cern.accsoft.steering.jmad.kernel.cmd.SetListEqual;
+
+public class CommandComposerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void smallCommandIsSentDirectly() throws JMadException, IOException {
+        SetListEqual command = createSetListEqual(10);
+
+        CommandComposer.Composed composed = new CommandComposer(1024).compose(command, () -> {
+            throw new AssertionError("the command file must only be created when it is needed");
+        });
+
+        assertEquals(command.compose(), composed.getCommand());
+        assertNull(composed.getCommandFile());
+    }
+
+    @Test
+    public void largeCommandIsWrittenToCalledFile() throws JMadException, IOException {
+        File commandFile = new File(folder.getRoot(), "command.madx");
+        SetListEqual command = createSetListEqual(1000);
+
+        CommandComposer.Composed composed = new CommandComposer(1024).compose(command, () -> commandFile);
+
+        assertEquals(new CallCommand(commandFile).compose(), composed.getCommand());
+        assertEquals(commandFile, composed.getCommandFile());
+        String fileContent = new String(Files.readAllBytes(commandFile.toPath()), StandardCharsets.UTF_8);
+        assertEquals(command.compose() + "\n", fileContent);
+
+        composed.deleteCommandFile();
+        assertFalse(commandFile.exists());
+    }
+
+    @Test
+    public void composerCanBeReusedAfterSpilling() throws JMadException {
+        CommandComposer composer = new CommandComposer(1024);
+        composer.compose(createSetListEqual(1000), () -> new File(folder.getRoot(), "command-1.madx"));
+
+        File commandFile = new File(folder.getRoot(), "command-2.madx");
+        SetListEqual smallCommand = createSetListEqual(3);
+        CommandComposer.Composed composed = composer.compose(smallCommand, () -> commandFile);
+
+        assertEquals(smallCommand.compose(), composed.getCommand());
+        assertFalse(commandFile.exists());
+    }
+
+    @Test
+    public void commandOfExactlyThresholdSizeIsSentDirectly() throws JMadException {
+        SetListEqual command = createSetListEqual(5);
+        int length = command.compose().length();
+        CommandComposer.Composed composed = new CommandComposer(length).compose(command,
+                () -> new File(folder.getRoot(), "command.madx"));
+
+        assertTrue(composed.getCommandFile() == null);
+        assertEquals(command.compose(), composed.getCommand());
+    }
+
+    private static SetListEqual createSetListEqual(int count) {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            values.put("kq" + i, i * 1.0e-4);
+        }
+        return new SetListEqual(values);
+    }
+}
@@ -0,0 +1,176 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.bin.FakeMadxLauncher;
+import cern.accsoft.steering.jmad.kernel.task.CommandBlock;
+import cern.accsoft.steering.jmad.util.JMadPreferences;
+import cern.accsoft.steering.jmad.util.JMadPreferencesImpl;
+import cern.accsoft.steering.jmad.util.ProcTools;
+import cern.accsoft.steering.jmad.util.TempFileUtilImpl;
+
+/**
+ * Starts many kernels at the same time and measures the threads and the memory they need in this JVM. Instead of MadX
+ * (or the {@link cern.accsoft.steering.jmad.bin.FakeMadx}, which would start one JVM per kernel) each kernel runs a
+ * small sed script, which only answers the ready handshake. Each round executes an empty command block on all kernels
+ * concurrently.
+ * <p>
+ * Run it once on java 8 or 17 and once on java 21 (or with -Dcern.jmad.kernel.virtualthreads=false) to compare the
+ * platform threads with the virtual threads of the submission queues.
+ * <p>
+ * Usage: ConcurrentKernelsBenchmark [kernels] [rounds]
+ */
+public final class ConcurrentKernelsBenchmark {
+
+    private static final int STARTER_THREADS = 16;
+
+    private ConcurrentKernelsBenchmark() {
+        /* only main */
+    }
+
+    public static void main(String[] args) throws Exception {
+        int kernelCount = (args.length > 0) ? Integer.parseInt(args[0]) : 500;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+
+        File directory = Files.createTempDirectory("sentinel-madx").toFile();
+        File script = writeSentinelScript(directory);
+        System.setProperty(FakeMadxLauncher.PROP_MADX_PATH, script.getAbsolutePath());
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int threadsBefore = threads.getThreadCount();
+        long heapBefore = usedHeapAfterGc();
+
+        List<JMadKernelImpl> kernels = createKernels(kernelCount);
+        try {
+            long startTime = System.nanoTime();
+            startAll(kernels);
+            long startNanos = System.nanoTime() - startTime;
+
+            CommandBlock empty = new CommandBlock(Collections.emptyList());
+            startTime = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                List<CompletableFuture<?>> executions = new ArrayList<>();
+                for (JMadKernelImpl kernel : kernels) {
+                    executions.add(kernel.executeAsync(empty));
+                }
+                CompletableFuture.allOf(executions.toArray(new CompletableFuture<?>[0])).join();
+            }
+            long roundNanos = System.nanoTime() - startTime;
+
+            System.out.printf("%d kernels (%s threads for waiting):%n", kernelCount,
+                    MadxIoThreads.isVirtualThreads() ? "virtual" : "platform");
+            System.out.printf("  start:   %8.1f ms total%n", startNanos / 1e6);
+            System.out.printf("  rounds:  %8.3f ms/round (%d rounds)%n", roundNanos / 1e6 / rounds, rounds);
+            System.out.printf("  threads: %d live (%d before), %d peak%n", threads.getThreadCount(), threadsBefore,
+                    threads.getPeakThreadCount());
+            for (Map.Entry<String, Integer> group : threadGroups().entrySet()) {
+                System.out.printf("           %5d %s%n", group.getValue(), group.getKey());
+            }
+            System.out.printf("  heap:    %8.1f MB used by the kernels%n", (usedHeapAfterGc() - heapBefore) / 1e6);
+            System.out.printf("  rss:     %8.1f MB of this jvm%n", ProcTools.getRssBytes(ownPid()) / 1e6);
+        } finally {
+            for (JMadKernelImpl kernel : kernels) {
+                if (kernel.isMadxRunning()) {
+                    kernel.stop();
+                }
+            }
+            script.delete();
+            directory.delete();
+        }
+    }
+
+    /**
+     * writes a script, which prints the token of each ready handshake and terminates on the stop command
+     */
+    private static File writeSentinelScript(File directory) throws IOException {
+        String script = "#!/bin/sh\nexec sed -u -n -e '/^stop;/q' -e 's/^print, text=\"\\([^\"]*\\)\".*/\\1/p'\n";
+        File file = new File(directory, "madx");
+        Files.write(file.toPath(), script.getBytes(StandardCharsets.UTF_8));
+        if (!file.setExecutable(true)) {
+            throw new IOException("Could not make '" + file.getAbsolutePath() + "' executable.");
+        }
+        return file;
+    }
+
+    private static List<JMadKernelImpl> createKernels(int kernelCount) {
+        JMadPreferences prefs = new JMadPreferencesImpl();
+        TempFileUtilImpl fileUtil = new TempFileUtilImpl();
+        fileUtil.setPreferences(prefs);
+        fileUtil.init();
+
+        List<JMadKernelImpl> kernels = new ArrayList<>();
+        for (int i = 0; i < kernelCount; i++) {
+            JMadKernelImpl kernel = FakeMadxLauncher.createKernel(prefs, fileUtil);
+            kernel.setReadyHandshake(ReadyHandshake.STDOUT_SENTINEL);
+            kernels.add(kernel);
+        }
+        return kernels;
+    }
+
+    private static void startAll(List<JMadKernelImpl> kernels) {
+        ExecutorService starters = Executors.newFixedThreadPool(STARTER_THREADS);
+        try {
+            List<CompletableFuture<Void>> starts = new ArrayList<>();
+            for (JMadKernelImpl kernel : kernels) {
+                starts.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        kernel.start();
+                    } catch (JMadException e) {
+                        throw new IllegalStateException("Could not start kernel.", e);
+                    }
+                }, starters));
+            }
+            CompletableFuture.allOf(starts.toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            starters.shutdown();
+        }
+    }
+
+    /**
+     * @return the number of live platform threads by their name without the counter
+     */
+    private static Map<String, Integer> threadGroups() {
+        Map<String, Integer> groups = new TreeMap<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            groups.merge(thread.getName().replaceAll(" \\(pid \\d+\\)$|[-\\d]+$", ""), 1, Integer::sum);
+        }
+        return groups;
+    }
+
+    private static long usedHeapAfterGc() {
+        System.gc();
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        return heap.getUsed();
+    }
+
+    private static long ownPid() {
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        return Long.parseLong(name.substring(0, name.indexOf('@')));
+    }
+}
@@ -0,0 +1,162 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.ExternalResource;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.bin.FakeMadxLauncher;
+import cern.accsoft.steering.jmad.domain.result.StrengthResult;
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsResult;
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsResultRequestImpl;
+import cern.accsoft.steering.jmad.domain.twiss.TwissInitialConditionsImpl;
+import cern.accsoft.steering.jmad.domain.var.enums.MadxTwissVariable;
+import cern.accsoft.steering.jmad.kernel.cmd.FreeText;
+import cern.accsoft.steering.jmad.kernel.cmd.SetEqual;
+import cern.accsoft.steering.jmad.kernel.task.GetValues;
+import cern.accsoft.steering.jmad.kernel.task.RunTwiss;
+import cern.accsoft.steering.jmad.util.JMadPreferences;
+import cern.accsoft.steering.jmad.util.JMadPreferencesImpl;
+import cern.accsoft.steering.jmad.util.OsUtil;
+import cern.accsoft.steering.jmad.util.TempFileUtilImpl;
+
+/**
+ * Runs the kernel against the {@link cern.accsoft.steering.jmad.bin.FakeMadx} stand-in, so that the complete round
+ * trip (composing, MadX process, result parsing) is tested without a MadX installation.
+ */
+public class FakeMadxKernelTest {
+
+    private static final int ROWS = 42;
+
+    private static final Pattern CALLED_FILE = Pattern.compile("file\\s*=\\s*\"?([^\";]+)");
+
+    @ClassRule
+    public static ExternalResource fakeMadx = FakeMadxLauncher.create().rows(ROWS).asRule();
+
+    private final TempFileUtilImpl fileUtil = new TempFileUtilImpl();
+    private JMadKernelImpl kernel;
+
+    @Before
+    public void startKernel() throws JMadException {
+        JMadPreferences prefs = new JMadPreferencesImpl();
+        fileUtil.setPreferences(prefs);
+        fileUtil.init();
+
+        kernel = FakeMadxLauncher.createKernel(prefs, fileUtil);
+        kernel.start();
+    }
+
+    @After
+    public void stopKernel() throws JMadException {
+        kernel.stop();
+    }
+
+    @Test
+    public void twissReturnsSyntheticTable() throws JMadException {
+        TfsResultRequestImpl request = new TfsResultRequestImpl();
+        request.addVariable(MadxTwissVariable.NAME);
+        request.addVariable(MadxTwissVariable.BETX);
+
+        TfsResult result = (TfsResult) kernel.execute(new RunTwiss(new TwissInitialConditionsImpl(), request));
+
+        assertEquals(2, result.getColumnCount());
+        assertEquals(ROWS, result.getStringData(MadxTwissVariable.NAME).size());
+        assertEquals("E5", result.getStringData(MadxTwissVariable.NAME).get(5));
+        assertEquals(Double.valueOf(5.01), result.getDoubleData(MadxTwissVariable.BETX).get(5));
+    }
+
+    @Test
+    public void valuesAreReturnedAfterAssignment() throws JMadException {
+        kernel.execute(new SetEqual("kqf", 0.0123));
+
+        StrengthResult result = (StrengthResult) kernel.execute(new GetValues(Arrays.asList("kqf", "kqd")));
+
+        assertEquals(Arrays.asList(0.0123, 0.0), result.getDoubleValues());
+    }
+
+    @Test
+    public void lineBufferedMadxIsAwaitedBySentinel() throws JMadException {
+        assumeTrue(OsUtil.isLinux());
+        assertEquals(ReadyHandshake.STDOUT_SENTINEL, kernel.getReadyHandshake());
+
+        kernel.execute(new SetEqual("kqf", 0.5));
+        StrengthResult result = (StrengthResult) kernel.execute(new GetValues(Arrays.asList("kqf")));
+
+        assertEquals(Arrays.asList(0.5), result.getDoubleValues());
+    }
+
+    @Test
+    public void blockBufferedMadxIsAwaitedByReadyFile() throws JMadException {
+        JMadPreferences prefs = new JMadPreferencesImpl();
+        prefs.setMadxLineBuffered(false);
+        JMadKernelImpl blockBuffered = FakeMadxLauncher.createKernel(prefs, fileUtil);
+        blockBuffered.start();
+        try {
+            assertEquals(ReadyHandshake.READY_FILE, blockBuffered.getReadyHandshake());
+
+            blockBuffered.execute(new SetEqual("kqf", 0.5));
+            StrengthResult result = (StrengthResult) blockBuffered.execute(new GetValues(Arrays.asList("kqf")));
+
+            assertEquals(Arrays.asList(0.5), result.getDoubleValues());
+        } finally {
+            blockBuffered.stop();
+        }
+    }
+
+    @Test
+    public void batchOfTwissesIsExecuted() throws JMadException {
+        RunTwiss twiss = new RunTwiss(new TwissInitialConditionsImpl(), new TfsResultRequestImpl());
+
+        assertEquals(3, kernel.executeBatch(Collections.nCopies(3, twiss)).size());
+    }
+
+    @Test
+    public void commandFilesCalledByTheInputLogAreKeptInDevelopment() throws Exception {
+        kernel.setProfile(KernelProfile.DEVELOPMENT);
+        kernel.setCommandFileThreshold(1);
+
+        FreeText command = new FreeText();
+        command.setText("kqf = 0.0123;");
+
+        kernel.execute(command);
+        kernel.execute(command);
+
+        List<File> calledFiles = new ArrayList<>();
+        for (String line : Files.readAllLines(fileUtil.getOutputFile(kernel, "madx-input.log").toPath())) {
+            Matcher matcher = CALLED_FILE.matcher(line);
+            if (matcher.find()) {
+                calledFiles.add(new File(matcher.group(1)));
+            }
+        }
+        assertEquals(2, calledFiles.size());
+        for (File calledFile : calledFiles) {
+            assertTrue(calledFile.getAbsolutePath(), calledFile.exists());
+        }
+    }
+}
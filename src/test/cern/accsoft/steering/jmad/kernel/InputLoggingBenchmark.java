@@ -0,0 +1,118 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.bin.FakeMadxLauncher;
+import cern.accsoft.steering.jmad.kernel.cmd.SetListEqual;
+
+/**
+ * Measures the cost of logging large assignment blocks (as sent e.g. when setting all strengths of a model) with the
+ * different {@link KernelProfile}s:
+ * <ul>
+ * <li>the time which the calling thread spends in logging the input. This is what limits the throughput when MadX is
+ * kept busy by pipelined executions (see {@link JMadKernel#executeAsync(JMadExecutable)}).</li>
+ * <li>the end-to-end throughput of synchronous executions, which also contains the time MadX needs for the block.</li>
+ * </ul>
+ * Usage: InputLoggingBenchmark [blocks] [assignments per block]
+ */
+public final class InputLoggingBenchmark {
+
+    private static final int WARMUP_BLOCKS = 20;
+
+    private InputLoggingBenchmark() {
+        /* only main */
+    }
+
+    public static void main(String[] args) throws JMadException, IOException {
+        int blocks = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+        int blockSize = (args.length > 1) ? Integer.parseInt(args[1]) : 5000;
+        SetListEqual block = createBlock(blockSize);
+
+        System.out.println("Input logging on the calling thread:");
+        String composedBlock = block.compose();
+        logInput(composedBlock, WARMUP_BLOCKS, KernelProfile.DEVELOPMENT, 1);
+        logInput(composedBlock, WARMUP_BLOCKS, KernelProfile.PRODUCTION, 1);
+        report("DEVELOPMENT", blocks, blockSize, logInput(composedBlock, blocks, KernelProfile.DEVELOPMENT, 1));
+        report("PRODUCTION", blocks, blockSize, logInput(composedBlock, blocks, KernelProfile.PRODUCTION, 1));
+        report("PRODUCTION (sampling 10)", blocks, blockSize,
+                logInput(composedBlock, blocks, KernelProfile.PRODUCTION, 10));
+
+        System.out.println("End-to-end execution:");
+        JMadKernelImpl kernel = FakeMadxLauncher.createKernel();
+        kernel.start();
+        try {
+            run(kernel, block, WARMUP_BLOCKS, KernelProfile.DEVELOPMENT, 1);
+            run(kernel, block, WARMUP_BLOCKS, KernelProfile.PRODUCTION, 1);
+
+            report("DEVELOPMENT", blocks, blockSize, run(kernel, block, blocks, KernelProfile.DEVELOPMENT, 1));
+            report("PRODUCTION", blocks, blockSize, run(kernel, block, blocks, KernelProfile.PRODUCTION, 1));
+            report("PRODUCTION (sampling 10)", blocks, blockSize,
+                    run(kernel, block, blocks, KernelProfile.PRODUCTION, 10));
+        } finally {
+            kernel.stop();
+        }
+    }
+
+    private static long run(JMadKernelImpl kernel, SetListEqual block, int blocks, KernelProfile profile,
+            int sampling) throws JMadException {
+        kernel.setProfile(profile);
+        kernel.setInputLogSampling(sampling);
+        long startTime = System.nanoTime();
+        for (int i = 0; i < blocks; i++) {
+            kernel.execute(block);
+        }
+        return System.nanoTime() - startTime;
+    }
+
+    /**
+     * logs the block the same way as the kernel does in the given profile and returns the time spent by the calling
+     * thread.
+     */
+    private static long logInput(String composedBlock, int blocks, KernelProfile profile, int sampling)
+            throws IOException {
+        File file = File.createTempFile("madx-input", ".log");
+        MadxLogFileWriter inputLog = new MadxLogFileWriter(file, Long.MAX_VALUE);
+        inputLog.setSynchronous(profile == KernelProfile.DEVELOPMENT);
+        try {
+            long startTime = System.nanoTime();
+            for (int i = 0; i < blocks; i++) {
+                if ((profile == KernelProfile.DEVELOPMENT) || (i % sampling == 0)) {
+                    inputLog.processNewLine(composedBlock);
+                }
+            }
+            return System.nanoTime() - startTime;
+        } finally {
+            inputLog.close();
+            file.delete();
+        }
+    }
+
+    private static void report(String name, int blocks, int blockSize, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.printf("%-26s %8.1f ms total, %8.3f ms/block, %12.0f assignments/s%n", name, nanos / 1e6,
+                nanos / 1e6 / blocks, blocks * (double) blockSize / seconds);
+    }
+
+    private static SetListEqual createBlock(int size) {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            values.put("kq" + i, 1e-3 * i);
+        }
+        return new SetListEqual(values);
+    }
+}
@@ -0,0 +1,261 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Test;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.domain.result.Result;
+
+public class JMadKernelPoolTest {
+
+    private static final long WAIT_TIMEOUT = 5000;
+
+    private final List<StubKernel> createdKernels = new CopyOnWriteArrayList<>();
+
+    private final JMadKernelPoolImpl pool = new JMadKernelPoolImpl() {
+        @Override
+        protected JMadKernel createKernel() {
+            StubKernel kernel = new StubKernel();
+            createdKernels.add(kernel);
+            return kernel;
+        }
+    };
+
+    @After
+    public void closePool() {
+        pool.close();
+    }
+
+    @Test
+    public void initPreStartsMinIdleKernels() throws InterruptedException {
+        pool.setMinIdle(3);
+        pool.init();
+
+        waitForIdleCount(3);
+        assertEquals(3, createdKernels.size());
+        for (StubKernel kernel : createdKernels) {
+            assertTrue(kernel.isMadxRunning());
+        }
+    }
+
+    @Test
+    public void leaseHandsOutPreStartedKernel() throws JMadException, InterruptedException {
+        pool.setMinIdle(1);
+        pool.init();
+        waitForIdleCount(1);
+        StubKernel preStarted = createdKernels.get(0);
+
+        JMadKernel kernel = pool.lease();
+
+        assertTrue(kernel == preStarted);
+        assertEquals(1, pool.getLeasedCount());
+        /* the pool refills itself in the background */
+        waitForIdleCount(1);
+    }
+
+    @Test
+    public void releasedKernelIsStoppedAndNotHandedOutAgain() throws JMadException, InterruptedException {
+        pool.setMinIdle(1);
+        pool.init();
+
+        JMadKernel first = pool.lease();
+        pool.release(first);
+        waitUntil(() -> !first.isMadxRunning());
+        JMadKernel second = pool.lease();
+
+        assertNotSame(first, second);
+        assertTrue(second.isMadxRunning());
+        assertEquals(1, pool.getLeasedCount());
+    }
+
+    @Test(expected = JMadException.class)
+    public void leaseTimesOutWhenMaxTotalIsReached() throws JMadException {
+        pool.setMinIdle(0);
+        pool.setMaxTotal(1);
+        pool.setLeaseTimeout(50L);
+        pool.init();
+
+        pool.lease();
+        pool.lease();
+    }
+
+    @Test
+    public void idleKernelsAboveMinIdleAreEvicted() throws JMadException, InterruptedException {
+        pool.setMinIdle(2);
+        pool.setIdleTimeout(0L);
+        pool.init();
+        waitForIdleCount(2);
+
+        pool.setMinIdle(0);
+        /* the lease triggers the maintenance, which finds the other kernel idle above minIdle */
+        JMadKernel leased = pool.lease();
+        StubKernel idle = (createdKernels.get(0) == leased) ? createdKernels.get(1) : createdKernels.get(0);
+
+        waitUntil(() -> !idle.isMadxRunning());
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(2, createdKernels.size());
+        assertTrue(leased.isMadxRunning());
+    }
+
+    @Test
+    public void closeStopsIdleKernels() throws InterruptedException {
+        pool.setMinIdle(2);
+        pool.init();
+        waitForIdleCount(2);
+
+        pool.close();
+
+        assertEquals(0, pool.getIdleCount());
+        for (StubKernel kernel : createdKernels) {
+            assertFalse(kernel.isMadxRunning());
+        }
+    }
+
+    @Test
+    public void runningKernelsGetLowestFreeCpuSlots() throws JMadException, InterruptedException {
+        JMadKernelPoolImpl slotPool = new JMadKernelPoolImpl() {
+            @Override
+            protected JMadKernel createKernel() {
+                return new SlotKernel();
+            }
+        };
+        slotPool.setMinIdle(0);
+        slotPool.init();
+        try {
+            JMadKernelImpl first = (JMadKernelImpl) slotPool.lease();
+            JMadKernelImpl second = (JMadKernelImpl) slotPool.lease();
+            assertEquals(Integer.valueOf(0), first.getCpuSlot());
+            assertEquals(Integer.valueOf(1), second.getCpuSlot());
+
+            slotPool.release(first);
+            waitUntil(() -> !first.isMadxRunning());
+            /* the slot is freed just after stopping */
+            Thread.sleep(50);
+            JMadKernelImpl third = (JMadKernelImpl) slotPool.lease();
+            assertEquals(Integer.valueOf(0), third.getCpuSlot());
+        } finally {
+            slotPool.close();
+        }
+    }
+
+    private void waitForIdleCount(int count) throws InterruptedException {
+        waitUntil(() -> pool.getIdleCount() == count);
+    }
+
+    private static void waitUntil(Condition condition) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        while (!condition.isFulfilled()) {
+            if (System.currentTimeMillis() - start > WAIT_TIMEOUT) {
+                throw new AssertionError("Condition not fulfilled within " + WAIT_TIMEOUT + "ms.");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private interface Condition {
+        boolean isFulfilled();
+    }
+
+    /**
+     * a kernel implementation, which does not start madx, so that the pool assigns cpu slots to it
+     */
+    private static class SlotKernel extends JMadKernelImpl {
+        private volatile boolean running = false;
+
+        @Override
+        public void start() {
+            running = true;
+        }
+
+        @Override
+        public int stop() {
+            running = false;
+            return 0;
+        }
+
+        @Override
+        public boolean isMadxRunning() {
+            return running;
+        }
+    }
+
+    /**
+     * a kernel which only tracks whether it is started or not
+     */
+    private static class StubKernel implements JMadKernel {
+        private volatile boolean running = false;
+
+        @Override
+        public void start() {
+            running = true;
+        }
+
+        @Override
+        public int stop() {
+            running = false;
+            return 0;
+        }
+
+        @Override
+        public Result execute(JMadExecutable executable) {
+            return null;
+        }
+
+        @Override
+        public List<Result> executeBatch(List<? extends JMadExecutable> executables) {
+            return new ArrayList<>(Collections.nCopies(executables.size(), (Result) null));
+        }
+
+        @Override
+        public void recover() {
+            running = true;
+        }
+
+        @Override
+        public boolean isMadxRunning() {
+            return running;
+        }
+
+        @Override
+        public void addListener(JMadKernelListener listener) {
+            /* not needed */
+        }
+
+        @Override
+        public void removeListener(JMadKernelListener listener) {
+            /* not needed */
+        }
+
+        @Override
+        public File getOutputFile() {
+            return null;
+        }
+
+        @Override
+        public KernelIoStatistics getIoStatistics() {
+            return new KernelIoStatistics();
+        }
+    }
+}
@@ -23,15 +23,29 @@
 package cern.accsoft.steering.jmad.kernel;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Test;
 
 import cern.accsoft.steering.jmad.JMadException;
 import cern.accsoft.steering.jmad.bin.MadxBinImpl;
+import cern.accsoft.steering.jmad.domain.result.Result;
+import cern.accsoft.steering.jmad.kernel.cmd.FreeText;
 import cern.accsoft.steering.jmad.util.JMadPreferences;
 import cern.accsoft.steering.jmad.util.JMadPreferencesImpl;
 import cern.accsoft.steering.jmad.util.TempFileUtilImpl;
@@ -57,13 +71,14 @@ public class JMadKernelTest {
 
     @After
     public void deleteTestFile() throws JMadException {
-        if (!file.delete()) {
-            ; // ignore, may not exist.
-        }
-
+        /* stop first: madx might still process commands which write to the file */
         if (kernel.isMadxRunning()) {
             kernel.stop();
         }
+
+        if (!file.delete()) {
+            ; // ignore, may not exist.
+        }
     }
 
     // @Ignore("Takes to long")
@@ -90,4 +105,127 @@ public class JMadKernelTest {
         kernel.writeCommand("System \"echo > " + file.getAbsolutePath() + "\";");
         kernel.waitUntilReady();
     }
+
+    @Test
+    public void testExecuteAsyncKeepsSubmissionOrder() throws Exception {
+        kernel.start();
+        List<CompletableFuture<Result>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(kernel.executeAsync(freeText("System \"echo " + i + " >> " + file.getAbsolutePath() + "\";")));
+        }
+        kernel.execute(freeText("System \"echo 5 >> " + file.getAbsolutePath() + "\";"));
+
+        /* the results of asynchronous executions are parsed in another thread, so they may complete a bit later */
+        for (CompletableFuture<Result> future : futures) {
+            assertNull("free text does not provide a result.", future.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(Arrays.asList("0", "1", "2", "3", "4", "5"), Files.readAllLines(file.toPath()));
+    }
+
+    @Test
+    public void testExecuteBatch() throws Exception {
+        kernel.start();
+        List<FreeText> executables = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            executables.add(freeText("System \"echo " + i + " >> " + file.getAbsolutePath() + "\";"));
+        }
+
+        List<Result> results = kernel.executeBatch(executables);
+
+        assertEquals(Arrays.asList(null, null, null), results);
+        assertEquals(Arrays.asList("0", "1", "2"), Files.readAllLines(file.toPath()));
+    }
+
+    @Test
+    public void testIoStatisticsCountCommands() throws Exception {
+        kernel.start();
+        String command = "System \"echo statistics >> " + file.getAbsolutePath() + "\";";
+
+        kernel.execute(freeText(command));
+
+        assertTrue(kernel.getIoStatistics().getCommandBytes() >= command.length());
+        assertEquals(0, kernel.getIoStatistics().getResultFiles());
+    }
+
+    @Test
+    public void testExecutionTimingsAreReported() throws Exception {
+        BlockingQueue<ExecutionTimings> reported = new LinkedBlockingQueue<>();
+        kernel.addListener(new JMadKernelListener() {
+            @Override
+            public void startedKernel(Process newProcess) {
+                /* not needed */
+            }
+
+            @Override
+            public void stoppedKernel() {
+                /* not needed */
+            }
+
+            @Override
+            public void executed(ExecutionTimings timings) {
+                reported.add(timings);
+            }
+        });
+        kernel.start();
+
+        kernel.execute(echoToFile("timed"));
+
+        /* the listeners are notified after the result is returned */
+        ExecutionTimings timings = reported.poll(10, TimeUnit.SECONDS);
+        assertNotNull(timings);
+        assertTrue(reported.isEmpty());
+        assertEquals(FreeText.class.getSimpleName(), timings.getExecutableType());
+        assertTrue(timings.getNanos(ExecutionPhase.MADX) > 0);
+        assertTrue(timings.getCommandBytes() > 0);
+    }
+
+    @Test
+    public void testLargeCommandsAreCalledFromFile() throws Exception {
+        kernel.setCommandFileThreshold(10);
+        kernel.start();
+
+        kernel.execute(echoToFile("single"));
+        kernel.executeBatch(Arrays.asList(echoToFile("batch 1"), echoToFile("batch 2")));
+
+        assertEquals(Arrays.asList("single", "batch 1", "batch 2"), Files.readAllLines(file.toPath()));
+    }
+
+    @Test
+    public void testExecutableTimeoutAbortsAndRecovers() throws Exception {
+        kernel.start();
+        CompletableFuture<Result> slow = kernel.executeAsync(freeText("System \"sleep 10\";"), 200L);
+        CompletableFuture<Result> next = kernel.executeAsync(echoToFile("after timeout"));
+
+        try {
+            slow.get();
+            fail("slow execution should time out.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof WaitForMadxTimedOutException);
+        }
+        next.get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("after timeout"), Files.readAllLines(file.toPath()));
+        assertTrue("madx should be running again.", kernel.isMadxRunning());
+    }
+
+    @Test
+    public void testCancelRunningExecution() throws Exception {
+        kernel.start();
+        CompletableFuture<Result> slow = kernel.executeAsync(freeText("System \"sleep 10\";"));
+        CompletableFuture<Result> next = kernel.executeAsync(echoToFile("after cancel"));
+        Thread.sleep(200);
+
+        assertTrue(slow.cancel(true));
+        next.get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("after cancel"), Files.readAllLines(file.toPath()));
+    }
+
+    private FreeText echoToFile(String text) {
+        return freeText("System \"echo " + text + " >> " + file.getAbsolutePath() + "\";");
+    }
+
+    private static FreeText freeText(String text) {
+        FreeText freeText = new FreeText();
+        freeText.setText(text);
+        return freeText;
+    }
 }
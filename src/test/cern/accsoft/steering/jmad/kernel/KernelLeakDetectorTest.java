@@ -0,0 +1,93 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.accsoft.steering.jmad.util.OsUtil;
+import cern.accsoft.steering.jmad.util.ProcTools;
+
+public class KernelLeakDetectorTest {
+
+    private static final long WAIT_TIMEOUT = 10000;
+
+    private Process process;
+
+    @Before
+    public void startProcess() throws IOException {
+        assumeTrue(!OsUtil.isWindows());
+        process = new ProcessBuilder("sleep", "60").start();
+    }
+
+    @After
+    public void destroyProcess() {
+        if (process != null) {
+            process.destroy();
+        }
+    }
+
+    @Test
+    public void processOfUnstoppedKernelIsDestroyed() throws InterruptedException {
+        long leakedBefore = KernelLeakDetector.getLeakedKernelCount();
+        KernelLeakDetector.track(new Object()).setProcess(process);
+
+        long start = System.currentTimeMillis();
+        while (ProcTools.isRunning(process) && (System.currentTimeMillis() - start < WAIT_TIMEOUT)) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertFalse(ProcTools.isRunning(process));
+        assertEquals(leakedBefore + 1, KernelLeakDetector.getLeakedKernelCount());
+    }
+
+    @Test
+    public void stoppedKernelIsNoLeak() throws InterruptedException {
+        long leakedBefore = KernelLeakDetector.getLeakedKernelCount();
+        KernelLeakDetector.Tracker tracker = KernelLeakDetector.track(new Object());
+        tracker.setProcess(process);
+        tracker.setProcess(null);
+
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertTrue(ProcTools.isRunning(process));
+        assertEquals(leakedBefore, KernelLeakDetector.getLeakedKernelCount());
+    }
+
+    @Test
+    public void runningKernelsAreReported() {
+        Object kernel = new Object();
+        KernelLeakDetector.track(kernel).setProcess(process);
+
+        assertTrue(KernelLeakDetector.getRunningKernelCount() >= 1);
+        assertNotNull(ProcTools.getPid(process));
+        if (OsUtil.isLinux()) {
+            assertTrue(KernelLeakDetector.getMadxRssBytes() > 0);
+            assertTrue(KernelLeakDetector.report().contains("pid=" + ProcTools.getPid(process)));
+        }
+        /* keep the kernel reachable until here */
+        assertNotNull(kernel);
+    }
+}
@@ -0,0 +1,206 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cern.accsoft.steering.jmad.domain.result.match.MatchResultImpl;
+import cern.accsoft.steering.jmad.domain.result.match.MatchResultRequestImpl;
+import cern.accsoft.steering.jmad.domain.result.match.output.MadxVaryResultImpl;
+import cern.accsoft.steering.jmad.kernel.cmd.CallCommand;
+import cern.accsoft.steering.jmad.kernel.cmd.FreeText;
+import cern.accsoft.steering.jmad.kernel.cmd.SetEqual;
+import cern.accsoft.steering.jmad.kernel.cmd.SetListEqual;
+import cern.accsoft.steering.jmad.kernel.cmd.UseCommand;
+import cern.accsoft.steering.jmad.kernel.task.GetValues;
+import cern.accsoft.steering.jmad.kernel.task.RunMatch;
+
+public class KernelStateJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final KernelStateJournal journal = new KernelStateJournal();
+
+    @Test
+    public void consecutiveAssignmentsAreCompacted() {
+        record(new SetEqual("a", 1.0));
+        record(new SetEqual("b", 2.0));
+        record(new SetEqual("a", 3.0));
+        Map<String, Double> values = new LinkedHashMap<>();
+        values.put("b", 4.0);
+        values.put("c", 5.0);
+        record(new SetListEqual(values));
+
+        assertEquals(1, journal.size());
+        assertEquals("a = 3.0;\nb = 4.0;\nc = 5.0;\n", journal.compose());
+    }
+
+    @Test
+    public void assignmentsAreNotCompactedAcrossOtherCommands() {
+        CallCommand call = new CallCommand("init.madx");
+        record(new SetEqual("a", 1.0));
+        record(call);
+        record(new SetEqual("a", 2.0));
+
+        assertEquals(3, journal.size());
+        assertEquals("a = 1.0;\n" + call.compose() + "\na = 2.0;\n", journal.compose());
+    }
+
+    @Test
+    public void executablesWithResultsAreNotRecorded() {
+        GetValues getValues = new GetValues(Collections.singletonList("a"));
+        getValues.setOutputFile(new File("values.out"));
+        record(new CallCommand("init.madx"));
+        record(getValues);
+
+        assertEquals(1, journal.size());
+    }
+
+    @Test
+    public void matchResultsAreRecordedAsAssignments() {
+        record(new SetEqual("kqf", 1.0));
+        RunMatch matching = new RunMatch(new MatchResultRequestImpl(), null);
+        journal.record(matching, "match;");
+        journal.record(matching, matchResult("kqf", 1.5));
+
+        assertEquals("kqf = 1.0;\nkqf = 1.5;\n", journal.compose());
+    }
+
+    @Test
+    public void matchResultsAreRecordedAtThePositionOfTheMatching() {
+        CallCommand call = new CallCommand("init.madx");
+        RunMatch matching = new RunMatch(new MatchResultRequestImpl(), null);
+        journal.record(matching, "match;");
+        record(call);
+        journal.record(matching, matchResult("kqf", 1.5));
+
+        assertEquals("kqf = 1.5;\n" + call.compose() + "\n", journal.compose());
+    }
+
+    @Test
+    public void matchResultsOfUnrecordedMatchingsAreIgnored() {
+        RunMatch matching = new RunMatch(new MatchResultRequestImpl(), null);
+        journal.record(matching, "match;");
+        journal.clear();
+        journal.record(matching, matchResult("kqf", 1.5));
+
+        assertEquals("", journal.compose());
+    }
+
+    @Test
+    public void repeatedIdempotentCommandsAreCompacted() {
+        CallCommand call = new CallCommand("init.madx");
+        UseCommand use = new UseCommand("lhcb1");
+        record(call);
+        for (int i = 0; i < 100; i++) {
+            record(use);
+            record(new SetEqual("a", (double) i));
+        }
+
+        assertEquals(4, journal.size());
+        assertEquals(call.compose() + "\na = 98.0;\n" + use.compose() + "\na = 99.0;\n", journal.compose());
+    }
+
+    @Test
+    public void repeatedOtherCommandsAreKept() {
+        FreeText increment = new FreeText();
+        increment.setText("x = x + 1;");
+        CallCommand call = new CallCommand("ealign.madx");
+        record(increment);
+        record(increment);
+        record(call);
+        record(new SetEqual("a", 1.0));
+        record(call);
+
+        assertEquals(5, journal.size());
+        assertEquals(increment.compose() + "\n" + increment.compose() + "\n" + call.compose() + "\na = 1.0;\n"
+                + call.compose() + "\n", journal.compose());
+    }
+
+    @Test
+    public void commandsAreNotCompactedAcrossOtherCommands() {
+        UseCommand use = new UseCommand("lhcb1");
+        record(use);
+        record(new CallCommand("second.madx"));
+        record(use);
+
+        assertEquals(3, journal.size());
+    }
+
+    @Test
+    public void commandsAreNotCompactedAcrossPendingMatchings() {
+        UseCommand use = new UseCommand("lhcb1");
+        record(use);
+        journal.record(new RunMatch(new MatchResultRequestImpl(), null), "match;");
+        record(use);
+
+        assertEquals(3, journal.size());
+    }
+
+    @Test
+    public void recordTellsWhetherCommandIsReplayedLiterally() {
+        CallCommand call = new CallCommand("init.madx");
+        assertTrue(journal.record(call, call.compose()));
+
+        SetEqual setEqual = new SetEqual("a", 1.0);
+        assertFalse(journal.record(setEqual, setEqual.compose()));
+    }
+
+    @Test
+    public void commandFilesAreDeletedWithTheirEntries() throws IOException {
+        File first = folder.newFile("command-1.madx");
+        File second = folder.newFile("command-2.madx");
+        /* e.g. a large use command, which the kernel spilled into a file */
+        UseCommand use = new UseCommand("lhcb1");
+        String call = new CallCommand("spilled.madx").compose();
+        journal.record(use, call, first);
+        journal.record(use, call, second);
+
+        assertFalse("the compacted entry must release its file", first.exists());
+        assertTrue(second.exists());
+
+        journal.clear();
+        assertFalse("clearing the journal must release the files", second.exists());
+    }
+
+    @Test
+    public void clearRemovesAllEntries() {
+        record(new CallCommand("init.madx"));
+        journal.clear();
+
+        assertEquals(0, journal.size());
+        assertEquals("", journal.compose());
+    }
+
+    private void record(JMadExecutable executable) {
+        journal.record(executable, executable.compose());
+    }
+
+    private static MatchResultImpl matchResult(String name, double finalValue) {
+        MatchResultImpl matchResult = new MatchResultImpl(0.0);
+        matchResult.addVaryParameterResult(new MadxVaryResultImpl(name, finalValue));
+        return matchResult;
+    }
+}
@@ -0,0 +1,154 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.ExternalResource;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.bin.FakeMadxLauncher;
+import cern.accsoft.steering.jmad.domain.result.Result;
+import cern.accsoft.steering.jmad.domain.result.StrengthResult;
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsResultRequestImpl;
+import cern.accsoft.steering.jmad.domain.twiss.TwissInitialConditionsImpl;
+import cern.accsoft.steering.jmad.kernel.cmd.SetEqual;
+import cern.accsoft.steering.jmad.kernel.task.GetValues;
+import cern.accsoft.steering.jmad.kernel.task.RunTwiss;
+
+/**
+ * Supervises a kernel, which runs the {@link cern.accsoft.steering.jmad.bin.FakeMadx} stand-in. The stand-in takes a
+ * few seconds for each twiss (without consuming cpu time), so that a twiss looks like a hanging MadX.
+ */
+public class KernelSupervisorTest {
+
+    private static final long TWISS_LATENCY = 5000;
+    private static final long WAIT_TIMEOUT = 5000;
+
+    @ClassRule
+    public static ExternalResource fakeMadx = FakeMadxLauncher.create().latency(TWISS_LATENCY).asRule();
+
+    private final JMadKernelImpl kernel = FakeMadxLauncher.createKernel();
+    private final KernelSupervisor supervisor = new KernelSupervisor();
+
+    @Before
+    public void startKernel() throws JMadException {
+        kernel.start();
+
+        supervisor.setHangTimeout(null);
+        supervisor.supervise(kernel);
+    }
+
+    @After
+    public void stopKernel() throws JMadException {
+        supervisor.close();
+        kernel.stop();
+    }
+
+    @Test
+    public void kernelBelowThresholdsIsNotRecycled() throws Exception {
+        supervisor.setMaxExecutions(10L);
+        Process process = kernel.getProcess();
+        kernel.execute(new SetEqual("kqf", 0.0123));
+        awaitExecutions(1);
+
+        supervisor.sample();
+
+        assertEquals(0, supervisor.getRecycleCount());
+        assertTrue(process == kernel.getProcess());
+        KernelHealth health = supervisor.getHealth().get(0);
+        assertEquals(1, health.getExecutions());
+    }
+
+    @Test
+    public void healthContainsSampledMemory() throws JMadException {
+        assumeTrue(new File("/proc/self/status").exists());
+        kernel.execute(new SetEqual("kqf", 0.0123));
+
+        supervisor.sample();
+
+        KernelHealth health = supervisor.getHealth().get(0);
+        assertTrue(health.getRssBytes() > 0);
+        assertTrue(health.getCpuTimeNanos() >= 0);
+    }
+
+    @Test
+    public void kernelIsRecycledAfterMaxExecutionsAndKeepsItsState() throws Exception {
+        supervisor.setMaxExecutions(2L);
+        Process process = kernel.getProcess();
+        kernel.execute(new SetEqual("kqf", 0.0123));
+        kernel.execute(new SetEqual("kqd", -0.0456));
+        kernel.execute(new SetEqual("kqf", 0.0789));
+        awaitExecutions(3);
+
+        supervisor.sample();
+
+        /* the recycling is enqueued before the next execution */
+        StrengthResult result = (StrengthResult) kernel.execute(new GetValues(Arrays.asList("kqf", "kqd")));
+        assertEquals(1, supervisor.getRecycleCount());
+        assertNotSame(process, kernel.getProcess());
+        assertEquals(Arrays.asList(0.0789, -0.0456), result.getDoubleValues());
+        awaitExecutions(1);
+    }
+
+    @Test
+    public void hangingExecutionIsAbortedAndKernelRecovers() throws Exception {
+        assumeTrue(new File("/proc/self/stat").exists());
+        supervisor.setHangTimeout(200L);
+        kernel.execute(new SetEqual("kqf", 0.0123));
+        Process process = kernel.getProcess();
+
+        CompletableFuture<Result> twiss = kernel
+                .executeAsync(new RunTwiss(new TwissInitialConditionsImpl(), new TfsResultRequestImpl()));
+        long startTime = System.currentTimeMillis();
+        while (supervisor.getRecycleCount() == 0) {
+            assertTrue("Hanging kernel not detected", System.currentTimeMillis() - startTime < TWISS_LATENCY);
+            supervisor.sample();
+            Thread.sleep(100);
+        }
+
+        try {
+            twiss.get(WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+            throw new AssertionError("The hanging twiss should have failed.");
+        } catch (ExecutionException e) {
+            /* expected: madx was killed */
+        }
+        StrengthResult result = (StrengthResult) kernel.execute(new GetValues(Collections.singletonList("kqf")));
+        assertNotSame(process, kernel.getProcess());
+        assertEquals(Collections.singletonList(0.0123), result.getDoubleValues());
+    }
+
+    /**
+     * the kernel notifies the supervisor only after the result was returned, so we have to wait for it.
+     */
+    private void awaitExecutions(long executions) throws InterruptedException {
+        long startTime = System.currentTimeMillis();
+        while (supervisor.getHealth().get(0).getExecutions() != executions) {
+            assertTrue("Executions not counted", System.currentTimeMillis() - startTime < WAIT_TIMEOUT);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.bin.FakeMadxLauncher;
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsResultRequestImpl;
+import cern.accsoft.steering.jmad.domain.twiss.TwissInitialConditionsImpl;
+import cern.accsoft.steering.jmad.kernel.metrics.KernelMetrics;
+import cern.accsoft.steering.jmad.kernel.task.RunTwiss;
+
+/**
+ * Measures the twiss throughput of a kernel, which runs the {@link cern.accsoft.steering.jmad.bin.FakeMadx} stand-in
+ * instead of MadX. As the stand-in needs no compute time (except the configured latency), this shows the overhead of
+ * the kernel itself: composing, the round trip to the process and the parsing of the results. The per-phase timings
+ * are printed at the end.
+ * <p>
+ * Usage: KernelThroughputBenchmark [twisses] [rows per table] [latency in ms]
+ */
+public final class KernelThroughputBenchmark {
+
+    private static final int WARMUP_TWISSES = 50;
+
+    private KernelThroughputBenchmark() {
+        /* only main */
+    }
+
+    public static void main(String[] args) throws JMadException, IOException {
+        int twisses = (args.length > 0) ? Integer.parseInt(args[0]) : 500;
+        int rows = (args.length > 1) ? Integer.parseInt(args[1]) : 5000;
+        long latency = (args.length > 2) ? Long.parseLong(args[2]) : 0;
+
+        File directory = Files.createTempDirectory("fake-madx").toFile();
+        FakeMadxLauncher.create(directory).rows(rows).latency(latency).install();
+
+        KernelMetrics metrics = new KernelMetrics();
+        JMadKernelImpl kernel = FakeMadxLauncher.createKernel();
+        kernel.start();
+        try {
+            RunTwiss twiss = new RunTwiss(new TwissInitialConditionsImpl(), new TfsResultRequestImpl());
+            run(kernel, twiss, WARMUP_TWISSES);
+
+            kernel.addListener(metrics);
+            long nanos = run(kernel, twiss, twisses);
+            double seconds = nanos / 1e9;
+            System.out.printf("%d twisses with %d rows (latency %d ms): %8.1f ms total, %8.3f ms/twiss, "
+                    + "%10.0f rows/s%n", twisses, rows, latency, nanos / 1e6, nanos / 1e6 / twisses,
+                    twisses * (double) rows / seconds);
+            System.out.println(metrics.getSummary());
+        } finally {
+            kernel.stop();
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    private static long run(JMadKernel kernel, RunTwiss twiss, int twisses) throws JMadException {
+        long startTime = System.nanoTime();
+        for (int i = 0; i < twisses; i++) {
+            kernel.execute(twiss);
+        }
+        return System.nanoTime() - startTime;
+    }
+}
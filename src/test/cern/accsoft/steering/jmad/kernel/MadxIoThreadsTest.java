@@ -0,0 +1,116 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.ExternalResource;
+
+import cern.accsoft.steering.jmad.bin.FakeMadxLauncher;
+import cern.accsoft.steering.jmad.domain.result.StrengthResult;
+import cern.accsoft.steering.jmad.kernel.cmd.SetEqual;
+import cern.accsoft.steering.jmad.kernel.task.GetValues;
+
+/**
+ * Checks on which kind of threads the kernels wait for MadX and read its streams. The tests for virtual threads are
+ * skipped, if the JVM does not provide them (java older than 21, or the java21 classes are not on the classpath).
+ */
+public class MadxIoThreadsTest {
+
+    @ClassRule
+    public static ExternalResource fakeMadx = FakeMadxLauncher.create().asRule();
+
+    @Test
+    public void submissionThreadsAreVirtualIfAvailable() throws Exception {
+        assumeTrue(MadxIoThreads.isVirtualThreads());
+
+        Thread submissionThread = submissionThread();
+
+        assertTrue(isVirtual(submissionThread));
+        assertTrue(submissionThread.getName().startsWith("jmad-kernel-submission-"));
+    }
+
+    @Test
+    public void submissionThreadsArePlatformDaemonsOtherwise() throws Exception {
+        assumeTrue(!MadxIoThreads.isVirtualThreads());
+
+        Thread submissionThread = submissionThread();
+
+        assertFalse(isVirtual(submissionThread));
+        assertTrue(submissionThread.isDaemon());
+        assertTrue(submissionThread.getName().startsWith("jmad-kernel-submission-"));
+    }
+
+    @Test
+    public void streamReadersArePlatformThreads() throws Exception {
+        CompletableFuture<Thread> readerThread = new CompletableFuture<>();
+        MadxOutputReader reader = new MadxOutputReader(
+                new ByteArrayInputStream("line".getBytes(StandardCharsets.US_ASCII)), "output");
+        reader.addSniffer(line -> readerThread.complete(Thread.currentThread()));
+
+        MadxIoThreads.drain(reader);
+
+        Thread thread = readerThread.get(10, TimeUnit.SECONDS);
+        assertFalse(isVirtual(thread));
+        assertTrue(thread.isDaemon());
+        assertTrue(thread.getName().startsWith("jmad-madx-stream-reader-"));
+    }
+
+    @Test
+    public void kernelRunsOnVirtualThreads() throws Exception {
+        assumeTrue(MadxIoThreads.isVirtualThreads());
+
+        JMadKernelImpl kernel = FakeMadxLauncher.createKernel();
+        kernel.start();
+        try {
+            kernel.execute(new SetEqual("kqf", 0.5));
+            StrengthResult result = (StrengthResult) kernel.executeAsync(new GetValues(Arrays.asList("kqf")))
+                    .get(30, TimeUnit.SECONDS);
+
+            assertEquals(Arrays.asList(0.5), result.getDoubleValues());
+        } finally {
+            kernel.stop();
+        }
+    }
+
+    private static Thread submissionThread() throws Exception {
+        ExecutorService executor = MadxIoThreads.newSubmissionExecutor();
+        try {
+            return executor.submit(Thread::currentThread).get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * calls {@code Thread.isVirtual()} by reflection, because the tests are compiled for java 8.
+     */
+    private static boolean isVirtual(Thread thread) throws ReflectiveOperationException {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MadxLogFileWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void linesAreWrittenWhenClosed() throws IOException {
+        File file = new File(folder.getRoot(), "madx-output.log");
+        MadxLogFileWriter writer = new MadxLogFileWriter(file, 1000);
+
+        writer.processNewLine("first");
+        writer.processNewLine("second");
+        writer.run();
+
+        assertEquals(Arrays.asList("first", "second"), readLines(file));
+    }
+
+    @Test
+    public void linesAfterCloseAreIgnored() throws IOException {
+        File file = new File(folder.getRoot(), "madx-output.log");
+        MadxLogFileWriter writer = new MadxLogFileWriter(file, 1000);
+
+        writer.processNewLine("first");
+        writer.close();
+        writer.processNewLine("second");
+        writer.close();
+
+        assertEquals(Collections.singletonList("first"), readLines(file));
+    }
+
+    @Test
+    public void synchronousModeWritesImmediately() throws IOException {
+        File file = new File(folder.getRoot(), "madx-input.log");
+        MadxLogFileWriter writer = new MadxLogFileWriter(file, 1000);
+        writer.setSynchronous(true);
+
+        writer.processNewLine("a = 1.0;");
+
+        assertEquals(Collections.singletonList("a = 1.0;"), readLines(file));
+        writer.close();
+    }
+
+    @Test
+    public void fileIsRotatedWhenMaxSizeIsExceeded() throws IOException {
+        File file = new File(folder.getRoot(), "madx-output.log");
+        File rotated = new File(file.getAbsolutePath() + MadxLogFileWriter.SUFFIX_ROTATED);
+        MadxLogFileWriter writer = new MadxLogFileWriter(file, 10);
+
+        writer.processNewLine("0123456789");
+        writer.processNewLine("abc");
+        writer.close();
+
+        assertEquals(Collections.singletonList("0123456789"), readLines(rotated));
+        assertEquals(Collections.singletonList("abc"), readLines(file));
+    }
+
+    @Test
+    public void synchronousLogIsNotRotated() throws IOException {
+        File file = new File(folder.getRoot(), "madx-input.log");
+        MadxLogFileWriter writer = new MadxLogFileWriter(file, 10);
+        writer.setSynchronous(true);
+
+        writer.processNewLine("0123456789");
+        writer.processNewLine("abc");
+        writer.close();
+
+        assertFalse(new File(file.getAbsolutePath() + MadxLogFileWriter.SUFFIX_ROTATED).exists());
+        assertEquals(Arrays.asList("0123456789", "abc"), readLines(file));
+    }
+
+    @Test
+    public void noFileIsCreatedWithoutOutput() {
+        File file = new File(folder.getRoot(), "madx-error.log");
+        new MadxLogFileWriter(file, 1000).close();
+
+        assertFalse(file.exists());
+        assertTrue(folder.getRoot().exists());
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        return Files.readAllLines(file.toPath());
+    }
+}
@@ -0,0 +1,62 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class MadxOutputBufferTest {
+
+    private final MadxOutputBuffer buffer = new MadxOutputBuffer(3);
+
+    @Test
+    public void tailOfEmptyBufferIsEmpty() {
+        assertEquals(Collections.emptyList(), buffer.tail(10));
+    }
+
+    @Test
+    public void tailReturnsLastLinesOldestFirst() {
+        buffer.processNewLine("a");
+        buffer.processNewLine("b");
+
+        assertEquals(Arrays.asList("a", "b"), buffer.tail(10));
+        assertEquals(Collections.singletonList("b"), buffer.tail(1));
+    }
+
+    @Test
+    public void oldestLinesAreOverwrittenWhenFull() {
+        for (String line : new String[] { "a", "b", "c", "d", "e" }) {
+            buffer.processNewLine(line);
+        }
+
+        assertEquals(Arrays.asList("c", "d", "e"), buffer.tail(10));
+        assertEquals(Arrays.asList("d", "e"), buffer.tail(2));
+    }
+
+    @Test
+    public void longLinesAreTruncated() {
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 2 * MadxOutputBuffer.MAX_LINE_LENGTH; i++) {
+            longLine.append('x');
+        }
+        buffer.processNewLine(longLine.toString());
+
+        String stored = buffer.tail(1).get(0);
+        assertTrue(stored.length() < longLine.length());
+        assertTrue(stored.startsWith(longLine.substring(0, MadxOutputBuffer.MAX_LINE_LENGTH)));
+    }
+}
@@ -0,0 +1,206 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExternalResource;
+import org.junit.rules.TemporaryFolder;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.bin.FakeMadxLauncher;
+import cern.accsoft.steering.jmad.domain.result.Result;
+import cern.accsoft.steering.jmad.domain.result.StrengthResult;
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsResult;
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsResultRequestImpl;
+import cern.accsoft.steering.jmad.domain.twiss.TwissInitialConditionsImpl;
+import cern.accsoft.steering.jmad.domain.var.enums.MadxTwissVariable;
+import cern.accsoft.steering.jmad.kernel.cmd.SetEqual;
+import cern.accsoft.steering.jmad.kernel.task.GetValues;
+import cern.accsoft.steering.jmad.kernel.task.RunTwiss;
+
+public class RecordAndReplayKernelTest {
+
+    private static final int ROWS = 17;
+
+    @ClassRule
+    public static ExternalResource fakeMadx = FakeMadxLauncher.create().rows(ROWS).asRule();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replayServesRecordedResults() throws Exception {
+        File directory = folder.newFolder("recording");
+        List<Result> recorded = runSession(new RecordingJMadKernel(FakeMadxLauncher.createKernel(), directory));
+
+        List<Result> replayed = runSession(new ReplayJMadKernel(directory));
+
+        assertEquals(recorded.size(), replayed.size());
+        assertNull(replayed.get(0));
+        assertEquals(((TfsResult) recorded.get(1)).getDoubleData(MadxTwissVariable.BETX),
+                ((TfsResult) replayed.get(1)).getDoubleData(MadxTwissVariable.BETX));
+        assertEquals(ROWS, ((TfsResult) replayed.get(1)).getStringData(MadxTwissVariable.NAME).size());
+        assertEquals(Arrays.asList(0.5), ((StrengthResult) replayed.get(2)).getDoubleValues());
+        assertEquals(Arrays.asList(0.25), ((StrengthResult) replayed.get(4)).getDoubleValues());
+    }
+
+    @Test
+    public void replayRepeatsLastResultOfCommand() throws Exception {
+        File directory = folder.newFolder("recording");
+        runSession(new RecordingJMadKernel(FakeMadxLauncher.createKernel(), directory));
+
+        ReplayJMadKernel replay = new ReplayJMadKernel(directory);
+        replay.start();
+        GetValues getValues = new GetValues(Arrays.asList("kqf"));
+        assertEquals(Arrays.asList(0.5), ((StrengthResult) replay.execute(getValues)).getDoubleValues());
+        assertEquals(Arrays.asList(0.25), ((StrengthResult) replay.execute(getValues)).getDoubleValues());
+        assertEquals(Arrays.asList(0.25), ((StrengthResult) replay.execute(getValues)).getDoubleValues());
+        replay.stop();
+    }
+
+    @Test(expected = JMadException.class)
+    public void replayFailsForCommandNotRecorded() throws Exception {
+        File directory = folder.newFolder("recording");
+        runSession(new RecordingJMadKernel(FakeMadxLauncher.createKernel(), directory));
+
+        ReplayJMadKernel replay = new ReplayJMadKernel(directory);
+        replay.start();
+        replay.execute(new GetValues(Arrays.asList("kqd")));
+    }
+
+    @Test
+    public void executionsOfTheDelegateAreNotRecorded() throws Exception {
+        JMadKernelImpl delegate = FakeMadxLauncher.createKernel();
+        RecordingJMadKernel recorder = new RecordingJMadKernel(delegate, folder.newFolder("recording"));
+        recorder.start();
+        try {
+            delegate.execute(new GetValues(Arrays.asList("kqf")));
+            assertEquals(0, recorder.getRecordedCount());
+            recorder.execute(new GetValues(Arrays.asList("kqf")));
+            assertEquals(1, recorder.getRecordedCount());
+        } finally {
+            recorder.stop();
+        }
+    }
+
+    @Test
+    public void executablesAreHandedToTheDelegateUnchanged() throws Exception {
+        RecordingJMadKernel recorder = new RecordingJMadKernel(new ResultlessKernel(), folder.newFolder("recording"));
+        GetValues getValues = new GetValues(Arrays.asList("kqf"));
+        SetEqual setEqual = new SetEqual("kqf", 0.5);
+
+        recorder.execute(getValues);
+        recorder.executeBatch(Arrays.asList(setEqual));
+
+        assertNull(getValues.getOutputFile());
+        assertNull(setEqual.getOutputFile());
+        assertEquals(1, recorder.getRecordedCount());
+    }
+
+    @Test
+    public void configurationIsPassedToTheDelegate() throws Exception {
+        JMadKernelImpl delegate = FakeMadxLauncher.createKernel();
+        RecordingJMadKernel recorder = new RecordingJMadKernel(delegate, folder.newFolder("recording"));
+
+        recorder.setTimeout(1234L);
+        recorder.setKeepOutputFile(false);
+
+        assertEquals(Long.valueOf(1234L), delegate.getTimeout());
+        assertFalse(delegate.isKeepOutputFile());
+        assertEquals(Long.valueOf(1234L), recorder.getTimeout());
+    }
+
+    private static List<Result> runSession(JMadKernel kernel) throws Exception {
+        TfsResultRequestImpl request = new TfsResultRequestImpl();
+        request.addVariable(MadxTwissVariable.NAME);
+        request.addVariable(MadxTwissVariable.BETX);
+
+        kernel.start();
+        try {
+            Result set = kernel.execute(new SetEqual("kqf", 0.5));
+            Result twiss = kernel.executeAsync(new RunTwiss(new TwissInitialConditionsImpl(), request)).get();
+            Result first = kernel.execute(new GetValues(Arrays.asList("kqf")));
+            Result reset = kernel.execute(new SetEqual("kqf", 0.25));
+            Result second = kernel.executeBatch(Arrays.asList(new GetValues(Arrays.asList("kqf")))).get(0);
+            return Arrays.asList(set, twiss, first, reset, second);
+        } finally {
+            kernel.stop();
+        }
+    }
+
+    /**
+     * a kernel which executes nothing and leaves the executables as they are
+     */
+    private static class ResultlessKernel implements JMadKernel {
+        @Override
+        public void start() {
+            /* not needed */
+        }
+
+        @Override
+        public int stop() {
+            return 0;
+        }
+
+        @Override
+        public Result execute(JMadExecutable executable) {
+            return null;
+        }
+
+        @Override
+        public List<Result> executeBatch(List<? extends JMadExecutable> executables) {
+            return new ArrayList<>(Collections.nCopies(executables.size(), (Result) null));
+        }
+
+        @Override
+        public void recover() {
+            /* not needed */
+        }
+
+        @Override
+        public boolean isMadxRunning() {
+            return true;
+        }
+
+        @Override
+        public void addListener(JMadKernelListener listener) {
+            /* not needed */
+        }
+
+        @Override
+        public void removeListener(JMadKernelListener listener) {
+            /* not needed */
+        }
+
+        @Override
+        public File getOutputFile() {
+            return null;
+        }
+
+        @Override
+        public KernelIoStatistics getIoStatistics() {
+            return new KernelIoStatistics();
+        }
+    }
+}
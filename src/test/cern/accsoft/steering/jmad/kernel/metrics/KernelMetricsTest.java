@@ -0,0 +1,101 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Test;
+
+import cern.accsoft.steering.jmad.domain.result.ResultType;
+import cern.accsoft.steering.jmad.kernel.ExecutionPhase;
+import cern.accsoft.steering.jmad.kernel.ExecutionTimings;
+
+public class KernelMetricsTest {
+
+    private static final String TEST_OBJECT_NAME = "cern.jmad.test:type=KernelMetrics";
+
+    private final KernelMetrics metrics = new KernelMetrics();
+
+    @After
+    public void unregister() {
+        metrics.unregister();
+    }
+
+    @Test
+    public void timingsAreCollectedPerExecutableTypeAndPhase() {
+        metrics.executed(timings("RunTwiss", ResultType.TFS_RESULT, 2000000, 1000));
+        metrics.executed(timings("RunTwiss", ResultType.TFS_RESULT, 4000000, 3000));
+        metrics.executed(timings("SetEqual", ResultType.NO_RESULT, 100000, 0));
+
+        assertEquals(3, metrics.getExecutions());
+        assertEquals(4000, metrics.getParsedBytes());
+
+        PhaseStatistics twissMadx = find(metrics.getPhaseStatistics(), "RunTwiss", ExecutionPhase.MADX.name());
+        assertEquals("TFS_RESULT", twissMadx.getResultType());
+        assertEquals(2, twissMadx.getCount());
+        assertEquals(3000, twissMadx.getMeanMicros());
+        assertEquals(4000, twissMadx.getMaxMicros());
+
+        PhaseStatistics setTotal = find(metrics.getPhaseStatistics(), "SetEqual", KernelMetrics.PHASE_TOTAL);
+        assertEquals(1, setTotal.getCount());
+    }
+
+    @Test
+    public void resetClearsAllStatistics() {
+        metrics.executed(timings("RunTwiss", ResultType.TFS_RESULT, 1000, 10));
+        metrics.reset();
+
+        assertEquals(0, metrics.getExecutions());
+        assertTrue(metrics.getPhaseStatistics().isEmpty());
+    }
+
+    @Test
+    public void metricsAreAvailableViaJmx() throws Exception {
+        metrics.setObjectName(TEST_OBJECT_NAME);
+        metrics.register();
+        metrics.executed(timings("RunTwiss", ResultType.TFS_RESULT, 1000, 10));
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(TEST_OBJECT_NAME);
+        assertEquals(1L, server.getAttribute(name, "Executions"));
+        assertEquals(10L, server.getAttribute(name, "ParsedBytes"));
+
+        metrics.unregister();
+        assertTrue(!server.isRegistered(name));
+    }
+
+    private static ExecutionTimings timings(String executableType, ResultType resultType, long madxNanos,
+            long resultBytes) {
+        ExecutionTimings timings = new ExecutionTimings(executableType, resultType);
+        timings.add(ExecutionPhase.MADX, madxNanos);
+        timings.add(ExecutionPhase.PARSE, madxNanos / 10);
+        timings.addResultBytes(resultBytes);
+        return timings;
+    }
+
+    private static PhaseStatistics find(List<PhaseStatistics> statistics, String executableType, String phase) {
+        for (PhaseStatistics phaseStatistics : statistics) {
+            if (phaseStatistics.getExecutableType().equals(executableType) && phaseStatistics.getPhase().equals(phase)) {
+                return phaseStatistics;
+            }
+        }
+        throw new AssertionError("No statistics for " + executableType + " " + phase);
+    }
+}
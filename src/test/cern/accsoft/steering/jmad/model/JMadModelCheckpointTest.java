@@ -0,0 +1,111 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.ExternalResource;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.bin.FakeMadxLauncher;
+import cern.accsoft.steering.jmad.domain.ex.JMadModelException;
+import cern.accsoft.steering.jmad.domain.result.StrengthResult;
+import cern.accsoft.steering.jmad.kernel.task.GetValues;
+import cern.accsoft.steering.jmad.modeldefs.domain.JMadModelDefinition;
+import cern.accsoft.steering.jmad.service.JMadService;
+import cern.accsoft.steering.jmad.service.JMadServiceFactory;
+
+/**
+ * Initializes models from a checkpoint of the example model, with the {@link cern.accsoft.steering.jmad.bin.FakeMadx}
+ * stand-in as MadX.
+ */
+public class JMadModelCheckpointTest {
+
+    @ClassRule
+    public static ExternalResource fakeMadx = FakeMadxLauncher.create().rows(10).asRule();
+
+    private static JMadService jmadService;
+
+    private final List<JMadModel> models = new ArrayList<>();
+
+    @BeforeClass
+    public static void createService() {
+        /* the service locates the madx binary when it is created, so after the rule installed the stand-in */
+        jmadService = JMadServiceFactory.createJMadService();
+    }
+
+    @After
+    public void cleanupModels() throws JMadModelException {
+        for (JMadModel model : models) {
+            model.cleanup();
+            jmadService.deleteModel(model);
+        }
+    }
+
+    @Test
+    public void savedVariablesAreRestoredFromCheckpoint() throws JMadException {
+        JMadModel source = createInitializedModel();
+        source.execute("checkpoint_test_value = 0.25;");
+
+        JMadModel sibling = createFromCheckpoint(source.checkpoint());
+
+        StrengthResult result = (StrengthResult) sibling.getKernel()
+                .execute(new GetValues(Collections.singletonList("checkpoint_test_value")));
+        assertEquals(Collections.singletonList(0.25), result.getDoubleValues());
+    }
+
+    @Test
+    public void restoreScriptIsCalledFromFile() throws Exception {
+        JMadModel source = createInitializedModel();
+        StringBuilder variables = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            variables.append("checkpoint_test_value_").append(i).append(" = ").append(i).append(";\n");
+        }
+        source.execute(variables.toString());
+        ModelCheckpoint checkpoint = source.checkpoint();
+
+        JMadModel sibling = createFromCheckpoint(checkpoint);
+
+        File restoreFile = new File(sibling.getKernel().getOutputFile().getParentFile(), "madx-restore.madx");
+        assertEquals(checkpoint.getRestoreScript(),
+                new String(Files.readAllBytes(restoreFile.toPath()), StandardCharsets.UTF_8));
+        /* all the commands of the initialization together are shorter than the restore script */
+        assertTrue(sibling.getKernel().getIoStatistics().getCommandBytes() < checkpoint.getRestoreScript().length());
+    }
+
+    private JMadModel createInitializedModel() throws JMadModelException {
+        JMadModelDefinition modelDefinition = jmadService.getModelDefinitionManager().getModelDefinition("example",
+                false);
+        JMadModel model = jmadService.createModel(modelDefinition);
+        models.add(model);
+        model.init();
+        return model;
+    }
+
+    private JMadModel createFromCheckpoint(ModelCheckpoint checkpoint) throws JMadModelException {
+        List<JMadModel> siblings = jmadService.createModels(checkpoint, 1);
+        models.addAll(siblings);
+        return siblings.get(0);
+    }
+}
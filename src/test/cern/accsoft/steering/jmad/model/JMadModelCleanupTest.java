@@ -0,0 +1,130 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import cern.accsoft.steering.jmad.domain.result.Result;
+import cern.accsoft.steering.jmad.kernel.JMadExecutable;
+import cern.accsoft.steering.jmad.kernel.JMadKernel;
+import cern.accsoft.steering.jmad.kernel.JMadKernelListener;
+import cern.accsoft.steering.jmad.kernel.KernelIoStatistics;
+
+public class JMadModelCleanupTest {
+
+    private static final long WAIT_TIMEOUT = 10000;
+
+    @Test
+    public void kernelOfCollectedModelIsStopped() throws InterruptedException {
+        StubKernel kernel = new StubKernel();
+        createModel(kernel);
+
+        long start = System.currentTimeMillis();
+        while ((kernel.stops.get() == 0) && (System.currentTimeMillis() - start < WAIT_TIMEOUT)) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertEquals(1, kernel.stops.get());
+    }
+
+    @Test
+    public void kernelOfCleanedUpModelIsNotStoppedAgain() throws Exception {
+        StubKernel kernel = new StubKernel();
+        JMadModelImpl model = new JMadModelImpl();
+        model.setKernel(kernel);
+
+        model.cleanup();
+        model = null;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertEquals(1, kernel.stops.get());
+    }
+
+    /**
+     * creates a model, which is unreachable as soon as this method returns
+     */
+    private static void createModel(JMadKernel kernel) {
+        new JMadModelImpl().setKernel(kernel);
+    }
+
+    /**
+     * a running kernel, which counts how often it is stopped
+     */
+    private static class StubKernel implements JMadKernel {
+        private final AtomicInteger stops = new AtomicInteger();
+        private volatile boolean running = true;
+
+        @Override
+        public void start() {
+            running = true;
+        }
+
+        @Override
+        public int stop() {
+            running = false;
+            stops.incrementAndGet();
+            return 0;
+        }
+
+        @Override
+        public Result execute(JMadExecutable executable) {
+            return null;
+        }
+
+        @Override
+        public List<Result> executeBatch(List<? extends JMadExecutable> executables) {
+            return new ArrayList<>(Collections.nCopies(executables.size(), (Result) null));
+        }
+
+        @Override
+        public void recover() {
+            running = true;
+        }
+
+        @Override
+        public boolean isMadxRunning() {
+            return running;
+        }
+
+        @Override
+        public void addListener(JMadKernelListener listener) {
+            /* not needed */
+        }
+
+        @Override
+        public void removeListener(JMadKernelListener listener) {
+            /* not needed */
+        }
+
+        @Override
+        public File getOutputFile() {
+            return null;
+        }
+
+        @Override
+        public KernelIoStatistics getIoStatistics() {
+            return new KernelIoStatistics();
+        }
+    }
+}
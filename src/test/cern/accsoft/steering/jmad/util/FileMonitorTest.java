@@ -26,6 +26,10 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchService;
 
 import org.junit.After;
 import org.junit.Before;
@@ -66,4 +70,17 @@ public class FileMonitorTest {
         assertTrue("No timeout, since file exists.", fileExists);
     }
 
+    @Test
+    public void testFileCreatedWhileWatching() throws JMadException, IOException {
+        File file = new File(TEST_FILE_NAME).getAbsoluteFile();
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            file.getParentFile().toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+            TestFile createdFile = new TestFile(TEST_FILE_NAME);
+            testFile = createdFile;
+            new Thread(() -> createdFile.write("")).start();
+            boolean fileExists = new FileMonitor(file, null, watchService).waitForFile(10 * WAIT_MILLISEC);
+            assertTrue("No timeout, since the file was created meanwhile.", fileExists);
+        }
+    }
+
 }
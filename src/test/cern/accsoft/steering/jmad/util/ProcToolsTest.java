@@ -0,0 +1,64 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.util;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProcToolsTest {
+
+    private static final long WAIT_TIMEOUT = 10000;
+
+    private Process process;
+
+    @Before
+    public void startProcess() throws IOException {
+        assumeTrue(new File("/proc/self/stat").canRead());
+        /* the shell itself only waits, while its child keeps a cpu busy */
+        process = new ProcessBuilder("sh", "-c", "timeout 30 sh -c 'while :; do :; done' & wait").start();
+    }
+
+    @After
+    public void destroyProcess() throws InterruptedException {
+        if (process != null) {
+            try {
+                new ProcessBuilder("pkill", "-P", String.valueOf(ProcTools.getPid(process))).start().waitFor();
+            } catch (IOException e) {
+                /* no pkill: the child is only bounded by its timeout */
+            }
+            process.destroyForcibly();
+        }
+    }
+
+    @Test
+    public void cpuTimeOfChildrenIsContainedInProcessTree() throws InterruptedException {
+        long pid = ProcTools.getPid(process);
+
+        long start = System.currentTimeMillis();
+        while ((ProcTools.getProcessTreeCpuTimeNanos(pid) < TimeUnit.MILLISECONDS.toNanos(100))
+                && (System.currentTimeMillis() - start < WAIT_TIMEOUT)) {
+            Thread.sleep(50);
+        }
+
+        long treeCpuTime = ProcTools.getProcessTreeCpuTimeNanos(pid);
+        assertTrue(treeCpuTime >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(ProcTools.getCpuTimeNanos(pid) < treeCpuTime);
+    }
+}
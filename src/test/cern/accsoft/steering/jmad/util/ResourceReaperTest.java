@@ -0,0 +1,51 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import cern.accsoft.steering.jmad.util.ResourceReaper.Cleanable;
+
+public class ResourceReaperTest {
+
+    private static final long WAIT_TIMEOUT = 10000;
+
+    @Test
+    public void actionRunsWhenObjectIsUnreachable() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        ResourceReaper.register(new Object(), runs::incrementAndGet);
+
+        long start = System.currentTimeMillis();
+        while ((runs.get() == 0) && (System.currentTimeMillis() - start < WAIT_TIMEOUT)) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void cleanRunsActionOnlyOnce() {
+        AtomicInteger runs = new AtomicInteger();
+        Object object = new Object();
+        Cleanable cleanable = ResourceReaper.register(object, runs::incrementAndGet);
+
+        cleanable.clean();
+        cleanable.clean();
+
+        assertEquals(1, runs.get());
+    }
+}
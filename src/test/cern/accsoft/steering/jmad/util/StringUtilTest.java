@@ -27,6 +27,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -90,4 +94,31 @@ public class StringUtilTest {
                 join(Arrays.asList(ANY_STRING, ANY_STRING, ANY_STRING), ANY_SEPARATOR));
     }
 
+    @Test
+    public void appendDoubleWritesSameTextAsToString() throws IOException {
+        double[] values = { 0.0, -0.0, 1.0, -2.5, 1.0e-7, 6.02214076e23, Double.MAX_VALUE, Double.MIN_VALUE,
+                Double.NaN, Double.NEGATIVE_INFINITY };
+        for (double value : values) {
+            StringWriter writer = new StringWriter();
+            StringUtil.appendDouble(writer, value);
+            assertEquals(Double.toString(value), writer.toString());
+
+            StringBuilder builder = new StringBuilder();
+            StringUtil.appendDouble(builder, value);
+            assertEquals(Double.toString(value), builder.toString());
+        }
+    }
+
+    @Test
+    public void encodedLengthEqualsLengthOfEncodedBytes() {
+        String[] texts = { "", "kqf = 1.0;", "µ = 2;", "€", "😀 x", "\ud83d" };
+        for (String text : texts) {
+            for (Charset charset : Arrays.asList(StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1,
+                    StandardCharsets.UTF_16)) {
+                assertEquals(text + " in " + charset, text.getBytes(charset).length,
+                        StringUtil.encodedLength(text, charset));
+            }
+        }
+    }
+
 }
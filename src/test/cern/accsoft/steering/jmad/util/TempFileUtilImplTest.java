@@ -0,0 +1,119 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TempFileUtilImplTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final JMadPreferences preferences = new JMadPreferencesImpl();
+    private final TempFileUtilImpl fileUtil = new TempFileUtilImpl();
+    private final Object owner = new Object();
+    private File diskDir;
+    private File ramDir;
+
+    @Before
+    public void setUp() throws IOException {
+        diskDir = folder.newFolder("disk");
+        ramDir = folder.newFolder("ram");
+        preferences.setOutputPath(diskDir.getAbsolutePath());
+        fileUtil.setPreferences(preferences);
+        fileUtil.setRamBasePath(ramDir.getAbsolutePath());
+        fileUtil.init();
+    }
+
+    @Test
+    public void workingFilesAreOnDiskPerDefault() {
+        File file = fileUtil.getWorkingFile(owner, "result.out");
+
+        assertEquals(fileUtil.getOutputFile(owner, "result.out"), file);
+    }
+
+    @Test
+    public void workingFilesAreInRamWithRamStrategy() {
+        preferences.setWorkingDirStrategy(WorkingDirStrategy.RAM);
+
+        File file = fileUtil.getWorkingFile(owner, "result.out");
+
+        assertTrue(isBelow(file, ramDir));
+        assertTrue(file.getParentFile().isDirectory());
+    }
+
+    @Test
+    public void workingFilesFallBackToDiskWhenBudgetIsUsedUp() throws IOException {
+        preferences.setWorkingDirStrategy(WorkingDirStrategy.RAM);
+        preferences.setRamWorkingDirBudget(10);
+        fileUtil.setRamUsageMaxAge(0);
+        File first = fileUtil.getWorkingFile(owner, "first.out");
+        Files.write(first.toPath(), new byte[10]);
+
+        File second = fileUtil.getWorkingFile(owner, "second.out");
+
+        assertTrue(isBelow(first, ramDir));
+        assertTrue(isBelow(second, diskDir));
+    }
+
+    @Test
+    public void ramUsageIsMeasuredAgainAfterMaxAge() throws Exception {
+        preferences.setWorkingDirStrategy(WorkingDirStrategy.RAM);
+        preferences.setRamWorkingDirBudget(10);
+        fileUtil.setRamUsageMaxAge(200);
+        File first = fileUtil.getWorkingFile(owner, "first.out");
+        Files.write(first.toPath(), new byte[10]);
+
+        /* the budget is checked against the previous measurement */
+        File second = fileUtil.getWorkingFile(owner, "second.out");
+        Thread.sleep(250);
+        File third = fileUtil.getWorkingFile(owner, "third.out");
+
+        assertTrue(isBelow(second, ramDir));
+        assertTrue(isBelow(third, diskDir));
+    }
+
+    @Test
+    public void workingFilesFallBackToDiskWithoutRamFileSystem() {
+        preferences.setWorkingDirStrategy(WorkingDirStrategy.RAM);
+        fileUtil.setRamBasePath(new File(folder.getRoot(), "not-existing").getAbsolutePath());
+
+        assertTrue(isBelow(fileUtil.getWorkingFile(owner, "result.out"), diskDir));
+    }
+
+    @Test
+    public void cleanupRemovesRamFiles() throws IOException {
+        preferences.setWorkingDirStrategy(WorkingDirStrategy.RAM);
+        File file = fileUtil.getWorkingFile(owner, "result.out");
+        Files.write(file.toPath(), new byte[1]);
+
+        fileUtil.cleanup(owner);
+
+        assertFalse(file.exists());
+        assertFalse(file.getParentFile().exists());
+    }
+
+    private static boolean isBelow(File file, File dir) {
+        return file.getAbsolutePath().startsWith(dir.getAbsolutePath() + File.separator);
+    }
+}